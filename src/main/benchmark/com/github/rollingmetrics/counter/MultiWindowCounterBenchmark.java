@@ -0,0 +1,97 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.counter;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link MultiWindowCounter} for 1, 5 and 15 minutes with three {@link SmoothlyDecayingRollingCounter} which are updated together.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MultiWindowCounterBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class MultiWindowCounterState {
+        public final MultiWindowCounter counter = new MultiWindowCounter(MultiWindowCounter.ONE_FIVE_FIFTEEN_MINUTES, 10);
+    }
+
+    @State(Scope.Benchmark)
+    public static class SeparateCountersState {
+        public final WindowCounter oneMinute = new SmoothlyDecayingRollingCounter(Duration.ofMinutes(1), 10);
+        public final WindowCounter fiveMinutes = new SmoothlyDecayingRollingCounter(Duration.ofMinutes(5), 50);
+        public final WindowCounter fifteenMinutes = new SmoothlyDecayingRollingCounter(Duration.ofMinutes(15), 150);
+    }
+
+    @Benchmark
+    public void addToMultiWindowCounter(MultiWindowCounterState state) {
+        state.counter.add(1);
+    }
+
+    @Benchmark
+    public void addToSeparateCounters(SeparateCountersState state) {
+        state.oneMinute.add(1);
+        state.fiveMinutes.add(1);
+        state.fifteenMinutes.add(1);
+    }
+
+    @Benchmark
+    public long[] readSumsOfMultiWindowCounter(MultiWindowCounterState state) {
+        return state.counter.getSums();
+    }
+
+    @Benchmark
+    public long[] readSumsOfSeparateCounters(SeparateCountersState state) {
+        return new long[] {state.oneMinute.getSum(), state.fiveMinutes.getSum(), state.fifteenMinutes.getSum()};
+    }
+
+    public static class OneThread {
+        public static void main(String[] args) throws RunnerException {
+            run(1);
+        }
+    }
+
+    public static class FourThread {
+        public static void main(String[] args) throws RunnerException {
+            run(4);
+        }
+    }
+
+    private static void run(int threads) {
+        Options opt = new OptionsBuilder()
+                .include(((Class) MultiWindowCounterBenchmark.class).getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .threads(threads)
+                .forks(1)
+                .build();
+        try {
+            new Runner(opt).run();
+        } catch (RunnerException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -34,6 +34,11 @@ public class ResetOnSnapshotCounterBenchmark {
         public final WindowCounter counter = new ResetOnSnapshotCounter();
     }
 
+    @State(Scope.Benchmark)
+    public static class PhasedCounterState {
+        public final WindowCounter counter = new PhasedResetOnSnapshotCounter();
+    }
+
     @Benchmark
     @Group("readSumWithContendedWrite")
     @GroupThreads(3)
@@ -48,6 +53,20 @@ public class ResetOnSnapshotCounterBenchmark {
         return state.counter.getSum();
     }
 
+    @Benchmark
+    @Group("readPhasedSumWithContendedWrite")
+    @GroupThreads(3)
+    public void addToPhased(PhasedCounterState state) {
+        state.counter.add(42);
+    }
+
+    @Benchmark
+    @Group("readPhasedSumWithContendedWrite")
+    @GroupThreads(1)
+    public long readPhasedSum(PhasedCounterState state) {
+        return state.counter.getSum();
+    }
+
     public static void main(String[] args) throws RunnerException {
         Options opt = new OptionsBuilder()
                 .include(ResetOnSnapshotCounterBenchmark.class.getSimpleName())
@@ -0,0 +1,95 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.counter;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link ResetPeriodicallyCounter} with {@link StripedResetPeriodicallyCounter} when counter is concurrently updated by 1, 4, 16 and 64 threads.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResetPeriodicallyCounterContentionBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class AtomicCounterState {
+        public final WindowCounter counter = new ResetPeriodicallyCounter(Duration.ofMillis(100));
+    }
+
+    @State(Scope.Benchmark)
+    public static class StripedCounterState {
+        public final WindowCounter counter = new StripedResetPeriodicallyCounter(Duration.ofMillis(100));
+    }
+
+    @Benchmark
+    public void addToAtomicCounter(AtomicCounterState state) {
+        state.counter.add(42);
+    }
+
+    @Benchmark
+    public void addToStripedCounter(StripedCounterState state) {
+        state.counter.add(42);
+    }
+
+    public static class OneThread {
+        public static void main(String[] args) throws RunnerException {
+            run(1);
+        }
+    }
+
+    public static class FourThread {
+        public static void main(String[] args) throws RunnerException {
+            run(4);
+        }
+    }
+
+    public static class SixteenThread {
+        public static void main(String[] args) throws RunnerException {
+            run(16);
+        }
+    }
+
+    public static class SixtyFourThread {
+        public static void main(String[] args) throws RunnerException {
+            run(64);
+        }
+    }
+
+    private static void run(int threads) {
+        Options opt = new OptionsBuilder()
+                .include(((Class) ResetPeriodicallyCounterContentionBenchmark.class).getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .threads(threads)
+                .forks(1)
+                .build();
+        try {
+            new Runner(opt).run();
+        } catch (RunnerException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.counter;
+
+import com.codahale.metrics.Meter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link RollingMeter} with {@link Meter} from metrics-core.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RollingMeterBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class RollingMeterState {
+        public final Meter meter = new RollingMeter();
+    }
+
+    @State(Scope.Benchmark)
+    public static class MetricsCoreMeterState {
+        public final Meter meter = new Meter();
+    }
+
+    @Benchmark
+    public void markRollingMeter(RollingMeterState state) {
+        state.meter.mark();
+    }
+
+    @Benchmark
+    public void markMetricsCoreMeter(MetricsCoreMeterState state) {
+        state.meter.mark();
+    }
+
+    @Benchmark
+    public double readRatesOfRollingMeter(RollingMeterState state) {
+        return readRates(state.meter);
+    }
+
+    @Benchmark
+    public double readRatesOfMetricsCoreMeter(MetricsCoreMeterState state) {
+        return readRates(state.meter);
+    }
+
+    @Benchmark
+    @Group("rollingMeter")
+    @GroupThreads(3)
+    public void markRollingMeterConcurrently(RollingMeterState state) {
+        state.meter.mark();
+    }
+
+    @Benchmark
+    @Group("rollingMeter")
+    @GroupThreads(1)
+    public double readRatesOfRollingMeterConcurrently(RollingMeterState state) {
+        return readRates(state.meter);
+    }
+
+    @Benchmark
+    @Group("metricsCoreMeter")
+    @GroupThreads(3)
+    public void markMetricsCoreMeterConcurrently(MetricsCoreMeterState state) {
+        state.meter.mark();
+    }
+
+    @Benchmark
+    @Group("metricsCoreMeter")
+    @GroupThreads(1)
+    public double readRatesOfMetricsCoreMeterConcurrently(MetricsCoreMeterState state) {
+        return readRates(state.meter);
+    }
+
+    private static double readRates(Meter meter) {
+        return meter.getOneMinuteRate() + meter.getFiveMinuteRate() + meter.getFifteenMinuteRate() + meter.getMeanRate();
+    }
+
+    public static class OneThread {
+        public static void main(String[] args) throws RunnerException {
+            run(1);
+        }
+    }
+
+    public static class FourThread {
+        public static void main(String[] args) throws RunnerException {
+            run(4);
+        }
+    }
+
+    private static void run(int threads) {
+        Options opt = new OptionsBuilder()
+                .include(((Class) RollingMeterBenchmark.class).getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .threads(threads)
+                .forks(1)
+                .build();
+        try {
+            new Runner(opt).run();
+        } catch (RunnerException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
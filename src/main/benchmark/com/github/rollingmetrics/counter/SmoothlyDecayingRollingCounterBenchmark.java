@@ -35,6 +35,16 @@ public class SmoothlyDecayingRollingCounterBenchmark {
         public final WindowCounter counter = new SmoothlyDecayingRollingCounter(Duration.ofMillis(1000), 10);
     }
 
+    @State(Scope.Thread)
+    public static class BatchState {
+        public final long[] deltas = new long[100];
+        {
+            for (int i = 0; i < deltas.length; i++) {
+                deltas[i] = 42;
+            }
+        }
+    }
+
     @Benchmark
     @Group("readSumWithContendedWrite")
     @GroupThreads(3)
@@ -49,6 +59,20 @@ public class SmoothlyDecayingRollingCounterBenchmark {
         return state.counter.getSum();
     }
 
+    @Benchmark
+    @Group("readSumWithContendedBatchWrite")
+    @GroupThreads(3)
+    public void addBatch(CounterState state, BatchState batch) {
+        state.counter.add(batch.deltas, 0, batch.deltas.length);
+    }
+
+    @Benchmark
+    @Group("readSumWithContendedBatchWrite")
+    @GroupThreads(1)
+    public long readSumWhileBatchWrite(CounterState state) {
+        return state.counter.getSum();
+    }
+
     public static void main(String[] args) throws RunnerException {
         Options opt = new OptionsBuilder()
                 .include(((Class) SmoothlyDecayingRollingCounterBenchmark.class).getSimpleName())
@@ -51,6 +51,36 @@ public class SmoothlyDecayingRollingCounterPerOperationBenchmark {
         public final WindowCounter counter =  new SmoothlyDecayingRollingCounter(Duration.ofSeconds(1), 10, clock);
     }
 
+    @State(Scope.Benchmark)
+    public static class ThousandChunksState {
+        public final WindowCounter counter = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(1000), 1000);
+    }
+
+    @State(Scope.Benchmark)
+    public static class ThousandChunksWithSealedTotalState {
+        public final WindowCounter counter = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(1000), 1000, Clock.defaultClock(), true);
+    }
+
+    @State(Scope.Benchmark)
+    public static class CompactCounterWithLongResettingPeriodState {
+        public final WindowCounter counter = new CompactSmoothlyDecayingRollingCounter(Duration.ofSeconds(3600), 7);
+    }
+
+    @State(Scope.Benchmark)
+    public static class CompactThousandChunksState {
+        public final WindowCounter counter = new CompactSmoothlyDecayingRollingCounter(Duration.ofSeconds(1000), 1000);
+    }
+
+    @State(Scope.Thread)
+    public static class BatchState {
+        public final long[] deltas = new long[100];
+        {
+            for (int i = 0; i < deltas.length; i++) {
+                deltas[i] = i;
+            }
+        }
+    }
+
     @State(Scope.Benchmark)
     public static class IncrementAtomicState {
         AtomicLong sum = new AtomicLong();
@@ -76,11 +106,49 @@ public class SmoothlyDecayingRollingCounterPerOperationBenchmark {
         state.counter.add(1);
     }
 
+    @Benchmark
+    public void benchmarkAddHundredDeltasOneByOne(ResetOnSnapshotCounterWithLongResettingPeriodState state, BatchState batch) {
+        long[] deltas = batch.deltas;
+        for (int i = 0; i < deltas.length; i++) {
+            state.counter.add(deltas[i]);
+        }
+    }
+
+    @Benchmark
+    public void benchmarkAddHundredDeltasByBatch(ResetOnSnapshotCounterWithLongResettingPeriodState state, BatchState batch) {
+        state.counter.add(batch.deltas, 0, batch.deltas.length);
+    }
+
     @Benchmark
     public long readSum(ResetOnSnapshotCounterWithLongResettingPeriodState state) {
         return state.counter.getSum();
     }
 
+    @Benchmark
+    public long readSumOfThousandChunks(ThousandChunksState state) {
+        return state.counter.getSum();
+    }
+
+    @Benchmark
+    public long readSumOfThousandChunksWithSealedTotal(ThousandChunksWithSealedTotalState state) {
+        return state.counter.getSum();
+    }
+
+    @Benchmark
+    public void benchmarkAddToCompactCounterWithLongResettingPeriod(CompactCounterWithLongResettingPeriodState state) {
+        state.counter.add(1);
+    }
+
+    @Benchmark
+    public long readSumOfCompactCounter(CompactCounterWithLongResettingPeriodState state) {
+        return state.counter.getSum();
+    }
+
+    @Benchmark
+    public long readSumOfThousandChunksOfCompactCounter(CompactThousandChunksState state) {
+        return state.counter.getSum();
+    }
+
     public static class OneThread {
         public static void main(String[] args) throws RunnerException {
             Options opt = new OptionsBuilder()
@@ -0,0 +1,99 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.counter;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link WindowCounterFamily} with map of {@link SmoothlyDecayingRollingCounter} when updates are spread across thousands of keys.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WindowCounterFamilyBenchmark {
+
+    private static final int KEYS = 10_000;
+
+    @State(Scope.Benchmark)
+    public static class FamilyState {
+        public final WindowCounterFamily<Integer> family = WindowCounterFamily.smoothlyDecaying(Duration.ofSeconds(60), 10, KEYS);
+    }
+
+    @State(Scope.Benchmark)
+    public static class MapOfCountersState {
+        public final ConcurrentHashMap<Integer, WindowCounter> counters = new ConcurrentHashMap<>();
+    }
+
+    @Benchmark
+    public boolean addToFamily(FamilyState state) {
+        return state.family.add(ThreadLocalRandom.current().nextInt(KEYS), 1);
+    }
+
+    @Benchmark
+    public void addToMapOfCounters(MapOfCountersState state) {
+        Integer key = ThreadLocalRandom.current().nextInt(KEYS);
+        state.counters.computeIfAbsent(key, k -> new SmoothlyDecayingRollingCounter(Duration.ofSeconds(60), 10)).add(1);
+    }
+
+    @Benchmark
+    public long readSumFromFamily(FamilyState state) {
+        return state.family.getSum(ThreadLocalRandom.current().nextInt(KEYS));
+    }
+
+    @Benchmark
+    public long readSumFromMapOfCounters(MapOfCountersState state) {
+        WindowCounter counter = state.counters.get(ThreadLocalRandom.current().nextInt(KEYS));
+        return counter == null ? 0 : counter.getSum();
+    }
+
+    public static class OneThread {
+        public static void main(String[] args) throws RunnerException {
+            run(1);
+        }
+    }
+
+    public static class FourThread {
+        public static void main(String[] args) throws RunnerException {
+            run(4);
+        }
+    }
+
+    private static void run(int threads) {
+        Options opt = new OptionsBuilder()
+                .include(((Class) WindowCounterFamilyBenchmark.class).getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .threads(threads)
+                .forks(1)
+                .build();
+        try {
+            new Runner(opt).run();
+        } catch (RunnerException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -39,6 +39,16 @@ public class CountAtPercentileExtractionBenchmark {
         Histogram histogram = new Histogram(1000, 3600L * 1_000_000_000L, 2);
         static double[] DEFAULT_PERCENTILES_7 = new double[]{0.5, 0.75, 0.9, 0.95, 0.98, 0.99, 0.999};
         static double[] DEFAULT_PERCENTILES_1 = new double[]{0.999};
+        static double[] PERCENTILES_20 = evenlyDistributedPercentiles(20);
+        static double[] PERCENTILES_100 = evenlyDistributedPercentiles(100);
+
+        static double[] evenlyDistributedPercentiles(int count) {
+            double[] percentiles = new double[count];
+            for (int i = 0; i < count; i++) {
+                percentiles[i] = (i + 1) / (double) (count + 1);
+            }
+            return percentiles;
+        }
 
         @Setup
         public void setup() {
@@ -62,6 +72,46 @@ public class CountAtPercentileExtractionBenchmark {
         return HdrReservoir.takeSmartSnapshot(HistogramState.DEFAULT_PERCENTILES_1, state.histogram);
     }
 
+    @Benchmark
+    public Snapshot calculatePercentile_20(HistogramState state) {
+        return HdrReservoir.takeSmartSnapshot(HistogramState.PERCENTILES_20, state.histogram);
+    }
+
+    @Benchmark
+    public Snapshot calculatePercentile_100(HistogramState state) {
+        return HdrReservoir.takeSmartSnapshot(HistogramState.PERCENTILES_100, state.histogram);
+    }
+
+    @Benchmark
+    public Snapshot calculatePercentileByPassPerStatistic_7(HistogramState state) {
+        return takeSnapshotByPassPerStatistic(HistogramState.DEFAULT_PERCENTILES_7, state.histogram);
+    }
+
+    @Benchmark
+    public Snapshot calculatePercentileByPassPerStatistic_20(HistogramState state) {
+        return takeSnapshotByPassPerStatistic(HistogramState.PERCENTILES_20, state.histogram);
+    }
+
+    @Benchmark
+    public Snapshot calculatePercentileByPassPerStatistic_100(HistogramState state) {
+        return takeSnapshotByPassPerStatistic(HistogramState.PERCENTILES_100, state.histogram);
+    }
+
+    // the way which was used by HdrReservoir before single pass extraction, each statistic walks the whole counts array
+    private static Snapshot takeSnapshotByPassPerStatistic(double[] predefinedQuantiles, Histogram histogram) {
+        long max = histogram.getMaxValue();
+        long min = histogram.getMinValue();
+        double mean = histogram.getMean();
+        double median = histogram.getValueAtPercentile(50.0);
+        double stdDeviation = histogram.getStdDeviation();
+
+        double[] values = new double[predefinedQuantiles.length];
+        for (int i = 0; i < predefinedQuantiles.length; i++) {
+            values[i] = histogram.getValueAtPercentile(predefinedQuantiles[i] * 100.0);
+        }
+        return HdrReservoir.createSmartSnapshot(predefinedQuantiles, max, min, mean, median, stdDeviation, values);
+    }
+
     public static class OneThread {
         public static void main(String[] args) throws RunnerException {
             Options opt = new OptionsBuilder()
@@ -19,9 +19,9 @@ package com.github.rollingmetrics.histogram.accumulator;
 
 import com.codahale.metrics.ExponentiallyDecayingReservoir;
 import com.codahale.metrics.Histogram;
+import com.github.rollingmetrics.histogram.BatchUpdatableReservoir;
 import com.github.rollingmetrics.histogram.HdrBuilder;
 import com.github.rollingmetrics.histogram.OverflowResolver;
-import com.github.rollingmetrics.histogram.OverflowResolver;
 import org.openjdk.jmh.annotations.*;
 import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
@@ -36,6 +36,8 @@ import java.util.concurrent.TimeUnit;
 @OutputTimeUnit(TimeUnit.MICROSECONDS)
 public class HistogramRecordingBenchmark {
 
+    private static final int BATCH_SIZE = 16;
+
     @State(Scope.Benchmark)
     public static class HistogramState {
 
@@ -67,8 +69,31 @@ public class HistogramRecordingBenchmark {
                 .withHighestTrackableValue(TimeUnit.MINUTES.toNanos(5), OverflowResolver.REDUCE_TO_HIGHEST_TRACKABLE)
                 .buildHistogram();
 
+        final Histogram threadLocalUniformHistogram = new HdrBuilder()
+                .neverResetReservoir()
+                .withThreadLocalRecording()
+                .withLowestDiscernibleValue(TimeUnit.MICROSECONDS.toNanos(1))
+                .withHighestTrackableValue(TimeUnit.MINUTES.toNanos(5), OverflowResolver.REDUCE_TO_HIGHEST_TRACKABLE)
+                .buildHistogram();
+
+        final Histogram threadLocalResetOnSnapshotHistogram = new HdrBuilder()
+                .resetReservoirOnSnapshot()
+                .withThreadLocalRecording()
+                .withLowestDiscernibleValue(TimeUnit.MICROSECONDS.toNanos(1))
+                .withHighestTrackableValue(TimeUnit.MINUTES.toNanos(5), OverflowResolver.REDUCE_TO_HIGHEST_TRACKABLE)
+                .buildHistogram();
+
         final Histogram metricsCoreHistogram = new Histogram(new ExponentiallyDecayingReservoir());
 
+        final BatchUpdatableReservoir chunkedReservoir = (BatchUpdatableReservoir) new HdrBuilder()
+                .resetReservoirPeriodicallyByChunks(Duration.ofSeconds(3), 3)
+                .buildReservoir();
+
+    }
+
+    @State(Scope.Thread)
+    public static class BatchState {
+        final long[] values = new long[BATCH_SIZE];
     }
 
     @Benchmark
@@ -106,6 +131,72 @@ public class HistogramRecordingBenchmark {
         state.upperLimitedChunkedHistogram.update(getRandomValue());
     }
 
+    @Benchmark
+    public void updateThreadLocalUniformHistogram(HistogramState state) {
+        state.threadLocalUniformHistogram.update(getRandomValue());
+    }
+
+    @Benchmark
+    public void updateThreadLocalResetOnSnapshotHistogram(HistogramState state) {
+        state.threadLocalResetOnSnapshotHistogram.update(getRandomValue());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void updateChunkedReservoirOneByOne(HistogramState state, BatchState batch) {
+        long[] values = batch.values;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = getRandomValue();
+        }
+        for (int i = 0; i < values.length; i++) {
+            state.chunkedReservoir.update(values[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void updateChunkedReservoirByBatch(HistogramState state, BatchState batch) {
+        long[] values = batch.values;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = getRandomValue();
+        }
+        state.chunkedReservoir.update(values, 0, values.length);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void updateChunkedReservoirWithCount(HistogramState state) {
+        state.chunkedReservoir.update(getRandomValue(), BATCH_SIZE);
+    }
+
+    @Benchmark
+    @Group("resetOnSnapshotUnderReading")
+    @GroupThreads(7)
+    public void updateResetOnSnapshotHistogramUnderReading(HistogramState state) {
+        state.resetOnSnapshotHistogram.update(getRandomValue());
+    }
+
+    @Benchmark
+    @Group("resetOnSnapshotUnderReading")
+    @GroupThreads(1)
+    public long readResetOnSnapshotHistogramUnderReading(HistogramState state) {
+        return state.resetOnSnapshotHistogram.getSnapshot().getMax();
+    }
+
+    @Benchmark
+    @Group("threadLocalResetOnSnapshotUnderReading")
+    @GroupThreads(7)
+    public void updateThreadLocalResetOnSnapshotHistogramUnderReading(HistogramState state) {
+        state.threadLocalResetOnSnapshotHistogram.update(getRandomValue());
+    }
+
+    @Benchmark
+    @Group("threadLocalResetOnSnapshotUnderReading")
+    @GroupThreads(1)
+    public long readThreadLocalResetOnSnapshotHistogramUnderReading(HistogramState state) {
+        return state.threadLocalResetOnSnapshotHistogram.getSnapshot().getMax();
+    }
+
     private static long getRandomValue() {
         return ThreadLocalRandom.current().nextLong(15_000_000) + 5_000_000;
     }
@@ -127,6 +218,23 @@ public class HistogramRecordingBenchmark {
         }
     }
 
+    public static class SixteenThread {
+        public static void main(String[] args) throws RunnerException {
+            Options opt = new OptionsBuilder()
+                    .include(((Class) HistogramRecordingBenchmark.class).getSimpleName())
+                    .warmupIterations(5)
+                    .measurementIterations(5)
+                    .threads(16)
+                    .forks(1)
+                    .build();
+            try {
+                new Runner(opt).run();
+            } catch (RunnerException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
     public static class FourThread {
         public static void main(String[] args) throws RunnerException {
             Options opt = new OptionsBuilder()
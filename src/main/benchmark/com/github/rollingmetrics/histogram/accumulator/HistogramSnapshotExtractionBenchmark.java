@@ -74,6 +74,74 @@ public class HistogramSnapshotExtractionBenchmark {
         }
     }
 
+    @org.openjdk.jmh.annotations.State(Scope.Benchmark)
+    public static class StateWithGrowingNumberOfChunks {
+
+        @Param({"3", "10", "30", "60"})
+        int numberChunks;
+
+        final AtomicLong currentTimeMillis = new AtomicLong(System.currentTimeMillis());
+        final Clock clock = Clock.mock(currentTimeMillis);
+
+        Histogram chunkedHistogram;
+
+        @Setup
+        public void setup() {
+            chunkedHistogram = new HdrBuilder(clock)
+                    .resetReservoirPeriodicallyByChunks(Duration.ofSeconds(numberChunks), numberChunks)
+                    .withSignificantDigits(3)
+                    .withLowestDiscernibleValue(TimeUnit.MICROSECONDS.toNanos(1))
+                    .withHighestTrackableValue(TimeUnit.MINUTES.toNanos(5), OverflowResolver.REDUCE_TO_HIGHEST_TRACKABLE)
+                    .withBackgroundExecutor(Runnable::run)
+                    .buildHistogram();
+
+            // fill each chunk of archive, the last update triggers rotation of last chunk to archive
+            for (int i = 0; i < numberChunks; i++) {
+                for (int j = 0; j < 1024; j++) {
+                    // generate latency between 5ms and 20ms
+                    long randomNanos = ThreadLocalRandom.current().nextLong(15_000_000) + 5_000_000;
+                    chunkedHistogram.update(randomNanos);
+                }
+                currentTimeMillis.addAndGet(1000);
+            }
+            chunkedHistogram.update(5_000_000);
+        }
+    }
+
+    @org.openjdk.jmh.annotations.State(Scope.Benchmark)
+    public static class StateWithFineGrainedChunks {
+
+        @Param({"10", "60", "600", "3600"})
+        int numberChunks;
+
+        final AtomicLong currentTimeMillis = new AtomicLong(System.currentTimeMillis());
+        final Clock clock = Clock.mock(currentTimeMillis);
+
+        Histogram fineGrainedChunkedHistogram;
+
+        @Setup
+        public void setup() {
+            fineGrainedChunkedHistogram = new HdrBuilder(clock)
+                    .resetReservoirPeriodicallyByFineGrainedChunks(Duration.ofSeconds(numberChunks), numberChunks)
+                    .withSignificantDigits(3)
+                    .withLowestDiscernibleValue(TimeUnit.MICROSECONDS.toNanos(1))
+                    .withHighestTrackableValue(TimeUnit.MINUTES.toNanos(5), OverflowResolver.REDUCE_TO_HIGHEST_TRACKABLE)
+                    .withBackgroundExecutor(Runnable::run)
+                    .buildHistogram();
+
+            // fill each chunk of archive, the last update triggers rotation of last chunk to archive
+            for (int i = 0; i < numberChunks; i++) {
+                for (int j = 0; j < 128; j++) {
+                    // generate latency between 5ms and 20ms
+                    long randomNanos = ThreadLocalRandom.current().nextLong(15_000_000) + 5_000_000;
+                    fineGrainedChunkedHistogram.update(randomNanos);
+                }
+                currentTimeMillis.addAndGet(1000);
+            }
+            fineGrainedChunkedHistogram.update(5_000_000);
+        }
+    }
+
     @org.openjdk.jmh.annotations.State(Scope.Benchmark)
     public static class StateWithRealClock {
 
@@ -148,6 +216,16 @@ public class HistogramSnapshotExtractionBenchmark {
         return getSnaphsotRepresentation(state.upperLimitedChunkedHistogram);
     }
 
+    @Benchmark
+    public Map<String, Object> getChunkedHistogramSnapshotWithGrowingNumberOfChunks(StateWithGrowingNumberOfChunks state) {
+        return getSnaphsotRepresentation(state.chunkedHistogram);
+    }
+
+    @Benchmark
+    public Map<String, Object> getFineGrainedChunkedHistogramSnapshot(StateWithFineGrainedChunks state) {
+        return getSnaphsotRepresentation(state.fineGrainedChunkedHistogram);
+    }
+
     private static Map<String, Object> getSnaphsotRepresentation(Histogram histogram) {
         Map<String, Object> view = new HashMap<>();
         Snapshot snapshot = histogram.getSnapshot();
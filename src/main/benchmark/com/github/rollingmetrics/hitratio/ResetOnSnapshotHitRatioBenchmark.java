@@ -34,6 +34,16 @@ public class ResetOnSnapshotHitRatioBenchmark {
         public final HitRatio hitRatio = new ResetOnSnapshotHitRatio();
     }
 
+    @org.openjdk.jmh.annotations.State(Scope.Benchmark)
+    public static class StripedState {
+        public final HitRatio hitRatio = new StripedResetOnSnapshotHitRatio();
+    }
+
+    @org.openjdk.jmh.annotations.State(Scope.Benchmark)
+    public static class PhasedState {
+        public final HitRatio hitRatio = new PhasedResetOnSnapshotHitRatio();
+    }
+
     @Benchmark
     @Group("readSumWithContendedWrite")
     @GroupThreads(3)
@@ -48,6 +58,34 @@ public class ResetOnSnapshotHitRatioBenchmark {
         return state.hitRatio.getHitRatio();
     }
 
+    @Benchmark
+    @Group("readPhasedRatioWithContendedWrite")
+    @GroupThreads(3)
+    public void updatePhased(PhasedState state) {
+        state.hitRatio.incrementHitCount();
+    }
+
+    @Benchmark
+    @Group("readPhasedRatioWithContendedWrite")
+    @GroupThreads(1)
+    public double readPhasedRatio(PhasedState state) {
+        return state.hitRatio.getHitRatio();
+    }
+
+    @Benchmark
+    @Group("readStripedRatioWithContendedWrite")
+    @GroupThreads(3)
+    public void updateStriped(StripedState state) {
+        state.hitRatio.incrementHitCount();
+    }
+
+    @Benchmark
+    @Group("readStripedRatioWithContendedWrite")
+    @GroupThreads(1)
+    public double readStripedRatio(StripedState state) {
+        return state.hitRatio.getHitRatio();
+    }
+
     public static void main(String[] args) throws RunnerException {
         Options opt = new OptionsBuilder()
                 .include(ResetOnSnapshotHitRatioBenchmark.class.getSimpleName())
@@ -35,6 +35,11 @@ public class ResetPeriodicalyHitRatioBenchmark {
         public final HitRatio hitRatio = new ResetPeriodicallyHitRatio(Duration.ofSeconds(1));
     }
 
+    @org.openjdk.jmh.annotations.State(Scope.Benchmark)
+    public static class StripedState {
+        public final HitRatio hitRatio = new StripedResetPeriodicallyHitRatio(Duration.ofSeconds(1));
+    }
+
     @Benchmark
     @Group("readSumWithContendedWrite")
     @GroupThreads(3)
@@ -49,6 +54,20 @@ public class ResetPeriodicalyHitRatioBenchmark {
         return state.hitRatio.getHitRatio();
     }
 
+    @Benchmark
+    @Group("readStripedRatioWithContendedWrite")
+    @GroupThreads(3)
+    public void updateStriped(StripedState state) {
+        state.hitRatio.incrementHitCount();
+    }
+
+    @Benchmark
+    @Group("readStripedRatioWithContendedWrite")
+    @GroupThreads(1)
+    public double readStripedRatio(StripedState state) {
+        return state.hitRatio.getHitRatio();
+    }
+
     public static void main(String[] args) throws RunnerException {
         Options opt = new OptionsBuilder()
                 .include(ResetPeriodicalyHitRatioBenchmark.class.getSimpleName())
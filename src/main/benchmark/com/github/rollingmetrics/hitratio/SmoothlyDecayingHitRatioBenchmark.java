@@ -35,6 +35,11 @@ public class SmoothlyDecayingHitRatioBenchmark {
         public final HitRatio hitRatio = new SmoothlyDecayingRollingHitRatio(Duration.ofSeconds(1), 100);
     }
 
+    @org.openjdk.jmh.annotations.State(Scope.Benchmark)
+    public static class StripedState {
+        public final HitRatio hitRatio = new StripedSmoothlyDecayingRollingHitRatio(Duration.ofSeconds(1), 100);
+    }
+
     @Benchmark
     @Group("readSumWithContendedWrite")
     @GroupThreads(3)
@@ -49,6 +54,34 @@ public class SmoothlyDecayingHitRatioBenchmark {
         return state.hitRatio.getHitRatio();
     }
 
+    @Benchmark
+    @Group("readSumWithContendedBatchWrite")
+    @GroupThreads(3)
+    public void updateBatch(State state) {
+        state.hitRatio.update(70L, 100L);
+    }
+
+    @Benchmark
+    @Group("readSumWithContendedBatchWrite")
+    @GroupThreads(1)
+    public double readRatioWhileBatchWrite(State state) {
+        return state.hitRatio.getHitRatio();
+    }
+
+    @Benchmark
+    @Group("readStripedRatioWithContendedWrite")
+    @GroupThreads(3)
+    public void updateStriped(StripedState state) {
+        state.hitRatio.incrementHitCount();
+    }
+
+    @Benchmark
+    @Group("readStripedRatioWithContendedWrite")
+    @GroupThreads(1)
+    public double readStripedRatio(StripedState state) {
+        return state.hitRatio.getHitRatio();
+    }
+
     public static void main(String[] args) throws RunnerException {
         Options opt = new OptionsBuilder()
                 .include(SmoothlyDecayingHitRatioBenchmark.class.getSimpleName())
@@ -34,6 +34,11 @@ public class UniformHitRatioBenchmark {
         public final HitRatio hitRatio = new UniformHitRatio();
     }
 
+    @org.openjdk.jmh.annotations.State(Scope.Benchmark)
+    public static class StripedState {
+        public final HitRatio hitRatio = new StripedUniformHitRatio();
+    }
+
     @Benchmark
     @Group("readSumWithContendedWrite")
     @GroupThreads(3)
@@ -48,6 +53,20 @@ public class UniformHitRatioBenchmark {
         return state.hitRatio.getHitRatio();
     }
 
+    @Benchmark
+    @Group("readStripedRatioWithContendedWrite")
+    @GroupThreads(3)
+    public void updateStriped(StripedState state) {
+        state.hitRatio.incrementHitCount();
+    }
+
+    @Benchmark
+    @Group("readStripedRatioWithContendedWrite")
+    @GroupThreads(1)
+    public double readStripedRatio(StripedState state) {
+        return state.hitRatio.getHitRatio();
+    }
+
     public static void main(String[] args) throws RunnerException {
         Options opt = new OptionsBuilder()
                 .include(UniformHitRatioBenchmark.class.getSimpleName())
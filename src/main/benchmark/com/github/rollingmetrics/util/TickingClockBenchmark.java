@@ -0,0 +1,118 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.util;
+
+import com.github.rollingmetrics.counter.SmoothlyDecayingRollingCounter;
+import com.github.rollingmetrics.counter.WindowCounter;
+import com.github.rollingmetrics.hitratio.HitRatio;
+import com.github.rollingmetrics.hitratio.SmoothlyDecayingRollingHitRatio;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shows the per-update saving of {@link TickingClock} in comparison with default clock.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TickingClockBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class DefaultClockState {
+        public final Clock clock = Clock.defaultClock();
+        public final WindowCounter counter = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(60), 10, clock);
+        public final HitRatio hitRatio = new SmoothlyDecayingRollingHitRatio(Duration.ofSeconds(60), 10, clock);
+    }
+
+    @State(Scope.Benchmark)
+    public static class TickingClockState {
+        public final Clock clock = TickingClock.getInstance();
+        public final WindowCounter counter = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(60), 10, clock);
+        public final HitRatio hitRatio = new SmoothlyDecayingRollingHitRatio(Duration.ofSeconds(60), 10, clock);
+    }
+
+    @Benchmark
+    public long readDefaultClock(DefaultClockState state) {
+        return state.clock.currentTimeMillis();
+    }
+
+    @Benchmark
+    public long readTickingClock(TickingClockState state) {
+        return state.clock.currentTimeMillis();
+    }
+
+    @Benchmark
+    public void addToCounterWithDefaultClock(DefaultClockState state) {
+        state.counter.add(1);
+    }
+
+    @Benchmark
+    public void addToCounterWithTickingClock(TickingClockState state) {
+        state.counter.add(1);
+    }
+
+    @Benchmark
+    public void updateHitRatioWithDefaultClock(DefaultClockState state) {
+        state.hitRatio.incrementHitCount();
+    }
+
+    @Benchmark
+    public void updateHitRatioWithTickingClock(TickingClockState state) {
+        state.hitRatio.incrementHitCount();
+    }
+
+    public static class OneThread {
+        public static void main(String[] args) throws RunnerException {
+            Options opt = new OptionsBuilder()
+                    .include(((Class) TickingClockBenchmark.class).getSimpleName())
+                    .warmupIterations(5)
+                    .measurementIterations(5)
+                    .threads(1)
+                    .forks(1)
+                    .build();
+            try {
+                new Runner(opt).run();
+            } catch (RunnerException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    public static class FourThread {
+        public static void main(String[] args) throws RunnerException {
+            Options opt = new OptionsBuilder()
+                    .include(((Class) TickingClockBenchmark.class).getSimpleName())
+                    .warmupIterations(5)
+                    .measurementIterations(5)
+                    .threads(4)
+                    .forks(1)
+                    .build();
+            try {
+                new Runner(opt).run();
+            } catch (RunnerException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,228 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.counter;
+
+import com.github.rollingmetrics.util.ChunkEpoch;
+import com.github.rollingmetrics.util.ChunkEpochTracker;
+import com.github.rollingmetrics.util.Clock;
+import com.github.rollingmetrics.util.FlatChunkPhases;
+import com.github.rollingmetrics.util.FootprintEstimation;
+import com.github.rollingmetrics.util.TickingClock;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The low-footprint variant of {@link SmoothlyDecayingRollingCounter} which has the same decaying semantic.
+ *
+ * <p>
+ * In opposite to {@link SmoothlyDecayingRollingCounter}, which allocates several objects per each chunk,
+ * this counter stores the state of all chunks in the single flat array of longs.
+ * Each chunk occupies five adjacent slots: the index of current phase, and invalidation timestamp and value for each of two phases,
+ * see {@link FlatChunkPhases}.
+ * The chunks are not padded by each other, because of only one chunk is written at any time in the steady state.
+ *
+ * <p>
+ * Concurrency properties:
+ * <ul>
+ *     <li>Writing is lock-free.
+ *     <li>Sum reading is lock-free.
+ * </ul>
+ *
+ * <p>
+ * Usage recommendations:
+ * <ul>
+ *     <li>When you need in "rolling time window" semantic for huge amount of counters, or for counters with huge amount of chunks.</li>
+ *     <li>The value of chunk is stored in single cell instead of {@link java.util.concurrent.atomic.LongAdder},
+ *     so prefer {@link SmoothlyDecayingRollingCounter} when the counter is updated by many threads concurrently.</li>
+ * </ul>
+ *
+ * @see SmoothlyDecayingRollingCounter
+ */
+public class CompactSmoothlyDecayingRollingCounter implements WindowCounter {
+
+    private final long intervalBetweenResettingMillis;
+    private final Clock clock;
+    private final long creationTimestamp;
+    private final int chunkCount;
+    private final AtomicLongArray state;
+    private final ChunkEpochTracker epochTracker;
+
+    /**
+     * Constructs the chunked counter divided by {@code numberChunks}.
+     *
+     * @param rollingWindow the rolling time window duration
+     * @param numberChunks The count of chunk to split counter
+     *
+     * @see SmoothlyDecayingRollingCounter#SmoothlyDecayingRollingCounter(Duration, int)
+     */
+    public CompactSmoothlyDecayingRollingCounter(Duration rollingWindow, int numberChunks) {
+        this(rollingWindow, numberChunks, Clock.defaultClock());
+    }
+
+    public CompactSmoothlyDecayingRollingCounter(Duration rollingWindow, int numberChunks, Clock clock) {
+        if (numberChunks < 2) {
+            throw new IllegalArgumentException("numberChunks should be >= 2");
+        }
+
+        if (numberChunks > SmoothlyDecayingRollingCounter.MAX_CHUNKS) {
+            throw new IllegalArgumentException("number of chunks should be <=" + SmoothlyDecayingRollingCounter.MAX_CHUNKS);
+        }
+
+        long rollingWindowMillis = rollingWindow.toMillis();
+        this.intervalBetweenResettingMillis = rollingWindowMillis / numberChunks;
+        if (intervalBetweenResettingMillis < SmoothlyDecayingRollingCounter.MIN_CHUNK_RESETTING_INTERVAL_MILLIS) {
+            throw new IllegalArgumentException("intervalBetweenResettingMillis should be >=" + SmoothlyDecayingRollingCounter.MIN_CHUNK_RESETTING_INTERVAL_MILLIS);
+        }
+
+        this.clock = clock;
+        this.creationTimestamp = clock.currentTimeMillis();
+
+        this.chunkCount = numberChunks + 1;
+        this.state = new AtomicLongArray(chunkCount * FlatChunkPhases.SLOTS_PER_CHUNK);
+        for (int chunkIndex = 0; chunkIndex < chunkCount; chunkIndex++) {
+            long invalidationTimestamp = creationTimestamp + (chunkCount + chunkIndex) * intervalBetweenResettingMillis;
+            FlatChunkPhases.init(state, chunkOffset(chunkIndex), invalidationTimestamp);
+        }
+
+        if (clock instanceof TickingClock) {
+            this.epochTracker = ((TickingClock) clock).registerChunkEpochTracker(creationTimestamp, intervalBetweenResettingMillis, chunkCount);
+        } else {
+            this.epochTracker = null;
+        }
+    }
+
+    /**
+     * @return the rolling window duration for this counter
+     */
+    public Duration getRollingWindow() {
+        return Duration.ofMillis((chunkCount - 1) * intervalBetweenResettingMillis);
+    }
+
+    /**
+     * @return the number of chunks
+     */
+    public int getChunkCount() {
+        return chunkCount - 1;
+    }
+
+    /**
+     * Provide a (conservatively high) estimate of the counter's total footprint in bytes
+     *
+     * @return a (conservatively high) estimate of the counter's total footprint in bytes
+     */
+    public int getEstimatedFootprintInBytes() {
+        int counterBytes = FootprintEstimation.align(FootprintEstimation.OBJECT_HEADER_BYTES + 3 * FootprintEstimation.LONG_BYTES + 4 + 3 * FootprintEstimation.REFERENCE_BYTES);
+        int stateBytes = FootprintEstimation.align(FootprintEstimation.OBJECT_HEADER_BYTES + FootprintEstimation.REFERENCE_BYTES) + FootprintEstimation.longArray(state.length());
+        return counterBytes + stateBytes;
+    }
+
+    @Override
+    public void add(long delta) {
+        if (epochTracker != null) {
+            // the number of interval was precomputed by ticker thread
+            ChunkEpoch epoch = epochTracker.getCurrentEpoch();
+            add(delta, epoch.getChunkIndex(), epoch.getStartMillis());
+            return;
+        }
+        long nowMillis = clock.currentTimeMillis();
+        long millisSinceCreation = nowMillis - creationTimestamp;
+        long intervalsSinceCreation = millisSinceCreation / intervalBetweenResettingMillis;
+        int chunkIndex = (int) intervalsSinceCreation % chunkCount;
+        add(delta, chunkIndex, creationTimestamp + intervalsSinceCreation * intervalBetweenResettingMillis);
+    }
+
+    @Override
+    public long getSum() {
+        long currentTimeMillis = clock.currentTimeMillis();
+
+        // To get as fresh value as possible we need to calculate sum in order from oldest to newest
+        long millisSinceCreation = currentTimeMillis - creationTimestamp;
+        long intervalsSinceCreation = millisSinceCreation / intervalBetweenResettingMillis;
+        int newestChunkIndex = (int) intervalsSinceCreation % chunkCount;
+
+        long sum = 0;
+        for (int i = newestChunkIndex + 1, iteration = 0; iteration < chunkCount; i++, iteration++) {
+            if (i == chunkCount) {
+                i = 0;
+            }
+            sum += getSum(i, currentTimeMillis);
+        }
+        return sum;
+    }
+
+    private void add(long delta, int chunkIndex, long intervalStartMillis) {
+        long nextInvalidationTimestamp = intervalStartMillis + chunkCount * intervalBetweenResettingMillis;
+        FlatChunkPhases.add(state, chunkOffset(chunkIndex), delta, intervalStartMillis, nextInvalidationTimestamp);
+    }
+
+    private long getSum(int chunkIndex, long currentTimeMillis) {
+        int currentPhase = (int) state.get(currentPhaseIndex(chunkIndex));
+        long proposedInvalidationTimestamp = state.get(invalidationTimestampIndex(chunkIndex, currentPhase));
+        if (currentTimeMillis >= proposedInvalidationTimestamp) {
+            // The chunk was unused by writers for a long time
+            return 0;
+        }
+
+        long sum = state.get(valueIndex(chunkIndex, currentPhase));
+
+        // if this is oldest chunk then we need to reduce its weight
+        long beforeInvalidateMillis = proposedInvalidationTimestamp - currentTimeMillis;
+        if (beforeInvalidateMillis < intervalBetweenResettingMillis) {
+            double decayingCoefficient = (double) beforeInvalidateMillis / (double) intervalBetweenResettingMillis;
+            sum = (long) ((double) sum * decayingCoefficient);
+        }
+
+        return sum;
+    }
+
+    private static int chunkOffset(int chunkIndex) {
+        return chunkIndex * FlatChunkPhases.SLOTS_PER_CHUNK;
+    }
+
+    private static int currentPhaseIndex(int chunkIndex) {
+        return FlatChunkPhases.currentPhaseIndex(chunkOffset(chunkIndex));
+    }
+
+    private static int invalidationTimestampIndex(int chunkIndex, int phase) {
+        return FlatChunkPhases.invalidationTimestampIndex(chunkOffset(chunkIndex), phase);
+    }
+
+    private static int valueIndex(int chunkIndex, int phase) {
+        return FlatChunkPhases.valueIndex(chunkOffset(chunkIndex), phase);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder chunksDescription = new StringBuilder();
+        for (int i = 0; i < chunkCount; i++) {
+            int currentPhase = (int) state.get(currentPhaseIndex(i));
+            chunksDescription.append("\nchunk[").append(i).append("]={")
+                    .append("sum=").append(state.get(valueIndex(i, currentPhase)))
+                    .append(", proposedInvalidationTimestamp=").append(state.get(invalidationTimestampIndex(i, currentPhase)))
+                    .append('}');
+        }
+        return "CompactSmoothlyDecayingRollingCounter{" +
+                "intervalBetweenResettingMillis=" + intervalBetweenResettingMillis +
+                ", clock=" + clock +
+                ", creationTimestamp=" + creationTimestamp +
+                ", chunks={" + chunksDescription + "\n}" +
+                '}';
+    }
+
+}
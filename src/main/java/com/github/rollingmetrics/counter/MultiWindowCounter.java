@@ -0,0 +1,280 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.counter;
+
+import com.github.rollingmetrics.util.ChunkEpoch;
+import com.github.rollingmetrics.util.ChunkEpochTracker;
+import com.github.rollingmetrics.util.Clock;
+import com.github.rollingmetrics.util.FlatChunkPhases;
+import com.github.rollingmetrics.util.TickingClock;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The counter which provides the sums for several rolling time windows, for example for last 1, 5 and 15 minutes,
+ * this is the alternative of several {@link SmoothlyDecayingRollingCounter} instances which are updated together.
+ *
+ * <p>
+ * The shortest window is divided by {@code numberChunks} chunks, the longer windows are served by same chunks,
+ * so the value is recorded once into single chunk independent of count of windows, and the cost of {@link #add(long)} is the same as cost of single counter.
+ * The sum of each window has the same semantic as sum of {@link SmoothlyDecayingRollingCounter} with same window duration and chunk interval,
+ * in other words the oldest chunk of each window is smoothly decayed.
+ * The state of chunks is stored in the single flat array of longs, same as in {@link CompactSmoothlyDecayingRollingCounter}.
+ *
+ * <p>
+ * Concurrency properties:
+ * <ul>
+ *     <li>Writing is lock-free.
+ *     <li>Sum reading is lock-free.
+ * </ul>
+ *
+ * <p> Example of usage:
+ * <pre><code>
+ *         // constructs the counter for last 1, 5 and 15 minutes, the chunk will be reset to zero after each 6 second
+ *         MultiWindowCounter counter = new MultiWindowCounter(MultiWindowCounter.ONE_FIVE_FIFTEEN_MINUTES, 10);
+ *         counter.add(42);
+ *         long lastFiveMinutes = counter.getSum(Duration.ofMinutes(5));
+ *     </code>
+ * </pre>
+ *
+ * @see SmoothlyDecayingRollingCounter
+ * @see CompactSmoothlyDecayingRollingCounter
+ */
+public class MultiWindowCounter {
+
+    /**
+     * The windows which are conventional for rates of load average and meters.
+     */
+    public static final List<Duration> ONE_FIVE_FIFTEEN_MINUTES = Collections.unmodifiableList(Arrays.asList(
+            Duration.ofMinutes(1), Duration.ofMinutes(5), Duration.ofMinutes(15)
+    ));
+
+    private final List<Duration> rollingWindows;
+    private final int[] chunksPerWindow;
+    private final int maxChunksPerWindow;
+
+    private final long intervalBetweenResettingMillis;
+    private final Clock clock;
+    private final long creationTimestamp;
+    private final int chunkCount;
+    private final AtomicLongArray state;
+    private final ChunkEpochTracker epochTracker;
+
+    /**
+     * Constructs the counter for configured set of rolling windows.
+     *
+     * @param rollingWindows the durations of rolling time windows, each window should be multiple of chunk interval
+     * @param numberChunks The count of chunk to split the shortest window
+     */
+    public MultiWindowCounter(List<Duration> rollingWindows, int numberChunks) {
+        this(rollingWindows, numberChunks, Clock.defaultClock());
+    }
+
+    public MultiWindowCounter(List<Duration> rollingWindows, int numberChunks, Clock clock) {
+        if (rollingWindows.isEmpty()) {
+            throw new IllegalArgumentException("rollingWindows should not be empty");
+        }
+        if (numberChunks < 2) {
+            throw new IllegalArgumentException("numberChunks should be >= 2");
+        }
+
+        long shortestWindowMillis = Long.MAX_VALUE;
+        for (Duration rollingWindow : rollingWindows) {
+            if (rollingWindow.isNegative() || rollingWindow.isZero()) {
+                throw new IllegalArgumentException("rollingWindow must be a positive duration");
+            }
+            shortestWindowMillis = Math.min(shortestWindowMillis, rollingWindow.toMillis());
+        }
+
+        this.intervalBetweenResettingMillis = shortestWindowMillis / numberChunks;
+        if (intervalBetweenResettingMillis < SmoothlyDecayingRollingCounter.MIN_CHUNK_RESETTING_INTERVAL_MILLIS) {
+            throw new IllegalArgumentException("intervalBetweenResettingMillis should be >=" + SmoothlyDecayingRollingCounter.MIN_CHUNK_RESETTING_INTERVAL_MILLIS);
+        }
+
+        this.rollingWindows = Collections.unmodifiableList(new ArrayList<>(rollingWindows));
+        this.chunksPerWindow = new int[rollingWindows.size()];
+        int maxChunksPerWindow = 0;
+        for (int i = 0; i < chunksPerWindow.length; i++) {
+            long rollingWindowMillis = rollingWindows.get(i).toMillis();
+            if (rollingWindowMillis % intervalBetweenResettingMillis != 0) {
+                throw new IllegalArgumentException("rollingWindow " + rollingWindows.get(i) + " should be multiple of chunk interval " + intervalBetweenResettingMillis + "ms");
+            }
+            long chunks = rollingWindowMillis / intervalBetweenResettingMillis;
+            if (chunks > SmoothlyDecayingRollingCounter.MAX_CHUNKS) {
+                throw new IllegalArgumentException("number of chunks for rollingWindow " + rollingWindows.get(i) + " should be <=" + SmoothlyDecayingRollingCounter.MAX_CHUNKS);
+            }
+            chunksPerWindow[i] = (int) chunks;
+            maxChunksPerWindow = Math.max(maxChunksPerWindow, chunksPerWindow[i]);
+        }
+        this.maxChunksPerWindow = maxChunksPerWindow;
+
+        this.clock = clock;
+        this.creationTimestamp = clock.currentTimeMillis();
+
+        this.chunkCount = maxChunksPerWindow + 1;
+        this.state = new AtomicLongArray(chunkCount * FlatChunkPhases.SLOTS_PER_CHUNK);
+        for (int chunkIndex = 0; chunkIndex < chunkCount; chunkIndex++) {
+            long invalidationTimestamp = creationTimestamp + (chunkCount + chunkIndex) * intervalBetweenResettingMillis;
+            FlatChunkPhases.init(state, chunkOffset(chunkIndex), invalidationTimestamp);
+        }
+
+        if (clock instanceof TickingClock) {
+            this.epochTracker = ((TickingClock) clock).registerChunkEpochTracker(creationTimestamp, intervalBetweenResettingMillis, chunkCount);
+        } else {
+            this.epochTracker = null;
+        }
+    }
+
+    /**
+     * @return the rolling windows in the same order as they were configured
+     */
+    public List<Duration> getRollingWindows() {
+        return rollingWindows;
+    }
+
+    /**
+     * @return the interval between chunk resetting
+     */
+    public Duration getChunkInterval() {
+        return Duration.ofMillis(intervalBetweenResettingMillis);
+    }
+
+    /**
+     * Increment the counter by {@code delta}.
+     * If You want to decrement instead of increment then use negative {@code delta}.
+     *
+     * @param delta the amount by which the counter will be increased
+     */
+    public void add(long delta) {
+        if (epochTracker != null) {
+            // the number of interval was precomputed by ticker thread
+            ChunkEpoch epoch = epochTracker.getCurrentEpoch();
+            add(delta, epoch.getChunkIndex(), epoch.getStartMillis());
+            return;
+        }
+        long nowMillis = clock.currentTimeMillis();
+        long intervalsSinceCreation = (nowMillis - creationTimestamp) / intervalBetweenResettingMillis;
+        int chunkIndex = (int) (intervalsSinceCreation % chunkCount);
+        add(delta, chunkIndex, creationTimestamp + intervalsSinceCreation * intervalBetweenResettingMillis);
+    }
+
+    /**
+     * Returns the sum for rolling window.
+     *
+     * @param rollingWindow one of configured rolling windows
+     *
+     * @return the sum for rolling window
+     *
+     * @throws IllegalArgumentException if {@code rollingWindow} was not configured
+     */
+    public long getSum(Duration rollingWindow) {
+        int windowIndex = rollingWindows.indexOf(rollingWindow);
+        if (windowIndex < 0) {
+            throw new IllegalArgumentException("rollingWindow " + rollingWindow + " was not configured, configured windows are " + rollingWindows);
+        }
+        return calculateSums(new int[] {chunksPerWindow[windowIndex]}, chunksPerWindow[windowIndex])[0];
+    }
+
+    /**
+     * Returns the sums for all rolling windows, all sums are calculated by single pass over chunks.
+     *
+     * @return the sums in the same order as windows returned by {@link #getRollingWindows()}
+     */
+    public long[] getSums() {
+        return calculateSums(chunksPerWindow, maxChunksPerWindow);
+    }
+
+    private long[] calculateSums(int[] chunksPerWindow, int maxChunksPerWindow) {
+        long currentTimeMillis = clock.currentTimeMillis();
+        long newestInterval = (currentTimeMillis - creationTimestamp) / intervalBetweenResettingMillis;
+        long[] sums = new long[chunksPerWindow.length];
+
+        // To get as fresh value as possible we need to calculate sum in order from oldest to newest
+        for (long interval = newestInterval - maxChunksPerWindow; interval <= newestInterval; interval++) {
+            if (interval < 0) {
+                continue;
+            }
+            int chunkIndex = (int) (interval % chunkCount);
+            int currentPhase = (int) state.get(currentPhaseIndex(chunkIndex));
+            long proposedInvalidationTimestamp = state.get(invalidationTimestampIndex(chunkIndex, currentPhase));
+            long intervalStartMillis = creationTimestamp + interval * intervalBetweenResettingMillis;
+            if (proposedInvalidationTimestamp != intervalStartMillis + chunkCount * intervalBetweenResettingMillis) {
+                if (proposedInvalidationTimestamp != Long.MAX_VALUE || interval != newestInterval) {
+                    // the chunk was not written in this interval
+                    continue;
+                }
+                // writer is in the middle of rotation to newest interval
+            }
+            long chunkSum = state.get(valueIndex(chunkIndex, currentPhase));
+
+            for (int i = 0; i < chunksPerWindow.length; i++) {
+                int windowChunks = chunksPerWindow[i];
+                if (interval < newestInterval - windowChunks) {
+                    continue;
+                }
+                long sum = chunkSum;
+                // if this is oldest chunk of window then we need to reduce its weight
+                long beforeInvalidateMillis = intervalStartMillis + (windowChunks + 1) * intervalBetweenResettingMillis - currentTimeMillis;
+                if (beforeInvalidateMillis < intervalBetweenResettingMillis) {
+                    double decayingCoefficient = (double) beforeInvalidateMillis / (double) intervalBetweenResettingMillis;
+                    sum = (long) ((double) sum * decayingCoefficient);
+                }
+                sums[i] += sum;
+            }
+        }
+        return sums;
+    }
+
+    private void add(long delta, int chunkIndex, long intervalStartMillis) {
+        long nextInvalidationTimestamp = intervalStartMillis + chunkCount * intervalBetweenResettingMillis;
+        FlatChunkPhases.add(state, chunkOffset(chunkIndex), delta, intervalStartMillis, nextInvalidationTimestamp);
+    }
+
+    private static int chunkOffset(int chunkIndex) {
+        return chunkIndex * FlatChunkPhases.SLOTS_PER_CHUNK;
+    }
+
+    private static int currentPhaseIndex(int chunkIndex) {
+        return FlatChunkPhases.currentPhaseIndex(chunkOffset(chunkIndex));
+    }
+
+    private static int invalidationTimestampIndex(int chunkIndex, int phase) {
+        return FlatChunkPhases.invalidationTimestampIndex(chunkOffset(chunkIndex), phase);
+    }
+
+    private static int valueIndex(int chunkIndex, int phase) {
+        return FlatChunkPhases.valueIndex(chunkOffset(chunkIndex), phase);
+    }
+
+    @Override
+    public String toString() {
+        return "MultiWindowCounter{" +
+                "rollingWindows=" + rollingWindows +
+                ", intervalBetweenResettingMillis=" + intervalBetweenResettingMillis +
+                ", clock=" + clock +
+                ", creationTimestamp=" + creationTimestamp +
+                ", sums=" + Arrays.toString(getSums()) +
+                '}';
+    }
+
+}
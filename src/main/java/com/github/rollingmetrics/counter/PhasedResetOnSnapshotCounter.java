@@ -0,0 +1,96 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.counter;
+
+import org.HdrHistogram.WriterReaderPhaser;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The counter which reset its state to zero after each invocation of {@link #getSum()},
+ * this is the alternative of {@link ResetOnSnapshotCounter} for case of heavy writes concurrent with several readers.
+ *
+ * <p>
+ * The counter has two cells, writers always update the active cell, and reader swaps the cells and waits via {@link WriterReaderPhaser}
+ * until writers which started before swap leave the inactive cell, so the reader takes the sum of inactive cell without subtracting it from cell which is updated by writers.
+ * Same design is used by {@link com.github.rollingmetrics.top.impl.recorder.TwoPhasePositionRecorder} and by {@link org.HdrHistogram.Recorder}.
+ *
+ * <p>
+ * Concurrency properties:
+ * <ul>
+ *     <li>Writing is wait-free. Writers never retry because of readers or other writers.</li>
+ *     <li>Readers block each other, and wait for writers which are in the middle of update at moment of swap, but readers never block writers.</li>
+ * </ul>
+ *
+ * <p>
+ * Usage recommendations:
+ * <ul>
+ *     <li>When you do not need in "rolling time window" semantic. Else use {@link SmoothlyDecayingRollingCounter}</li>
+ *     <li>When you need in 100 percents guarantee that one measure can not be reported twice.</li>
+ *     <li>Only if one kind of reader interests in value of counter.
+ *     Usage of this implementation for case of multiple readers will be a bad idea because of readers will steal data from each other.
+ *     </li>
+ * </ul>
+ *
+ * @see ResetOnSnapshotCounter
+ */
+public class PhasedResetOnSnapshotCounter implements WindowCounter {
+
+    private final WriterReaderPhaser phaser = new WriterReaderPhaser();
+
+    private volatile LongAdder active = new LongAdder();
+
+    // guarded by reader lock of phaser
+    private LongAdder inactive = new LongAdder();
+
+    @Override
+    public void add(long delta) {
+        long criticalValueAtEnter = phaser.writerCriticalSectionEnter();
+        try {
+            active.add(delta);
+        } finally {
+            phaser.writerCriticalSectionExit(criticalValueAtEnter);
+        }
+    }
+
+    @Override
+    public long getSum() {
+        phaser.readerLock();
+        try {
+            // Swap active and inactive cells:
+            LongAdder sampled = active;
+            active = inactive;
+            inactive = sampled;
+
+            // wait until all writers leave the sampled cell
+            phaser.flipPhase();
+
+            return sampled.sumThenReset();
+        } finally {
+            phaser.readerUnlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PhasedResetOnSnapshotCounter{" +
+                "active=" + active +
+                '}';
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.counter;
+
+import com.codahale.metrics.Meter;
+import com.github.rollingmetrics.util.Clock;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The meter which calculates exact rates for last 1, 5 and 15 minutes, this is the alternative of {@link Meter} which uses exponentially weighted moving averages.
+ *
+ * <p>
+ * The events are recorded into {@link MultiWindowCounter}, so each rate is the sum of events in the rolling time window divided by duration of window,
+ * the bursts are reported as is without lag, and are forgotten as soon as they leave the window.
+ * There is no tick thread and no tick on the write path, the rates are calculated at the moment of reading.
+ * The meter extends {@link Meter}, so it can be registered in {@link com.codahale.metrics.MetricRegistry} and reported by any reporter.
+ *
+ * <p>
+ * Concurrency properties:
+ * <ul>
+ *     <li>Marking is lock-free.</li>
+ *     <li>Rate reading is lock-free.</li>
+ * </ul>
+ *
+ * <p>
+ * Usage recommendations:
+ * <ul>
+ *     <li>When you need in accurate rates, for example when rates are used for alerting or capacity planning.</li>
+ *     <li>When the meter is read rarely, because each reading of 15 minute rate iterates over all chunks. Prefer {@link Meter} when rates are read in tight loop.</li>
+ * </ul>
+ *
+ * <p> Example of usage:
+ * <pre><code>
+ *         // the shortest window(1 minute) will be split to 10 chunks, each chunk will be reset to zero after each 6 second
+ *         RollingMeter meter = new RollingMeter(10);
+ *         registry.register("requests", meter);
+ *         meter.mark();
+ *     </code>
+ * </pre>
+ *
+ * @see MultiWindowCounter
+ */
+public class RollingMeter extends Meter {
+
+    public static final int DEFAULT_NUMBER_CHUNKS = 10;
+
+    private static final double MILLIS_IN_SECOND = TimeUnit.SECONDS.toMillis(1);
+
+    private static final Duration ONE_MINUTE = Duration.ofMinutes(1);
+    private static final Duration FIVE_MINUTES = Duration.ofMinutes(5);
+    private static final Duration FIFTEEN_MINUTES = Duration.ofMinutes(15);
+
+    private final MultiWindowCounter counter;
+    private final LongAdder count = new LongAdder();
+    private final Clock clock;
+    private final long creationTimestamp;
+
+    /**
+     * Constructs the meter which splits one minute window to {@link #DEFAULT_NUMBER_CHUNKS} chunks.
+     */
+    public RollingMeter() {
+        this(DEFAULT_NUMBER_CHUNKS);
+    }
+
+    /**
+     * Constructs the meter.
+     *
+     * @param numberChunks The count of chunk to split the one minute window, should be divisor of 60_000 milliseconds
+     */
+    public RollingMeter(int numberChunks) {
+        this(numberChunks, Clock.defaultClock());
+    }
+
+    public RollingMeter(int numberChunks, Clock clock) {
+        this.counter = new MultiWindowCounter(MultiWindowCounter.ONE_FIVE_FIFTEEN_MINUTES, numberChunks, clock);
+        this.clock = clock;
+        this.creationTimestamp = clock.currentTimeMillis();
+    }
+
+    @Override
+    public void mark() {
+        mark(1);
+    }
+
+    @Override
+    public void mark(long n) {
+        counter.add(n);
+        count.add(n);
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getOneMinuteRate() {
+        return getRate(ONE_MINUTE);
+    }
+
+    @Override
+    public double getFiveMinuteRate() {
+        return getRate(FIVE_MINUTES);
+    }
+
+    @Override
+    public double getFifteenMinuteRate() {
+        return getRate(FIFTEEN_MINUTES);
+    }
+
+    @Override
+    public double getMeanRate() {
+        long count = getCount();
+        if (count == 0) {
+            return 0.0;
+        }
+        long elapsedMillis = clock.currentTimeMillis() - creationTimestamp;
+        if (elapsedMillis <= 0) {
+            return 0.0;
+        }
+        return count * MILLIS_IN_SECOND / elapsedMillis;
+    }
+
+    private double getRate(Duration rollingWindow) {
+        long sum = counter.getSum(rollingWindow);
+        if (sum == 0) {
+            return 0.0;
+        }
+        // at the beginning of life the window is not filled yet, so rate should be calculated against the elapsed time
+        long elapsedMillis = Math.min(clock.currentTimeMillis() - creationTimestamp, rollingWindow.toMillis());
+        if (elapsedMillis <= 0) {
+            return 0.0;
+        }
+        return sum * MILLIS_IN_SECOND / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "RollingMeter{" +
+                "counter=" + counter +
+                ", count=" + count +
+                ", clock=" + clock +
+                ", creationTimestamp=" + creationTimestamp +
+                '}';
+    }
+
+}
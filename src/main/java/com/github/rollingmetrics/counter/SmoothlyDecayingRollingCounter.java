@@ -17,8 +17,12 @@
 
 package com.github.rollingmetrics.counter;
 
+import com.github.rollingmetrics.util.ChunkEpoch;
+import com.github.rollingmetrics.util.ChunkEpochTracker;
 import com.github.rollingmetrics.util.Clock;
+import com.github.rollingmetrics.util.FootprintEstimation;
 import com.github.rollingmetrics.histogram.util.Printer;
+import com.github.rollingmetrics.util.TickingClock;
 
 import java.time.Duration;
 import java.util.concurrent.atomic.AtomicLong;
@@ -55,8 +59,12 @@ import java.util.concurrent.atomic.LongAdder;
  * <ul>
  *     <li>You can consider writing speed as a constant. The write latency does not depend from count of chunk or frequency of chunk rotation.
  *     <li>The writing depends only from level of contention between writers(internally counter implemented across AtomicLong).</li>
+ *     <li>When counter is constructed with {@link TickingClock} then writers read the precomputed number of chunk instead of querying the time and dividing it on each update.</li>
  *     <li>The huge count of chunk leads to the slower calculation of their sum. So precision of sum conflicts with latency of sum. You need to choose meaningful values.
  *     For example 10 chunks will guarantee at least 90% accuracy and ten million reads per second.</li>
+ *     <li>When you need in both huge count of chunks and fast sum reading, then construct the counter with enabled tracking of sealed chunks total
+ *     via {@link #SmoothlyDecayingRollingCounter(Duration, int, Clock, boolean)}. In this mode the sum calculation reads only the constant count of chunks independent of {@code numberChunks},
+ *     the price is the work which needs to be done by reader once per each chunk rotation.</li>
  * </ul>
  *
  * <p> Example of usage:
@@ -79,6 +87,10 @@ public class SmoothlyDecayingRollingCounter implements WindowCounter {
     private final long creationTimestamp;
 
     private final Chunk[] chunks;
+    private final ChunkEpochTracker epochTracker;
+
+    private final boolean sealedTotalSupported;
+    private volatile SealedTotal sealedTotal;
 
     /**
      * Constructs the chunked counter divided by {@code numberChunks}.
@@ -116,7 +128,43 @@ public class SmoothlyDecayingRollingCounter implements WindowCounter {
         return chunks.length - 1;
     }
 
+    /**
+     * Provide a (conservatively high) estimate of the counter's total footprint in bytes.
+     * The estimation assumes that each {@link LongAdder} is fully inflated, which happens when counter is contended by writers.
+     *
+     * @return a (conservatively high) estimate of the counter's total footprint in bytes
+     *
+     * @see CompactSmoothlyDecayingRollingCounter#getEstimatedFootprintInBytes()
+     */
+    public int getEstimatedFootprintInBytes() {
+        int phaseBytes = FootprintEstimation.align(FootprintEstimation.OBJECT_HEADER_BYTES + FootprintEstimation.LONG_BYTES + 2 * FootprintEstimation.REFERENCE_BYTES)
+                + FootprintEstimation.LONG_ADDER_BYTES;
+        int chunkBytes = FootprintEstimation.align(FootprintEstimation.OBJECT_HEADER_BYTES + 4 * FootprintEstimation.REFERENCE_BYTES + 2 * FootprintEstimation.LONG_BYTES)
+                + FootprintEstimation.align(FootprintEstimation.OBJECT_HEADER_BYTES + FootprintEstimation.REFERENCE_BYTES)
+                + 2 * phaseBytes;
+        int counterBytes = FootprintEstimation.align(FootprintEstimation.OBJECT_HEADER_BYTES + 3 * FootprintEstimation.LONG_BYTES + 5 * FootprintEstimation.REFERENCE_BYTES + 1);
+        return counterBytes + FootprintEstimation.referenceArray(chunks.length) + chunks.length * chunkBytes;
+    }
+
     public SmoothlyDecayingRollingCounter(Duration rollingWindow, int numberChunks, Clock clock) {
+        this(rollingWindow, numberChunks, clock, false);
+    }
+
+    /**
+     * Constructs the chunked counter divided by {@code numberChunks}.
+     *
+     * <p>
+     * When {@code trackSealedChunksTotal} is true then counter maintains the running total of chunks which are already sealed(no longer written by writers)
+     * but not started to decay. The total is updated once per chunk rotation by first reader which observes the rotation,
+     * so {@link #getSum()} needs to read only the live chunk, the previous chunk, the decaying oldest chunk and the total,
+     * independent of {@code numberChunks}.
+     *
+     * @param rollingWindow the rolling time window duration
+     * @param numberChunks The count of chunk to split counter
+     * @param clock the abstraction over time
+     * @param trackSealedChunksTotal whether the running total of sealed chunks should be maintained
+     */
+    public SmoothlyDecayingRollingCounter(Duration rollingWindow, int numberChunks, Clock clock, boolean trackSealedChunksTotal) {
         if (numberChunks < 2) {
             throw new IllegalArgumentException("numberChunks should be >= 2");
         }
@@ -138,15 +186,30 @@ public class SmoothlyDecayingRollingCounter implements WindowCounter {
         for (int i = 0; i < chunks.length; i++) {
             this.chunks[i] = new Chunk(i);
         }
+
+        this.sealedTotalSupported = trackSealedChunksTotal;
+        this.sealedTotal = new SealedTotal(0, 0);
+
+        if (clock instanceof TickingClock) {
+            this.epochTracker = ((TickingClock) clock).registerChunkEpochTracker(creationTimestamp, intervalBetweenResettingMillis, chunks.length);
+        } else {
+            this.epochTracker = null;
+        }
     }
 
     @Override
     public void add(long delta) {
+        if (epochTracker != null) {
+            // the number of interval was precomputed by ticker thread
+            ChunkEpoch epoch = epochTracker.getCurrentEpoch();
+            chunks[epoch.getChunkIndex()].add(delta, epoch.getNumber());
+            return;
+        }
         long nowMillis = clock.currentTimeMillis();
         long millisSinceCreation = nowMillis - creationTimestamp;
         long intervalsSinceCreation = millisSinceCreation / intervalBetweenResettingMillis;
         int chunkIndex = (int) intervalsSinceCreation % chunks.length;
-        chunks[chunkIndex].add(delta, nowMillis);
+        chunks[chunkIndex].add(delta, intervalsSinceCreation);
     }
 
     @Override
@@ -156,6 +219,16 @@ public class SmoothlyDecayingRollingCounter implements WindowCounter {
         // To get as fresh value as possible we need to calculate sum in order from oldest to newest
         long millisSinceCreation = currentTimeMillis - creationTimestamp;
         long intervalsSinceCreation = millisSinceCreation / intervalBetweenResettingMillis;
+        if (sealedTotalSupported && intervalsSinceCreation >= 0) {
+            SealedTotal sealedTotal = this.sealedTotal;
+            if (sealedTotal.interval != intervalsSinceCreation) {
+                sealedTotal = rotateSealedTotal(intervalsSinceCreation);
+            }
+            if (sealedTotal.interval == intervalsSinceCreation) {
+                return getSum(currentTimeMillis, intervalsSinceCreation, sealedTotal);
+            }
+            // the clock was moved back by another reader, so just fall back to full iteration
+        }
         int newestChunkIndex = (int) intervalsSinceCreation % chunks.length;
 
         long sum = 0;
@@ -169,6 +242,94 @@ public class SmoothlyDecayingRollingCounter implements WindowCounter {
         return sum;
     }
 
+    private long getSum(long currentTimeMillis, long newestInterval, SealedTotal sealedTotal) {
+        int numberChunks = chunks.length - 1;
+
+        // To get as fresh value as possible we need to calculate sum in order from oldest to newest
+        long sum = 0;
+        long oldestInterval = newestInterval - numberChunks;
+        if (oldestInterval >= 0) {
+            sum += getChunk(oldestInterval).getSum(currentTimeMillis);
+        }
+        sum += sealedTotal.sum;
+        if (newestInterval >= 1) {
+            // the previous chunk is never sealed, because of writer which read the clock before rotation can still write to it
+            sum += getChunk(newestInterval - 1).getSum(currentTimeMillis);
+        }
+        sum += getChunk(newestInterval).getSum(currentTimeMillis);
+        return sum;
+    }
+
+    private synchronized SealedTotal rotateSealedTotal(long newestInterval) {
+        SealedTotal current = this.sealedTotal;
+        if (current.interval >= newestInterval) {
+            return current;
+        }
+
+        // The sealed total for interval N covers the intervals [N - numberChunks + 1, N - 2],
+        // the interval N - numberChunks is oldest one and decays, the intervals N - 1 and N are read directly.
+        int numberChunks = chunks.length - 1;
+        long sum = current.sum;
+        if (newestInterval - current.interval >= numberChunks) {
+            // all previously sealed chunks are expired, so it is cheaper to recalculate total from scratch
+            sum = 0;
+            for (long interval = newestInterval - numberChunks + 1; interval <= newestInterval - 2; interval++) {
+                sum += seal(interval);
+            }
+        } else if (numberChunks > 2) {
+            for (long interval = current.interval + 1; interval <= newestInterval; interval++) {
+                sum += seal(interval - 2);
+                sum -= unseal(interval - numberChunks);
+            }
+        }
+
+        SealedTotal rotated = new SealedTotal(newestInterval, sum);
+        this.sealedTotal = rotated;
+        return rotated;
+    }
+
+    private long seal(long interval) {
+        if (interval < 0) {
+            return 0;
+        }
+        Chunk chunk = getChunk(interval);
+        long proposedInvalidationTimestamp = creationTimestamp + (interval + chunks.length) * intervalBetweenResettingMillis;
+        chunk.sealedInterval = interval;
+        chunk.sealedSum = chunk.getSumOfPhase(proposedInvalidationTimestamp);
+        return chunk.sealedSum;
+    }
+
+    private long unseal(long interval) {
+        if (interval < 0) {
+            return 0;
+        }
+        Chunk chunk = getChunk(interval);
+        return chunk.sealedInterval == interval ? chunk.sealedSum : 0;
+    }
+
+    private Chunk getChunk(long interval) {
+        return chunks[(int) (interval % chunks.length)];
+    }
+
+    private static final class SealedTotal {
+
+        final long interval;
+        final long sum;
+
+        SealedTotal(long interval, long sum) {
+            this.interval = interval;
+            this.sum = sum;
+        }
+
+        @Override
+        public String toString() {
+            return "SealedTotal{" +
+                    "interval=" + interval +
+                    ", sum=" + sum +
+                    '}';
+        }
+    }
+
     private final class Chunk {
 
         final Phase left;
@@ -176,6 +337,10 @@ public class SmoothlyDecayingRollingCounter implements WindowCounter {
 
         final AtomicReference<Phase> currentPhaseRef;
 
+        // guarded by monitor of counter, used only when sealed chunks total is tracked
+        long sealedInterval = -1;
+        long sealedSum;
+
         Chunk(int chunkIndex) {
             long invalidationTimestamp = creationTimestamp + (chunks.length + chunkIndex) * intervalBetweenResettingMillis;
             this.left = new Phase(invalidationTimestamp);
@@ -188,11 +353,24 @@ public class SmoothlyDecayingRollingCounter implements WindowCounter {
             return currentPhaseRef.get().getSum(currentTimeMillis);
         }
 
-        void add(long delta, long currentTimeMillis) {
+        long getSumOfPhase(long proposedInvalidationTimestamp) {
+            Phase currentPhase = currentPhaseRef.get();
+            long currentPhaseProposedInvalidationTimestamp = currentPhase.proposedInvalidationTimestamp;
+            if (currentPhaseProposedInvalidationTimestamp == proposedInvalidationTimestamp || currentPhaseProposedInvalidationTimestamp == Long.MAX_VALUE) {
+                return currentPhase.adder.sum();
+            }
+            // there were no writes in the requested interval
+            return 0;
+        }
+
+        void add(long delta, long intervalsSinceCreation) {
             Phase currentPhase = currentPhaseRef.get();
             long currentPhaseProposedInvalidationTimestamp = currentPhase.proposedInvalidationTimestamp;
 
-            if (currentTimeMillis < currentPhaseProposedInvalidationTimestamp) {
+            // invalidation timestamps are always aligned to interval boundaries,
+            // so comparing them with beginning of interval is equivalent to comparing with current time
+            long intervalStartMillis = creationTimestamp + intervalsSinceCreation * intervalBetweenResettingMillis;
+            if (intervalStartMillis < currentPhaseProposedInvalidationTimestamp) {
                 if (currentPhaseProposedInvalidationTimestamp != Long.MAX_VALUE) {
                     // this is main path - there are no rotation in the middle and we are writing to non-expired phase
                     currentPhase.adder.add(delta);
@@ -216,9 +394,7 @@ public class SmoothlyDecayingRollingCounter implements WindowCounter {
                     expiredPhase.proposedInvalidationTimestamp = Long.MAX_VALUE;
 
                     // allow to next phase to be expired
-                    long millisSinceCreation = currentTimeMillis - creationTimestamp;
-                    long intervalsSinceCreation = millisSinceCreation / intervalBetweenResettingMillis;
-                    nextPhase.proposedInvalidationTimestamp = creationTimestamp + (intervalsSinceCreation + chunks.length) * intervalBetweenResettingMillis;
+                    nextPhase.proposedInvalidationTimestamp = intervalStartMillis + chunks.length * intervalBetweenResettingMillis;
                 }
             }
         }
@@ -277,6 +453,7 @@ public class SmoothlyDecayingRollingCounter implements WindowCounter {
                 ", intervalBetweenResettingMillis=" + intervalBetweenResettingMillis +
                 ", clock=" + clock +
                 ", creationTimestamp=" + creationTimestamp +
+                (sealedTotalSupported ? ", sealedTotal=" + sealedTotal : "") +
                 ", chunks=" + Printer.printArray(chunks, "chunk") +
                 '}';
     }
@@ -0,0 +1,153 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.counter;
+
+import com.github.rollingmetrics.util.Clock;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The counter which reset its state to zero each time when configured interval is elapsed,
+ * this is contention-free alternative of {@link ResetPeriodicallyCounter} which designed for high number of concurrent writers.
+ *
+ * <p>
+ * Instead of single {@link java.util.concurrent.atomic.AtomicLong} the value is accumulated in the {@link LongAdder}.
+ * Each interval is accumulated in its own phase which is created at moment of resetting, so in the steady state writers never modify the shared memory except the cells of adder.
+ * The phases are never reused, so writer which was delayed at the moment of resetting can not add its increment to the interval which starts later.
+ *
+ * <p>
+ * Unlike {@link ResetPeriodicallyCounter} which starts the next interval at the moment when expiration is detected,
+ * this counter aligns the intervals to the creation time, so resetting happens at {@code creationTime + N * resetInterval}
+ * and the boundaries do not drift when counter is not updated for a long time.
+ *
+ * <p>
+ * Concurrency properties:
+ * <ul>
+ *     <li>Writing is lock-free. Writers do not contend with each other in the steady state.</li>
+ *     <li>Sum reading is lock-free.</li>
+ * </ul>
+ *
+ * <p>
+ * Usage recommendations:
+ * <ul>
+ *     <li>When you do not need in "rolling time window" semantic. Else use {@link SmoothlyDecayingRollingCounter}</li>
+ *     <li>When counter is updated by many threads concurrently. For low contended counter prefer {@link ResetPeriodicallyCounter} which consumes less memory.</li>
+ *     <li>Only if you accept the fact that several increments can be never observed by reader(because rotation to zero can happen before reader seen the written values).</li>
+ * </ul>
+ *
+ * @see ResetPeriodicallyCounter
+ * @see SmoothlyDecayingRollingCounter
+ */
+public class StripedResetPeriodicallyCounter implements WindowCounter {
+
+    private final long resetIntervalMillis;
+    private final Clock clock;
+    private final long creationTimestamp;
+
+    private final AtomicReference<Phase> currentPhaseRef;
+
+    /**
+     * Constructs the counter which reset its state to zero each time when {@code resetInterval} is elapsed.
+     *
+     * @param resetInterval the interval between counter resetting
+     */
+    public StripedResetPeriodicallyCounter(Duration resetInterval) {
+        this(resetInterval, Clock.defaultClock());
+    }
+
+    public StripedResetPeriodicallyCounter(Duration resetInterval, Clock clock) {
+        if (resetInterval.isNegative() || resetInterval.isZero()) {
+            throw new IllegalArgumentException("intervalBetweenChunkResetting must be a positive duration");
+        }
+        this.resetIntervalMillis = resetInterval.toMillis();
+        this.clock = clock;
+        this.creationTimestamp = clock.currentTimeMillis();
+        this.currentPhaseRef = new AtomicReference<>(new Phase(creationTimestamp + resetIntervalMillis));
+    }
+
+    @Override
+    public void add(long delta) {
+        long currentTimeMillis = clock.currentTimeMillis();
+        Phase phase = currentPhaseRef.get();
+        if (currentTimeMillis >= phase.proposedInvalidationTimestamp) {
+            phase = rotate(phase, currentTimeMillis);
+        }
+        phase.adder.add(delta);
+
+        if (currentPhaseRef.get() != phase) {
+            // The phase was replaced while writing, so readers of the next phase do not see the increment.
+            // Increment is repeated in the next phase, as well as increment which races with resetting of ResetPeriodicallyCounter is attributed to the next interval
+            currentPhaseRef.get().adder.add(delta);
+        }
+    }
+
+    private Phase rotate(Phase expiredPhase, long currentTimeMillis) {
+        long millisSinceCreation = currentTimeMillis - creationTimestamp;
+        long intervalsSinceCreation = millisSinceCreation / resetIntervalMillis;
+        Phase nextPhase = new Phase(creationTimestamp + (intervalsSinceCreation + 1) * resetIntervalMillis);
+        if (currentPhaseRef.compareAndSet(expiredPhase, nextPhase)) {
+            return nextPhase;
+        }
+        // another writer achieved progress
+        return currentPhaseRef.get();
+    }
+
+    @Override
+    public long getSum() {
+        long currentTimeMillis = clock.currentTimeMillis();
+        Phase currentPhase = currentPhaseRef.get();
+        if (currentTimeMillis >= currentPhase.proposedInvalidationTimestamp) {
+            // The phase was unused by writers since its expiration
+            return 0;
+        }
+        return currentPhase.adder.sum();
+    }
+
+    private static final class Phase {
+
+        final LongAdder adder;
+        final long proposedInvalidationTimestamp;
+
+        Phase(long proposedInvalidationTimestamp) {
+            this.adder = new LongAdder();
+            this.proposedInvalidationTimestamp = proposedInvalidationTimestamp;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder("Phase{");
+            sb.append("sum=").append(adder);
+            sb.append(", proposedInvalidationTimestamp=").append(proposedInvalidationTimestamp);
+            sb.append('}');
+            return sb.toString();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StripedResetPeriodicallyCounter{" +
+                "resetIntervalMillis=" + resetIntervalMillis +
+                ", clock=" + clock +
+                ", creationTimestamp=" + creationTimestamp +
+                ", currentPhase=" + currentPhaseRef.get() +
+                '}';
+    }
+
+}
@@ -23,6 +23,9 @@ package com.github.rollingmetrics.counter;
  * @see SmoothlyDecayingRollingCounter
  * @see ResetOnSnapshotCounter
  * @see ResetPeriodicallyCounter
+ * @see StripedResetPeriodicallyCounter
+ * @see PhasedResetOnSnapshotCounter
+ * @see WindowCounterFamily
  */
 public interface WindowCounter {
 
@@ -34,6 +37,31 @@ public interface WindowCounter {
      */
     void add(long delta);
 
+    /**
+     * Increments the counter by sum of {@code deltas} in range {@code [from, to)}.
+     * In opposite to calling of {@link #add(long)} for each element, the time is measured once and the whole batch is applied by single update of counter,
+     * so this method should be preferred by consumers which apply many increments at once.
+     *
+     * @param deltas the amounts by which the counter will be increased
+     * @param from the index of first delta, inclusive
+     * @param to the index of last delta, exclusive
+     *
+     * @throws IllegalArgumentException In case of {@code from < 0}, {@code to > deltas.length} or {@code from > to}
+     */
+    default void add(long[] deltas, int from, int to) {
+        if (from < 0 || to > deltas.length || from > to) {
+            throw new IllegalArgumentException("Illegal range [" + from + ", " + to + ") for array with length " + deltas.length);
+        }
+        if (from == to) {
+            return;
+        }
+        long sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += deltas[i];
+        }
+        add(sum);
+    }
+
     /**
      * Returns the counter's current value.
      *
@@ -0,0 +1,440 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.counter;
+
+import com.github.rollingmetrics.util.ChunkEpoch;
+import com.github.rollingmetrics.util.ChunkEpochTracker;
+import com.github.rollingmetrics.util.Clock;
+import com.github.rollingmetrics.util.FlatChunkPhases;
+import com.github.rollingmetrics.util.FootprintEstimation;
+import com.github.rollingmetrics.util.TickingClock;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The family of window counters distinguished by key, for example the count of requests per tenant or per endpoint.
+ *
+ * <p>
+ * In opposite to map of {@link WindowCounter} instances, the family stores the chunks of all keys in the single region of longs
+ * which is allocated once at construction time, so tracking of new key does not allocate anything except the map entry.
+ * The layout of chunks is the same as in {@link CompactSmoothlyDecayingRollingCounter}.
+ * The family can be constructed either with semantic of {@link SmoothlyDecayingRollingCounter}
+ * via {@link #smoothlyDecaying(Duration, int, int)}, or with semantic of {@link StripedResetPeriodicallyCounter}
+ * via {@link #resetPeriodically(Duration, int)}.
+ *
+ * <p>
+ * The count of keys is limited by {@code maxKeys}. The key becomes idle when it was not updated during whole time window,
+ * in other words when its sum is guaranteed to be zero. Idle keys are evicted when family needs the space for new key,
+ * or explicitly via {@link #evictIdleKeys()}. When all keys are busy, the update of new key is rejected and {@link #add(Object, long)} returns false.
+ *
+ * <p>
+ * Concurrency properties:
+ * <ul>
+ *     <li>Writing to already tracked key is lock-free.</li>
+ *     <li>Sum reading is lock-free.</li>
+ *     <li>Registration of new key and eviction of idle keys are synchronized, but they never wait for writers.
+ *     Writers and readers which observed the evicted key detect the reuse of its slots via generation of slots,
+ *     the writer which detected the reuse after addition rolls its delta back, so values of different keys are not mixed.</li>
+ * </ul>
+ *
+ * <p> Example of usage:
+ * <pre><code>
+ *         // constructs the family of counters with 60 seconds time window divided by 10 chunks, which can track at most 10_000 tenants
+ *         WindowCounterFamily&lt;String&gt; requestsPerTenant = WindowCounterFamily.smoothlyDecaying(Duration.ofSeconds(60), 10, 10_000);
+ *         requestsPerTenant.add(tenantId, 1);
+ *     </code>
+ * </pre>
+ *
+ * @param <K> the type of key
+ *
+ * @see CompactSmoothlyDecayingRollingCounter
+ */
+public class WindowCounterFamily<K> {
+
+    private static final int LAST_WRITE_OFFSET = 0;
+    // incremented each time when series is given to another key
+    private static final int GENERATION_OFFSET = 1;
+    private static final int SERIES_HEADER_SLOTS = 2;
+
+    // marks the series which is evicted and can not be updated anymore
+    private static final long EVICTED = Long.MAX_VALUE;
+
+    private final long intervalBetweenResettingMillis;
+    private final int chunkCount;
+    private final boolean decaying;
+    private final int maxKeys;
+    private final int slotsPerSeries;
+    private final Clock clock;
+    private final long creationTimestamp;
+    private final ChunkEpochTracker epochTracker;
+
+    private final AtomicLongArray region;
+    private final ConcurrentHashMap<K, Series> seriesByKey;
+
+    // guarded by this
+    private final int[] freeOffsets;
+    private int freeCount;
+    private int neverUsedSeries;
+
+    /**
+     * Constructs the family of counters which have semantic of {@link SmoothlyDecayingRollingCounter}.
+     *
+     * @param rollingWindow the rolling time window duration
+     * @param numberChunks The count of chunk to split each counter
+     * @param maxKeys the maximum count of keys which can be tracked at same time
+     * @param <K> the type of key
+     *
+     * @return the family of smoothly decaying counters
+     */
+    public static <K> WindowCounterFamily<K> smoothlyDecaying(Duration rollingWindow, int numberChunks, int maxKeys) {
+        return smoothlyDecaying(rollingWindow, numberChunks, maxKeys, Clock.defaultClock());
+    }
+
+    public static <K> WindowCounterFamily<K> smoothlyDecaying(Duration rollingWindow, int numberChunks, int maxKeys, Clock clock) {
+        if (numberChunks < 2) {
+            throw new IllegalArgumentException("numberChunks should be >= 2");
+        }
+        if (numberChunks > SmoothlyDecayingRollingCounter.MAX_CHUNKS) {
+            throw new IllegalArgumentException("number of chunks should be <=" + SmoothlyDecayingRollingCounter.MAX_CHUNKS);
+        }
+        long intervalBetweenResettingMillis = rollingWindow.toMillis() / numberChunks;
+        if (intervalBetweenResettingMillis < SmoothlyDecayingRollingCounter.MIN_CHUNK_RESETTING_INTERVAL_MILLIS) {
+            throw new IllegalArgumentException("intervalBetweenResettingMillis should be >=" + SmoothlyDecayingRollingCounter.MIN_CHUNK_RESETTING_INTERVAL_MILLIS);
+        }
+        return new WindowCounterFamily<>(intervalBetweenResettingMillis, numberChunks + 1, true, maxKeys, clock);
+    }
+
+    /**
+     * Constructs the family of counters which reset their state to zero each time when {@code resetInterval} is elapsed.
+     * The intervals are aligned to creation time of family, like in {@link StripedResetPeriodicallyCounter}.
+     *
+     * @param resetInterval the interval between counter resetting
+     * @param maxKeys the maximum count of keys which can be tracked at same time
+     * @param <K> the type of key
+     *
+     * @return the family of periodically resetting counters
+     */
+    public static <K> WindowCounterFamily<K> resetPeriodically(Duration resetInterval, int maxKeys) {
+        return resetPeriodically(resetInterval, maxKeys, Clock.defaultClock());
+    }
+
+    public static <K> WindowCounterFamily<K> resetPeriodically(Duration resetInterval, int maxKeys, Clock clock) {
+        if (resetInterval.isNegative() || resetInterval.isZero()) {
+            throw new IllegalArgumentException("resetInterval must be a positive duration");
+        }
+        return new WindowCounterFamily<>(resetInterval.toMillis(), 1, false, maxKeys, clock);
+    }
+
+    private WindowCounterFamily(long intervalBetweenResettingMillis, int chunkCount, boolean decaying, int maxKeys, Clock clock) {
+        if (maxKeys < 1) {
+            throw new IllegalArgumentException("maxKeys should be >= 1");
+        }
+        this.slotsPerSeries = SERIES_HEADER_SLOTS + chunkCount * FlatChunkPhases.SLOTS_PER_CHUNK;
+        if ((long) maxKeys * slotsPerSeries > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("maxKeys is too big, the family can not hold more than " + Integer.MAX_VALUE / slotsPerSeries + " keys");
+        }
+
+        this.intervalBetweenResettingMillis = intervalBetweenResettingMillis;
+        this.chunkCount = chunkCount;
+        this.decaying = decaying;
+        this.maxKeys = maxKeys;
+        this.clock = clock;
+        this.creationTimestamp = clock.currentTimeMillis();
+
+        this.region = new AtomicLongArray(maxKeys * slotsPerSeries);
+        this.seriesByKey = new ConcurrentHashMap<>();
+        this.freeOffsets = new int[maxKeys];
+
+        if (clock instanceof TickingClock) {
+            this.epochTracker = ((TickingClock) clock).registerChunkEpochTracker(creationTimestamp, intervalBetweenResettingMillis, chunkCount);
+        } else {
+            this.epochTracker = null;
+        }
+    }
+
+    /**
+     * Increment the counter associated with {@code key} by {@code delta}.
+     * If You want to decrement instead of increment then use negative {@code delta}.
+     *
+     * @param key the key of counter
+     * @param delta the amount by which the counter will be increased
+     *
+     * @return false if {@code key} is not tracked yet and there is no space for new key, else true
+     */
+    public boolean add(K key, long delta) {
+        int chunkIndex;
+        long intervalStartMillis;
+        if (epochTracker != null) {
+            // the number of interval was precomputed by ticker thread
+            ChunkEpoch epoch = epochTracker.getCurrentEpoch();
+            chunkIndex = epoch.getChunkIndex();
+            intervalStartMillis = epoch.getStartMillis();
+        } else {
+            long nowMillis = clock.currentTimeMillis();
+            long intervalsSinceCreation = (nowMillis - creationTimestamp) / intervalBetweenResettingMillis;
+            chunkIndex = (int) (intervalsSinceCreation % chunkCount);
+            intervalStartMillis = creationTimestamp + intervalsSinceCreation * intervalBetweenResettingMillis;
+        }
+
+        while (true) {
+            Series series = seriesByKey.get(key);
+            if (series == null) {
+                series = register(key, intervalStartMillis);
+                if (series == null) {
+                    return false;
+                }
+            }
+            int generationIndex = series.offset + GENERATION_OFFSET;
+            if (region.get(generationIndex) == series.generation && markWritten(series.offset, intervalStartMillis)) {
+                int valueIndex = add(series.offset + SERIES_HEADER_SLOTS + chunkIndex * FlatChunkPhases.SLOTS_PER_CHUNK, delta, intervalStartMillis);
+                if (region.get(generationIndex) == series.generation) {
+                    // this is main path - the slots were not given to another key before addition
+                    return true;
+                }
+                // the writer was paused after the checks for a time enough to evict the series and give it to another key
+                region.addAndGet(valueIndex, -delta);
+            }
+            // the series was evicted concurrently, so need to register the key again
+            seriesByKey.remove(key, series);
+        }
+    }
+
+    /**
+     * Returns the current value of counter associated with {@code key}.
+     *
+     * @param key the key of counter
+     *
+     * @return the current value of counter, or zero if key is not tracked
+     */
+    public long getSum(K key) {
+        Series series = seriesByKey.get(key);
+        if (series == null) {
+            return 0;
+        }
+        return getSum(series, clock.currentTimeMillis());
+    }
+
+    /**
+     * Returns the current values of all tracked counters.
+     * The keys which are tracked but have zero sum are included to result.
+     *
+     * @return the map from key to current value of counter
+     */
+    public Map<K, Long> getSums() {
+        long currentTimeMillis = clock.currentTimeMillis();
+        Map<K, Long> sums = new HashMap<>();
+        for (Map.Entry<K, Series> entry : seriesByKey.entrySet()) {
+            sums.put(entry.getKey(), getSum(entry.getValue(), currentTimeMillis));
+        }
+        return sums;
+    }
+
+    /**
+     * @return the count of currently tracked keys
+     */
+    public int getKeyCount() {
+        return seriesByKey.size();
+    }
+
+    /**
+     * @return the maximum count of keys which can be tracked at same time
+     */
+    public int getMaxKeys() {
+        return maxKeys;
+    }
+
+    /**
+     * Removes the keys which were not updated during whole time window.
+     * The sum of evicted keys is guaranteed to be zero, so eviction is invisible for readers.
+     *
+     * @return the count of evicted keys
+     */
+    public synchronized int evictIdleKeys() {
+        long currentTimeMillis = clock.currentTimeMillis();
+        long idleThresholdMillis = chunkCount * intervalBetweenResettingMillis;
+        int evicted = 0;
+        for (Series series : seriesByKey.values()) {
+            int lastWriteIndex = series.offset + LAST_WRITE_OFFSET;
+            long lastWriteMillis = region.get(lastWriteIndex);
+            if (lastWriteMillis == EVICTED || currentTimeMillis - lastWriteMillis < idleThresholdMillis) {
+                continue;
+            }
+            // writers which observed the series before this point will fail to mark the series as written and will register the key again
+            if (region.compareAndSet(lastWriteIndex, lastWriteMillis, EVICTED)) {
+                seriesByKey.remove(series.key, series);
+                freeOffsets[freeCount++] = series.offset;
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Provide a (conservatively high) estimate of the family's total footprint in bytes
+     *
+     * @return a (conservatively high) estimate of the family's total footprint in bytes, excluding the footprint of key objects
+     */
+    public long getEstimatedFootprintInBytes() {
+        long regionBytes = FootprintEstimation.longArray(region.length()) + FootprintEstimation.align(FootprintEstimation.OBJECT_HEADER_BYTES + FootprintEstimation.REFERENCE_BYTES);
+        long freeOffsetsBytes = FootprintEstimation.align(FootprintEstimation.ARRAY_HEADER_BYTES + 4 * maxKeys);
+
+        // the map node, the reference from table and the series object
+        int bytesPerKey = FootprintEstimation.align(FootprintEstimation.OBJECT_HEADER_BYTES + 4 + 3 * FootprintEstimation.REFERENCE_BYTES)
+                + 2 * FootprintEstimation.REFERENCE_BYTES
+                + FootprintEstimation.align(FootprintEstimation.OBJECT_HEADER_BYTES + FootprintEstimation.LONG_BYTES + 4 + FootprintEstimation.REFERENCE_BYTES);
+        long mapBytes = FootprintEstimation.align(FootprintEstimation.OBJECT_HEADER_BYTES + 64) + (long) seriesByKey.size() * bytesPerKey;
+        return regionBytes + freeOffsetsBytes + mapBytes;
+    }
+
+    private synchronized Series register(K key, long intervalStartMillis) {
+        Series series = seriesByKey.get(key);
+        if (series != null) {
+            // the key was registered by another writer
+            return series;
+        }
+
+        int offset;
+        if (neverUsedSeries < maxKeys) {
+            offset = neverUsedSeries * slotsPerSeries;
+            neverUsedSeries++;
+        } else {
+            if (freeCount == 0 && evictIdleKeys() == 0) {
+                return null;
+            }
+            offset = freeOffsets[--freeCount];
+        }
+
+        // readers and writers which still hold the previous series will observe the new generation and ignore the slots,
+        // the writer which is adding to previous series right now rolls its addition back after observing the new generation
+        long generation = region.incrementAndGet(offset + GENERATION_OFFSET);
+
+        for (int chunkIndex = 0; chunkIndex < chunkCount; chunkIndex++) {
+            int chunkOffset = offset + SERIES_HEADER_SLOTS + chunkIndex * FlatChunkPhases.SLOTS_PER_CHUNK;
+            // the chunks of new series are expired, so first writer to each chunk will rotate it
+            FlatChunkPhases.init(region, chunkOffset, Long.MIN_VALUE);
+        }
+        region.set(offset + LAST_WRITE_OFFSET, intervalStartMillis);
+
+        series = new Series(key, offset, generation);
+        seriesByKey.put(key, series);
+        return series;
+    }
+
+    private boolean markWritten(int offset, long intervalStartMillis) {
+        int lastWriteIndex = offset + LAST_WRITE_OFFSET;
+        while (true) {
+            long lastWriteMillis = region.get(lastWriteIndex);
+            if (lastWriteMillis == EVICTED) {
+                return false;
+            }
+            if (lastWriteMillis >= intervalStartMillis) {
+                // this is main path - series was already marked as written in current interval
+                return true;
+            }
+            if (region.compareAndSet(lastWriteIndex, lastWriteMillis, intervalStartMillis)) {
+                return true;
+            }
+        }
+    }
+
+    private int add(int chunkOffset, long delta, long intervalStartMillis) {
+        long nextInvalidationTimestamp = intervalStartMillis + chunkCount * intervalBetweenResettingMillis;
+        return FlatChunkPhases.add(region, chunkOffset, delta, intervalStartMillis, nextInvalidationTimestamp);
+    }
+
+    private long getSum(Series series, long currentTimeMillis) {
+        int offset = series.offset;
+        if (region.get(offset + LAST_WRITE_OFFSET) == EVICTED) {
+            return 0;
+        }
+
+        // To get as fresh value as possible we need to calculate sum in order from oldest to newest
+        long intervalsSinceCreation = (currentTimeMillis - creationTimestamp) / intervalBetweenResettingMillis;
+        int newestChunkIndex = (int) (intervalsSinceCreation % chunkCount);
+
+        long sum = 0;
+        for (int i = newestChunkIndex + 1, iteration = 0; iteration < chunkCount; i++, iteration++) {
+            if (i == chunkCount) {
+                i = 0;
+            }
+            int chunkOffset = offset + SERIES_HEADER_SLOTS + i * FlatChunkPhases.SLOTS_PER_CHUNK;
+            int currentPhase = (int) region.get(FlatChunkPhases.currentPhaseIndex(chunkOffset));
+            long proposedInvalidationTimestamp = region.get(FlatChunkPhases.invalidationTimestampIndex(chunkOffset, currentPhase));
+            if (currentTimeMillis >= proposedInvalidationTimestamp) {
+                // The chunk was unused by writers for a long time
+                continue;
+            }
+
+            long chunkSum = region.get(FlatChunkPhases.valueIndex(chunkOffset, currentPhase));
+
+            // if this is oldest chunk then we need to reduce its weight
+            long beforeInvalidateMillis = proposedInvalidationTimestamp - currentTimeMillis;
+            if (decaying && beforeInvalidateMillis < intervalBetweenResettingMillis) {
+                double decayingCoefficient = (double) beforeInvalidateMillis / (double) intervalBetweenResettingMillis;
+                chunkSum = (long) ((double) chunkSum * decayingCoefficient);
+            }
+            sum += chunkSum;
+        }
+
+        if (region.get(offset + GENERATION_OFFSET) != series.generation) {
+            // the series was evicted and given to another key in the middle of reading, the sum of evicted key is zero
+            return 0;
+        }
+        return sum;
+    }
+
+    private static final class Series {
+
+        final Object key;
+        final int offset;
+        final long generation;
+
+        Series(Object key, int offset, long generation) {
+            this.key = key;
+            this.offset = offset;
+            this.generation = generation;
+        }
+
+        @Override
+        public String toString() {
+            return "Series{" +
+                    "key=" + key +
+                    ", offset=" + offset +
+                    ", generation=" + generation +
+                    '}';
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "WindowCounterFamily{" +
+                "intervalBetweenResettingMillis=" + intervalBetweenResettingMillis +
+                ", chunkCount=" + chunkCount +
+                ", decaying=" + decaying +
+                ", maxKeys=" + maxKeys +
+                ", clock=" + clock +
+                ", creationTimestamp=" + creationTimestamp +
+                ", keyCount=" + seriesByKey.size() +
+                '}';
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram;
+
+import com.codahale.metrics.Reservoir;
+
+/**
+ * The {@link Reservoir} which is able to record pre-aggregated samples and batches of values by single call.
+ * Each reservoir built by {@link HdrBuilder#buildReservoir()} implements this interface.
+ *
+ * <p>
+ * The batch is cheaper than sequence of {@link #update(long)} invocations, because checks of chunk expiration
+ * and synchronization with readers are performed once per batch instead of once per value.
+ *
+ * <pre><code>
+ *     BatchUpdatableReservoir reservoir = (BatchUpdatableReservoir) new HdrBuilder().buildReservoir();
+ *     Histogram histogram = new Histogram(reservoir);
+ *
+ *     // value 42 observed 10 times
+ *     reservoir.update(42, 10);
+ *     // latencies received from batch RPC
+ *     reservoir.update(latencies, 0, latencies.length);
+ * </code></pre>
+ */
+public interface BatchUpdatableReservoir extends Reservoir {
+
+    /**
+     * Records the value {@code count} times.
+     *
+     * @param value the value to record
+     * @param count the number of occurrences of value, must not be negative
+     */
+    void update(long value, long count);
+
+    /**
+     * Records {@code length} values from array starting from {@code offset}.
+     *
+     * @param values the array which contains values to record
+     * @param offset the index of first value to record
+     * @param length the number of values to record
+     */
+    void update(long[] values, int offset, int length);
+
+}
@@ -0,0 +1,60 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram;
+
+/**
+ * Specifies the width of counters which are used by histograms which store the sealed chunks and accumulated values of current chunk.
+ *
+ * <p>
+ * Narrower counters reduce the memory footprint of reservoir, and overflow of counter is never happen:
+ * when total count of histogram can exceed the capacity of counter then histogram is transparently promoted to the wider one.
+ * So narrow width should be chosen when typical number of values recorded in the single chunk fits to the capacity of counter.
+ *
+ * @see HdrBuilder#withCountsWidth(CountsWidth)
+ */
+public enum CountsWidth {
+
+    /**
+     * Each counter is stored as 8 byte long, this is the default.
+     */
+    LONG(Long.MAX_VALUE),
+
+    /**
+     * Each counter is stored as 4 byte int, histogram is promoted to {@link #LONG} when total count is going to exceed {@link Integer#MAX_VALUE}.
+     */
+    INT(Integer.MAX_VALUE),
+
+    /**
+     * Each counter is stored as 2 byte short, histogram is promoted to {@link #INT} when total count is going to exceed {@link Short#MAX_VALUE}.
+     */
+    SHORT(Short.MAX_VALUE);
+
+    private final long maxCount;
+
+    CountsWidth(long maxCount) {
+        this.maxCount = maxCount;
+    }
+
+    /**
+     * @return the maximum count which can be stored by histogram with this width without promotion
+     */
+    public long getMaxCount() {
+        return maxCount;
+    }
+
+}
@@ -19,18 +19,35 @@ package com.github.rollingmetrics.histogram;
 
 import com.codahale.metrics.*;
 import com.github.rollingmetrics.histogram.accumulator.Accumulator;
+import com.github.rollingmetrics.histogram.accumulator.ChunkedAccumulatorSettings;
+import com.github.rollingmetrics.histogram.accumulator.ForwardDecayingAccumulator;
+import com.github.rollingmetrics.histogram.accumulator.LazyAccumulator;
+import com.github.rollingmetrics.histogram.accumulator.MultiWindowAccumulator;
 import com.github.rollingmetrics.histogram.accumulator.ResetByChunksAccumulator;
+import com.github.rollingmetrics.histogram.accumulator.ResetByFineGrainedChunksAccumulator;
 import com.github.rollingmetrics.histogram.accumulator.ResetOnSnapshotAccumulator;
+import com.github.rollingmetrics.histogram.accumulator.SmoothlyDecayingByChunksAccumulator;
+import com.github.rollingmetrics.histogram.accumulator.ThreadLocalAccumulator;
+import com.github.rollingmetrics.util.CachingSupplier;
+import com.github.rollingmetrics.util.NonBlockingCachingSupplier;
 import com.github.rollingmetrics.util.ResilientExecutionUtil;
+import com.github.rollingmetrics.util.RotationScheduler;
+import com.github.rollingmetrics.util.RotationStaggering;
 import com.github.rollingmetrics.histogram.accumulator.UniformAccumulator;
+import org.HdrHistogram.AtomicHistogram;
+import org.HdrHistogram.ConcurrentHistogram;
 import org.HdrHistogram.Recorder;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadFactory;
+import java.util.function.IntFunction;
 import java.util.function.Supplier;
 
 /**
@@ -70,10 +87,13 @@ public class HdrBuilder {
     // meaningful limits to disallow user to kill performance(or memory footprint) by mistake
     static final int MAX_CHUNKS = 60;
     static final long MIN_CHUNK_RESETTING_INTERVAL_MILLIS = 1000;
+    static final int MAX_FINE_GRAINED_CHUNKS = 3600;
+    static final long MIN_FINE_GRAINED_CHUNK_RESETTING_INTERVAL_MILLIS = 100;
 
     static int DEFAULT_NUMBER_OF_SIGNIFICANT_DIGITS = 2;
     static AccumulationFactory DEFAULT_ACCUMULATION_STRATEGY = AccumulationFactory.UNIFORM;
     static double[] DEFAULT_PERCENTILES = new double[]{0.5, 0.75, 0.9, 0.95, 0.98, 0.99, 0.999};
+    static final double DEFAULT_DECAY_ALPHA = 0.015;
 
     public HdrBuilder() {
         this(com.github.rollingmetrics.util.Clock.defaultClock());
@@ -151,6 +171,109 @@ public class HdrBuilder {
         return resetReservoirPeriodicallyByChunks(resettingPeriodMillis, numberChunks);
     }
 
+    /**
+     * Reservoir configured with this strategy has the same semantic as {@link #resetReservoirPeriodicallyByChunks(Duration, int)},
+     * but it is designed for precise sliding windows with huge number of chunks, for example 10 minutes window with 1 second granularity.
+     * <p>
+     * The archived chunks are stored in the merge tree of pre-aggregated histograms,
+     * so snapshot extraction merges <tt>O(log(numberChunks))</tt> histograms instead of <tt>numberChunks</tt>.
+     * The memory footprint is about two times higher than footprint of <tt>resetReservoirPeriodicallyByChunks</tt> with same number of chunks,
+     * use {@link #getEstimatedFootprintInBytes()} to be sure that Reservoir with provided settings does not consume too much memory.
+     * </p>
+     *
+     * @param rollingTimeWindow the total rolling time window, any value recorded to reservoir will not be evicted from it at least <tt>rollingTimeWindow</tt>
+     * @param numberChunks    specifies number of chunks by which reservoir will be slitted, should be between 2 and {@value #MAX_FINE_GRAINED_CHUNKS}
+     * @return this builder instance
+     * @see #resetReservoirPeriodicallyByChunks(Duration, int)
+     */
+    public HdrBuilder resetReservoirPeriodicallyByFineGrainedChunks(Duration rollingTimeWindow, int numberChunks) {
+        if (numberChunks < 2) {
+            throw new IllegalArgumentException("numberChunks should be >= 2");
+        }
+        if (numberChunks > MAX_FINE_GRAINED_CHUNKS) {
+            throw new IllegalArgumentException("numberChunks should be <= " + MAX_FINE_GRAINED_CHUNKS);
+        }
+        long resettingPeriodMillis = rollingTimeWindow.toMillis() / numberChunks;
+        if (resettingPeriodMillis <= 0) {
+            throw new IllegalArgumentException("resettingPeriod must be a positive duration");
+        }
+        if (resettingPeriodMillis < MIN_FINE_GRAINED_CHUNK_RESETTING_INTERVAL_MILLIS) {
+            throw new IllegalArgumentException("Interval between resetting must be >= " + MIN_FINE_GRAINED_CHUNK_RESETTING_INTERVAL_MILLIS + " millis");
+        }
+
+        accumulationFactory = new FineGrainedChunksAccumulationFactory(numberChunks, resettingPeriodMillis);
+        return this;
+    }
+
+    /**
+     * Reservoir configured with this strategy will be divided to <tt>numberChunks</tt> parts like {@link #resetReservoirPeriodicallyByChunks(Duration, int)},
+     * but the oldest chunk is not evicted at once, instead its weight is smoothly decreased during <tt>rollingTimeWindow / numberChunks</tt>,
+     * so percentiles do not jump on each rotation of chunks.
+     * <p>
+     * The value recorded to reservoir will take affect with full weight during <tt>rollingTimeWindow</tt>,
+     * then during <tt>rollingTimeWindow / numberChunks</tt> its weight will linearly decrease to zero,
+     * this is the same semantic which is provided by {@link com.github.rollingmetrics.counter.SmoothlyDecayingRollingCounter}.
+     * </p>
+     *
+     * @param rollingTimeWindow the total rolling time window, any value recorded to reservoir will take affect with full weight at least <tt>rollingTimeWindow</tt>
+     * @param numberChunks    specifies number of chunks by which reservoir will be slitted
+     * @return this builder instance
+     * @see #resetReservoirPeriodicallyByChunks(Duration, int)
+     */
+    public HdrBuilder resetReservoirPeriodicallyBySmoothlyDecayingChunks(Duration rollingTimeWindow, int numberChunks) {
+        if (numberChunks < 2) {
+            throw new IllegalArgumentException("numberChunks should be >= 2");
+        }
+        if (numberChunks > MAX_CHUNKS) {
+            throw new IllegalArgumentException("numberChunks should be <= " + MAX_CHUNKS);
+        }
+        long resettingPeriodMillis = rollingTimeWindow.toMillis() / numberChunks;
+        if (resettingPeriodMillis <= 0) {
+            throw new IllegalArgumentException("resettingPeriod must be a positive duration");
+        }
+        if (resettingPeriodMillis < MIN_CHUNK_RESETTING_INTERVAL_MILLIS) {
+            throw new IllegalArgumentException("Interval between resetting must be >= " + MIN_CHUNK_RESETTING_INTERVAL_MILLIS + " millis");
+        }
+
+        accumulationFactory = (builder, recorder, clock) -> new SmoothlyDecayingByChunksAccumulator(recorder, numberChunks, resettingPeriodMillis, clock, builder.getExecutor(), builder.buildChunkedAccumulatorSettings());
+        return this;
+    }
+
+    /**
+     * Reservoir configured with this strategy will decay the values exponentially
+     * with the same default factor as {@link ExponentiallyDecayingReservoir}, which heavily biases the reservoir to the past 5 minutes of measurements.
+     *
+     * @return this builder instance
+     * @see #decayReservoirExponentially(double)
+     */
+    public HdrBuilder decayReservoirExponentially() {
+        return decayReservoirExponentially(DEFAULT_DECAY_ALPHA);
+    }
+
+    /**
+     * Reservoir configured with this strategy will record each value with weight which exponentially grows with time,
+     * so the recent values exponentially dominate over old values, this is so called forward decay.
+     * <p>
+     * This strategy has the same semantic as {@link ExponentiallyDecayingReservoir},
+     * but instead of sampling, all values are recorded to the histogram with precision configured for this builder, and writers are lock-free.
+     * The weights are periodically renormalized in order to avoid overflow, and values which weight became negligible are evicted during renormalization.
+     * The memory footprint does not depend on time window, it is about three histograms.
+     * Pay attention that counts of histogram are weights of values, so {@link Snapshot#size()} and {@link Snapshot#dump(java.io.OutputStream)} of full snapshot
+     * report the sum of weights instead of number of recorded values, where weight of value recorded at last renormalization is equal to one.
+     * </p>
+     *
+     * @param alpha the exponential decay factor per second, the higher is factor, the more biased reservoir will be towards newer values
+     * @return this builder instance
+     * @see #decayReservoirExponentially()
+     */
+    public HdrBuilder decayReservoirExponentially(double alpha) {
+        if (!(alpha > 0.0) || Double.isInfinite(alpha)) {
+            throw new IllegalArgumentException("alpha should be positive");
+        }
+        accumulationFactory = new ForwardDecayingAccumulationFactory(alpha);
+        return this;
+    }
+
     /**
      * Reservoir configured with this strategy will store all values since the reservoir was created.
      *
@@ -254,9 +377,11 @@ public class HdrBuilder {
 
     /**
      * Configures the period for which taken snapshot will be cached.
+     * When cached snapshot expires, the reader which first observed it rebuilds the snapshot, and all other readers wait for it.
      *
      * @param duration the period for which taken snapshot will be cached, should be a positive duration.
      * @return this builder instance
+     * @see #withNonBlockingSnapshotCaching(Duration, Duration)
      */
     public HdrBuilder withSnapshotCachingDuration(Duration duration) {
         if (duration.isNegative()) {
@@ -267,6 +392,37 @@ public class HdrBuilder {
         } else {
             this.snapshotCachingDurationMillis = Optional.of(duration.toMillis());
         }
+        this.snapshotMaxStalenessMillis = Optional.empty();
+        return this;
+    }
+
+    /**
+     * Configures the snapshot caching with stale-while-revalidate semantic.
+     * While published snapshot is younger than <tt>maxStaleness</tt> the readers get it via single volatile read, and never wait for each other.
+     * When published snapshot becomes older than <tt>cachingDuration</tt> the new snapshot is built asynchronously on background executor,
+     * and the stale snapshot is returned until new snapshot is published.
+     * <p>
+     * The snapshot which is older than <tt>maxStaleness</tt> is never returned, the reader which observes it rebuilds snapshot synchronously,
+     * or waits for rebuilding which is already in progress, so <tt>maxStaleness</tt> is the only bound after which readers can be blocked,
+     * and each reader waits for at most one rebuilding.
+     * This happens only if reservoir was not read for a long time or background executor is overloaded,
+     * so it is recommended to choose <tt>maxStaleness</tt> greater than period of reporting.
+     * </p>
+     *
+     * @param cachingDuration the period for which taken snapshot will be treated as fresh, should be a positive duration
+     * @param maxStaleness the maximum age of returned snapshot, should be not less than <tt>cachingDuration</tt>
+     * @return this builder instance
+     * @see #withSnapshotCachingDuration(Duration)
+     */
+    public HdrBuilder withNonBlockingSnapshotCaching(Duration cachingDuration, Duration maxStaleness) {
+        if (cachingDuration.isNegative() || cachingDuration.isZero()) {
+            throw new IllegalArgumentException("cachingDuration should be positive");
+        }
+        if (maxStaleness.compareTo(cachingDuration) < 0) {
+            throw new IllegalArgumentException("maxStaleness should not be less than cachingDuration");
+        }
+        this.snapshotCachingDurationMillis = Optional.of(cachingDuration.toMillis());
+        this.snapshotMaxStalenessMillis = Optional.of(maxStaleness.toMillis());
         return this;
     }
 
@@ -336,13 +492,223 @@ public class HdrBuilder {
         return this;
     }
 
+    /**
+     * Configures reservoir to be rotated by shared {@link RotationScheduler#getInstance()} slightly before the boundaries of chunks,
+     * so writers never need to initiate rotation by themselves.
+     *
+     * @return this builder instance
+     * @see #withProactiveRotation(RotationScheduler)
+     */
+    public HdrBuilder withProactiveRotation() {
+        return withProactiveRotation(RotationScheduler.getInstance());
+    }
+
+    /**
+     * Configures reservoir to be rotated by {@code rotationScheduler} slightly before the boundaries of chunks.
+     * <p>
+     * By default the chunk is rotated by writer which first observed that chunk is expired,
+     * this writer submits rotation task to background executor and pays for unparking of executor thread.
+     * With this option writers never observe the expired chunk in the steady state, so they never allocate or submit rotation tasks.
+     * The values recorded during last tick of scheduler before boundary are attributed to the next chunk,
+     * so they can be kept in the reservoir at most {@link RotationScheduler#getTickIntervalMillis()} longer than configured window.
+     * </p>
+     * <p>
+     * This option has effect only for {@link #resetReservoirPeriodically(Duration)}, {@link #resetReservoirPeriodicallyByChunks(Duration, int)},
+     * {@link #resetReservoirPeriodicallyByFineGrainedChunks(Duration, int)} and {@link #resetReservoirPeriodicallyBySmoothlyDecayingChunks(Duration, int)} strategies,
+     * and for {@link #buildMultiWindowTimer(List, int)},
+     * the scheduler should use the same clock as configured for this builder.
+     * </p>
+     *
+     * @param rotationScheduler the scheduler which will rotate the reservoir
+     * @return this builder instance
+     */
+    public HdrBuilder withProactiveRotation(RotationScheduler rotationScheduler) {
+        if (rotationScheduler == null) {
+            throw new IllegalArgumentException("rotationScheduler must not be null");
+        }
+        this.rotationScheduler = Optional.of(rotationScheduler);
+        return this;
+    }
+
+    /**
+     * Configures whether boundaries of chunks should be shifted by random offset in order to spread rotations of reservoirs which were created at the same time.
+     * <p>
+     * By default all reservoirs count their chunks from the creation time, so reservoirs created at application startup rotate their chunks in the same millisecond,
+     * which leads to periodic spikes of CPU usage when application has thousands of reservoirs.
+     * When staggering is enabled, rotations are uniformly spread across the chunk interval,
+     * and together with {@link #withProactiveRotation()} each tick of scheduler rotates only a small batch of reservoirs.
+     * The rolling window guarantee is not changed, only the first chunk after creation becomes shorter,
+     * the boundaries of chunks are shifted by less than one chunk interval in comparison with not staggered reservoir.
+     * </p>
+     * <p>
+     * When this method is not called then global default configured via {@link RotationStaggering#setEnabledByDefault(boolean)} is used.
+     * This option has effect only for {@link #resetReservoirPeriodically(Duration)}, {@link #resetReservoirPeriodicallyByChunks(Duration, int)},
+     * {@link #resetReservoirPeriodicallyByFineGrainedChunks(Duration, int)} and {@link #resetReservoirPeriodicallyBySmoothlyDecayingChunks(Duration, int)} strategies,
+     * and for {@link #buildMultiWindowTimer(List, int)}.
+     * </p>
+     *
+     * @param staggered whether boundaries of chunks should be staggered
+     * @return this builder instance
+     */
+    public HdrBuilder withStaggeredRotation(boolean staggered) {
+        this.staggeredRotation = Optional.of(staggered);
+        return this;
+    }
+
+    /**
+     * Configures reservoir to record values into separated non-concurrent histogram per each writer thread instead of single {@link Recorder}.
+     * <p>
+     * This option is useful when reservoir is updated by huge number of threads concurrently,
+     * because writers never contend with each other and never execute atomic read-modify-write instructions.
+     * The histograms of all threads are merged at snapshot time, the histograms of dead threads are released at snapshot time too.
+     * Pay attention that memory footprint is proportional to number of writer threads, each thread consumes two histograms.
+     * </p>
+     * <p>
+     * This option can be combined only with {@link #neverResetReservoir()} or {@link #resetReservoirOnSnapshot()} strategies.
+     * </p>
+     *
+     * @return this builder instance
+     */
+    public HdrBuilder withThreadLocalRecording() {
+        this.threadLocalRecording = true;
+        return this;
+    }
+
+    /**
+     * Configures reservoir to not allocate histograms until first value is recorded.
+     * <p>
+     * This option is useful when application creates huge number of reservoirs, for example per endpoint and per status code,
+     * and most of them never receive any value. Such reservoir consumes only few dozens of bytes and always returns empty snapshot,
+     * the histograms are allocated by first writer.
+     * </p>
+     * <p>
+     * This option has no effect for {@link #buildMultiWindowTimer(List, int)}.
+     * The estimation methods like {@link #getEstimatedFootprintInBytes()} return the footprint of reservoir after first write.
+     * </p>
+     *
+     * @return this builder instance
+     * @see #withLazyAllocation(int)
+     */
+    public HdrBuilder withLazyAllocation() {
+        this.lazyAllocation = Optional.of(0);
+        return this;
+    }
+
+    /**
+     * Configures reservoir to not allocate histograms until first value is recorded,
+     * and to release histograms when reservoir stays unused during configured number of consecutive snapshots.
+     * <p>
+     * The snapshot is considered as unused if it is empty and no value was recorded since previous snapshot,
+     * for example when all values were evicted from rolling window. So, the rolling window is not affected by deflation at all,
+     * the reservoir is released only when it has nothing to report, and it is allocated again by next write.
+     * Pay attention that reservoir which is never snapshotted is never released, because check is performed only at snapshot time.
+     * </p>
+     * <p>
+     * This option has no effect for {@link #buildMultiWindowTimer(List, int)}.
+     * </p>
+     *
+     * @param emptySnapshotsBeforeDeflation the number of consecutive unused snapshots after which histograms are released, should be positive
+     * @return this builder instance
+     * @see #withLazyAllocation()
+     */
+    public HdrBuilder withLazyAllocation(int emptySnapshotsBeforeDeflation) {
+        if (emptySnapshotsBeforeDeflation <= 0) {
+            throw new IllegalArgumentException("emptySnapshotsBeforeDeflation should be positive");
+        }
+        this.lazyAllocation = Optional.of(emptySnapshotsBeforeDeflation);
+        return this;
+    }
+
+    /**
+     * Configures reservoir to store the sealed chunks of history outside of java heap.
+     * <p>
+     * Each chunk is kept inside direct {@link java.nio.ByteBuffer} as pairs of value and count for each non-empty bucket,
+     * so the heap footprint does not depend on number of chunks, and garbage collector does not need to scan the history.
+     * When chunk leaves the rolling window its counts are subtracted from the aggregate of history directly from the buffer.
+     * The histograms which accumulate the values of current chunk are still stored in heap.
+     * The memory is released deterministically when reservoir is closed,
+     * the reservoir returned by {@link #buildReservoir()} implements {@link java.io.Closeable} for this purpose:
+     * <pre><code>
+     *     Reservoir reservoir = new HdrBuilder()
+     *          .resetReservoirPeriodicallyByChunks(Duration.ofMinutes(10), 10)
+     *          .withOffHeapArchive()
+     *          .buildReservoir();
+     *     Timer timer = new Timer(reservoir);
+     *     ...
+     *     ((Closeable) reservoir).close();
+     * </code></pre>
+     * </p>
+     * <p>
+     * This option has effect only for {@link #resetReservoirPeriodicallyByChunks(Duration, int)} strategy,
+     * combining it with {@link #resetReservoirPeriodicallyByFineGrainedChunks(Duration, int)} leads to {@link IllegalStateException} at build time,
+     * use {@link #getEstimatedOffHeapFootprintInBytes()} to check how much memory will be allocated outside of heap.
+     * </p>
+     *
+     * @return this builder instance
+     */
+    public HdrBuilder withOffHeapArchive() {
+        this.offHeapArchive = true;
+        return this;
+    }
+
+    /**
+     * Configures the width of counters for histograms which store the sealed chunks and accumulated values of current chunk.
+     * <p>
+     * By default each counter is stored as 8 byte long, but typically the number of values recorded in the single chunk is far less than 2^31,
+     * so {@link CountsWidth#INT} or even {@link CountsWidth#SHORT} can significantly reduce the memory footprint of reservoir with many chunks.
+     * The counters never overflow, when total count of histogram can exceed the capacity of counter then histogram is promoted to the wider one,
+     * and returns to configured width when chunk is reused.
+     * </p>
+     * <p>
+     * This option has effect only for {@link #resetReservoirPeriodically(Duration)}, {@link #resetReservoirPeriodicallyByChunks(Duration, int)},
+     * {@link #resetReservoirPeriodicallyByFineGrainedChunks(Duration, int)} and {@link #resetReservoirPeriodicallyBySmoothlyDecayingChunks(Duration, int)} strategies.
+     * The recorders which accept the writes always use long counters,
+     * use {@link #getEstimatedFootprintInBytes()} to check the footprint with specified width.
+     * </p>
+     *
+     * @param countsWidth the width of counters
+     * @return this builder instance
+     */
+    public HdrBuilder withCountsWidth(CountsWidth countsWidth) {
+        this.countsWidth = Objects.requireNonNull(countsWidth, "countsWidth should not be null");
+        return this;
+    }
+
+    /**
+     * Configures the precision of histograms which store the sealed chunks of history, the current chunk is still recorded with precision specified by {@link #withSignificantDigits(int)}.
+     * <p>
+     * In the long rolling windows the most of memory is consumed by old chunks, for example 1 hour split to 60 chunks keeps 59 sealed chunks,
+     * and high precision of old values is rarely needed. When chunk is sealed it is converted to histogram with lower precision,
+     * so the memory footprint and the cost of merging of chunks at snapshot time are reduced in proportion of the size of histogram,
+     * each significant digit removed from archive reduces the size of archived chunk roughly by ten times.
+     * The values from sealed chunks are reported to snapshot as lowest equivalent value of the bucket in which they are stored,
+     * so the error of these values is bounded by the precision of archive, the values from current chunk are reported with full precision.
+     * </p>
+     * <p>
+     * This option has effect only for {@link #resetReservoirPeriodicallyByChunks(Duration, int)} and {@link #resetReservoirPeriodicallyByFineGrainedChunks(Duration, int)} strategies,
+     * the nodes of merge tree of fine grained chunks are stored with precision of archive too, the number of digits should not be greater than configured significant digits,
+     * use {@link #getEstimatedFootprintInBytes()} to check the footprint with specified precision.
+     * </p>
+     *
+     * @param numberOfArchiveSignificantValueDigits the precision of sealed chunks, should be between 0 and 5
+     * @return this builder instance
+     */
+    public HdrBuilder withArchiveSignificantDigits(int numberOfArchiveSignificantValueDigits) {
+        if ((numberOfArchiveSignificantValueDigits < 0) || (numberOfArchiveSignificantValueDigits > 5)) {
+            throw new IllegalArgumentException("numberOfArchiveSignificantValueDigits must be between 0 and 5");
+        }
+        this.archiveSignificantDigits = Optional.of(numberOfArchiveSignificantValueDigits);
+        return this;
+    }
+
     /**
      * Builds reservoir which can be useful for building monitoring primitives with higher level of abstraction.
+     * The returned reservoir implements {@link BatchUpdatableReservoir}, so it can be used for recording of pre-aggregated samples and batches of values.
      *
      * @return an instance of {@link com.codahale.metrics.Reservoir}
      */
     public Reservoir buildReservoir() {
-        Reservoir reservoir = buildHdrReservoir();
+        BatchUpdatableReservoir reservoir = buildHdrReservoir();
         reservoir = wrapAroundByDecorators(reservoir);
         return reservoir;
     }
@@ -395,14 +761,120 @@ public class HdrBuilder {
         return timer;
     }
 
+    /**
+     * Builds timer which provides the snapshots for several rolling time windows, for example for last 1 minute, 5 minutes and 1 hour.
+     * <p>
+     * The shortest window is divided by <tt>numberChunks</tt> chunks, the longer windows are served by same chunks,
+     * so each value is recorded once, and memory is consumed by chunks of longest window instead of chunks of all windows.
+     * Each window has the same semantic as {@link #resetReservoirPeriodicallyByChunks(Duration, int)}
+     * with <tt>numberChunks = window / chunkInterval</tt>.
+     * </p>
+     * <p>
+     * The eviction strategy configured for this builder and {@link #withOffHeapArchive()} are ignored, {@link #withThreadLocalRecording()} is not supported.
+     * When {@link #withSnapshotCachingDuration(Duration)} is configured then snapshots of all windows are cached together,
+     * otherwise {@link MultiWindowTimer#getSnapshot(Duration)} merges only the histograms of requested window.
+     * </p>
+     *
+     * @param rollingWindows the durations of rolling time windows, each window should be multiple of chunk interval
+     * @param numberChunks the count of chunks to split the shortest window
+     * @return an instance of {@link MultiWindowTimer}
+     */
+    public MultiWindowTimer buildMultiWindowTimer(List<Duration> rollingWindows, int numberChunks) {
+        if (rollingWindows.isEmpty()) {
+            throw new IllegalArgumentException("rollingWindows should not be empty");
+        }
+        if (numberChunks < 2) {
+            throw new IllegalArgumentException("numberChunks should be >= 2");
+        }
+        long shortestWindowMillis = Long.MAX_VALUE;
+        for (Duration rollingWindow : rollingWindows) {
+            if (rollingWindow.isNegative() || rollingWindow.isZero()) {
+                throw new IllegalArgumentException("rollingWindow must be a positive duration");
+            }
+            shortestWindowMillis = Math.min(shortestWindowMillis, rollingWindow.toMillis());
+        }
+        long resettingPeriodMillis = shortestWindowMillis / numberChunks;
+        if (resettingPeriodMillis < MIN_CHUNK_RESETTING_INTERVAL_MILLIS) {
+            throw new IllegalArgumentException("Interval between resetting must be >= " + MIN_CHUNK_RESETTING_INTERVAL_MILLIS + " millis");
+        }
+        int[] numberChunksPerWindow = new int[rollingWindows.size()];
+        for (int i = 0; i < numberChunksPerWindow.length; i++) {
+            long rollingWindowMillis = rollingWindows.get(i).toMillis();
+            if (rollingWindowMillis % resettingPeriodMillis != 0) {
+                throw new IllegalArgumentException("rollingWindow " + rollingWindows.get(i) + " should be multiple of chunk interval " + resettingPeriodMillis + "ms");
+            }
+            long chunks = rollingWindowMillis / resettingPeriodMillis;
+            if (chunks > MAX_FINE_GRAINED_CHUNKS) {
+                throw new IllegalArgumentException("number of chunks for rollingWindow " + rollingWindows.get(i) + " should be <= " + MAX_FINE_GRAINED_CHUNKS);
+            }
+            numberChunksPerWindow[i] = (int) chunks;
+        }
+        validateParameters();
+        if (threadLocalRecording) {
+            throw new IllegalStateException("threadLocalRecording can not be combined with multi-window timer");
+        }
+
+        MultiWindowAccumulator accumulator = new MultiWindowAccumulator(this::buildRecorder, numberChunksPerWindow, resettingPeriodMillis, clock, getExecutor(), buildChunkedAccumulatorSettings());
+        HdrReservoir reservoir = new HdrReservoir(accumulator, predefinedPercentiles, highestTrackableValue, overflowResolver, expectedIntervalBetweenValueSamples, 1);
+        Supplier<List<Snapshot>> snapshotsSupplier = () -> accumulator.getSnapshots(reservoir.getSnapshotTaker());
+        if (snapshotMaxStalenessMillis.isPresent()) {
+            snapshotsSupplier = new NonBlockingCachingSupplier<>(snapshotCachingDurationMillis.get(), snapshotMaxStalenessMillis.get(), clock, getExecutor(), snapshotsSupplier);
+        } else if (snapshotCachingDurationMillis.isPresent()) {
+            snapshotsSupplier = new CachingSupplier<>(snapshotCachingDurationMillis.get(), clock, snapshotsSupplier);
+        }
+        IntFunction<Snapshot> windowSnapshotSupplier;
+        if (snapshotCachingDurationMillis.isPresent()) {
+            // the snapshots of all windows are cached together, so single window is served from the cached list
+            Supplier<List<Snapshot>> cachingSupplier = snapshotsSupplier;
+            windowSnapshotSupplier = windowIndex -> cachingSupplier.get().get(windowIndex);
+        } else {
+            windowSnapshotSupplier = windowIndex -> accumulator.getSnapshot(windowIndex, reservoir.getSnapshotTaker());
+        }
+        List<Duration> windows = Collections.unmodifiableList(new ArrayList<>(rollingWindows));
+        return new MultiWindowTimer(reservoir, windows, snapshotsSupplier, windowSnapshotSupplier);
+    }
+
     /**
      * Provide a (conservatively high) estimate of the Reservoir's total footprint in bytes
      *
      * @return a (conservatively high) estimate of the Reservoir's total footprint in bytes
      */
     public int getEstimatedFootprintInBytes() {
-        HdrReservoir hdrReservoir = buildHdrReservoir();
-        return hdrReservoir.getEstimatedFootprintInBytes();
+        HdrReservoir hdrReservoir = buildHdrReservoir(false);
+        try {
+            return hdrReservoir.getEstimatedFootprintInBytes();
+        } finally {
+            hdrReservoir.close();
+        }
+    }
+
+    /**
+     * Provide a (conservatively high) estimate of the part of Reservoir's footprint which is allocated inside java heap
+     *
+     * @return a (conservatively high) estimate of the Reservoir's heap footprint in bytes
+     */
+    public int getEstimatedHeapFootprintInBytes() {
+        HdrReservoir hdrReservoir = buildHdrReservoir(false);
+        try {
+            return hdrReservoir.getEstimatedHeapFootprintInBytes();
+        } finally {
+            hdrReservoir.close();
+        }
+    }
+
+    /**
+     * Provide a (conservatively high) estimate of the part of Reservoir's footprint which is allocated outside of java heap
+     *
+     * @return a (conservatively high) estimate of the Reservoir's off-heap footprint in bytes
+     * @see #withOffHeapArchive()
+     */
+    public int getEstimatedOffHeapFootprintInBytes() {
+        HdrReservoir hdrReservoir = buildHdrReservoir(false);
+        try {
+            return hdrReservoir.getEstimatedOffHeapFootprintInBytes();
+        } finally {
+            hdrReservoir.close();
+        }
     }
 
     /**
@@ -412,7 +884,7 @@ public class HdrBuilder {
      */
     public HdrBuilder deepCopy() {
         return new HdrBuilder(clock, accumulationFactory, numberOfSignificantValueDigits, predefinedPercentiles, lowestDiscernibleValue,
-                highestTrackableValue, overflowResolver, snapshotCachingDurationMillis, expectedIntervalBetweenValueSamples, backgroundExecutor);
+                highestTrackableValue, overflowResolver, snapshotCachingDurationMillis, snapshotMaxStalenessMillis, expectedIntervalBetweenValueSamples, backgroundExecutor, rotationScheduler, staggeredRotation, lazyAllocation, threadLocalRecording, offHeapArchive, countsWidth, archiveSignificantDigits);
     }
 
     @Override
@@ -424,7 +896,13 @@ public class HdrBuilder {
                 ", highestTrackableValue=" + highestTrackableValue +
                 ", overflowResolver=" + overflowResolver +
                 ", snapshotCachingDurationMillis=" + snapshotCachingDurationMillis +
+                ", snapshotMaxStalenessMillis=" + snapshotMaxStalenessMillis +
                 ", predefinedPercentiles=" + Arrays.toString(predefinedPercentiles.orElse(new double[0])) +
+                ", lazyAllocation=" + lazyAllocation +
+                ", threadLocalRecording=" + threadLocalRecording +
+                ", offHeapArchive=" + offHeapArchive +
+                ", countsWidth=" + countsWidth +
+                ", archiveSignificantDigits=" + archiveSignificantDigits +
                 '}';
     }
 
@@ -434,14 +912,22 @@ public class HdrBuilder {
     private Optional<Long> highestTrackableValue;
     private Optional<OverflowResolver> overflowResolver;
     private Optional<Long> snapshotCachingDurationMillis;
+    private Optional<Long> snapshotMaxStalenessMillis;
     private Optional<double[]> predefinedPercentiles;
     private Optional<Long> expectedIntervalBetweenValueSamples;
     private Optional<Executor> backgroundExecutor;
+    private Optional<RotationScheduler> rotationScheduler;
+    private Optional<Boolean> staggeredRotation;
+    private Optional<Integer> lazyAllocation;
+    private boolean threadLocalRecording;
+    private boolean offHeapArchive;
+    private CountsWidth countsWidth;
+    private Optional<Integer> archiveSignificantDigits;
 
     private com.github.rollingmetrics.util.Clock clock;
 
     public HdrBuilder(com.github.rollingmetrics.util.Clock clock) {
-        this(clock, DEFAULT_ACCUMULATION_STRATEGY, DEFAULT_NUMBER_OF_SIGNIFICANT_DIGITS, Optional.of(DEFAULT_PERCENTILES), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty());
+        this(clock, DEFAULT_ACCUMULATION_STRATEGY, DEFAULT_NUMBER_OF_SIGNIFICANT_DIGITS, Optional.of(DEFAULT_PERCENTILES), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), false, false, CountsWidth.LONG, Optional.empty());
     }
 
     private HdrBuilder(com.github.rollingmetrics.util.Clock clock,
@@ -452,8 +938,16 @@ public class HdrBuilder {
                        Optional<Long> highestTrackableValue,
                        Optional<OverflowResolver> overflowResolver,
                        Optional<Long> snapshotCachingDurationMillis,
+                       Optional<Long> snapshotMaxStalenessMillis,
                        Optional<Long> expectedIntervalBetweenValueSamples,
-                       Optional<Executor> backgroundExecutor) {
+                       Optional<Executor> backgroundExecutor,
+                       Optional<RotationScheduler> rotationScheduler,
+                       Optional<Boolean> staggeredRotation,
+                       Optional<Integer> lazyAllocation,
+                       boolean threadLocalRecording,
+                       boolean offHeapArchive,
+                       CountsWidth countsWidth,
+                       Optional<Integer> archiveSignificantDigits) {
         this.clock = clock;
         this.accumulationFactory = accumulationFactory;
         this.numberOfSignificantValueDigits = numberOfSignificantValueDigits;
@@ -461,9 +955,17 @@ public class HdrBuilder {
         this.highestTrackableValue = highestTrackableValue;
         this.overflowResolver = overflowResolver;
         this.snapshotCachingDurationMillis = snapshotCachingDurationMillis;
+        this.snapshotMaxStalenessMillis = snapshotMaxStalenessMillis;
         this.predefinedPercentiles = predefinedPercentiles;
         this.expectedIntervalBetweenValueSamples = expectedIntervalBetweenValueSamples;
         this.backgroundExecutor = backgroundExecutor;
+        this.rotationScheduler = rotationScheduler;
+        this.staggeredRotation = staggeredRotation;
+        this.lazyAllocation = lazyAllocation;
+        this.threadLocalRecording = threadLocalRecording;
+        this.offHeapArchive = offHeapArchive;
+        this.countsWidth = countsWidth;
+        this.archiveSignificantDigits = archiveSignificantDigits;
     }
 
     private HdrBuilder resetReservoirPeriodicallyByChunks(long resettingPeriodMillis, int numberHistoryChunks) {
@@ -474,18 +976,52 @@ public class HdrBuilder {
             throw new IllegalArgumentException("Interval between resetting must be >= " + MIN_CHUNK_RESETTING_INTERVAL_MILLIS + " millis");
         }
 
-        accumulationFactory = (recorder, clock) -> new ResetByChunksAccumulator(recorder, numberHistoryChunks, resettingPeriodMillis, clock, getExecutor());
+        accumulationFactory = (builder, recorder, clock) -> new ResetByChunksAccumulator(recorder, numberHistoryChunks, resettingPeriodMillis, clock, builder.getExecutor(), builder.buildChunkedAccumulatorSettings());
         return this;
     }
 
+    private Accumulator buildAccumulator() {
+        if (threadLocalRecording) {
+            return new ThreadLocalAccumulator(this::buildNonConcurrentHistogram, accumulationFactory == AccumulationFactory.RESET_ON_SNAPSHOT);
+        } else {
+            return accumulationFactory.createAccumulator(this, this::buildRecorder, clock);
+        }
+    }
+
+    private boolean isStaggeredRotation() {
+        return staggeredRotation.orElseGet(RotationStaggering::isEnabledByDefault);
+    }
+
+    private ChunkedAccumulatorSettings buildChunkedAccumulatorSettings() {
+        return new ChunkedAccumulatorSettings()
+                .withOffHeapArchive(offHeapArchive)
+                .withCountsWidth(countsWidth)
+                .withRotationScheduler(rotationScheduler.orElse(null))
+                .withStaggeredRotation(isStaggeredRotation())
+                .withArchiveSignificantDigits(archiveSignificantDigits.orElse(numberOfSignificantValueDigits));
+    }
+
     private Executor getExecutor() {
         return backgroundExecutor.orElseGet(ResilientExecutionUtil.getInstance()::getBackgroundExecutor);
     }
 
     private HdrReservoir buildHdrReservoir() {
+        return buildHdrReservoir(lazyAllocation.isPresent());
+    }
+
+    private HdrReservoir buildHdrReservoir(boolean lazy) {
         validateParameters();
-        Accumulator accumulator = accumulationFactory.createAccumulator(this::buildRecorder, clock);
-        return new HdrReservoir(accumulator, predefinedPercentiles, highestTrackableValue, overflowResolver, expectedIntervalBetweenValueSamples);
+        Accumulator accumulator;
+        if (lazy) {
+            // the accumulator is created later, so it should not depend on further modifications of this builder
+            HdrBuilder frozenCopy = deepCopy();
+            accumulator = new LazyAccumulator(frozenCopy::buildAccumulator, lazyAllocation.get());
+        } else {
+            accumulator = buildAccumulator();
+        }
+        // forward decaying accumulator records each value with count proportional to its weight
+        long countScale = accumulationFactory instanceof ForwardDecayingAccumulationFactory ? ForwardDecayingAccumulator.WEIGHT_SCALE : 1;
+        return new HdrReservoir(accumulator, predefinedPercentiles, highestTrackableValue, overflowResolver, expectedIntervalBetweenValueSamples, countScale);
     }
 
     private void validateParameters() {
@@ -496,6 +1032,18 @@ public class HdrBuilder {
         if (lowestDiscernibleValue.isPresent() && !highestTrackableValue.isPresent()) {
             throw new IllegalStateException("lowestDiscernibleValue is specified but highestTrackableValue undefined");
         }
+
+        if (threadLocalRecording && accumulationFactory != AccumulationFactory.UNIFORM && accumulationFactory != AccumulationFactory.RESET_ON_SNAPSHOT) {
+            throw new IllegalStateException("threadLocalRecording can be combined only with neverResetReservoir or resetReservoirOnSnapshot");
+        }
+
+        if (archiveSignificantDigits.isPresent() && archiveSignificantDigits.get() > numberOfSignificantValueDigits) {
+            throw new IllegalStateException("numberOfArchiveSignificantValueDigits must be <= numberOfSignificantValueDigits");
+        }
+
+        if (offHeapArchive && accumulationFactory instanceof FineGrainedChunksAccumulationFactory) {
+            throw new IllegalStateException("offHeapArchive can not be combined with resetReservoirPeriodicallyByFineGrainedChunks");
+        }
     }
 
     private Recorder buildRecorder() {
@@ -508,9 +1056,32 @@ public class HdrBuilder {
         return new Recorder(numberOfSignificantValueDigits);
     }
 
-    private Reservoir wrapAroundByDecorators(Reservoir reservoir) {
+    private org.HdrHistogram.Histogram buildConcurrentHistogram() {
+        // the same types of histograms are used by Recorder
+        if (lowestDiscernibleValue.isPresent()) {
+            return new AtomicHistogram(lowestDiscernibleValue.get(), highestTrackableValue.get(), numberOfSignificantValueDigits);
+        }
+        if (highestTrackableValue.isPresent()) {
+            return new AtomicHistogram(highestTrackableValue.get(), numberOfSignificantValueDigits);
+        }
+        return new ConcurrentHistogram(numberOfSignificantValueDigits);
+    }
+
+    private org.HdrHistogram.Histogram buildNonConcurrentHistogram() {
+        if (lowestDiscernibleValue.isPresent()) {
+            return new org.HdrHistogram.Histogram(lowestDiscernibleValue.get(), highestTrackableValue.get(), numberOfSignificantValueDigits);
+        }
+        if (highestTrackableValue.isPresent()) {
+            return new org.HdrHistogram.Histogram(highestTrackableValue.get(), numberOfSignificantValueDigits);
+        }
+        return new org.HdrHistogram.Histogram(numberOfSignificantValueDigits);
+    }
+
+    private BatchUpdatableReservoir wrapAroundByDecorators(BatchUpdatableReservoir reservoir) {
         // wrap around by decorator if snapshotCachingDurationMillis was specified
-        if (snapshotCachingDurationMillis.isPresent()) {
+        if (snapshotMaxStalenessMillis.isPresent()) {
+            reservoir = new SnapshotCachingReservoir(reservoir, snapshotCachingDurationMillis.get(), snapshotMaxStalenessMillis.get(), clock, getExecutor());
+        } else if (snapshotCachingDurationMillis.isPresent()) {
             reservoir = new SnapshotCachingReservoir(reservoir, snapshotCachingDurationMillis.get(), clock);
         }
         return reservoir;
@@ -524,11 +1095,47 @@ public class HdrBuilder {
 
     interface AccumulationFactory {
 
-        AccumulationFactory UNIFORM = (recorderSupplier, clock) -> new UniformAccumulator(recorderSupplier.get());
+        AccumulationFactory UNIFORM = (builder, recorderSupplier, clock) -> new UniformAccumulator(recorderSupplier.get());
+
+        AccumulationFactory RESET_ON_SNAPSHOT = (builder, recorderSupplier, clock) -> new ResetOnSnapshotAccumulator(recorderSupplier.get());
 
-        AccumulationFactory RESET_ON_SNAPSHOT = (recorderSupplier, clock) -> new ResetOnSnapshotAccumulator(recorderSupplier.get());
+        /**
+         * @param builder the builder which creates accumulator, options should be read from it instead of builder which configured the strategy,
+         *                because strategy is shared between copies of builder
+         */
+        Accumulator createAccumulator(HdrBuilder builder, Supplier<Recorder> recorderSupplier, com.github.rollingmetrics.util.Clock clock);
 
-        Accumulator createAccumulator(Supplier<Recorder> recorderSupplier, com.github.rollingmetrics.util.Clock clock);
+    }
+
+    private static final class ForwardDecayingAccumulationFactory implements AccumulationFactory {
+
+        private final double alpha;
+
+        ForwardDecayingAccumulationFactory(double alpha) {
+            this.alpha = alpha;
+        }
+
+        @Override
+        public Accumulator createAccumulator(HdrBuilder builder, Supplier<Recorder> recorderSupplier, com.github.rollingmetrics.util.Clock clock) {
+            return new ForwardDecayingAccumulator(builder::buildConcurrentHistogram, alpha, clock, builder.getExecutor());
+        }
+
+    }
+
+    private static final class FineGrainedChunksAccumulationFactory implements AccumulationFactory {
+
+        private final int numberChunks;
+        private final long resettingPeriodMillis;
+
+        FineGrainedChunksAccumulationFactory(int numberChunks, long resettingPeriodMillis) {
+            this.numberChunks = numberChunks;
+            this.resettingPeriodMillis = resettingPeriodMillis;
+        }
+
+        @Override
+        public Accumulator createAccumulator(HdrBuilder builder, Supplier<Recorder> recorderSupplier, com.github.rollingmetrics.util.Clock clock) {
+            return new ResetByFineGrainedChunksAccumulator(recorderSupplier, numberChunks, resettingPeriodMillis, clock, builder.getExecutor(), builder.buildChunkedAccumulatorSettings());
+        }
 
     }
 
@@ -38,7 +38,7 @@ import static java.nio.charset.StandardCharsets.UTF_8;
  *
  * @see HdrBuilder
  */
-class HdrReservoir implements Reservoir {
+class HdrReservoir implements BatchUpdatableReservoir, Closeable {
 
     private final Accumulator accumulator;
     private final Function<Histogram, Snapshot> snapshotTaker;
@@ -46,7 +46,10 @@ class HdrReservoir implements Reservoir {
     private final OverflowResolver overflowResolver;
     private final long expectedIntervalBetweenValueSamples;
 
-    HdrReservoir(Accumulator accumulator, Optional<double[]> predefinedPercentiles, Optional<Long> highestTrackableValue, Optional<OverflowResolver> overflowResolver, Optional<Long> expectedIntervalBetweenValueSamples) {
+    /**
+     * @param countScale the count which is recorded by accumulator per one value, it is used by full snapshot to report number of values instead of sum of weights
+     */
+    HdrReservoir(Accumulator accumulator, Optional<double[]> predefinedPercentiles, Optional<Long> highestTrackableValue, Optional<OverflowResolver> overflowResolver, Optional<Long> expectedIntervalBetweenValueSamples, long countScale) {
         this.accumulator = accumulator;
         this.highestTrackableValue = highestTrackableValue.orElse(Long.MAX_VALUE);
         this.overflowResolver = overflowResolver.orElse(null);
@@ -56,7 +59,7 @@ class HdrReservoir implements Reservoir {
             double[] percentiles = predefinedPercentiles.get();
             snapshotTaker = histogram -> takeSmartSnapshot(percentiles, histogram);
         } else {
-            snapshotTaker = HdrReservoir::takeFullSnapshot;
+            snapshotTaker = histogram -> takeFullSnapshot(histogram, countScale);
         }
     }
 
@@ -77,11 +80,71 @@ class HdrReservoir implements Reservoir {
         accumulator.recordSingleValueWithExpectedInterval(value, expectedIntervalBetweenValueSamples);
     }
 
+    @Override
+    public void update(long value, long count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count must not be negative");
+        }
+        if (count == 0) {
+            return;
+        }
+        if (value > highestTrackableValue) {
+            switch (overflowResolver) {
+                case SKIP: return;
+                case PASS_THRU: break;
+                case REDUCE_TO_HIGHEST_TRACKABLE: value = highestTrackableValue;
+            }
+        }
+        accumulator.recordValueWithCountAndExpectedInterval(value, count, expectedIntervalBetweenValueSamples);
+    }
+
+    @Override
+    public void update(long[] values, int offset, int length) {
+        if (offset < 0 || length < 0 || length > values.length - offset) {
+            throw new IndexOutOfBoundsException("offset=" + offset + ", length=" + length + ", values.length=" + values.length);
+        }
+        if (length == 0) {
+            return;
+        }
+        if (overflowResolver != null && overflowResolver != OverflowResolver.PASS_THRU) {
+            int end = offset + length;
+            for (int i = offset; i < end; i++) {
+                if (values[i] > highestTrackableValue) {
+                    // rare case, the array provided by caller should not be modified, so resolve overflow in the copy
+                    long[] resolvedValues = resolveOverflow(values, offset, length);
+                    accumulator.recordValuesWithExpectedInterval(resolvedValues, 0, resolvedValues.length, expectedIntervalBetweenValueSamples);
+                    return;
+                }
+            }
+        }
+        accumulator.recordValuesWithExpectedInterval(values, offset, length, expectedIntervalBetweenValueSamples);
+    }
+
+    private long[] resolveOverflow(long[] values, int offset, int length) {
+        long[] resolvedValues = new long[length];
+        int resolvedLength = 0;
+        for (int i = offset; i < offset + length; i++) {
+            long value = values[i];
+            if (value > highestTrackableValue) {
+                if (overflowResolver == OverflowResolver.SKIP) {
+                    continue;
+                }
+                value = highestTrackableValue;
+            }
+            resolvedValues[resolvedLength++] = value;
+        }
+        return resolvedLength == length ? resolvedValues : Arrays.copyOf(resolvedValues, resolvedLength);
+    }
+
     @Override
     public Snapshot getSnapshot() {
         return accumulator.getSnapshot(snapshotTaker);
     }
 
+    Function<Histogram, Snapshot> getSnapshotTaker() {
+        return snapshotTaker;
+    }
+
     /**
      * Provide a (conservatively high) estimate of the Reservoir's total footprint in bytes
      *
@@ -91,23 +154,101 @@ class HdrReservoir implements Reservoir {
         return accumulator.getEstimatedFootprintInBytes();
     }
 
+    /**
+     * Provide a (conservatively high) estimate of the part of Reservoir's footprint which is allocated inside java heap
+     *
+     * @return a (conservatively high) estimate of the Reservoir's heap footprint in bytes
+     */
+    public int getEstimatedHeapFootprintInBytes() {
+        return accumulator.getEstimatedFootprintInBytes() - accumulator.getEstimatedOffHeapFootprintInBytes();
+    }
+
+    /**
+     * Provide a (conservatively high) estimate of the part of Reservoir's footprint which is allocated outside of java heap
+     *
+     * @return a (conservatively high) estimate of the Reservoir's off-heap footprint in bytes
+     */
+    public int getEstimatedOffHeapFootprintInBytes() {
+        return accumulator.getEstimatedOffHeapFootprintInBytes();
+    }
+
+    /**
+     * Releases the memory allocated outside of java heap.
+     */
+    @Override
+    public void close() {
+        accumulator.close();
+    }
+
     static Snapshot takeSmartSnapshot(final double[] predefinedQuantiles, Histogram histogram) {
+        // all statistics are collected by single ordered pass over the counts, instead of separate pass for each percentile, mean and deviation
+        final long totalCount = histogram.getTotalCount();
         final long max = histogram.getMaxValue();
         final long min = histogram.getMinValue();
-        final double mean = histogram.getMean();
-        final double median = histogram.getValueAtPercentile(50.0);
-        final double stdDeviation = histogram.getStdDeviation();
 
-        final double[] values = new double[predefinedQuantiles.length];
+        // predefined quantiles are sorted by HdrBuilder, so the counts at percentiles are not decreasing
+        final long[] countsAtQuantiles = new long[predefinedQuantiles.length];
         for (int i = 0; i < predefinedQuantiles.length; i++) {
-            double quantile = predefinedQuantiles[i];
-            double percentile = quantile * 100.0;
-            values[i] = histogram.getValueAtPercentile(percentile);
+            countsAtQuantiles[i] = countAtPercentile(predefinedQuantiles[i] * 100.0, totalCount);
+        }
+        final long countAtMedian = countAtPercentile(50.0, totalCount);
+
+        final double[] values = new double[predefinedQuantiles.length];
+        int nextQuantileIndex = 0;
+        double median = 0.0;
+        boolean medianFound = false;
+
+        double totalValue = 0.0;
+        // deviations are accumulated relatively to the first recorded value in order to reduce the cancellation error
+        long shift = 0;
+        boolean shiftFound = false;
+        double totalDeviation = 0.0;
+        double totalSquaredDeviation = 0.0;
+
+        for (HistogramIterationValue iterationValue : histogram.recordedValues()) {
+            long valueIteratedTo = iterationValue.getValueIteratedTo();
+            long count = iterationValue.getCountAtValueIteratedTo();
+            long totalCountToThisValue = iterationValue.getTotalCountToThisValue();
+
+            long medianEquivalentValue = histogram.medianEquivalentValue(valueIteratedTo);
+            totalValue += medianEquivalentValue * count;
+            if (!shiftFound) {
+                shift = medianEquivalentValue;
+                shiftFound = true;
+            }
+            double deviation = medianEquivalentValue - shift;
+            totalDeviation += deviation * count;
+            totalSquaredDeviation += deviation * deviation * count;
+
+            while (nextQuantileIndex < countsAtQuantiles.length && countsAtQuantiles[nextQuantileIndex] <= totalCountToThisValue) {
+                values[nextQuantileIndex] = predefinedQuantiles[nextQuantileIndex] == 0.0 ? histogram.lowestEquivalentValue(valueIteratedTo) : valueIteratedTo;
+                nextQuantileIndex++;
+            }
+            if (!medianFound && countAtMedian <= totalCountToThisValue) {
+                median = valueIteratedTo;
+                medianFound = true;
+            }
+        }
+
+        double mean = 0.0;
+        double stdDeviation = 0.0;
+        if (totalCount > 0) {
+            mean = totalValue / totalCount;
+            double meanDeviation = totalDeviation / totalCount;
+            double variance = totalSquaredDeviation / totalCount - meanDeviation * meanDeviation;
+            stdDeviation = Math.sqrt(Math.max(variance, 0.0));
         }
 
         return createSmartSnapshot(predefinedQuantiles, max, min, mean, median, stdDeviation, values);
     }
 
+    private static long countAtPercentile(double percentile, long totalCount) {
+        // the same rounding as in Histogram.getValueAtPercentile
+        double requestedPercentile = Math.min(percentile, 100.0);
+        long countAtPercentile = (long) (((requestedPercentile / 100.0) * totalCount) + 0.5);
+        return Math.max(countAtPercentile, 1);
+    }
+
     static Snapshot createSmartSnapshot(final double[] predefinedQuantiles, final long max, final long min, final double mean, final double median, final double stdDeviation, final double[] values) {
         return new Snapshot() {
             @Override
@@ -184,7 +325,7 @@ class HdrReservoir implements Reservoir {
         };
     }
 
-    private static Snapshot takeFullSnapshot(final Histogram histogram) {
+    private static Snapshot takeFullSnapshot(final Histogram histogram, final long countScale) {
         return new Snapshot() {
             @Override
             public double getValue(double quantile) {
@@ -208,7 +349,7 @@ class HdrReservoir implements Reservoir {
 
             @Override
             public int size() {
-                return (int) histogram.getTotalCount();
+                return (int) Math.min(Integer.MAX_VALUE, histogram.getTotalCount() / countScale);
             }
 
             @Override
@@ -234,8 +375,13 @@ class HdrReservoir implements Reservoir {
             @Override
             public void dump(OutputStream output) {
                 try (PrintWriter p = new PrintWriter(new OutputStreamWriter(output, UTF_8))) {
+                    // the remainder of scaled count is carried to next value, so total number of printed values is equal to size()
+                    long carry = 0;
                     for (HistogramIterationValue value : histogram.recordedValues()) {
-                        for (int j = 0; j < value.getCountAddedInThisIterationStep(); j++) {
+                        carry += value.getCountAddedInThisIterationStep();
+                        long repetitions = carry / countScale;
+                        carry -= repetitions * countScale;
+                        for (long j = 0; j < repetitions; j++) {
                             p.printf("%d%n", value.getValueIteratedTo());
                         }
                     }
@@ -0,0 +1,106 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * The timer which provides the snapshots for several rolling time windows, for example for last 1 minute, 5 minutes and 1 hour.
+ * Each value is recorded once into the shared ring of chunks, so the cost of recording and memory footprint
+ * are far less than cost of several timers which are updated together.
+ *
+ * <p> Example of usage:
+ * <pre><code>
+ *         MultiWindowTimer timer = new HdrBuilder().buildMultiWindowTimer(
+ *              Arrays.asList(Duration.ofMinutes(1), Duration.ofMinutes(5), Duration.ofHours(1)), 6);
+ *         timer.update(42, TimeUnit.MILLISECONDS);
+ *         Snapshot lastFiveMinutes = timer.getSnapshot(Duration.ofMinutes(5));
+ *     </code>
+ * </pre>
+ *
+ * @see HdrBuilder#buildMultiWindowTimer(List, int)
+ */
+public class MultiWindowTimer extends Timer {
+
+    private final List<Duration> rollingWindows;
+    private final Supplier<List<Snapshot>> snapshotsSupplier;
+    private final IntFunction<Snapshot> windowSnapshotSupplier;
+
+    MultiWindowTimer(Reservoir reservoir, List<Duration> rollingWindows, Supplier<List<Snapshot>> snapshotsSupplier, IntFunction<Snapshot> windowSnapshotSupplier) {
+        super(reservoir);
+        this.rollingWindows = rollingWindows;
+        this.snapshotsSupplier = snapshotsSupplier;
+        this.windowSnapshotSupplier = windowSnapshotSupplier;
+    }
+
+    /**
+     * @return the rolling windows in the same order as they were configured
+     */
+    public List<Duration> getRollingWindows() {
+        return rollingWindows;
+    }
+
+    /**
+     * Returns the snapshot for rolling window, only the histograms of this window are merged.
+     *
+     * @param rollingWindow one of configured rolling windows
+     *
+     * @return the snapshot for rolling window
+     *
+     * @throws IllegalArgumentException if {@code rollingWindow} was not configured
+     */
+    public Snapshot getSnapshot(Duration rollingWindow) {
+        int windowIndex = rollingWindows.indexOf(rollingWindow);
+        if (windowIndex < 0) {
+            throw new IllegalArgumentException("rollingWindow " + rollingWindow + " was not configured, configured windows are " + rollingWindows);
+        }
+        return windowSnapshotSupplier.apply(windowIndex);
+    }
+
+    /**
+     * Returns the snapshots for all rolling windows, all snapshots are taken at same moment.
+     *
+     * @return the snapshots in the same order as windows returned by {@link #getRollingWindows()}
+     */
+    public List<Snapshot> getSnapshots() {
+        return snapshotsSupplier.get();
+    }
+
+    /**
+     * @return the snapshot for first configured rolling window
+     */
+    @Override
+    public Snapshot getSnapshot() {
+        return windowSnapshotSupplier.apply(0);
+    }
+
+    @Override
+    public String toString() {
+        return "MultiWindowTimer{" +
+                "rollingWindows=" + rollingWindows +
+                '}';
+    }
+
+}
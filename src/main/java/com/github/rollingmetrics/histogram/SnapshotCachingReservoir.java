@@ -18,24 +18,34 @@
 package com.github.rollingmetrics.histogram;
 
 import com.github.rollingmetrics.util.CachingSupplier;
+import com.github.rollingmetrics.util.NonBlockingCachingSupplier;
 import com.github.rollingmetrics.util.Clock;
 import com.codahale.metrics.Reservoir;
 import com.codahale.metrics.Snapshot;
 import com.github.rollingmetrics.util.Clock;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
-class SnapshotCachingReservoir implements Reservoir {
+class SnapshotCachingReservoir implements BatchUpdatableReservoir, Closeable {
 
-    private final CachingSupplier<Snapshot> cachingSupplier;
-    private final Reservoir target;
+    private final Supplier<Snapshot> cachingSupplier;
+    private final BatchUpdatableReservoir target;
 
-    SnapshotCachingReservoir(Reservoir target, long cachingDurationMillis, Clock clock) {
+    SnapshotCachingReservoir(BatchUpdatableReservoir target, long cachingDurationMillis, Clock clock) {
         this.cachingSupplier = new CachingSupplier<>(cachingDurationMillis, clock, target::getSnapshot);
         this.target = target;
     }
 
+    SnapshotCachingReservoir(BatchUpdatableReservoir target, long cachingDurationMillis, long maxStalenessMillis, Clock clock, Executor backgroundExecutor) {
+        this.cachingSupplier = new NonBlockingCachingSupplier<>(cachingDurationMillis, maxStalenessMillis, clock, backgroundExecutor, target::getSnapshot);
+        this.target = target;
+    }
+
     @Override
     public int size() {
         throw new UnsupportedOperationException("You should not use this method https://github.com/dropwizard/metrics/issues/874");
@@ -46,9 +56,26 @@ class SnapshotCachingReservoir implements Reservoir {
         target.update(value);
     }
 
+    @Override
+    public void update(long value, long count) {
+        target.update(value, count);
+    }
+
+    @Override
+    public void update(long[] values, int offset, int length) {
+        target.update(values, offset, length);
+    }
+
     @Override
     public Snapshot getSnapshot() {
         return cachingSupplier.get();
     }
 
+    @Override
+    public void close() throws IOException {
+        if (target instanceof Closeable) {
+            ((Closeable) target).close();
+        }
+    }
+
 }
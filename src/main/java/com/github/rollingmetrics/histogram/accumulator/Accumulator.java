@@ -31,8 +31,33 @@ public interface Accumulator {
 
     void recordSingleValueWithExpectedInterval(long value, long expectedIntervalBetweenValueSamples);
 
+    /**
+     * Records the value {@code count} times, the expiration of chunk is checked once per invocation.
+     */
+    void recordValueWithCountAndExpectedInterval(long value, long count, long expectedIntervalBetweenValueSamples);
+
+    /**
+     * Records the batch of values, the expiration of chunk is checked once per batch.
+     */
+    void recordValuesWithExpectedInterval(long[] values, int offset, int length, long expectedIntervalBetweenValueSamples);
+
     Snapshot getSnapshot(Function<Histogram, Snapshot> snapshotTaker);
 
     int getEstimatedFootprintInBytes();
 
+    /**
+     * @return a (conservatively high) estimate of the part of footprint which is allocated outside of java heap,
+     * this part is already included to {@link #getEstimatedFootprintInBytes()}
+     */
+    default int getEstimatedOffHeapFootprintInBytes() {
+        return 0;
+    }
+
+    /**
+     * Releases the memory allocated outside of java heap, the accumulator should not be used after closing.
+     */
+    default void close() {
+        // nothing to release by default
+    }
+
 }
@@ -0,0 +1,219 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram.accumulator;
+
+import com.github.rollingmetrics.histogram.CountsWidth;
+import com.github.rollingmetrics.histogram.util.HistogramUtil;
+import com.github.rollingmetrics.histogram.util.Printer;
+import com.github.rollingmetrics.util.Clock;
+import com.github.rollingmetrics.util.ProactivelyRotatable;
+import com.github.rollingmetrics.util.ResilientExecutionUtil;
+import com.github.rollingmetrics.util.RotationScheduler;
+import com.github.rollingmetrics.util.RotationStaggering;
+import org.HdrHistogram.AbstractHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Is not a part of public API, this class just used as building block for accumulators which split the values by chunks.
+ * <p>
+ * The values of current chunk are recorded into one of two phases, the writer which first observed that current phase is expired
+ * switches the writers to another phase and submits the sealing of expired phase to background executor,
+ * or the phase is switched ahead of boundary by {@link RotationScheduler} when it is configured.
+ * How sealed phases are archived and reported to snapshot is defined by subclass.
+ */
+abstract class ChunkRingAccumulator implements Accumulator, ProactivelyRotatable {
+
+    final long intervalBetweenResettingMillis;
+    final long creationTimestamp;
+    final CountsWidth countsWidth;
+    final Clock clock;
+
+    final Phase left;
+    final Phase right;
+    final Phase[] phases;
+
+    // pessimistic footprints of histograms which have the same precision as recorder
+    final int oneHistogramPessimisticFootprint;
+    final int oneNarrowHistogramPessimisticFootprint;
+
+    private final Executor backgroundExecutor;
+    private final RotationScheduler rotationScheduler;
+    private final AtomicReference<Phase> currentPhaseRef;
+
+    ChunkRingAccumulator(Supplier<Recorder> recorderSupplier, long intervalBetweenResettingMillis, Clock clock, Executor backgroundExecutor, ChunkedAccumulatorSettings settings) {
+        this.countsWidth = settings.getCountsWidth();
+        this.intervalBetweenResettingMillis = intervalBetweenResettingMillis;
+        this.clock = clock;
+        long currentTimeMillis = clock.currentTimeMillis();
+        // the origin of intervals, it is the creation time when rotation is not staggered
+        this.creationTimestamp = settings.isStaggeredRotation() ? RotationStaggering.staggerOrigin(currentTimeMillis, intervalBetweenResettingMillis) : currentTimeMillis;
+        this.backgroundExecutor = backgroundExecutor;
+        this.rotationScheduler = settings.getRotationScheduler();
+
+        this.left = new Phase(recorderSupplier, creationTimestamp + intervalBetweenResettingMillis);
+        this.right = new Phase(recorderSupplier, Long.MAX_VALUE);
+        this.phases = new Phase[] {left, right};
+        this.currentPhaseRef = new AtomicReference<>(left);
+
+        // accumulated values of phase are stored with configured width, and each histogram with long counts has equivalent pessimistic estimation
+        this.oneNarrowHistogramPessimisticFootprint = left.totalsHistogram.getEstimatedFootprintInBytes();
+        this.oneHistogramPessimisticFootprint = HistogramUtil.createNonConcurrentCopy(left.intervalHistogram).getEstimatedFootprintInBytes();
+    }
+
+    /**
+     * Registers this accumulator in the rotation scheduler if it was configured,
+     * it should be invoked at the end of constructor of subclass, when all fields are initialized.
+     */
+    final void startProactiveRotation() {
+        if (rotationScheduler != null) {
+            rotationScheduler.register(this, creationTimestamp, intervalBetweenResettingMillis);
+        }
+    }
+
+    /**
+     * Moves the accumulated values of sealed phase to archive, it is invoked under the monitor of accumulator.
+     *
+     * @param totalsHistogram the values of sealed phase, the histogram is reset after this method returns
+     * @param sealTimestamp the time when phase was expired
+     */
+    abstract void archive(AbstractHistogram totalsHistogram, long sealTimestamp);
+
+    /**
+     * @return the index of archived chunk which should store the phase sealed at {@code sealTimestamp}
+     */
+    final int getArchiveIndex(long sealTimestamp, int archiveLength) {
+        long phaseNumber = (sealTimestamp - creationTimestamp) / intervalBetweenResettingMillis;
+        return (int) (phaseNumber - 1) % archiveLength;
+    }
+
+    @Override
+    public final void recordSingleValueWithExpectedInterval(long value, long expectedIntervalBetweenValueSamples) {
+        getRecorderForWriting().recordValueWithExpectedInterval(value, expectedIntervalBetweenValueSamples);
+    }
+
+    @Override
+    public final void recordValueWithCountAndExpectedInterval(long value, long count, long expectedIntervalBetweenValueSamples) {
+        HistogramUtil.recordValueWithCountAndExpectedInterval(getRecorderForWriting(), value, count, expectedIntervalBetweenValueSamples);
+    }
+
+    @Override
+    public final void recordValuesWithExpectedInterval(long[] values, int offset, int length, long expectedIntervalBetweenValueSamples) {
+        // the expiration of phase is checked once for whole batch
+        HistogramUtil.recordValuesWithExpectedInterval(getRecorderForWriting(), values, offset, length, expectedIntervalBetweenValueSamples);
+    }
+
+    private Recorder getRecorderForWriting() {
+        long currentTimeMillis = clock.currentTimeMillis();
+        Phase currentPhase = currentPhaseRef.get();
+        if (currentTimeMillis < currentPhase.proposedInvalidationTimestamp) {
+            return currentPhase.recorder;
+        }
+
+        Phase nextPhase = currentPhase == left ? right : left;
+        if (currentPhaseRef.compareAndSet(currentPhase, nextPhase)) {
+            // Current thread is responsible to rotate phases.
+            Runnable phaseRotation = () -> rotate(currentTimeMillis, currentPhase, nextPhase);
+            ResilientExecutionUtil.getInstance().execute(backgroundExecutor, phaseRotation);
+        }
+        // else another writer achieved progress and must submit rotation task to backgroundExecutor
+        return nextPhase.recorder;
+    }
+
+    @Override
+    public final void rotateAhead(long boundaryMillis) {
+        Phase currentPhase = currentPhaseRef.get();
+        if (currentPhase.proposedInvalidationTimestamp > boundaryMillis) {
+            // rotation of previous phase is in progress or current phase lasts after boundary
+            return;
+        }
+        Phase nextPhase = currentPhase == left ? right : left;
+        if (currentPhaseRef.compareAndSet(currentPhase, nextPhase)) {
+            // rotation is done by scheduler thread, the next phase starts exactly at boundary
+            rotate(boundaryMillis, currentPhase, nextPhase);
+        }
+    }
+
+    private synchronized void rotate(long currentTimeMillis, Phase currentPhase, Phase nextPhase) {
+        try {
+            currentPhase.accumulateRecordedValues();
+            archive(currentPhase.totalsHistogram, currentPhase.proposedInvalidationTimestamp);
+            currentPhase.totalsHistogram = HistogramUtil.reset(currentPhase.totalsHistogram, countsWidth);
+        } finally {
+            long millisSinceCreation = currentTimeMillis - creationTimestamp;
+            long intervalsSinceCreation = millisSinceCreation / intervalBetweenResettingMillis;
+            currentPhase.proposedInvalidationTimestamp = Long.MAX_VALUE;
+            nextPhase.proposedInvalidationTimestamp = creationTimestamp + (intervalsSinceCreation + 1) * intervalBetweenResettingMillis;
+        }
+    }
+
+    final String phasesToString() {
+        return ",\n creationTimestamp=" + creationTimestamp +
+                ",\n clock=" + clock +
+                ",\n left=" + left +
+                ",\n right=" + right +
+                ",\n currentPhase=" + (currentPhaseRef.get() == left? "left": "right");
+    }
+
+    final class Phase {
+
+        final Recorder recorder;
+        AbstractHistogram totalsHistogram;
+        Histogram intervalHistogram;
+        volatile long proposedInvalidationTimestamp;
+
+        Phase(Supplier<Recorder> recorderSupplier, long proposedInvalidationTimestamp) {
+            this.recorder = recorderSupplier.get();
+            this.intervalHistogram = recorder.getIntervalHistogram();
+            this.totalsHistogram = HistogramUtil.createNonConcurrentCopy(intervalHistogram, countsWidth);
+            this.proposedInvalidationTimestamp = proposedInvalidationTimestamp;
+        }
+
+        /**
+         * Moves the values from recorder to accumulated values of phase, it should be invoked under the monitor of accumulator.
+         */
+        void accumulateRecordedValues() {
+            intervalHistogram = recorder.getIntervalHistogram(intervalHistogram);
+            totalsHistogram = HistogramUtil.addSecondToFirstWithPromotion(totalsHistogram, intervalHistogram);
+        }
+
+        boolean isNeedToBeReportedToSnapshot(long currentTimeMillis, int numberArchivedChunks) {
+            long proposedInvalidationTimestampLocal = proposedInvalidationTimestamp;
+            if (proposedInvalidationTimestampLocal > currentTimeMillis) {
+                return true;
+            }
+            // the phase was not rotated yet, it should be reported in the same way as archived chunk
+            long correspondentChunkProposedInvalidationTimestamp = proposedInvalidationTimestampLocal + numberArchivedChunks * intervalBetweenResettingMillis;
+            return correspondentChunkProposedInvalidationTimestamp > currentTimeMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "Phase{" +
+                    "\n, proposedInvalidationTimestamp=" + proposedInvalidationTimestamp +
+                    "\n, totalsHistogram=" + Printer.histogramToString(totalsHistogram) +
+                    "\n, intervalHistogram=" + Printer.histogramToString(intervalHistogram) +
+                    "\n}";
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram.accumulator;
+
+import com.github.rollingmetrics.histogram.CountsWidth;
+import com.github.rollingmetrics.util.RotationScheduler;
+import com.github.rollingmetrics.util.RotationStaggering;
+
+import java.util.Objects;
+
+/**
+ * The optional settings of accumulators which split the values by chunks.
+ * The settings are read once during construction of accumulator, so modification of settings does not affect already constructed accumulators.
+ *
+ * @see ResetByChunksAccumulator
+ */
+public class ChunkedAccumulatorSettings {
+
+    static final int SAME_PRECISION_AS_RECORDER = -1;
+
+    private boolean offHeapArchive;
+    private CountsWidth countsWidth = CountsWidth.LONG;
+    private RotationScheduler rotationScheduler;
+    private boolean staggeredRotation;
+    private int numberOfArchiveSignificantValueDigits = SAME_PRECISION_AS_RECORDER;
+
+    /**
+     * If enabled then sealed chunks are stored in encoded form inside direct buffers, the buffers are released by {@link Accumulator#close()}.
+     *
+     * @return this settings instance
+     */
+    public ChunkedAccumulatorSettings withOffHeapArchive(boolean offHeapArchive) {
+        this.offHeapArchive = offHeapArchive;
+        return this;
+    }
+
+    /**
+     * @param countsWidth the width of counters for histograms which store the sealed chunks and accumulated values of current chunk
+     *
+     * @return this settings instance
+     */
+    public ChunkedAccumulatorSettings withCountsWidth(CountsWidth countsWidth) {
+        this.countsWidth = Objects.requireNonNull(countsWidth, "countsWidth should not be null");
+        return this;
+    }
+
+    /**
+     * @param rotationScheduler the scheduler which rotates chunks before boundaries of intervals instead of writers, can be null
+     *
+     * @return this settings instance
+     */
+    public ChunkedAccumulatorSettings withRotationScheduler(RotationScheduler rotationScheduler) {
+        this.rotationScheduler = rotationScheduler;
+        return this;
+    }
+
+    /**
+     * @param staggeredRotation if true then boundaries of chunks are shifted by random offset, see {@link RotationStaggering}
+     *
+     * @return this settings instance
+     */
+    public ChunkedAccumulatorSettings withStaggeredRotation(boolean staggeredRotation) {
+        this.staggeredRotation = staggeredRotation;
+        return this;
+    }
+
+    /**
+     * @param numberOfArchiveSignificantValueDigits the precision of sealed chunks, it is ignored when it is negative or not less than precision of recorder
+     *
+     * @return this settings instance
+     */
+    public ChunkedAccumulatorSettings withArchiveSignificantDigits(int numberOfArchiveSignificantValueDigits) {
+        this.numberOfArchiveSignificantValueDigits = numberOfArchiveSignificantValueDigits;
+        return this;
+    }
+
+    boolean isOffHeapArchive() {
+        return offHeapArchive;
+    }
+
+    CountsWidth getCountsWidth() {
+        return countsWidth;
+    }
+
+    RotationScheduler getRotationScheduler() {
+        return rotationScheduler;
+    }
+
+    boolean isStaggeredRotation() {
+        return staggeredRotation;
+    }
+
+    int getNumberOfArchiveSignificantValueDigits() {
+        return numberOfArchiveSignificantValueDigits;
+    }
+
+    @Override
+    public String toString() {
+        return "ChunkedAccumulatorSettings{" +
+                "offHeapArchive=" + offHeapArchive +
+                ", countsWidth=" + countsWidth +
+                ", rotationScheduler=" + rotationScheduler +
+                ", staggeredRotation=" + staggeredRotation +
+                ", numberOfArchiveSignificantValueDigits=" + numberOfArchiveSignificantValueDigits +
+                '}';
+    }
+
+}
@@ -0,0 +1,242 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram.accumulator;
+
+import com.codahale.metrics.Snapshot;
+import com.github.rollingmetrics.histogram.util.HistogramUtil;
+import com.github.rollingmetrics.histogram.util.Printer;
+import com.github.rollingmetrics.util.Clock;
+import com.github.rollingmetrics.util.ResilientExecutionUtil;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.WriterReaderPhaser;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The accumulator which implements forward decay, each value is recorded with weight {@code exp(alpha * (timestamp - landmark))},
+ * so recent values have exponentially higher weight than old values.
+ * This is the same semantic as provided by {@link com.codahale.metrics.ExponentiallyDecayingReservoir},
+ * but instead of sampling, all values are recorded to the histogram, and the weight of value is stored as its count.
+ * <p>
+ * The landmark is periodically moved forward and accumulated counts are renormalized, so counts never overflow,
+ * and the values which weight became negligible are evicted from histogram during renormalization.
+ * If renormalization did not happen in time, for example after long period without writes, the writer moves the landmark forward by itself before recording.
+ * The memory footprint does not depend on time or frequency of writes.
+ * <p>
+ * The writers are lock-free, they record into concurrent histogram inside critical section of {@link WriterReaderPhaser},
+ * the reader flips the histogram for writing and merges previous one into accumulated counts.
+ */
+public class ForwardDecayingAccumulator implements Accumulator {
+
+    // count which corresponds to weight 1.0, it defines the precision of weights
+    public static final long WEIGHT_SCALE = 1 << 10;
+    // landmark is moved forward when weight of new values reaches this bound
+    static final double RENORMALIZATION_WEIGHT = 1 << 16;
+    // the weight is never greater than this bound, writer moves landmark forward by itself instead of recording with greater weight
+    static final double MAX_WEIGHT = 1 << 24;
+
+    private final double alphaPerMillisecond;
+    private final long renormalizationIntervalMillis;
+    private final long maxWeightIntervalMillis;
+    private final Clock clock;
+    private final Executor backgroundExecutor;
+    private final WriterReaderPhaser phaser = new WriterReaderPhaser();
+    private final AtomicBoolean renormalizationScheduled = new AtomicBoolean();
+
+    private volatile Epoch currentEpoch;
+
+    // guarded by monitor of accumulator
+    private Histogram inactiveHistogram;
+    private Histogram accumulatedHistogram;
+
+    /**
+     * @param concurrentHistogramSupplier the supplier of histograms which are safe for concurrent writing
+     * @param alpha the exponential decay factor per second, the same as alpha of {@link com.codahale.metrics.ExponentiallyDecayingReservoir}
+     */
+    public ForwardDecayingAccumulator(Supplier<Histogram> concurrentHistogramSupplier, double alpha, Clock clock, Executor backgroundExecutor) {
+        this.alphaPerMillisecond = alpha / 1000.0;
+        this.renormalizationIntervalMillis = (long) (Math.log(RENORMALIZATION_WEIGHT) / alphaPerMillisecond);
+        this.maxWeightIntervalMillis = Math.max(1, (long) (Math.log(MAX_WEIGHT) / alphaPerMillisecond));
+        this.clock = clock;
+        this.backgroundExecutor = backgroundExecutor;
+
+        this.currentEpoch = new Epoch(concurrentHistogramSupplier.get(), clock.currentTimeMillis());
+        this.inactiveHistogram = concurrentHistogramSupplier.get();
+        this.accumulatedHistogram = HistogramUtil.createNonConcurrentCopy(inactiveHistogram);
+    }
+
+    @Override
+    public void recordSingleValueWithExpectedInterval(long value, long expectedIntervalBetweenValueSamples) {
+        recordValueWithCountAndExpectedInterval(value, 1, expectedIntervalBetweenValueSamples);
+    }
+
+    @Override
+    public void recordValueWithCountAndExpectedInterval(long value, long count, long expectedIntervalBetweenValueSamples) {
+        while (true) {
+            long millisSinceLandmark;
+            long criticalValue = phaser.writerCriticalSectionEnter();
+            try {
+                Epoch epoch = currentEpoch;
+                millisSinceLandmark = clock.currentTimeMillis() - epoch.landmarkMillis;
+                if (millisSinceLandmark < maxWeightIntervalMillis) {
+                    long weightedCount = multiplySaturated(getWeightedCount(millisSinceLandmark), count);
+                    HistogramUtil.recordValueWithCountAndExpectedInterval(epoch.histogram, value, weightedCount, expectedIntervalBetweenValueSamples);
+                }
+            } finally {
+                phaser.writerCriticalSectionExit(criticalValue);
+            }
+            if (millisSinceLandmark < maxWeightIntervalMillis) {
+                scheduleRenormalizationIfNeeded(millisSinceLandmark);
+                return;
+            }
+            moveLandmarkForward();
+        }
+    }
+
+    @Override
+    public void recordValuesWithExpectedInterval(long[] values, int offset, int length, long expectedIntervalBetweenValueSamples) {
+        while (true) {
+            long millisSinceLandmark;
+            long criticalValue = phaser.writerCriticalSectionEnter();
+            try {
+                Epoch epoch = currentEpoch;
+                millisSinceLandmark = clock.currentTimeMillis() - epoch.landmarkMillis;
+                if (millisSinceLandmark < maxWeightIntervalMillis) {
+                    // all values from batch are recorded with same weight
+                    long weightedCount = getWeightedCount(millisSinceLandmark);
+                    int end = offset + length;
+                    for (int i = offset; i < end; i++) {
+                        HistogramUtil.recordValueWithCountAndExpectedInterval(epoch.histogram, values[i], weightedCount, expectedIntervalBetweenValueSamples);
+                    }
+                }
+            } finally {
+                phaser.writerCriticalSectionExit(criticalValue);
+            }
+            if (millisSinceLandmark < maxWeightIntervalMillis) {
+                scheduleRenormalizationIfNeeded(millisSinceLandmark);
+                return;
+            }
+            moveLandmarkForward();
+        }
+    }
+
+    private long getWeightedCount(long millisSinceLandmark) {
+        // the caller guarantees that weight is not greater than MAX_WEIGHT
+        return (long) (WEIGHT_SCALE * Math.exp(alphaPerMillisecond * Math.max(millisSinceLandmark, 0)));
+    }
+
+    private static long multiplySaturated(long weightedCount, long count) {
+        if (count > Long.MAX_VALUE / weightedCount) {
+            return Long.MAX_VALUE;
+        }
+        return weightedCount * count;
+    }
+
+    private synchronized void moveLandmarkForward() {
+        // Renormalization did not happen in time, the counts are renormalized by writer, because it is impossible to record new value with correct weight.
+        // Landmark can be already moved by another thread, in this case flip is not needed.
+        if (clock.currentTimeMillis() - currentEpoch.landmarkMillis >= maxWeightIntervalMillis) {
+            flipAndAccumulate();
+        }
+    }
+
+    private void scheduleRenormalizationIfNeeded(long millisSinceLandmark) {
+        if (millisSinceLandmark >= renormalizationIntervalMillis && renormalizationScheduled.compareAndSet(false, true)) {
+            // Current thread is responsible to schedule renormalization, because snapshots can be never taken.
+            // It must be done outside of critical section, because renormalization waits for completion of writers
+            ResilientExecutionUtil.getInstance().execute(backgroundExecutor, this::renormalizeInBackground);
+        }
+    }
+
+    private synchronized void renormalizeInBackground() {
+        try {
+            flipAndAccumulate();
+        } finally {
+            renormalizationScheduled.set(false);
+        }
+    }
+
+    @Override
+    public final synchronized Snapshot getSnapshot(Function<Histogram, Snapshot> snapshotTaker) {
+        flipAndAccumulate();
+        return HistogramUtil.getSnapshot(accumulatedHistogram, snapshotTaker);
+    }
+
+    private void flipAndAccumulate() {
+        long currentTimeMillis = clock.currentTimeMillis();
+        Epoch previousEpoch = currentEpoch;
+        boolean renormalizationRequired = currentTimeMillis - previousEpoch.landmarkMillis >= renormalizationIntervalMillis;
+        long landmarkMillis = renormalizationRequired ? currentTimeMillis : previousEpoch.landmarkMillis;
+
+        phaser.readerLock();
+        try {
+            currentEpoch = new Epoch(inactiveHistogram, landmarkMillis);
+            // wait until all writers which can see previous epoch finish their writes
+            phaser.flipPhase();
+        } finally {
+            phaser.readerUnlock();
+        }
+        inactiveHistogram = previousEpoch.histogram;
+
+        // the counts of previous epoch are relative to previous landmark, as well as accumulated counts
+        HistogramUtil.addSecondToFirst(accumulatedHistogram, inactiveHistogram);
+        HistogramUtil.reset(inactiveHistogram);
+        if (renormalizationRequired) {
+            // drained inactive histogram is not visible to writers until next flip, so it is reused as temporary storage for renormalized counts
+            double factor = Math.exp(-alphaPerMillisecond * (landmarkMillis - previousEpoch.landmarkMillis));
+            HistogramUtil.addSecondToFirstWithWeight(inactiveHistogram, accumulatedHistogram, factor);
+            HistogramUtil.reset(accumulatedHistogram);
+            HistogramUtil.addSecondToFirst(accumulatedHistogram, inactiveHistogram);
+            HistogramUtil.reset(inactiveHistogram);
+        }
+    }
+
+    @Override
+    public int getEstimatedFootprintInBytes() {
+        // 2 - histogram for writing and inactive histogram
+        // 1 - accumulated histogram
+        return accumulatedHistogram.getEstimatedFootprintInBytes() * 3;
+    }
+
+    private static final class Epoch {
+
+        final Histogram histogram;
+        final long landmarkMillis;
+
+        Epoch(Histogram histogram, long landmarkMillis) {
+            this.histogram = histogram;
+            this.landmarkMillis = landmarkMillis;
+        }
+
+    }
+
+    @Override
+    public String toString() {
+        return "ForwardDecayingAccumulator{" +
+                "\nalphaPerMillisecond=" + alphaPerMillisecond +
+                ",\n renormalizationIntervalMillis=" + renormalizationIntervalMillis +
+                ",\n landmarkMillis=" + currentEpoch.landmarkMillis +
+                ",\n clock=" + clock +
+                ",\n accumulatedHistogram=" + Printer.histogramToString(accumulatedHistogram) +
+                '}';
+    }
+
+}
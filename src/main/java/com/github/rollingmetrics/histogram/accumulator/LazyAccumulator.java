@@ -0,0 +1,232 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram.accumulator;
+
+import com.codahale.metrics.Snapshot;
+import com.github.rollingmetrics.histogram.util.EmptySnapshot;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.WriterReaderPhaser;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The accumulator which does not allocate histograms until first value is recorded.
+ * <p>
+ * Before first write the snapshot is always {@link EmptySnapshot#INSTANCE}, the first writer creates the target accumulator and installs it via single CAS.
+ * Optionally, the target accumulator can be released when it became empty, for example when all values were evicted from the rolling window,
+ * and no values were recorded during configured number of consecutive snapshots.
+ */
+public class LazyAccumulator implements Accumulator {
+
+    // marks the short period when reader checks that target can be released, writers wait until this period ends
+    private static final Accumulator DEFLATING = new LazyAccumulator(() -> null, 0);
+
+    private final Supplier<Accumulator> targetSupplier;
+    private final int emptySnapshotsBeforeDeflation;
+    private final boolean deflationSupported;
+    private final AtomicReference<Accumulator> targetRef = new AtomicReference<>();
+    private final WriterReaderPhaser phaser;
+
+    private volatile boolean writtenSinceLastSnapshot;
+
+    // guarded by monitor of accumulator
+    private int emptySnapshots;
+
+    /**
+     * @param targetSupplier the supplier of accumulator which will be created at first write
+     * @param emptySnapshotsBeforeDeflation the number of consecutive empty snapshots without writes after which the target accumulator is released,
+     *                                      zero means that target is never released
+     */
+    public LazyAccumulator(Supplier<Accumulator> targetSupplier, int emptySnapshotsBeforeDeflation) {
+        if (emptySnapshotsBeforeDeflation < 0) {
+            throw new IllegalArgumentException("emptySnapshotsBeforeDeflation should not be negative");
+        }
+        this.targetSupplier = targetSupplier;
+        this.emptySnapshotsBeforeDeflation = emptySnapshotsBeforeDeflation;
+        this.deflationSupported = emptySnapshotsBeforeDeflation > 0;
+        this.phaser = deflationSupported ? new WriterReaderPhaser() : null;
+    }
+
+    @Override
+    public void recordSingleValueWithExpectedInterval(long value, long expectedIntervalBetweenValueSamples) {
+        if (!deflationSupported) {
+            getTargetForWriting().recordSingleValueWithExpectedInterval(value, expectedIntervalBetweenValueSamples);
+            return;
+        }
+        while (true) {
+            long criticalValue = phaser.writerCriticalSectionEnter();
+            try {
+                Accumulator target = getTargetForWriting();
+                if (target != DEFLATING) {
+                    target.recordSingleValueWithExpectedInterval(value, expectedIntervalBetweenValueSamples);
+                    markWritten();
+                    return;
+                }
+            } finally {
+                phaser.writerCriticalSectionExit(criticalValue);
+            }
+            Thread.yield();
+        }
+    }
+
+    @Override
+    public void recordValueWithCountAndExpectedInterval(long value, long count, long expectedIntervalBetweenValueSamples) {
+        if (!deflationSupported) {
+            getTargetForWriting().recordValueWithCountAndExpectedInterval(value, count, expectedIntervalBetweenValueSamples);
+            return;
+        }
+        while (true) {
+            long criticalValue = phaser.writerCriticalSectionEnter();
+            try {
+                Accumulator target = getTargetForWriting();
+                if (target != DEFLATING) {
+                    target.recordValueWithCountAndExpectedInterval(value, count, expectedIntervalBetweenValueSamples);
+                    markWritten();
+                    return;
+                }
+            } finally {
+                phaser.writerCriticalSectionExit(criticalValue);
+            }
+            Thread.yield();
+        }
+    }
+
+    @Override
+    public void recordValuesWithExpectedInterval(long[] values, int offset, int length, long expectedIntervalBetweenValueSamples) {
+        if (!deflationSupported) {
+            getTargetForWriting().recordValuesWithExpectedInterval(values, offset, length, expectedIntervalBetweenValueSamples);
+            return;
+        }
+        while (true) {
+            long criticalValue = phaser.writerCriticalSectionEnter();
+            try {
+                Accumulator target = getTargetForWriting();
+                if (target != DEFLATING) {
+                    target.recordValuesWithExpectedInterval(values, offset, length, expectedIntervalBetweenValueSamples);
+                    markWritten();
+                    return;
+                }
+            } finally {
+                phaser.writerCriticalSectionExit(criticalValue);
+            }
+            Thread.yield();
+        }
+    }
+
+    private Accumulator getTargetForWriting() {
+        Accumulator target = targetRef.get();
+        if (target != null) {
+            return target;
+        }
+        Accumulator inflated = targetSupplier.get();
+        if (targetRef.compareAndSet(null, inflated)) {
+            return inflated;
+        }
+        // another writer achieved progress
+        inflated.close();
+        return targetRef.get();
+    }
+
+    private void markWritten() {
+        // volatile read is enough in the steady state
+        if (!writtenSinceLastSnapshot) {
+            writtenSinceLastSnapshot = true;
+        }
+    }
+
+    @Override
+    public synchronized Snapshot getSnapshot(Function<Histogram, Snapshot> snapshotTaker) {
+        Accumulator target = targetRef.get();
+        if (target == null) {
+            return EmptySnapshot.INSTANCE;
+        }
+        if (!deflationSupported) {
+            return target.getSnapshot(snapshotTaker);
+        }
+
+        // the flag is cleared before snapshot, so any write which is not included to snapshot will be detected
+        writtenSinceLastSnapshot = false;
+        Snapshot snapshot = target.getSnapshot(snapshotTaker);
+        if (snapshot != EmptySnapshot.INSTANCE) {
+            emptySnapshots = 0;
+            return snapshot;
+        }
+        if (++emptySnapshots >= emptySnapshotsBeforeDeflation) {
+            emptySnapshots = 0;
+            deflate(target);
+        }
+        return snapshot;
+    }
+
+    private void deflate(Accumulator target) {
+        targetRef.set(DEFLATING);
+        phaser.readerLock();
+        try {
+            // wait until all writers which can see the target finish their writes
+            phaser.flipPhase();
+        } finally {
+            phaser.readerUnlock();
+        }
+        if (writtenSinceLastSnapshot) {
+            // the values were recorded after snapshot, so target is still in use
+            targetRef.set(target);
+        } else {
+            targetRef.set(null);
+            target.close();
+        }
+    }
+
+    /**
+     * @return true if target accumulator is allocated
+     */
+    public boolean isInflated() {
+        Accumulator target = targetRef.get();
+        return target != null && target != DEFLATING;
+    }
+
+    @Override
+    public int getEstimatedFootprintInBytes() {
+        Accumulator target = targetRef.get();
+        return target == null || target == DEFLATING ? 0 : target.getEstimatedFootprintInBytes();
+    }
+
+    @Override
+    public int getEstimatedOffHeapFootprintInBytes() {
+        Accumulator target = targetRef.get();
+        return target == null || target == DEFLATING ? 0 : target.getEstimatedOffHeapFootprintInBytes();
+    }
+
+    @Override
+    public synchronized void close() {
+        Accumulator target = targetRef.get();
+        if (target != null) {
+            target.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LazyAccumulator{" +
+                "\nemptySnapshotsBeforeDeflation=" + emptySnapshotsBeforeDeflation +
+                ",\n target=" + targetRef.get() +
+                '}';
+    }
+
+}
@@ -0,0 +1,217 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram.accumulator;
+
+import com.codahale.metrics.Snapshot;
+import com.github.rollingmetrics.histogram.util.HistogramUtil;
+import com.github.rollingmetrics.histogram.util.Printer;
+import com.github.rollingmetrics.util.Clock;
+import org.HdrHistogram.AbstractHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The accumulator which serves the snapshots for several rolling windows from the single ring of chunks,
+ * so each value is recorded once independent of count of windows.
+ * <p>
+ * Each window is served by the current chunk and {@code numberChunksPerWindow[i]} sealed chunks,
+ * it is the same semantic as {@link ResetByChunksAccumulator} with {@code numberHistoryChunks = numberChunksPerWindow[i]}.
+ * The ring has the length of longest window, and each window has own running aggregate of sealed chunks,
+ * so snapshot extraction merges constant number of histograms independent of count of chunks.
+ */
+public class MultiWindowAccumulator extends ChunkRingAccumulator {
+
+    private final int[] numberChunksPerWindow;
+    private final ArchivedHistogram[] archive;
+    private final Histogram[] windowAggregates;
+    private final Histogram[] temporarySnapshotHistograms;
+
+    /**
+     * @param numberChunksPerWindow the number of sealed chunks for each window, the windows are reported in the same order
+     * @param settings the optional settings of accumulator, they are read once by constructor.
+     *                 The off-heap archive and lower precision of archive are not supported by this accumulator and ignored
+     */
+    public MultiWindowAccumulator(Supplier<Recorder> recorderSupplier, int[] numberChunksPerWindow, long intervalBetweenResettingMillis, Clock clock, Executor backgroundExecutor, ChunkedAccumulatorSettings settings) {
+        super(recorderSupplier, intervalBetweenResettingMillis, clock, backgroundExecutor, settings);
+        this.numberChunksPerWindow = numberChunksPerWindow.clone();
+
+        int maxChunksPerWindow = 0;
+        for (int numberChunks : numberChunksPerWindow) {
+            maxChunksPerWindow = Math.max(maxChunksPerWindow, numberChunks);
+        }
+        this.archive = new ArchivedHistogram[maxChunksPerWindow];
+        for (int i = 0; i < archive.length; i++) {
+            archive[i] = new ArchivedHistogram(HistogramUtil.createNonConcurrentCopy(left.intervalHistogram, countsWidth));
+        }
+        this.windowAggregates = new Histogram[numberChunksPerWindow.length];
+        this.temporarySnapshotHistograms = new Histogram[numberChunksPerWindow.length];
+        for (int i = 0; i < numberChunksPerWindow.length; i++) {
+            windowAggregates[i] = HistogramUtil.createNonConcurrentCopy(left.intervalHistogram);
+            // each window needs own histogram, because full snapshots are backed by histogram
+            temporarySnapshotHistograms[i] = HistogramUtil.createNonConcurrentCopy(left.intervalHistogram);
+        }
+
+        startProactiveRotation();
+    }
+
+    @Override
+    void archive(AbstractHistogram totalsHistogram, long sealTimestamp) {
+        // move values from recorder to correspondent archived histogram
+        archive[getArchiveIndex(sealTimestamp, archive.length)].replaceBy(totalsHistogram, sealTimestamp);
+    }
+
+    /**
+     * Returns the snapshot of first window.
+     */
+    @Override
+    public final Snapshot getSnapshot(Function<Histogram, Snapshot> snapshotTaker) {
+        return getSnapshot(0, snapshotTaker);
+    }
+
+    /**
+     * Takes the snapshot of single window, the histograms of other windows are not merged.
+     *
+     * @param windowIndex the index of window in the same order as windows were configured
+     */
+    public final synchronized Snapshot getSnapshot(int windowIndex, Function<Histogram, Snapshot> snapshotTaker) {
+        long currentTimeMillis = clock.currentTimeMillis();
+        for (Phase phase : phases) {
+            phase.accumulateRecordedValues();
+        }
+        for (ArchivedHistogram archivedHistogram : archive) {
+            archivedHistogram.removeExpiredFromAggregate(windowIndex, currentTimeMillis);
+        }
+        return takeWindowSnapshot(windowIndex, currentTimeMillis, snapshotTaker);
+    }
+
+    /**
+     * Takes the snapshots of all windows.
+     *
+     * @return the snapshots in the same order as windows were configured
+     */
+    public final synchronized List<Snapshot> getSnapshots(Function<Histogram, Snapshot> snapshotTaker) {
+        long currentTimeMillis = clock.currentTimeMillis();
+
+        // the values from recorders are moved once independent of count of windows
+        for (Phase phase : phases) {
+            phase.accumulateRecordedValues();
+        }
+        // the aggregates already contain all sealed chunks, it is need only to exclude the chunks which expired since last rotation
+        for (ArchivedHistogram archivedHistogram : archive) {
+            for (int i = 0; i < numberChunksPerWindow.length; i++) {
+                archivedHistogram.removeExpiredFromAggregate(i, currentTimeMillis);
+            }
+        }
+
+        List<Snapshot> snapshots = new ArrayList<>(numberChunksPerWindow.length);
+        for (int i = 0; i < numberChunksPerWindow.length; i++) {
+            snapshots.add(takeWindowSnapshot(i, currentTimeMillis, snapshotTaker));
+        }
+        return snapshots;
+    }
+
+    private Snapshot takeWindowSnapshot(int windowIndex, long currentTimeMillis, Function<Histogram, Snapshot> snapshotTaker) {
+        Histogram temporarySnapshotHistogram = temporarySnapshotHistograms[windowIndex];
+        HistogramUtil.reset(temporarySnapshotHistogram);
+        for (Phase phase : phases) {
+            if (phase.isNeedToBeReportedToSnapshot(currentTimeMillis, numberChunksPerWindow[windowIndex])) {
+                HistogramUtil.addSecondToFirst(temporarySnapshotHistogram, phase.totalsHistogram);
+            }
+        }
+        HistogramUtil.addSecondToFirst(temporarySnapshotHistogram, windowAggregates[windowIndex]);
+        return HistogramUtil.getSnapshot(temporarySnapshotHistogram, snapshotTaker);
+    }
+
+    @Override
+    public int getEstimatedFootprintInBytes() {
+        // 4 - two recorders with two histogram
+        // 2 - two histogram for storing accumulated values from current phase
+        // 2 per window - aggregate of sealed chunks and temporary histogram used for snapshot extracting
+        return oneNarrowHistogramPessimisticFootprint * (archive.length + 2)
+                + oneHistogramPessimisticFootprint * (4 + 2 * numberChunksPerWindow.length);
+    }
+
+    private final class ArchivedHistogram {
+
+        private AbstractHistogram histogram;
+        // the timestamp when chunk was sealed, Long.MIN_VALUE means that chunk never was written
+        private long sealTimestamp = Long.MIN_VALUE;
+        // guarded by monitor of accumulator
+        private final boolean[] aggregated = new boolean[numberChunksPerWindow.length];
+
+        ArchivedHistogram(AbstractHistogram histogram) {
+            this.histogram = histogram;
+        }
+
+        void replaceBy(AbstractHistogram source, long sealTimestamp) {
+            for (int i = 0; i < aggregated.length; i++) {
+                removeFromAggregate(i);
+            }
+            histogram = HistogramUtil.reset(histogram, countsWidth);
+            histogram = HistogramUtil.addSecondToFirstWithPromotion(histogram, source);
+            this.sealTimestamp = sealTimestamp;
+            for (int i = 0; i < aggregated.length; i++) {
+                HistogramUtil.addSecondToFirst(windowAggregates[i], histogram);
+                aggregated[i] = true;
+            }
+        }
+
+        void removeExpiredFromAggregate(int windowIndex, long currentTimeMillis) {
+            if (aggregated[windowIndex] && sealTimestamp + numberChunksPerWindow[windowIndex] * intervalBetweenResettingMillis <= currentTimeMillis) {
+                removeFromAggregate(windowIndex);
+            }
+        }
+
+        private void removeFromAggregate(int windowIndex) {
+            if (aggregated[windowIndex]) {
+                aggregated[windowIndex] = false;
+                if (histogram.getTotalCount() > 0) {
+                    windowAggregates[windowIndex].subtract(histogram);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "ArchivedHistogram{" +
+                    "\n, sealTimestamp=" + sealTimestamp +
+                    "\n, aggregated=" + Arrays.toString(aggregated) +
+                    "\n, histogram=" + Printer.histogramToString(histogram) +
+                    "\n}";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MultiWindowAccumulator{" +
+                "\nintervalBetweenResettingMillis=" + intervalBetweenResettingMillis +
+                ",\n numberChunksPerWindow=" + Arrays.toString(numberChunksPerWindow) +
+                ",\n countsWidth=" + countsWidth +
+                ",\n archive=" + Printer.printArray(archive, "chunk") +
+                phasesToString() +
+                '}';
+    }
+
+}
@@ -17,103 +17,104 @@
 
 package com.github.rollingmetrics.histogram.accumulator;
 
-import com.github.rollingmetrics.histogram.util.HistogramUtil;
-import com.github.rollingmetrics.util.ResilientExecutionUtil;
-import com.github.rollingmetrics.util.Clock;
 import com.codahale.metrics.Snapshot;
-import com.github.rollingmetrics.histogram.util.Printer;
 import com.github.rollingmetrics.histogram.util.HistogramUtil;
+import com.github.rollingmetrics.histogram.util.Printer;
 import com.github.rollingmetrics.util.Clock;
+import com.github.rollingmetrics.util.DirectBufferUtil;
+import org.HdrHistogram.AbstractHistogram;
 import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
 import org.HdrHistogram.Recorder;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.Executor;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
-public class ResetByChunksAccumulator implements Accumulator {
+public class ResetByChunksAccumulator extends ChunkRingAccumulator {
+
+    // off-heap chunk is stored as pairs of value and count for each non-empty bucket
+    private static final int ENCODED_BUCKET_BYTES = 2 * Long.BYTES;
 
-    private final Executor backgroundExecutor;
-    private final long intervalBetweenResettingMillis;
-    private final long creationTimestamp;
     private final ArchivedHistogram[] archive;
+    private final Histogram archiveAggregate;
     private final boolean historySupported;
-    private final Clock clock;
+    private final boolean offHeapArchive;
+    private final int numberOfArchiveSignificantValueDigits;
+    private final boolean lowerPrecisionArchive;
+    private final Histogram archivalConversionHistogram;
     private final Histogram temporarySnapshotHistogram;
+    // always empty, subtracting of it restores minimum and maximum of aggregate after off-heap chunk was removed
+    private final Histogram emptyHistogram;
+    private final int oneEncodedChunkPessimisticFootprint;
+    private final int oneArchivedHistogramPessimisticFootprint;
+    private final int oneArchiveAggregatePessimisticFootprint;
 
-    private final Phase left;
-    private final Phase right;
-    private final Phase[] phases;
-    private final AtomicReference<Phase> currentPhaseRef;
+    // guarded by monitor of accumulator
+    private boolean closed;
 
     public ResetByChunksAccumulator(Supplier<Recorder> recorderSupplier, int numberHistoryChunks, long intervalBetweenResettingMillis, Clock clock, Executor backgroundExecutor) {
-        this.intervalBetweenResettingMillis = intervalBetweenResettingMillis;
-        this.clock = clock;
-        this.creationTimestamp = clock.currentTimeMillis();
-        this.backgroundExecutor = backgroundExecutor;
+        this(recorderSupplier, numberHistoryChunks, intervalBetweenResettingMillis, clock, backgroundExecutor, new ChunkedAccumulatorSettings());
+    }
 
-        this.left = new Phase(recorderSupplier, creationTimestamp + intervalBetweenResettingMillis);
-        this.right = new Phase(recorderSupplier, Long.MAX_VALUE);
-        this.phases = new Phase[] {left, right};
-        this.currentPhaseRef = new AtomicReference<>(left);
+    /**
+     * @param settings the optional settings of accumulator, they are read once by constructor
+     */
+    public ResetByChunksAccumulator(Supplier<Recorder> recorderSupplier, int numberHistoryChunks, long intervalBetweenResettingMillis, Clock clock, Executor backgroundExecutor, ChunkedAccumulatorSettings settings) {
+        super(recorderSupplier, intervalBetweenResettingMillis, clock, backgroundExecutor, settings);
+        this.offHeapArchive = settings.isOffHeapArchive();
 
+        int numberOfArchiveSignificantValueDigits = settings.getNumberOfArchiveSignificantValueDigits();
+        int recorderSignificantValueDigits = left.intervalHistogram.getNumberOfSignificantValueDigits();
+        this.lowerPrecisionArchive = numberOfArchiveSignificantValueDigits >= 0 && numberOfArchiveSignificantValueDigits < recorderSignificantValueDigits;
+        this.numberOfArchiveSignificantValueDigits = lowerPrecisionArchive ? numberOfArchiveSignificantValueDigits : recorderSignificantValueDigits;
+
+        // archived chunks are stored with configured width and precision
+        this.oneArchivedHistogramPessimisticFootprint = HistogramUtil.createNonConcurrentCopy(left.intervalHistogram, countsWidth, this.numberOfArchiveSignificantValueDigits).getEstimatedFootprintInBytes();
 
         this.historySupported = numberHistoryChunks > 0;
         if (historySupported) {
             this.archive = new ArchivedHistogram[numberHistoryChunks];
             for (int i = 0; i < numberHistoryChunks; i++) {
-                Histogram archivedHistogram = HistogramUtil.createNonConcurrentCopy(left.intervalHistogram);
+                AbstractHistogram archivedHistogram = offHeapArchive ? null : HistogramUtil.createNonConcurrentCopy(left.intervalHistogram, countsWidth, this.numberOfArchiveSignificantValueDigits);
                 this.archive[i] = new ArchivedHistogram(archivedHistogram, Long.MIN_VALUE);
             }
+            this.archiveAggregate = HistogramUtil.createNonConcurrentCopy(left.intervalHistogram, this.numberOfArchiveSignificantValueDigits);
+            this.oneArchiveAggregatePessimisticFootprint = archiveAggregate.getEstimatedFootprintInBytes();
+            // off-heap chunk is encoded from temporary histogram when precision of chunk differs from recorder
+            this.archivalConversionHistogram = offHeapArchive && lowerPrecisionArchive ? HistogramUtil.createNonConcurrentCopy(left.intervalHistogram, this.numberOfArchiveSignificantValueDigits) : null;
+            this.emptyHistogram = offHeapArchive ? new Histogram(1, 2, 0) : null;
+            this.oneEncodedChunkPessimisticFootprint = offHeapArchive ? getBucketCount(archiveAggregate) * ENCODED_BUCKET_BYTES : 0;
         } else {
             this.archive = null;
+            this.archiveAggregate = null;
+            this.archivalConversionHistogram = null;
+            this.emptyHistogram = null;
+            this.oneArchiveAggregatePessimisticFootprint = 0;
+            this.oneEncodedChunkPessimisticFootprint = 0;
         }
 
         this.temporarySnapshotHistogram = HistogramUtil.createNonConcurrentCopy(left.intervalHistogram);
-    }
 
-    @Override
-    public void recordSingleValueWithExpectedInterval(long value, long expectedIntervalBetweenValueSamples) {
-        long currentTimeMillis = clock.currentTimeMillis();
-        Phase currentPhase = currentPhaseRef.get();
-        if (currentTimeMillis < currentPhase.proposedInvalidationTimestamp) {
-            currentPhase.recorder.recordValueWithExpectedInterval(value, expectedIntervalBetweenValueSamples);
-            return;
-        }
-
-        Phase nextPhase = currentPhase == left ? right : left;
-        nextPhase.recorder.recordValueWithExpectedInterval(value, expectedIntervalBetweenValueSamples);
+        startProactiveRotation();
+    }
 
-        if (!currentPhaseRef.compareAndSet(currentPhase, nextPhase)) {
-            // another writer achieved progress and must submit rotation task to backgroundExecutor
-            return;
+    private static int getBucketCount(AbstractHistogram histogram) {
+        int bucketCount = 0;
+        for (HistogramIterationValue ignored : histogram.allValues()) {
+            bucketCount++;
         }
-
-        // Current thread is responsible to rotate phases.
-        Runnable phaseRotation = () -> rotate(currentTimeMillis, currentPhase, nextPhase);
-        ResilientExecutionUtil.getInstance().execute(backgroundExecutor, phaseRotation);
+        return bucketCount;
     }
 
-    private synchronized void rotate(long currentTimeMillis, Phase currentPhase, Phase nextPhase) {
-        try {
-            currentPhase.intervalHistogram = currentPhase.recorder.getIntervalHistogram(currentPhase.intervalHistogram);
-            HistogramUtil.addSecondToFirst(currentPhase.totalsHistogram, currentPhase.intervalHistogram);
-            if (historySupported) {
-                // move values from recorder to correspondent archived histogram
-                long currentPhaseNumber = (currentPhase.proposedInvalidationTimestamp - creationTimestamp) / intervalBetweenResettingMillis;
-                int correspondentArchiveIndex = (int) (currentPhaseNumber - 1) % archive.length;
-                ArchivedHistogram correspondentArchivedHistogram = archive[correspondentArchiveIndex];
-                HistogramUtil.reset(correspondentArchivedHistogram.histogram);
-                HistogramUtil.addSecondToFirst(correspondentArchivedHistogram.histogram, currentPhase.totalsHistogram);
-                correspondentArchivedHistogram.proposedInvalidationTimestamp = currentPhase.proposedInvalidationTimestamp + archive.length * intervalBetweenResettingMillis;
-            }
-            HistogramUtil.reset(currentPhase.totalsHistogram);
-        } finally {
-            long millisSinceCreation = currentTimeMillis - creationTimestamp;
-            long intervalsSinceCreation = millisSinceCreation / intervalBetweenResettingMillis;
-            currentPhase.proposedInvalidationTimestamp = Long.MAX_VALUE;
-            nextPhase.proposedInvalidationTimestamp = creationTimestamp + (intervalsSinceCreation + 1) * intervalBetweenResettingMillis;
+    @Override
+    void archive(AbstractHistogram totalsHistogram, long sealTimestamp) {
+        if (historySupported && !closed) {
+            // move values from recorder to correspondent archived histogram
+            ArchivedHistogram correspondentArchivedHistogram = archive[getArchiveIndex(sealTimestamp, archive.length)];
+            correspondentArchivedHistogram.replaceBy(totalsHistogram);
+            correspondentArchivedHistogram.proposedInvalidationTimestamp = sealTimestamp + archive.length * intervalBetweenResettingMillis;
         }
     }
 
@@ -123,18 +124,23 @@ public class ResetByChunksAccumulator implements Accumulator {
         long currentTimeMillis = clock.currentTimeMillis();
 
         for (Phase phase : phases) {
-            if (phase.isNeedToBeReportedToSnapshot(currentTimeMillis)) {
-                phase.intervalHistogram = phase.recorder.getIntervalHistogram(phase.intervalHistogram);
-                HistogramUtil.addSecondToFirst(phase.totalsHistogram, phase.intervalHistogram);
+            if (phase.isNeedToBeReportedToSnapshot(currentTimeMillis, historySupported ? archive.length : 0)) {
+                phase.accumulateRecordedValues();
                 HistogramUtil.addSecondToFirst(temporarySnapshotHistogram, phase.totalsHistogram);
             }
         }
-        if (historySupported) {
+        if (historySupported && !closed) {
+            // the aggregate already contains all sealed chunks, it is need only to exclude the chunks which expired since last rotation
             for (ArchivedHistogram archivedHistogram : archive) {
-                if (archivedHistogram.proposedInvalidationTimestamp > currentTimeMillis) {
-                    HistogramUtil.addSecondToFirst(temporarySnapshotHistogram, archivedHistogram.histogram);
+                if (archivedHistogram.proposedInvalidationTimestamp <= currentTimeMillis) {
+                    archivedHistogram.removeFromAggregate();
                 }
             }
+            if (lowerPrecisionArchive) {
+                HistogramUtil.addLowerPrecisionSecondToFirst(temporarySnapshotHistogram, archiveAggregate);
+            } else {
+                HistogramUtil.addSecondToFirst(temporarySnapshotHistogram, archiveAggregate);
+            }
         }
 
         return HistogramUtil.getSnapshot(temporarySnapshotHistogram, snapshotTaker);
@@ -142,80 +148,168 @@ public class ResetByChunksAccumulator implements Accumulator {
 
     @Override
     public int getEstimatedFootprintInBytes() {
-        // each histogram has equivalent pessimistic estimation
-        int oneHistogramPessimisticFootprint = temporarySnapshotHistogram.getEstimatedFootprintInBytes();
-
         // 4 - two recorders with two histogram
         // 2 - two histogram for storing accumulated values from current phase
         // 1 - temporary histogram used for snapshot extracting
-        return oneHistogramPessimisticFootprint * ((archive != null? archive.length : 0) + 4 + 2 + 1);
+        // 1 - aggregate of archived histograms
+        // 1 - histogram for conversion of off-heap chunks to lower precision
+        int onHeapArchiveLength = archive != null && !offHeapArchive ? archive.length : 0;
+        int heapFootprint = oneArchivedHistogramPessimisticFootprint * onHeapArchiveLength
+                + oneNarrowHistogramPessimisticFootprint * 2
+                + oneArchiveAggregatePessimisticFootprint * ((archive != null ? 1 : 0) + (archivalConversionHistogram != null ? 1 : 0))
+                + oneHistogramPessimisticFootprint * (4 + 1);
+        return heapFootprint + getEstimatedOffHeapFootprintInBytes();
+    }
+
+    @Override
+    public int getEstimatedOffHeapFootprintInBytes() {
+        if (archive == null || !offHeapArchive) {
+            return 0;
+        }
+        // encoded chunk never needs more than one pair of longs per bucket, the buffer can be bigger only if histogram was auto-resized
+        int footprint = 0;
+        for (ArchivedHistogram archivedHistogram : archive) {
+            ByteBuffer buffer = archivedHistogram.buffer;
+            footprint += buffer == null ? oneEncodedChunkPessimisticFootprint : Math.max(buffer.capacity(), oneEncodedChunkPessimisticFootprint);
+        }
+        return footprint;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (archive != null) {
+            for (ArchivedHistogram archivedHistogram : archive) {
+                archivedHistogram.release();
+            }
+        }
     }
 
     private final class ArchivedHistogram {
 
-        private final Histogram histogram;
+        // exactly one of histogram and buffer is used, depending on offHeapArchive flag
+        private AbstractHistogram histogram;
+        private ByteBuffer buffer;
+        private long encodedTotalCount;
+
         private volatile long proposedInvalidationTimestamp;
+        // guarded by monitor of accumulator
+        private boolean aggregated;
 
-        public ArchivedHistogram(Histogram histogram, long proposedInvalidationTimestamp) {
+        public ArchivedHistogram(AbstractHistogram histogram, long proposedInvalidationTimestamp) {
             this.histogram = histogram;
             this.proposedInvalidationTimestamp = proposedInvalidationTimestamp;
         }
 
-        @Override
-        public String toString() {
-            return "ArchivedHistogram{" +
-                    "\n, proposedInvalidationTimestamp=" + proposedInvalidationTimestamp +
-                    "\n, histogram=" + Printer.histogramToString(histogram) +
-                    "\n}";
+        void replaceBy(AbstractHistogram source) {
+            removeFromAggregate();
+            // the aggregate is updated by archived form of chunk, so removing of chunk from aggregate is exact even if precision was lowered
+            AbstractHistogram archived;
+            if (offHeapArchive) {
+                archived = convertToArchivePrecision(source);
+                encode(archived);
+            } else {
+                histogram = HistogramUtil.reset(histogram, countsWidth);
+                histogram = HistogramUtil.addSecondToFirstWithPromotion(histogram, source);
+                archived = histogram;
+            }
+            HistogramUtil.addSecondToFirst(archiveAggregate, archived);
+            aggregated = true;
         }
-    }
 
-    private final class Phase {
+        private AbstractHistogram convertToArchivePrecision(AbstractHistogram source) {
+            if (!lowerPrecisionArchive) {
+                return source;
+            }
+            HistogramUtil.reset(archivalConversionHistogram);
+            HistogramUtil.addSecondToFirst(archivalConversionHistogram, source);
+            return archivalConversionHistogram;
+        }
 
-        final Recorder recorder;
-        final Histogram totalsHistogram;
-        Histogram intervalHistogram;
-        volatile long proposedInvalidationTimestamp;
+        void removeFromAggregate() {
+            if (aggregated) {
+                aggregated = false;
+                if (offHeapArchive) {
+                    if (encodedTotalCount > 0) {
+                        subtractEncodedFromAggregate();
+                    }
+                } else if (histogram.getTotalCount() > 0) {
+                    archiveAggregate.subtract(histogram);
+                }
+            }
+        }
 
-        Phase(Supplier<Recorder> recorderSupplier, long proposedInvalidationTimestamp) {
-            this.recorder = recorderSupplier.get();
-            this.intervalHistogram = recorder.getIntervalHistogram();
-            this.totalsHistogram = intervalHistogram.copy();
-            this.proposedInvalidationTimestamp = proposedInvalidationTimestamp;
+        private void encode(AbstractHistogram source) {
+            encodedTotalCount = source.getTotalCount();
+            if (encodedTotalCount == 0) {
+                // nothing to store, empty chunk will be never subtracted
+                return;
+            }
+            int neededCapacity = 0;
+            for (HistogramIterationValue ignored : source.recordedValues()) {
+                neededCapacity += ENCODED_BUCKET_BYTES;
+            }
+            if (buffer == null || buffer.capacity() < neededCapacity) {
+                // histogram with auto-resizing can outgrow the buffer
+                DirectBufferUtil.free(buffer);
+                buffer = DirectBufferUtil.allocate(neededCapacity);
+            }
+            buffer.clear();
+            for (HistogramIterationValue iterationValue : source.recordedValues()) {
+                buffer.putLong(iterationValue.getValueIteratedTo());
+                buffer.putLong(iterationValue.getCountAtValueIteratedTo());
+            }
+            buffer.flip();
+        }
+
+        /**
+         * Subtracts the chunk from aggregate bucket by bucket directly from direct buffer,
+         * the aggregate has the same precision as archived chunk, so each value is subtracted from the same bucket where it was added.
+         */
+        private void subtractEncodedFromAggregate() {
+            for (int position = 0; position < buffer.limit(); position += ENCODED_BUCKET_BYTES) {
+                long value = buffer.getLong(position);
+                long count = buffer.getLong(position + Long.BYTES);
+                archiveAggregate.recordValueWithCount(value, -count);
+            }
+            // recording of negative counts does not update minimum and maximum, subtraction re-establishes them when they were removed
+            archiveAggregate.subtract(emptyHistogram);
+        }
+
+        void release() {
+            DirectBufferUtil.free(buffer);
+            buffer = null;
+            encodedTotalCount = 0;
+            aggregated = false;
         }
 
         @Override
         public String toString() {
-            return "Phase{" +
+            String content;
+            if (!offHeapArchive) {
+                content = Printer.histogramToString(histogram);
+            } else {
+                content = "offHeap{totalCount=" + encodedTotalCount + ", capacity=" + (buffer == null ? 0 : buffer.capacity()) + "}";
+            }
+            return "ArchivedHistogram{" +
                     "\n, proposedInvalidationTimestamp=" + proposedInvalidationTimestamp +
-                    "\n, totalsHistogram=" + (totalsHistogram != null? Printer.histogramToString(totalsHistogram): "null") +
-                    "\n, intervalHistogram=" + Printer.histogramToString(intervalHistogram) +
+                    "\n, histogram=" + content +
                     "\n}";
         }
-
-        boolean isNeedToBeReportedToSnapshot(long currentTimeMillis) {
-            long proposedInvalidationTimestampLocal = proposedInvalidationTimestamp;
-            if (proposedInvalidationTimestampLocal > currentTimeMillis) {
-                return true;
-            }
-            if (!historySupported) {
-                return false;
-            }
-            long correspondentChunkProposedInvalidationTimestamp = proposedInvalidationTimestampLocal + archive.length * intervalBetweenResettingMillis;
-            return correspondentChunkProposedInvalidationTimestamp > currentTimeMillis;
-        }
     }
 
     @Override
     public String toString() {
         return "ResetByChunksAccumulator{" +
                 "\nintervalBetweenResettingMillis=" + intervalBetweenResettingMillis +
-                ",\n creationTimestamp=" + creationTimestamp +
+                ",\n offHeapArchive=" + offHeapArchive +
+                ",\n countsWidth=" + countsWidth +
+                ",\n numberOfArchiveSignificantValueDigits=" + numberOfArchiveSignificantValueDigits +
                 (!historySupported ? "" : ",\n archive=" + Printer.printArray(archive, "chunk")) +
-                ",\n clock=" + clock +
-                ",\n left=" + left +
-                ",\n right=" + right +
-                ",\n currentPhase=" + (currentPhaseRef.get() == left? "left": "right") +
+                phasesToString() +
                 ",\n temporarySnapshotHistogram=" + Printer.histogramToString(temporarySnapshotHistogram)  +
                 '}';
     }
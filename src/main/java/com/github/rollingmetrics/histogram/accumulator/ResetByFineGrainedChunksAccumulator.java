@@ -0,0 +1,222 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram.accumulator;
+
+import com.codahale.metrics.Snapshot;
+import com.github.rollingmetrics.histogram.util.HistogramUtil;
+import com.github.rollingmetrics.histogram.util.Printer;
+import com.github.rollingmetrics.util.Clock;
+import org.HdrHistogram.AbstractHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The variant of {@link ResetByChunksAccumulator} which is designed for huge number of chunks.
+ *
+ * <p>
+ * The archived chunks are leafs of merge tree, each node of the tree stores pre-aggregated histogram for power-of-two range of chunks.
+ * So the snapshot merges O(log(numberChunks)) histograms instead of numberChunks, and the rotation of chunk updates O(log(numberChunks)) nodes.
+ * The price is memory footprint, which is about two times higher than footprint of {@link ResetByChunksAccumulator} with same number of chunks.
+ */
+public class ResetByFineGrainedChunksAccumulator extends ChunkRingAccumulator {
+
+    private final int numberChunks;
+    private final int numberOfArchiveSignificantValueDigits;
+    private final boolean lowerPrecisionArchive;
+    private final Histogram temporarySnapshotHistogram;
+    private final int oneNodePessimisticFootprint;
+
+    // implicit binary tree, children of node i are nodes 2*i and 2*i + 1, leaf of chunk i is node leafOffset + i.
+    // nodes which do not cover any chunk are never allocated and stay null
+    private final AbstractHistogram[] tree;
+    private final int leafOffset;
+    private final int allocatedNodes;
+
+    // guarded by monitor of accumulator
+    private long lastArchivedIntervalNumber = -1;
+
+    public ResetByFineGrainedChunksAccumulator(Supplier<Recorder> recorderSupplier, int numberChunks, long intervalBetweenResettingMillis, Clock clock, Executor backgroundExecutor) {
+        this(recorderSupplier, numberChunks, intervalBetweenResettingMillis, clock, backgroundExecutor, new ChunkedAccumulatorSettings());
+    }
+
+    /**
+     * @param settings the optional settings of accumulator, they are read once by constructor.
+     *                 The nodes of merge tree are stored with width and precision of archive, the off-heap archive is not supported by this accumulator
+     */
+    public ResetByFineGrainedChunksAccumulator(Supplier<Recorder> recorderSupplier, int numberChunks, long intervalBetweenResettingMillis, Clock clock, Executor backgroundExecutor, ChunkedAccumulatorSettings settings) {
+        super(recorderSupplier, intervalBetweenResettingMillis, clock, backgroundExecutor, settings);
+        if (settings.isOffHeapArchive()) {
+            throw new IllegalArgumentException("off-heap archive is not supported by merge tree of chunks");
+        }
+        this.numberChunks = numberChunks;
+
+        int numberOfArchiveSignificantValueDigits = settings.getNumberOfArchiveSignificantValueDigits();
+        int recorderSignificantValueDigits = left.intervalHistogram.getNumberOfSignificantValueDigits();
+        this.lowerPrecisionArchive = numberOfArchiveSignificantValueDigits >= 0 && numberOfArchiveSignificantValueDigits < recorderSignificantValueDigits;
+        this.numberOfArchiveSignificantValueDigits = lowerPrecisionArchive ? numberOfArchiveSignificantValueDigits : recorderSignificantValueDigits;
+
+        int leafOffset = 1;
+        while (leafOffset < numberChunks) {
+            leafOffset <<= 1;
+        }
+        this.leafOffset = leafOffset;
+        this.tree = new AbstractHistogram[leafOffset * 2];
+        int allocatedNodes = 0;
+        for (int node = 1; node < tree.length; node++) {
+            if (firstChunkOfNode(node) < numberChunks) {
+                tree[node] = HistogramUtil.createNonConcurrentCopy(left.intervalHistogram, countsWidth, this.numberOfArchiveSignificantValueDigits);
+                allocatedNodes++;
+            }
+        }
+        this.allocatedNodes = allocatedNodes;
+        this.oneNodePessimisticFootprint = tree[1].getEstimatedFootprintInBytes();
+
+        this.temporarySnapshotHistogram = HistogramUtil.createNonConcurrentCopy(left.intervalHistogram);
+
+        startProactiveRotation();
+    }
+
+    @Override
+    void archive(AbstractHistogram totalsHistogram, long sealTimestamp) {
+        long intervalNumber = (sealTimestamp - creationTimestamp) / intervalBetweenResettingMillis - 1;
+        // the chunks of intervals in which nothing was recorded still contain the values from previous cycle
+        if (intervalNumber - lastArchivedIntervalNumber > numberChunks) {
+            for (int node = 1; node < tree.length; node++) {
+                if (tree[node] != null) {
+                    tree[node] = HistogramUtil.reset(tree[node], countsWidth);
+                }
+            }
+        } else {
+            for (long skippedInterval = lastArchivedIntervalNumber + 1; skippedInterval < intervalNumber; skippedInterval++) {
+                int leaf = leafOffset + (int) (skippedInterval % numberChunks);
+                if (tree[leaf].getTotalCount() > 0) {
+                    tree[leaf] = HistogramUtil.reset(tree[leaf], countsWidth);
+                    updateAncestors(leaf);
+                }
+            }
+        }
+
+        // move values from recorder to correspondent leaf
+        int leaf = leafOffset + (int) (intervalNumber % numberChunks);
+        tree[leaf] = HistogramUtil.reset(tree[leaf], countsWidth);
+        tree[leaf] = HistogramUtil.addSecondToFirstWithPromotion(tree[leaf], totalsHistogram);
+        updateAncestors(leaf);
+        lastArchivedIntervalNumber = intervalNumber;
+    }
+
+    private void updateAncestors(int leaf) {
+        for (int node = leaf >> 1; node >= 1; node >>= 1) {
+            tree[node] = HistogramUtil.reset(tree[node], countsWidth);
+            tree[node] = HistogramUtil.addSecondToFirstWithPromotion(tree[node], tree[2 * node]);
+            AbstractHistogram right = tree[2 * node + 1];
+            if (right != null) {
+                tree[node] = HistogramUtil.addSecondToFirstWithPromotion(tree[node], right);
+            }
+        }
+    }
+
+    @Override
+    public final synchronized Snapshot getSnapshot(Function<Histogram, Snapshot> snapshotTaker) {
+        HistogramUtil.reset(temporarySnapshotHistogram);
+        long currentTimeMillis = clock.currentTimeMillis();
+
+        for (Phase phase : phases) {
+            if (phase.isNeedToBeReportedToSnapshot(currentTimeMillis, numberChunks)) {
+                phase.accumulateRecordedValues();
+                HistogramUtil.addSecondToFirst(temporarySnapshotHistogram, phase.totalsHistogram);
+            }
+        }
+
+        if (lastArchivedIntervalNumber >= 0) {
+            // archived chunk of interval N is valid until the end of interval N + numberChunks
+            long currentIntervalNumber = (currentTimeMillis - creationTimestamp) / intervalBetweenResettingMillis;
+            long oldestValidIntervalNumber = Math.max(0, Math.max(currentIntervalNumber - numberChunks, lastArchivedIntervalNumber - numberChunks + 1));
+            if (oldestValidIntervalNumber <= lastArchivedIntervalNumber) {
+                int fromChunk = (int) (oldestValidIntervalNumber % numberChunks);
+                int toChunk = (int) (lastArchivedIntervalNumber % numberChunks);
+                if (fromChunk <= toChunk) {
+                    addRangeToSnapshot(fromChunk, toChunk);
+                } else {
+                    addRangeToSnapshot(fromChunk, numberChunks - 1);
+                    addRangeToSnapshot(0, toChunk);
+                }
+            }
+        }
+
+        return HistogramUtil.getSnapshot(temporarySnapshotHistogram, snapshotTaker);
+    }
+
+    private void addRangeToSnapshot(int fromChunkInclusive, int toChunkInclusive) {
+        int from = leafOffset + fromChunkInclusive;
+        int to = leafOffset + toChunkInclusive + 1;
+        while (from < to) {
+            if ((from & 1) == 1) {
+                addNodeToSnapshot(tree[from++]);
+            }
+            if ((to & 1) == 1) {
+                addNodeToSnapshot(tree[--to]);
+            }
+            from >>= 1;
+            to >>= 1;
+        }
+    }
+
+    private void addNodeToSnapshot(AbstractHistogram node) {
+        if (lowerPrecisionArchive) {
+            HistogramUtil.addLowerPrecisionSecondToFirst(temporarySnapshotHistogram, node);
+        } else {
+            HistogramUtil.addSecondToFirst(temporarySnapshotHistogram, node);
+        }
+    }
+
+    private int firstChunkOfNode(int node) {
+        int first = node;
+        while (first < leafOffset) {
+            first <<= 1;
+        }
+        return first - leafOffset;
+    }
+
+    @Override
+    public int getEstimatedFootprintInBytes() {
+        // 4 - two recorders with two histogram
+        // 2 - two histogram for storing accumulated values from current phase
+        // 1 - temporary histogram used for snapshot extracting
+        return oneNodePessimisticFootprint * allocatedNodes
+                + oneNarrowHistogramPessimisticFootprint * 2
+                + oneHistogramPessimisticFootprint * (4 + 1);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ResetByFineGrainedChunksAccumulator{" +
+                "\nintervalBetweenResettingMillis=" + intervalBetweenResettingMillis +
+                ",\n numberChunks=" + numberChunks +
+                ",\n countsWidth=" + countsWidth +
+                ",\n numberOfArchiveSignificantValueDigits=" + numberOfArchiveSignificantValueDigits +
+                ",\n lastArchivedIntervalNumber=" + lastArchivedIntervalNumber +
+                phasesToString() +
+                ",\n mergeTreeRoot=" + Printer.histogramToString(tree[1])  +
+                '}';
+    }
+
+}
@@ -41,6 +41,16 @@ public class ResetOnSnapshotAccumulator implements Accumulator {
         recorder.recordValueWithExpectedInterval(value, expectedIntervalBetweenValueSamples);
     }
 
+    @Override
+    public void recordValueWithCountAndExpectedInterval(long value, long count, long expectedIntervalBetweenValueSamples) {
+        HistogramUtil.recordValueWithCountAndExpectedInterval(recorder, value, count, expectedIntervalBetweenValueSamples);
+    }
+
+    @Override
+    public void recordValuesWithExpectedInterval(long[] values, int offset, int length, long expectedIntervalBetweenValueSamples) {
+        HistogramUtil.recordValuesWithExpectedInterval(recorder, values, offset, length, expectedIntervalBetweenValueSamples);
+    }
+
     @Override
     synchronized public final Snapshot getSnapshot(Function<Histogram, Snapshot> snapshotTaker) {
         intervalHistogram = recorder.getIntervalHistogram(intervalHistogram);
@@ -0,0 +1,184 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram.accumulator;
+
+import com.codahale.metrics.Snapshot;
+import com.github.rollingmetrics.histogram.util.HistogramUtil;
+import com.github.rollingmetrics.histogram.util.Printer;
+import com.github.rollingmetrics.util.Clock;
+import org.HdrHistogram.AbstractHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The accumulator which has the same structure as {@link ResetByChunksAccumulator},
+ * but instead of dropping the oldest chunk at once, it smoothly decays the oldest chunk in the same way as
+ * {@link com.github.rollingmetrics.counter.SmoothlyDecayingRollingCounter} does.
+ * <p>
+ * The value recorded to accumulator takes affect with full weight during {@code numberChunks * intervalBetweenResettingMillis},
+ * then during next {@code intervalBetweenResettingMillis} its weight linearly decreases to zero.
+ * The counts of decaying chunk are multiplied by the remaining fraction directly during merge into snapshot histogram,
+ * so there are no temporary histograms allocated.
+ */
+public class SmoothlyDecayingByChunksAccumulator extends ChunkRingAccumulator {
+
+    private final ArchivedHistogram[] archive;
+    private final Histogram archiveAggregate;
+    private final Histogram temporarySnapshotHistogram;
+
+    /**
+     * @param settings the optional settings of accumulator, they are read once by constructor.
+     *                 The off-heap archive and lower precision of archive are not supported by this accumulator and ignored
+     */
+    public SmoothlyDecayingByChunksAccumulator(Supplier<Recorder> recorderSupplier, int numberChunks, long intervalBetweenResettingMillis, Clock clock, Executor backgroundExecutor, ChunkedAccumulatorSettings settings) {
+        super(recorderSupplier, intervalBetweenResettingMillis, clock, backgroundExecutor, settings);
+
+        this.archive = new ArchivedHistogram[numberChunks];
+        for (int i = 0; i < numberChunks; i++) {
+            this.archive[i] = new ArchivedHistogram(HistogramUtil.createNonConcurrentCopy(left.intervalHistogram, countsWidth));
+        }
+        this.archiveAggregate = HistogramUtil.createNonConcurrentCopy(left.intervalHistogram);
+        this.temporarySnapshotHistogram = HistogramUtil.createNonConcurrentCopy(left.intervalHistogram);
+
+        startProactiveRotation();
+    }
+
+    @Override
+    void archive(AbstractHistogram totalsHistogram, long sealTimestamp) {
+        // move values from recorder to correspondent archived histogram
+        archive[getArchiveIndex(sealTimestamp, archive.length)].replaceBy(totalsHistogram, sealTimestamp);
+    }
+
+    @Override
+    public final synchronized Snapshot getSnapshot(Function<Histogram, Snapshot> snapshotTaker) {
+        HistogramUtil.reset(temporarySnapshotHistogram);
+        long currentTimeMillis = clock.currentTimeMillis();
+
+        for (Phase phase : phases) {
+            phase.accumulateRecordedValues();
+            long proposedInvalidationTimestamp = phase.proposedInvalidationTimestamp;
+            if (proposedInvalidationTimestamp > currentTimeMillis) {
+                HistogramUtil.addSecondToFirst(temporarySnapshotHistogram, phase.totalsHistogram);
+            } else {
+                // the phase was not rotated yet, it should be reported in the same way as archived chunk
+                addWithDecay(phase.totalsHistogram, proposedInvalidationTimestamp, currentTimeMillis);
+            }
+        }
+
+        // the aggregate contains only chunks with full weight
+        for (ArchivedHistogram archivedHistogram : archive) {
+            if (archivedHistogram.aggregated && archivedHistogram.isStartedToDecay(currentTimeMillis)) {
+                archivedHistogram.removeFromAggregate();
+            }
+        }
+        HistogramUtil.addSecondToFirst(temporarySnapshotHistogram, archiveAggregate);
+        for (ArchivedHistogram archivedHistogram : archive) {
+            if (!archivedHistogram.aggregated) {
+                addWithDecay(archivedHistogram.histogram, archivedHistogram.sealTimestamp, currentTimeMillis);
+            }
+        }
+
+        return HistogramUtil.getSnapshot(temporarySnapshotHistogram, snapshotTaker);
+    }
+
+    private void addWithDecay(AbstractHistogram chunk, long sealTimestamp, long currentTimeMillis) {
+        if (chunk.getTotalCount() == 0) {
+            return;
+        }
+        long beforeInvalidateMillis = sealTimestamp + archive.length * intervalBetweenResettingMillis - currentTimeMillis;
+        if (beforeInvalidateMillis <= 0) {
+            return;
+        }
+        if (beforeInvalidateMillis >= intervalBetweenResettingMillis) {
+            temporarySnapshotHistogram.add(chunk);
+            return;
+        }
+        double decayingCoefficient = (double) beforeInvalidateMillis / (double) intervalBetweenResettingMillis;
+        HistogramUtil.addSecondToFirstWithWeight(temporarySnapshotHistogram, chunk, decayingCoefficient);
+    }
+
+    @Override
+    public int getEstimatedFootprintInBytes() {
+        // 4 - two recorders with two histogram
+        // 2 - two histogram for storing accumulated values from current phase
+        // 1 - temporary histogram used for snapshot extracting
+        // 1 - aggregate of archived histograms
+        return oneNarrowHistogramPessimisticFootprint * (archive.length + 2)
+                + oneHistogramPessimisticFootprint * (1 + 4 + 1);
+    }
+
+    private final class ArchivedHistogram {
+
+        private AbstractHistogram histogram;
+        // the timestamp when chunk was sealed, Long.MIN_VALUE means that chunk never was written
+        private long sealTimestamp = Long.MIN_VALUE;
+        // guarded by monitor of accumulator
+        private boolean aggregated;
+
+        ArchivedHistogram(AbstractHistogram histogram) {
+            this.histogram = histogram;
+        }
+
+        void replaceBy(AbstractHistogram source, long sealTimestamp) {
+            removeFromAggregate();
+            histogram = HistogramUtil.reset(histogram, countsWidth);
+            histogram = HistogramUtil.addSecondToFirstWithPromotion(histogram, source);
+            this.sealTimestamp = sealTimestamp;
+            HistogramUtil.addSecondToFirst(archiveAggregate, histogram);
+            aggregated = true;
+        }
+
+        boolean isStartedToDecay(long currentTimeMillis) {
+            return sealTimestamp + (archive.length - 1) * intervalBetweenResettingMillis <= currentTimeMillis;
+        }
+
+        void removeFromAggregate() {
+            if (aggregated) {
+                aggregated = false;
+                if (histogram.getTotalCount() > 0) {
+                    archiveAggregate.subtract(histogram);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "ArchivedHistogram{" +
+                    "\n, sealTimestamp=" + sealTimestamp +
+                    "\n, aggregated=" + aggregated +
+                    "\n, histogram=" + Printer.histogramToString(histogram) +
+                    "\n}";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SmoothlyDecayingByChunksAccumulator{" +
+                "\nintervalBetweenResettingMillis=" + intervalBetweenResettingMillis +
+                ",\n countsWidth=" + countsWidth +
+                ",\n archive=" + Printer.printArray(archive, "chunk") +
+                phasesToString() +
+                ",\n temporarySnapshotHistogram=" + Printer.histogramToString(temporarySnapshotHistogram)  +
+                '}';
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram.accumulator;
+
+import com.codahale.metrics.Snapshot;
+import com.github.rollingmetrics.histogram.util.HistogramUtil;
+import com.github.rollingmetrics.histogram.util.Printer;
+import org.HdrHistogram.Histogram;
+
+import java.util.Iterator;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The accumulator in which each writer thread records into its own non-concurrent {@link Histogram},
+ * this is alternative for {@link org.HdrHistogram.Recorder} which contention-free for high number of writer threads.
+ *
+ * <p>
+ * Writers never execute atomic read-modify-write instructions on the hot path, each writer publishes only two volatile stores to its own counters.
+ * Snapshot flips the active histogram of each writer, waits until writer leaves the critical section which could observe the previous histogram,
+ * and merges the previous histogram into accumulated histogram.
+ * The histograms of dead threads are merged and unregistered at snapshot time.
+ */
+public class ThreadLocalAccumulator implements Accumulator {
+
+    private final Supplier<Histogram> histogramSupplier;
+    private final boolean resetOnSnapshot;
+    private final Histogram accumulatedHistogram;
+    private final ThreadLocal<Writer> writers;
+    private final CopyOnWriteArrayList<Writer> registeredWriters = new CopyOnWriteArrayList<>();
+
+    public ThreadLocalAccumulator(Supplier<Histogram> histogramSupplier, boolean resetOnSnapshot) {
+        this.histogramSupplier = histogramSupplier;
+        this.resetOnSnapshot = resetOnSnapshot;
+        this.accumulatedHistogram = histogramSupplier.get();
+        this.writers = ThreadLocal.withInitial(this::registerWriter);
+    }
+
+    @Override
+    public void recordSingleValueWithExpectedInterval(long value, long expectedIntervalBetweenValueSamples) {
+        writers.get().record(value, expectedIntervalBetweenValueSamples);
+    }
+
+    @Override
+    public void recordValueWithCountAndExpectedInterval(long value, long count, long expectedIntervalBetweenValueSamples) {
+        writers.get().recordWithCount(value, count, expectedIntervalBetweenValueSamples);
+    }
+
+    @Override
+    public void recordValuesWithExpectedInterval(long[] values, int offset, int length, long expectedIntervalBetweenValueSamples) {
+        writers.get().recordBatch(values, offset, length, expectedIntervalBetweenValueSamples);
+    }
+
+    @Override
+    public final synchronized Snapshot getSnapshot(Function<Histogram, Snapshot> snapshotTaker) {
+        if (resetOnSnapshot) {
+            HistogramUtil.reset(accumulatedHistogram);
+        }
+        Iterator<Writer> iterator = registeredWriters.iterator();
+        while (iterator.hasNext()) {
+            Writer writer = iterator.next();
+            if (writer.owner.isAlive()) {
+                writer.flipAndMergeTo(accumulatedHistogram);
+            } else {
+                // termination of thread happens-before isAlive returns false, so it is safe to read its histogram without flipping
+                HistogramUtil.addSecondToFirst(accumulatedHistogram, writer.active);
+                registeredWriters.remove(writer);
+            }
+        }
+        return HistogramUtil.getSnapshot(accumulatedHistogram, snapshotTaker);
+    }
+
+    @Override
+    public int getEstimatedFootprintInBytes() {
+        // 2 - two histograms per each writer
+        // 1 - accumulated histogram
+        return accumulatedHistogram.getEstimatedFootprintInBytes() * (registeredWriters.size() * 2 + 1);
+    }
+
+    int getWriterCount() {
+        return registeredWriters.size();
+    }
+
+    private Writer registerWriter() {
+        Writer writer = new Writer(Thread.currentThread(), histogramSupplier.get(), histogramSupplier.get());
+        registeredWriters.add(writer);
+        return writer;
+    }
+
+    private static final class Writer {
+
+        final Thread owner;
+        volatile Histogram active;
+        Histogram inactive;
+
+        // both counters are modified only by owner thread, so volatile store is enough instead of atomic increment
+        volatile long enterCount;
+        volatile long exitCount;
+
+        Writer(Thread owner, Histogram active, Histogram inactive) {
+            this.owner = owner;
+            this.active = active;
+            this.inactive = inactive;
+        }
+
+        void record(long value, long expectedIntervalBetweenValueSamples) {
+            long enter = enterCount + 1;
+            // volatile store followed by volatile load of active histogram, so reader which flipped the histogram
+            // either observes this store or this writer observes the flipped histogram
+            enterCount = enter;
+            try {
+                active.recordValueWithExpectedInterval(value, expectedIntervalBetweenValueSamples);
+            } finally {
+                exitCount = enter;
+            }
+        }
+
+        void recordWithCount(long value, long count, long expectedIntervalBetweenValueSamples) {
+            long enter = enterCount + 1;
+            enterCount = enter;
+            try {
+                HistogramUtil.recordValueWithCountAndExpectedInterval(active, value, count, expectedIntervalBetweenValueSamples);
+            } finally {
+                exitCount = enter;
+            }
+        }
+
+        void recordBatch(long[] values, int offset, int length, long expectedIntervalBetweenValueSamples) {
+            // whole batch is recorded inside single critical section
+            long enter = enterCount + 1;
+            enterCount = enter;
+            try {
+                HistogramUtil.recordValuesWithExpectedInterval(active, values, offset, length, expectedIntervalBetweenValueSamples);
+            } finally {
+                exitCount = enter;
+            }
+        }
+
+        void flipAndMergeTo(Histogram target) {
+            Histogram previous = active;
+            active = inactive;
+            long enter = enterCount;
+            while (exitCount < enter) {
+                // writer is in the middle of recording to previous histogram
+                Thread.yield();
+            }
+            HistogramUtil.addSecondToFirst(target, previous);
+            HistogramUtil.reset(previous);
+            inactive = previous;
+        }
+
+        @Override
+        public String toString() {
+            return "Writer{" +
+                    "owner=" + owner.getName() +
+                    ", active=" + Printer.histogramToString(active) +
+                    '}';
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ThreadLocalAccumulator{" +
+                "\nresetOnSnapshot=" + resetOnSnapshot +
+                ",\n writers=" + registeredWriters +
+                ",\n accumulatedHistogram=" + Printer.histogramToString(accumulatedHistogram) +
+                '}';
+    }
+
+}
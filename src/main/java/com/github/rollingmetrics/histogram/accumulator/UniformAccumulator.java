@@ -44,6 +44,16 @@ public class UniformAccumulator implements Accumulator {
         recorder.recordValueWithExpectedInterval(value, expectedIntervalBetweenValueSamples);
     }
 
+    @Override
+    public void recordValueWithCountAndExpectedInterval(long value, long count, long expectedIntervalBetweenValueSamples) {
+        HistogramUtil.recordValueWithCountAndExpectedInterval(recorder, value, count, expectedIntervalBetweenValueSamples);
+    }
+
+    @Override
+    public void recordValuesWithExpectedInterval(long[] values, int offset, int length, long expectedIntervalBetweenValueSamples) {
+        HistogramUtil.recordValuesWithExpectedInterval(recorder, values, offset, length, expectedIntervalBetweenValueSamples);
+    }
+
     @Override
     public final synchronized Snapshot getSnapshot(Function<Histogram, Snapshot> snapshotTaker) {
         intervalHistogram = recorder.getIntervalHistogram(intervalHistogram);
@@ -19,26 +19,117 @@ package com.github.rollingmetrics.histogram.util;
 
 
 import com.codahale.metrics.Snapshot;
+import com.github.rollingmetrics.histogram.CountsWidth;
+import org.HdrHistogram.AbstractHistogram;
 import org.HdrHistogram.AtomicHistogram;
 import org.HdrHistogram.ConcurrentHistogram;
 import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+import org.HdrHistogram.IntCountsHistogram;
+import org.HdrHistogram.Recorder;
+import org.HdrHistogram.ShortCountsHistogram;
 
 import java.util.function.Function;
 
 public class HistogramUtil {
 
-    public static void reset(Histogram histogram) {
+    public static void reset(AbstractHistogram histogram) {
         if (histogram.getTotalCount() > 0) {
             histogram.reset();
         }
     }
 
-    public static void addSecondToFirst(Histogram first, Histogram second) {
+    /**
+     * Resets the histogram, the histogram which was promoted to wider counts is replaced by the new histogram of required width.
+     *
+     * @return the empty histogram with required width, it is the histogram itself or its narrower replacement
+     */
+    public static AbstractHistogram reset(AbstractHistogram histogram, CountsWidth countsWidth) {
+        if (getCountsWidth(histogram) != countsWidth) {
+            return createHistogramWithSameStructure(histogram, countsWidth);
+        }
+        reset(histogram);
+        return histogram;
+    }
+
+    public static void addSecondToFirst(AbstractHistogram first, AbstractHistogram second) {
         if (second.getTotalCount() > 0) {
             first.add(second);
         }
     }
 
+    /**
+     * Adds counts of second histogram multiplied by {@code weight} to first histogram by single pass over the recorded values of second.
+     * The fractional parts are carried to next bucket, so total count added to first histogram is equal to rounded total count of second multiplied by weight.
+     */
+    public static void addSecondToFirstWithWeight(AbstractHistogram first, AbstractHistogram second, double weight) {
+        if (second.getTotalCount() == 0) {
+            return;
+        }
+        double carry = 0.5;
+        for (HistogramIterationValue iterationValue : second.recordedValues()) {
+            carry += iterationValue.getCountAddedInThisIterationStep() * weight;
+            long weightedCount = (long) carry;
+            if (weightedCount > 0) {
+                first.recordValueWithCount(iterationValue.getValueIteratedTo(), weightedCount);
+                carry -= weightedCount;
+            }
+        }
+    }
+
+    /**
+     * Adds second histogram to first when second histogram has lower precision.
+     * Each bucket of second histogram is added as its lowest equivalent value, so the range of first histogram is never exceeded,
+     * and the cost is proportional to the number of buckets of second histogram.
+     */
+    public static void addLowerPrecisionSecondToFirst(AbstractHistogram first, AbstractHistogram second) {
+        if (second.getTotalCount() == 0) {
+            return;
+        }
+        for (HistogramIterationValue iterationValue : second.recordedValues()) {
+            long lowestEquivalentValue = second.lowestEquivalentValue(iterationValue.getValueIteratedTo());
+            first.recordValueWithCount(lowestEquivalentValue, iterationValue.getCountAtValueIteratedTo());
+        }
+    }
+
+    /**
+     * Records value {@code count} times, the correction of coordinated omission is equivalent to {@code count} invocations of
+     * {@link Recorder#recordValueWithExpectedInterval(long, long)}, but each missing value is recorded once with same count.
+     */
+    public static void recordValueWithCountAndExpectedInterval(Recorder recorder, long value, long count, long expectedIntervalBetweenValueSamples) {
+        recorder.recordValueWithCount(value, count);
+        if (expectedIntervalBetweenValueSamples <= 0) {
+            return;
+        }
+        for (long missingValue = value - expectedIntervalBetweenValueSamples; missingValue >= expectedIntervalBetweenValueSamples; missingValue -= expectedIntervalBetweenValueSamples) {
+            recorder.recordValueWithCount(missingValue, count);
+        }
+    }
+
+    public static void recordValueWithCountAndExpectedInterval(AbstractHistogram histogram, long value, long count, long expectedIntervalBetweenValueSamples) {
+        histogram.recordValueWithCount(value, count);
+        if (expectedIntervalBetweenValueSamples <= 0) {
+            return;
+        }
+        for (long missingValue = value - expectedIntervalBetweenValueSamples; missingValue >= expectedIntervalBetweenValueSamples; missingValue -= expectedIntervalBetweenValueSamples) {
+            histogram.recordValueWithCount(missingValue, count);
+        }
+    }
+
+    public static void recordValuesWithExpectedInterval(Recorder recorder, long[] values, int offset, int length, long expectedIntervalBetweenValueSamples) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            recorder.recordValueWithExpectedInterval(values[i], expectedIntervalBetweenValueSamples);
+        }
+    }
+
+    public static void recordValuesWithExpectedInterval(AbstractHistogram histogram, long[] values, int offset, int length, long expectedIntervalBetweenValueSamples) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            histogram.recordValueWithExpectedInterval(values[i], expectedIntervalBetweenValueSamples);
+        }
+    }
+
     public static Snapshot getSnapshot(Histogram histogram, Function<Histogram, Snapshot> snapshotTaker) {
         if (histogram.getTotalCount() > 0) {
             return snapshotTaker.apply(histogram);
@@ -48,17 +139,77 @@ public class HistogramUtil {
     }
 
     public static Histogram createNonConcurrentCopy(Histogram source) {
+        return createNonConcurrentCopy(source, source.getNumberOfSignificantValueDigits());
+    }
+
+    /**
+     * Creates the non-concurrent histogram which covers the same range of values as source, but with specified precision.
+     */
+    public static Histogram createNonConcurrentCopy(Histogram source, int numberOfSignificantValueDigits) {
         if (source instanceof ConcurrentHistogram) {
-            return new Histogram(source.getNumberOfSignificantValueDigits());
+            return new Histogram(numberOfSignificantValueDigits);
         } else if (source instanceof AtomicHistogram) {
             return new Histogram(
                     source.getLowestDiscernibleValue(),
                     source.getHighestTrackableValue(),
-                    source.getNumberOfSignificantValueDigits()
+                    numberOfSignificantValueDigits
             );
         } else {
             throw new IllegalArgumentException("Unsupported histogram class " + source.getClass());
         }
     }
 
+    public static AbstractHistogram createNonConcurrentCopy(Histogram source, CountsWidth countsWidth) {
+        return createNonConcurrentCopy(source, countsWidth, source.getNumberOfSignificantValueDigits());
+    }
+
+    public static AbstractHistogram createNonConcurrentCopy(Histogram source, CountsWidth countsWidth, int numberOfSignificantValueDigits) {
+        Histogram longCountsCopy = createNonConcurrentCopy(source, numberOfSignificantValueDigits);
+        return countsWidth == CountsWidth.LONG ? longCountsCopy : createHistogramWithSameStructure(longCountsCopy, countsWidth);
+    }
+
+    /**
+     * Adds second histogram to first, if counts of first histogram can overflow then first histogram is replaced by wider copy.
+     *
+     * @return the histogram which holds the sum, it is the first histogram itself or its wider copy
+     */
+    public static AbstractHistogram addSecondToFirstWithPromotion(AbstractHistogram first, AbstractHistogram second) {
+        long secondTotalCount = second.getTotalCount();
+        if (secondTotalCount == 0) {
+            return first;
+        }
+        AbstractHistogram target = first;
+        CountsWidth width = getCountsWidth(first);
+        // the single counter can not be greater than total count, so checking of total count is enough to prevent overflow
+        long requiredCount = first.getTotalCount() + secondTotalCount;
+        if (requiredCount > width.getMaxCount() || requiredCount < 0) {
+            CountsWidth widerWidth = requiredCount > 0 && requiredCount <= CountsWidth.INT.getMaxCount() ? CountsWidth.INT : CountsWidth.LONG;
+            target = createHistogramWithSameStructure(first, widerWidth);
+            target.add(first);
+        }
+        target.add(second);
+        return target;
+    }
+
+    public static CountsWidth getCountsWidth(AbstractHistogram histogram) {
+        if (histogram instanceof ShortCountsHistogram) {
+            return CountsWidth.SHORT;
+        } else if (histogram instanceof IntCountsHistogram) {
+            return CountsWidth.INT;
+        } else {
+            return CountsWidth.LONG;
+        }
+    }
+
+    private static AbstractHistogram createHistogramWithSameStructure(AbstractHistogram source, CountsWidth countsWidth) {
+        AbstractHistogram histogram;
+        switch (countsWidth) {
+            case SHORT: histogram = new ShortCountsHistogram(source); break;
+            case INT: histogram = new IntCountsHistogram(source); break;
+            default: histogram = new Histogram(source);
+        }
+        histogram.setAutoResize(source.isAutoResize());
+        return histogram;
+    }
+
 }
@@ -17,7 +17,7 @@
 
 package com.github.rollingmetrics.histogram.util;
 
-import org.HdrHistogram.Histogram;
+import org.HdrHistogram.AbstractHistogram;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -25,7 +25,7 @@ import java.io.PrintStream;
 
 public class Printer {
 
-    public static String histogramToString(Histogram histogram) {
+    public static String histogramToString(AbstractHistogram histogram) {
         try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
             PrintStream writer = new PrintStream(baos);
             histogram.outputPercentileDistribution(writer, 1.0);
@@ -0,0 +1,241 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.hitratio;
+
+import com.github.rollingmetrics.util.ChunkEpoch;
+import com.github.rollingmetrics.util.ChunkEpochTracker;
+import com.github.rollingmetrics.util.Clock;
+import com.github.rollingmetrics.util.FlatChunkPhases;
+import com.github.rollingmetrics.util.FootprintEstimation;
+import com.github.rollingmetrics.util.TickingClock;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The low-footprint variant of {@link SmoothlyDecayingRollingHitRatio} which has the same decaying semantic.
+ *
+ * <p>
+ * In opposite to {@link SmoothlyDecayingRollingHitRatio}, which allocates several objects per each chunk,
+ * this hit-ratio stores the state of all chunks in the single flat array of longs.
+ * Each chunk occupies five adjacent slots: the index of current phase, and invalidation timestamp and composite ratio for each of two phases,
+ * see {@link FlatChunkPhases}.
+ * The chunks are not padded by each other, because of only one chunk is written at any time in the steady state.
+ *
+ * <p>
+ * Concurrency properties:
+ * <ul>
+ *     <li>Writing is lock-free.
+ *     <li>Ratio calculation is lock-free.
+ * </ul>
+ *
+ * <p>
+ * Usage recommendations:
+ * <ul>
+ *     <li>When you need in "rolling time window" semantic for huge amount of hit-ratios.</li>
+ * </ul>
+ *
+ * @see SmoothlyDecayingRollingHitRatio
+ */
+public class CompactSmoothlyDecayingRollingHitRatio implements HitRatio {
+
+    private final long intervalBetweenResettingMillis;
+    private final Clock clock;
+    private final long creationTimestamp;
+    private final int chunkCount;
+    private final AtomicLongArray state;
+    private final ChunkEpochTracker epochTracker;
+
+    /**
+     * Constructs the chunked hit-ratio divided by {@code numberChunks}.
+     *
+     * @param rollingWindow the rolling time window duration
+     * @param numberChunks The count of chunk to split
+     *
+     * @see SmoothlyDecayingRollingHitRatio#SmoothlyDecayingRollingHitRatio(Duration, int)
+     */
+    public CompactSmoothlyDecayingRollingHitRatio(Duration rollingWindow, int numberChunks) {
+        this(rollingWindow, numberChunks, Clock.defaultClock());
+    }
+
+    public CompactSmoothlyDecayingRollingHitRatio(Duration rollingWindow, int numberChunks, Clock clock) {
+        if (numberChunks < 2) {
+            throw new IllegalArgumentException("numberChunks should be >= 2");
+        }
+
+        if (numberChunks > SmoothlyDecayingRollingHitRatio.MAX_CHUNKS) {
+            throw new IllegalArgumentException("number of chunks should be <=" + SmoothlyDecayingRollingHitRatio.MAX_CHUNKS);
+        }
+
+        long rollingWindowMillis = rollingWindow.toMillis();
+        if (rollingWindowMillis < SmoothlyDecayingRollingHitRatio.MIN_ROLLING_WINDOW_MILLIS) {
+            throw new IllegalArgumentException("rollingWindowMillis should be >=" + SmoothlyDecayingRollingHitRatio.MIN_ROLLING_WINDOW_MILLIS);
+        }
+        this.intervalBetweenResettingMillis = rollingWindowMillis / numberChunks;
+
+        this.clock = clock;
+        this.creationTimestamp = clock.currentTimeMillis();
+
+        this.chunkCount = numberChunks + 1;
+        this.state = new AtomicLongArray(chunkCount * FlatChunkPhases.SLOTS_PER_CHUNK);
+        for (int chunkIndex = 0; chunkIndex < chunkCount; chunkIndex++) {
+            long invalidationTimestamp = creationTimestamp + (chunkCount + chunkIndex) * intervalBetweenResettingMillis;
+            FlatChunkPhases.init(state, chunkOffset(chunkIndex), invalidationTimestamp);
+        }
+
+        if (clock instanceof TickingClock) {
+            this.epochTracker = ((TickingClock) clock).registerChunkEpochTracker(creationTimestamp, intervalBetweenResettingMillis, chunkCount);
+        } else {
+            this.epochTracker = null;
+        }
+    }
+
+    /**
+     * @return the rolling window duration for this hit-ratio
+     */
+    public Duration getRollingWindow() {
+        return Duration.ofMillis((chunkCount - 1) * intervalBetweenResettingMillis);
+    }
+
+    /**
+     * @return the number of chunks
+     */
+    public int getChunkCount() {
+        return chunkCount - 1;
+    }
+
+    /**
+     * Provide a (conservatively high) estimate of the hit-ratio's total footprint in bytes
+     *
+     * @return a (conservatively high) estimate of the hit-ratio's total footprint in bytes
+     */
+    public int getEstimatedFootprintInBytes() {
+        int hitRatioBytes = FootprintEstimation.align(FootprintEstimation.OBJECT_HEADER_BYTES + 3 * FootprintEstimation.LONG_BYTES + 4 + 3 * FootprintEstimation.REFERENCE_BYTES);
+        int stateBytes = FootprintEstimation.align(FootprintEstimation.OBJECT_HEADER_BYTES + FootprintEstimation.REFERENCE_BYTES) + FootprintEstimation.longArray(state.length());
+        return hitRatioBytes + stateBytes;
+    }
+
+    @Override
+    public void update(int hitCount, int totalCount) {
+        if (epochTracker != null) {
+            // the number of interval was precomputed by ticker thread
+            ChunkEpoch epoch = epochTracker.getCurrentEpoch();
+            update(hitCount, totalCount, epoch.getChunkIndex(), epoch.getStartMillis());
+            return;
+        }
+        long nowMillis = clock.currentTimeMillis();
+        long millisSinceCreation = nowMillis - creationTimestamp;
+        long intervalsSinceCreation = millisSinceCreation / intervalBetweenResettingMillis;
+        int chunkIndex = (int) intervalsSinceCreation % chunkCount;
+        update(hitCount, totalCount, chunkIndex, creationTimestamp + intervalsSinceCreation * intervalBetweenResettingMillis);
+    }
+
+    @Override
+    public double getHitRatio() {
+        long currentTimeMillis = clock.currentTimeMillis();
+
+        // To get as fresh value as possible we need to calculate ratio in order from oldest to newest
+        long millisSinceCreation = currentTimeMillis - creationTimestamp;
+        long intervalsSinceCreation = millisSinceCreation / intervalBetweenResettingMillis;
+        int newestChunkIndex = (int) intervalsSinceCreation % chunkCount;
+
+        long hitCountSum = 0;
+        long totalCountSum = 0;
+        for (int i = newestChunkIndex + 1, iteration = 0; iteration < chunkCount; i++, iteration++) {
+            if (i == chunkCount) {
+                i = 0;
+            }
+            int currentPhase = (int) state.get(currentPhaseIndex(i));
+            long proposedInvalidationTimestamp = state.get(invalidationTimestampIndex(i, currentPhase));
+            if (currentTimeMillis >= proposedInvalidationTimestamp) {
+                // The chunk was unused by writers for a long time
+                continue;
+            }
+
+            long compositeRatio = state.get(ratioIndex(i, currentPhase));
+            int hitCount = HitRatioUtil.getHitFromCompositeRatio(compositeRatio);
+            int totalCount = HitRatioUtil.getTotalCountFromCompositeRatio(compositeRatio);
+            if (totalCount == 0) {
+                continue;
+            }
+
+            // if this is oldest chunk then we need to reduce its weight
+            long beforeInvalidateMillis = proposedInvalidationTimestamp - currentTimeMillis;
+            if (beforeInvalidateMillis < intervalBetweenResettingMillis) {
+                double decayingCoefficient = (double) beforeInvalidateMillis / (double) intervalBetweenResettingMillis;
+                hitCount = (int) (hitCount * decayingCoefficient);
+                totalCount = (int) (totalCount * decayingCoefficient);
+            }
+
+            hitCountSum += hitCount;
+            totalCountSum += totalCount;
+        }
+        return (double) hitCountSum / (double) totalCountSum;
+    }
+
+    private void update(int hitCount, int totalCount, int chunkIndex, long intervalStartMillis) {
+        int chunkOffset = chunkOffset(chunkIndex);
+        int phase = FlatChunkPhases.getPhaseForWriting(state, chunkOffset, intervalStartMillis);
+        if (phase >= 0) {
+            HitRatioUtil.updateRatio(state, FlatChunkPhases.valueIndex(chunkOffset, phase), hitCount, totalCount);
+            return;
+        }
+
+        // write to next phase because current is expired
+        int nextPhase = ~phase;
+        HitRatioUtil.updateRatio(state, FlatChunkPhases.valueIndex(chunkOffset, nextPhase), hitCount, totalCount);
+        FlatChunkPhases.flip(state, chunkOffset, nextPhase, intervalStartMillis + chunkCount * intervalBetweenResettingMillis);
+    }
+
+    private static int chunkOffset(int chunkIndex) {
+        return chunkIndex * FlatChunkPhases.SLOTS_PER_CHUNK;
+    }
+
+    private static int currentPhaseIndex(int chunkIndex) {
+        return FlatChunkPhases.currentPhaseIndex(chunkOffset(chunkIndex));
+    }
+
+    private static int invalidationTimestampIndex(int chunkIndex, int phase) {
+        return FlatChunkPhases.invalidationTimestampIndex(chunkOffset(chunkIndex), phase);
+    }
+
+    private static int ratioIndex(int chunkIndex, int phase) {
+        return FlatChunkPhases.valueIndex(chunkOffset(chunkIndex), phase);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder chunksDescription = new StringBuilder();
+        for (int i = 0; i < chunkCount; i++) {
+            int currentPhase = (int) state.get(currentPhaseIndex(i));
+            long compositeRatio = state.get(ratioIndex(i, currentPhase));
+            chunksDescription.append("\nchunk[").append(i).append("]={")
+                    .append("hitCount=").append(HitRatioUtil.getHitFromCompositeRatio(compositeRatio))
+                    .append(", totalCount=").append(HitRatioUtil.getTotalCountFromCompositeRatio(compositeRatio))
+                    .append(", proposedInvalidationTimestamp=").append(state.get(invalidationTimestampIndex(i, currentPhase)))
+                    .append('}');
+        }
+        return "CompactSmoothlyDecayingRollingHitRatio{" +
+                "intervalBetweenResettingMillis=" + intervalBetweenResettingMillis +
+                ", clock=" + clock +
+                ", creationTimestamp=" + creationTimestamp +
+                ", chunks={" + chunksDescription + "\n}" +
+                '}';
+    }
+
+}
@@ -24,6 +24,7 @@ package com.github.rollingmetrics.hitratio;
  * @see ResetOnSnapshotHitRatio
  * @see ResetPeriodicallyHitRatio
  * @see UniformHitRatio
+ * @see PhasedResetOnSnapshotHitRatio
  */
 public interface HitRatio {
 
@@ -85,6 +86,38 @@ public interface HitRatio {
      */
     void update(int hitCount, int totalCount);
 
+    /**
+     * Registers an result of bulk operations which counts do not fit into int.
+     * The time is measured once and the whole batch is applied by single update of hit-ratio.
+     * When {@code totalCount} exceeds {@link Integer#MAX_VALUE} then both counts are reduced proportionally before update,
+     * so the ratio of batch is preserved but the weight of batch is limited.
+     *
+     * <p> Example of usage:
+     * <pre>
+     * {@code
+     * hitRatio.update(stats.getHitCount(), stats.getRequestCount());
+     * }
+     * </pre>
+     *
+     * @param hitCount
+     * @param totalCount
+     *
+     * @throws IllegalArgumentException In case of:<ul>
+     *     <li>{@code hitCount < 0}</li>
+     *     <li>{@code totalCount < 1}</li>
+     *     <li>{@code hitCount > totalCount}</li>
+     * </ul>
+     */
+    default void update(long hitCount, long totalCount) {
+        HitRatioUtil.checkArguments(hitCount, totalCount);
+        if (totalCount > Integer.MAX_VALUE) {
+            long divisor = totalCount / Integer.MAX_VALUE + 1;
+            hitCount /= divisor;
+            totalCount /= divisor;
+        }
+        update((int) hitCount, (int) totalCount);
+    }
+
     /**
      * Returns the ratio between hits and misses
      *
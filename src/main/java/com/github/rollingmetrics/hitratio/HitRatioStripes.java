@@ -0,0 +1,176 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.hitratio;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The set of stripes, each stripe is a region of longs protected by own sequence number.
+ * Writer locks any free stripe by CAS of sequence from even to odd value, so writers do not contend with each other while free stripe exists,
+ * and the values of stripe can be updated by plain writes instead of CAS loops.
+ * Reader reads the stripe optimistically and retries when sequence was changed in the middle of reading,
+ * so the pair of hit and total counts is always consistent, after several failed attempts reader locks the stripe in the same way as writer.
+ *
+ * <p>
+ * Stripes are separated by padding in order to avoid false sharing between writers.
+ *
+ * This is not part of public API.
+ */
+final class HitRatioStripes {
+
+    static final int DEFAULT_STRIPE_COUNT;
+    static {
+        int stripes = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1;
+        DEFAULT_STRIPE_COUNT = Math.min(stripes, 64);
+    }
+
+    // two cache lines, to protect from adjacent line prefetching
+    private static final int PADDING_LONGS = 16;
+
+    private static final int MAX_OPTIMISTIC_READ_ATTEMPTS = 8;
+
+    private final int stripeCount;
+    private final int mask;
+    private final int valuesPerStripe;
+    private final int stride;
+    private final AtomicLongArray cells;
+
+    HitRatioStripes(int stripeCount, int valuesPerStripe) {
+        if (Integer.bitCount(stripeCount) != 1) {
+            throw new IllegalArgumentException("stripeCount should be power of two");
+        }
+        this.stripeCount = stripeCount;
+        this.mask = stripeCount - 1;
+        this.valuesPerStripe = valuesPerStripe;
+        this.stride = PADDING_LONGS + ((1 + valuesPerStripe + 7) & ~7);
+        this.cells = new AtomicLongArray(stripeCount * stride + PADDING_LONGS);
+    }
+
+    int getStripeCount() {
+        return stripeCount;
+    }
+
+    int getValuesPerStripe() {
+        return valuesPerStripe;
+    }
+
+    /**
+     * Locks any stripe which is not locked by another thread, the search starts from the stripe associated with current thread.
+     *
+     * @return the index of locked stripe
+     */
+    int lockAnyStripe() {
+        int stripe = (int) (Thread.currentThread().getId() * 0x9E3779B97F4A7C15L >>> 32) & mask;
+        int attempts = 0;
+        while (true) {
+            if (tryLock(stripe)) {
+                return stripe;
+            }
+            stripe = (stripe + 1) & mask;
+            if (++attempts == stripeCount) {
+                // all stripes are busy, it can happen only when count of writers is greater than count of stripes
+                Thread.yield();
+                attempts = 0;
+            }
+        }
+    }
+
+    void lockStripe(int stripe) {
+        while (!tryLock(stripe)) {
+            Thread.yield();
+        }
+    }
+
+    void unlock(int stripe) {
+        int sequenceIndex = sequenceIndex(stripe);
+        cells.set(sequenceIndex, cells.get(sequenceIndex) + 1);
+    }
+
+    long get(int stripe, int valueIndex) {
+        return cells.get(sequenceIndex(stripe) + 1 + valueIndex);
+    }
+
+    /**
+     * Should be called only by thread which holds the lock on stripe.
+     */
+    void set(int stripe, int valueIndex, long value) {
+        cells.set(sequenceIndex(stripe) + 1 + valueIndex, value);
+    }
+
+    /**
+     * Should be called only by thread which holds the lock on stripe.
+     */
+    void add(int stripe, int valueIndex, long delta) {
+        int index = sequenceIndex(stripe) + 1 + valueIndex;
+        cells.set(index, cells.get(index) + delta);
+    }
+
+    /**
+     * Copies consistent values of stripe to {@code buffer}.
+     *
+     * @see #read(int, int, long[])
+     */
+    void read(int stripe, long[] buffer) {
+        read(stripe, 0, buffer);
+    }
+
+    /**
+     * Copies {@code buffer.length} consistent values of stripe starting from {@code fromValueIndex} to {@code buffer}.
+     * The stripe is read optimistically, and it is locked only when optimistic reading was failed several times because of concurrent writes,
+     * so reader waits for at most one writer which holds the stripe, and writers which meet the stripe locked by reader just switch to another one.
+     * Callers should read the stripe by small portions, because long copying reduces the chances of optimistic reading to succeed.
+     */
+    void read(int stripe, int fromValueIndex, long[] buffer) {
+        int sequenceIndex = sequenceIndex(stripe);
+        int firstValueIndex = sequenceIndex + 1 + fromValueIndex;
+        for (int attempt = 0; attempt < MAX_OPTIMISTIC_READ_ATTEMPTS; attempt++) {
+            long sequence = cells.get(sequenceIndex);
+            if ((sequence & 1) != 0) {
+                // writer is in the middle of update
+                continue;
+            }
+            for (int i = 0; i < buffer.length; i++) {
+                buffer[i] = cells.get(firstValueIndex + i);
+            }
+            if (cells.get(sequenceIndex) == sequence) {
+                return;
+            }
+        }
+
+        // the stripe is updated too frequently, reading under lock guarantees the progress of reader
+        lockStripe(stripe);
+        try {
+            for (int i = 0; i < buffer.length; i++) {
+                buffer[i] = cells.get(firstValueIndex + i);
+            }
+        } finally {
+            unlock(stripe);
+        }
+    }
+
+    private boolean tryLock(int stripe) {
+        int sequenceIndex = sequenceIndex(stripe);
+        long sequence = cells.get(sequenceIndex);
+        return (sequence & 1) == 0 && cells.compareAndSet(sequenceIndex, sequence, sequence + 1);
+    }
+
+    private int sequenceIndex(int stripe) {
+        return PADDING_LONGS + stripe * stride;
+    }
+
+}
@@ -18,6 +18,7 @@
 package com.github.rollingmetrics.hitratio;
 
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * This is not part of public API.
@@ -31,6 +32,28 @@ public class HitRatioUtil {
     }
 
     static long updateRatio(AtomicLong compositeRatioRef, int hitCount, int totalCount) {
+        checkArguments(hitCount, totalCount);
+        while (true) {
+            long compositeRatio = compositeRatioRef.get();
+            long newCompositeRatio = addToRatio(compositeRatio, hitCount, totalCount);
+            if (compositeRatioRef.compareAndSet(compositeRatio, newCompositeRatio)) {
+                return newCompositeRatio;
+            }
+        }
+    }
+
+    static long updateRatio(AtomicLongArray compositeRatios, int index, int hitCount, int totalCount) {
+        checkArguments(hitCount, totalCount);
+        while (true) {
+            long compositeRatio = compositeRatios.get(index);
+            long newCompositeRatio = addToRatio(compositeRatio, hitCount, totalCount);
+            if (compositeRatios.compareAndSet(index, compositeRatio, newCompositeRatio)) {
+                return newCompositeRatio;
+            }
+        }
+    }
+
+    static void checkArguments(long hitCount, long totalCount) {
         if (hitCount > totalCount) {
             throw new IllegalArgumentException("hitCount should be <= totalCount");
         }
@@ -40,23 +63,20 @@ public class HitRatioUtil {
         if (hitCount < 0) {
             throw new IllegalArgumentException("hitCount should be >= 0");
         }
-        while (true) {
-            long compositeRatio = compositeRatioRef.get();
-            long accumulatedHit = getHitFromCompositeRatio(compositeRatio);
-            accumulatedHit += hitCount;
-            long accumulatedTotal = getTotalCountFromCompositeRatio(compositeRatio);
-            accumulatedTotal += totalCount;
+    }
 
-            if (accumulatedTotal > Integer.MAX_VALUE) {
-                accumulatedHit /= 2;
-                accumulatedTotal /= 2;
-            }
+    static long addToRatio(long compositeRatio, int hitCount, int totalCount) {
+        long accumulatedHit = getHitFromCompositeRatio(compositeRatio);
+        accumulatedHit += hitCount;
+        long accumulatedTotal = getTotalCountFromCompositeRatio(compositeRatio);
+        accumulatedTotal += totalCount;
 
-            long newCompositeRatio = toLong((int) accumulatedHit, (int) accumulatedTotal);
-            if (compositeRatioRef.compareAndSet(compositeRatio, newCompositeRatio)) {
-                return newCompositeRatio;
-            }
+        if (accumulatedTotal > Integer.MAX_VALUE) {
+            accumulatedHit /= 2;
+            accumulatedTotal /= 2;
         }
+
+        return toLong((int) accumulatedHit, (int) accumulatedTotal);
     }
 
     static int getHitFromCompositeRatio(long compositeRatio) {
@@ -0,0 +1,127 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.hitratio;
+
+import org.HdrHistogram.WriterReaderPhaser;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The hit-ratio which reset its state to zero after each invocation of {@link #getHitRatio()},
+ * this is the alternative of {@link ResetOnSnapshotHitRatio} for case of heavy writes concurrent with several readers.
+ *
+ * <p>
+ * The hit-ratio has two phases, each phase counts hits and total in separate cells. Writers always update the active phase,
+ * and reader swaps the phases and waits via {@link WriterReaderPhaser} until writers which started before swap leave the inactive phase,
+ * so hit and total counts are read consistently without packing them into one long and without CAS loops.
+ * Same design is used by {@link com.github.rollingmetrics.top.impl.recorder.TwoPhasePositionRecorder} and by {@link org.HdrHistogram.Recorder}.
+ *
+ * <p>
+ * Concurrency properties:
+ * <ul>
+ *     <li>Writing is wait-free. Writers never retry because of readers or other writers.</li>
+ *     <li>Readers block each other, and wait for writers which are in the middle of update at moment of swap, but readers never block writers.</li>
+ * </ul>
+ *
+ * <p>
+ * Usage recommendations:
+ * <ul>
+ *     <li>When you do not need in "rolling time window" semantic. Else use {@link SmoothlyDecayingRollingHitRatio}</li>
+ *     <li>When you need in 100 percents guarantee that one measure can not be reported twice.</li>
+ *     <li>Only if one kind of reader interests in value of hit-ratio.
+ *     Usage of this implementation for case of multiple readers will be a bad idea because of readers will steal data from each other.
+ *     </li>
+ * </ul>
+ *
+ * @see ResetOnSnapshotHitRatio
+ */
+public class PhasedResetOnSnapshotHitRatio implements HitRatio {
+
+    private final WriterReaderPhaser phaser = new WriterReaderPhaser();
+
+    private volatile Phase active = new Phase();
+
+    // guarded by reader lock of phaser
+    private Phase inactive = new Phase();
+
+    @Override
+    public void update(int hitCount, int totalCount) {
+        update((long) hitCount, (long) totalCount);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * In opposite to other hit-ratios, this implementation accumulates the counts in longs, so counts are never reduced.
+     */
+    @Override
+    public void update(long hitCount, long totalCount) {
+        HitRatioUtil.checkArguments(hitCount, totalCount);
+        long criticalValueAtEnter = phaser.writerCriticalSectionEnter();
+        try {
+            Phase phase = active;
+            phase.hitCount.add(hitCount);
+            phase.totalCount.add(totalCount);
+        } finally {
+            phaser.writerCriticalSectionExit(criticalValueAtEnter);
+        }
+    }
+
+    @Override
+    public double getHitRatio() {
+        phaser.readerLock();
+        try {
+            // Swap active and inactive phases:
+            Phase sampled = active;
+            active = inactive;
+            inactive = sampled;
+
+            // wait until all writers leave the sampled phase
+            phaser.flipPhase();
+
+            long hitCount = sampled.hitCount.sumThenReset();
+            long totalCount = sampled.totalCount.sumThenReset();
+            return (double) hitCount / (double) totalCount;
+        } finally {
+            phaser.readerUnlock();
+        }
+    }
+
+    private static final class Phase {
+
+        final LongAdder hitCount = new LongAdder();
+        final LongAdder totalCount = new LongAdder();
+
+        @Override
+        public String toString() {
+            return "Phase{" +
+                    "hitCount=" + hitCount +
+                    ", totalCount=" + totalCount +
+                    '}';
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PhasedResetOnSnapshotHitRatio{" +
+                "active=" + active +
+                '}';
+    }
+
+}
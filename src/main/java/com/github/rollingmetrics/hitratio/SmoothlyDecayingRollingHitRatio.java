@@ -18,8 +18,11 @@
 package com.github.rollingmetrics.hitratio;
 
 import com.github.rollingmetrics.counter.SmoothlyDecayingRollingCounter;
+import com.github.rollingmetrics.util.ChunkEpoch;
+import com.github.rollingmetrics.util.ChunkEpochTracker;
 import com.github.rollingmetrics.util.Clock;
 import com.github.rollingmetrics.histogram.util.Printer;
+import com.github.rollingmetrics.util.TickingClock;
 
 import java.time.Duration;
 import java.util.concurrent.atomic.AtomicLong;
@@ -55,6 +58,7 @@ import java.util.concurrent.atomic.AtomicReference;
  * <ul>
  *     <li>You can consider writing speed as a constant. The write latency does not depend from count of chunk or frequency of chunk rotation.
  *     <li>The writing depends only from level of contention between writers(internally hit-ratio implemented across AtomicLong).</li>
+ *     <li>When hit-ratio is constructed with {@link TickingClock} then writers read the precomputed number of chunk instead of querying the time and dividing it on each update.</li>
  *     <li>The huge count of chunk leads to the slower calculation of their ratio. So precision of getHitRatio conflicts with latency of getHitRatio. You need to choose meaningful values.
  *     For example 10 chunks will guarantee at least 90% accuracy and ten million reads per second.</li>
  * </ul>
@@ -77,6 +81,7 @@ public class SmoothlyDecayingRollingHitRatio implements HitRatio {
     private final long creationTimestamp;
 
     private final Chunk[] chunks;
+    private final ChunkEpochTracker epochTracker;
 
     /**
      * Constructs the chunked hit-ratio divided by {@code numberChunks}.
@@ -127,15 +132,27 @@ public class SmoothlyDecayingRollingHitRatio implements HitRatio {
         for (int i = 0; i < chunks.length; i++) {
             this.chunks[i] = new Chunk(i);
         }
+
+        if (clock instanceof TickingClock) {
+            this.epochTracker = ((TickingClock) clock).registerChunkEpochTracker(creationTimestamp, intervalBetweenResettingMillis, chunks.length);
+        } else {
+            this.epochTracker = null;
+        }
     }
 
     @Override
     public void update(int hitCount, int totalCount) {
+        if (epochTracker != null) {
+            // the number of interval was precomputed by ticker thread
+            ChunkEpoch epoch = epochTracker.getCurrentEpoch();
+            chunks[epoch.getChunkIndex()].update(hitCount, totalCount, epoch.getNumber());
+            return;
+        }
         long nowMillis = clock.currentTimeMillis();
         long millisSinceCreation = nowMillis - creationTimestamp;
         long intervalsSinceCreation = millisSinceCreation / intervalBetweenResettingMillis;
         int chunkIndex = (int) intervalsSinceCreation % chunks.length;
-        chunks[chunkIndex].update(hitCount, totalCount, nowMillis);
+        chunks[chunkIndex].update(hitCount, totalCount, intervalsSinceCreation);
     }
 
     @Override
@@ -175,11 +192,14 @@ public class SmoothlyDecayingRollingHitRatio implements HitRatio {
             currentPhaseRef.get().addToSnapshot(snapshot, currentTimeMillis);
         }
 
-        void update(int hitCount, int totalCount, long currentTimeMillis) {
+        void update(int hitCount, int totalCount, long intervalsSinceCreation) {
             Phase currentPhase = currentPhaseRef.get();
             long currentPhaseProposedInvalidationTimestamp = currentPhase.proposedInvalidationTimestamp;
 
-            if (currentTimeMillis < currentPhaseProposedInvalidationTimestamp) {
+            // invalidation timestamps are always aligned to interval boundaries,
+            // so comparing them with beginning of interval is equivalent to comparing with current time
+            long intervalStartMillis = creationTimestamp + intervalsSinceCreation * intervalBetweenResettingMillis;
+            if (intervalStartMillis < currentPhaseProposedInvalidationTimestamp) {
                 if (currentPhaseProposedInvalidationTimestamp != Long.MAX_VALUE) {
                     // this is main path - there are no rotation in the middle and we are writing to non-expired phase
                     HitRatioUtil.updateRatio(currentPhase.ratio, hitCount, totalCount);
@@ -203,9 +223,7 @@ public class SmoothlyDecayingRollingHitRatio implements HitRatio {
                     expiredPhase.proposedInvalidationTimestamp = Long.MAX_VALUE;
 
                     // allow to next phase to be expired
-                    long millisSinceCreation = currentTimeMillis - creationTimestamp;
-                    long intervalsSinceCreation = millisSinceCreation / intervalBetweenResettingMillis;
-                    nextPhase.proposedInvalidationTimestamp = creationTimestamp + (intervalsSinceCreation + chunks.length) * intervalBetweenResettingMillis;
+                    nextPhase.proposedInvalidationTimestamp = intervalStartMillis + chunks.length * intervalBetweenResettingMillis;
                 }
             }
         }
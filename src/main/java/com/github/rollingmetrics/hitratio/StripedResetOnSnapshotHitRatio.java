@@ -0,0 +1,105 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.hitratio;
+
+/**
+ * The hit-ratio which reset its state to zero after each invocation of {@link #getHitRatio()},
+ * this is contention-free alternative of {@link ResetOnSnapshotHitRatio} which designed for high number of concurrent writers.
+ *
+ * <p>
+ * The hit and total counts are stored as separate longs in several stripes, see {@link StripedUniformHitRatio} for details.
+ * Reader drains the stripes one by one, the stripe is locked while it is drained, so writers which meet the locked stripe just switch to another one.
+ *
+ * <p>
+ * Concurrency properties:
+ * <ul>
+ *     <li>Writers do not contend with each other until count of concurrent writers is less than count of stripes.</li>
+ *     <li>Readers never make writers wait while free stripe exists, writer which meets the stripe drained by reader just switches to another one.</li>
+ * </ul>
+ *
+ * <p>
+ * Usage recommendations:
+ * <ul>
+ *     <li>When you do not need in "rolling time window" semantic. Else use {@link StripedSmoothlyDecayingRollingHitRatio}</li>
+ *     <li>When you need in 100 percents guarantee that one measure can not be reported twice.</li>
+ *     <li>Only if one kind of reader interests in value of hit-ratio.
+ *     Usage of this implementation for case of multiple readers will be a bad idea because of readers will steal data from each other.
+ *     </li>
+ * </ul>
+ *
+ * @see ResetOnSnapshotHitRatio
+ * @see PhasedResetOnSnapshotHitRatio
+ */
+public class StripedResetOnSnapshotHitRatio implements HitRatio {
+
+    private static final int HIT_INDEX = 0;
+    private static final int TOTAL_INDEX = 1;
+
+    private final HitRatioStripes stripes;
+
+    public StripedResetOnSnapshotHitRatio() {
+        this(HitRatioStripes.DEFAULT_STRIPE_COUNT);
+    }
+
+    StripedResetOnSnapshotHitRatio(int stripeCount) {
+        this.stripes = new HitRatioStripes(stripeCount, 2);
+    }
+
+    @Override
+    public void update(int hitCount, int totalCount) {
+        update((long) hitCount, (long) totalCount);
+    }
+
+    @Override
+    public void update(long hitCount, long totalCount) {
+        HitRatioUtil.checkArguments(hitCount, totalCount);
+        int stripe = stripes.lockAnyStripe();
+        try {
+            stripes.add(stripe, HIT_INDEX, hitCount);
+            stripes.add(stripe, TOTAL_INDEX, totalCount);
+        } finally {
+            stripes.unlock(stripe);
+        }
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hitCount = 0;
+        long totalCount = 0;
+        for (int stripe = 0; stripe < stripes.getStripeCount(); stripe++) {
+            stripes.lockStripe(stripe);
+            try {
+                hitCount += stripes.get(stripe, HIT_INDEX);
+                totalCount += stripes.get(stripe, TOTAL_INDEX);
+                stripes.set(stripe, HIT_INDEX, 0);
+                stripes.set(stripe, TOTAL_INDEX, 0);
+            } finally {
+                stripes.unlock(stripe);
+            }
+        }
+        return (double) hitCount / (double) totalCount;
+    }
+
+    @Override
+    public String toString() {
+        return "StripedResetOnSnapshotHitRatio{" +
+                "stripeCount=" + stripes.getStripeCount() +
+                '}';
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.hitratio;
+
+import com.github.rollingmetrics.util.Clock;
+
+import java.time.Duration;
+
+/**
+ * The hit-ratio which reset its state to zero each time when configured interval is elapsed,
+ * this is contention-free alternative of {@link ResetPeriodicallyHitRatio} which designed for high number of concurrent writers.
+ *
+ * <p>
+ * The hit and total counts are stored as separate longs in several stripes, see {@link StripedUniformHitRatio} for details.
+ * Each stripe remembers the time when its counts become obsolete, so the stripe is reset by first writer which locks it after expiration.
+ * The intervals are aligned to creation time of hit-ratio.
+ *
+ * <p>
+ * Concurrency properties:
+ * <ul>
+ *     <li>Writers do not contend with each other until count of concurrent writers is less than count of stripes.</li>
+ *     <li>Readers never make writers wait while free stripe exists, the stripes are read optimistically,
+ *     and the stripe is locked by reader only after several failed attempts, so writer which meets it just switches to another one.</li>
+ * </ul>
+ *
+ * <p>
+ * Usage recommendations:
+ * <ul>
+ *     <li>When you do not need in "rolling time window" semantic. Else use {@link StripedSmoothlyDecayingRollingHitRatio}</li>
+ *     <li>When hit-ratio is updated by many threads concurrently. For low contended hit-ratio prefer {@link ResetPeriodicallyHitRatio} which consumes less memory.</li>
+ * </ul>
+ *
+ * @see ResetPeriodicallyHitRatio
+ */
+public class StripedResetPeriodicallyHitRatio implements HitRatio {
+
+    private static final int INVALIDATION_TIMESTAMP_INDEX = 0;
+    private static final int HIT_INDEX = 1;
+    private static final int TOTAL_INDEX = 2;
+
+    private final long resetIntervalMillis;
+    private final Clock clock;
+    private final long creationTimestamp;
+    private final HitRatioStripes stripes;
+
+    /**
+     * Constructs the hit-ratio which reset its state to zero each time when {@code resetInterval} is elapsed.
+     *
+     * @param resetInterval the interval between hit-ratio resetting
+     */
+    public StripedResetPeriodicallyHitRatio(Duration resetInterval) {
+        this(resetInterval, Clock.defaultClock());
+    }
+
+    public StripedResetPeriodicallyHitRatio(Duration resetInterval, Clock clock) {
+        this(resetInterval, clock, HitRatioStripes.DEFAULT_STRIPE_COUNT);
+    }
+
+    StripedResetPeriodicallyHitRatio(Duration resetInterval, Clock clock, int stripeCount) {
+        if (resetInterval.isNegative() || resetInterval.isZero()) {
+            throw new IllegalArgumentException("intervalBetweenChunkResetting must be a positive duration");
+        }
+        this.resetIntervalMillis = resetInterval.toMillis();
+        this.clock = clock;
+        this.creationTimestamp = clock.currentTimeMillis();
+        this.stripes = new HitRatioStripes(stripeCount, 3);
+        for (int stripe = 0; stripe < stripeCount; stripe++) {
+            stripes.set(stripe, INVALIDATION_TIMESTAMP_INDEX, creationTimestamp + resetIntervalMillis);
+        }
+    }
+
+    @Override
+    public void update(int hitCount, int totalCount) {
+        update((long) hitCount, (long) totalCount);
+    }
+
+    @Override
+    public void update(long hitCount, long totalCount) {
+        HitRatioUtil.checkArguments(hitCount, totalCount);
+        long currentTimeMillis = clock.currentTimeMillis();
+        long intervalsSinceCreation = (currentTimeMillis - creationTimestamp) / resetIntervalMillis;
+        long invalidationTimestamp = creationTimestamp + (intervalsSinceCreation + 1) * resetIntervalMillis;
+
+        int stripe = stripes.lockAnyStripe();
+        try {
+            if (stripes.get(stripe, INVALIDATION_TIMESTAMP_INDEX) < invalidationTimestamp) {
+                // the counts of stripe are obsolete
+                stripes.set(stripe, HIT_INDEX, 0);
+                stripes.set(stripe, TOTAL_INDEX, 0);
+                stripes.set(stripe, INVALIDATION_TIMESTAMP_INDEX, invalidationTimestamp);
+            }
+            stripes.add(stripe, HIT_INDEX, hitCount);
+            stripes.add(stripe, TOTAL_INDEX, totalCount);
+        } finally {
+            stripes.unlock(stripe);
+        }
+    }
+
+    @Override
+    public double getHitRatio() {
+        long currentTimeMillis = clock.currentTimeMillis();
+        long[] buffer = new long[3];
+        long hitCount = 0;
+        long totalCount = 0;
+        for (int stripe = 0; stripe < stripes.getStripeCount(); stripe++) {
+            stripes.read(stripe, buffer);
+            if (currentTimeMillis >= buffer[INVALIDATION_TIMESTAMP_INDEX]) {
+                // The stripe was unused by writers since its expiration
+                continue;
+            }
+            hitCount += buffer[HIT_INDEX];
+            totalCount += buffer[TOTAL_INDEX];
+        }
+        return (double) hitCount / (double) totalCount;
+    }
+
+    @Override
+    public String toString() {
+        return "StripedResetPeriodicallyHitRatio{" +
+                "resetIntervalMillis=" + resetIntervalMillis +
+                ", clock=" + clock +
+                ", creationTimestamp=" + creationTimestamp +
+                ", stripeCount=" + stripes.getStripeCount() +
+                '}';
+    }
+
+}
@@ -0,0 +1,214 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.hitratio;
+
+import com.github.rollingmetrics.util.ChunkEpoch;
+import com.github.rollingmetrics.util.ChunkEpochTracker;
+import com.github.rollingmetrics.util.Clock;
+import com.github.rollingmetrics.util.TickingClock;
+
+import java.time.Duration;
+
+/**
+ * The rolling time window hit-ratio which resets its state by chunks,
+ * this is contention-free alternative of {@link SmoothlyDecayingRollingHitRatio} which designed for high number of concurrent writers.
+ *
+ * <p>
+ * The hit and total counts are stored as separate longs in several stripes, see {@link StripedUniformHitRatio} for details.
+ * Each stripe holds own set of chunks, the chunk of stripe is reset by first writer which locks the stripe after chunk expiration.
+ * The oldest chunk is smoothly decayed in same way as in {@link SmoothlyDecayingRollingHitRatio}.
+ *
+ * <p>
+ * Concurrency properties:
+ * <ul>
+ *     <li>Writers do not contend with each other until count of concurrent writers is less than count of stripes.</li>
+ *     <li>Readers never make writers wait while free stripe exists, the stripes are read optimistically,
+ *     and the stripe is locked by reader only after several failed attempts, so writer which meets it just switches to another one.</li>
+ * </ul>
+ *
+ * <p>
+ * Usage recommendations:
+ * <ul>
+ *     <li>Only when you need in "rolling time window" semantic.</li>
+ *     <li>When hit-ratio is updated by many threads concurrently. The memory consumed by hit-ratio is proportional to count of stripes multiplied by count of chunks,
+ *     so for low contended hit-ratio prefer {@link SmoothlyDecayingRollingHitRatio}.</li>
+ * </ul>
+ *
+ * @see SmoothlyDecayingRollingHitRatio
+ */
+public class StripedSmoothlyDecayingRollingHitRatio implements HitRatio {
+
+    private static final int VALUES_PER_CHUNK = 3;
+    private static final int INVALIDATION_TIMESTAMP_OFFSET = 0;
+    private static final int HIT_OFFSET = 1;
+    private static final int TOTAL_OFFSET = 2;
+
+    private final long intervalBetweenResettingMillis;
+    private final Clock clock;
+    private final long creationTimestamp;
+    private final int chunkCount;
+    private final HitRatioStripes stripes;
+    private final ChunkEpochTracker epochTracker;
+
+    /**
+     * Constructs the chunked hit-ratio divided by {@code numberChunks}.
+     *
+     * @param rollingWindow the rolling time window duration
+     * @param numberChunks The count of chunk to split
+     *
+     * @see SmoothlyDecayingRollingHitRatio#SmoothlyDecayingRollingHitRatio(Duration, int)
+     */
+    public StripedSmoothlyDecayingRollingHitRatio(Duration rollingWindow, int numberChunks) {
+        this(rollingWindow, numberChunks, Clock.defaultClock());
+    }
+
+    public StripedSmoothlyDecayingRollingHitRatio(Duration rollingWindow, int numberChunks, Clock clock) {
+        this(rollingWindow, numberChunks, clock, HitRatioStripes.DEFAULT_STRIPE_COUNT);
+    }
+
+    StripedSmoothlyDecayingRollingHitRatio(Duration rollingWindow, int numberChunks, Clock clock, int stripeCount) {
+        if (numberChunks < 2) {
+            throw new IllegalArgumentException("numberChunks should be >= 2");
+        }
+
+        if (numberChunks > SmoothlyDecayingRollingHitRatio.MAX_CHUNKS) {
+            throw new IllegalArgumentException("number of chunks should be <=" + SmoothlyDecayingRollingHitRatio.MAX_CHUNKS);
+        }
+
+        long rollingWindowMillis = rollingWindow.toMillis();
+        if (rollingWindowMillis < SmoothlyDecayingRollingHitRatio.MIN_ROLLING_WINDOW_MILLIS) {
+            throw new IllegalArgumentException("rollingWindowMillis should be >=" + SmoothlyDecayingRollingHitRatio.MIN_ROLLING_WINDOW_MILLIS);
+        }
+        this.intervalBetweenResettingMillis = rollingWindowMillis / numberChunks;
+
+        this.clock = clock;
+        this.creationTimestamp = clock.currentTimeMillis();
+        this.chunkCount = numberChunks + 1;
+
+        this.stripes = new HitRatioStripes(stripeCount, chunkCount * VALUES_PER_CHUNK);
+        for (int stripe = 0; stripe < stripeCount; stripe++) {
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                stripes.set(stripe, chunk * VALUES_PER_CHUNK + INVALIDATION_TIMESTAMP_OFFSET, Long.MIN_VALUE);
+            }
+        }
+
+        if (clock instanceof TickingClock) {
+            this.epochTracker = ((TickingClock) clock).registerChunkEpochTracker(creationTimestamp, intervalBetweenResettingMillis, chunkCount);
+        } else {
+            this.epochTracker = null;
+        }
+    }
+
+    /**
+     * @return the rolling window duration for this hit-ratio
+     */
+    public Duration getRollingWindow() {
+        return Duration.ofMillis((chunkCount - 1) * intervalBetweenResettingMillis);
+    }
+
+    /**
+     * @return the number of chunks
+     */
+    public int getChunkCount() {
+        return chunkCount - 1;
+    }
+
+    @Override
+    public void update(int hitCount, int totalCount) {
+        update((long) hitCount, (long) totalCount);
+    }
+
+    @Override
+    public void update(long hitCount, long totalCount) {
+        HitRatioUtil.checkArguments(hitCount, totalCount);
+
+        int chunkIndex;
+        long intervalStartMillis;
+        if (epochTracker != null) {
+            // the number of interval was precomputed by ticker thread
+            ChunkEpoch epoch = epochTracker.getCurrentEpoch();
+            chunkIndex = epoch.getChunkIndex();
+            intervalStartMillis = epoch.getStartMillis();
+        } else {
+            long intervalsSinceCreation = (clock.currentTimeMillis() - creationTimestamp) / intervalBetweenResettingMillis;
+            chunkIndex = (int) (intervalsSinceCreation % chunkCount);
+            intervalStartMillis = creationTimestamp + intervalsSinceCreation * intervalBetweenResettingMillis;
+        }
+        long invalidationTimestamp = intervalStartMillis + chunkCount * intervalBetweenResettingMillis;
+        int offset = chunkIndex * VALUES_PER_CHUNK;
+
+        int stripe = stripes.lockAnyStripe();
+        try {
+            if (stripes.get(stripe, offset + INVALIDATION_TIMESTAMP_OFFSET) < invalidationTimestamp) {
+                // the chunk of stripe contains the counts from previous round
+                stripes.set(stripe, offset + HIT_OFFSET, 0);
+                stripes.set(stripe, offset + TOTAL_OFFSET, 0);
+                stripes.set(stripe, offset + INVALIDATION_TIMESTAMP_OFFSET, invalidationTimestamp);
+            }
+            stripes.add(stripe, offset + HIT_OFFSET, hitCount);
+            stripes.add(stripe, offset + TOTAL_OFFSET, totalCount);
+        } finally {
+            stripes.unlock(stripe);
+        }
+    }
+
+    @Override
+    public double getHitRatio() {
+        long currentTimeMillis = clock.currentTimeMillis();
+        // chunks are read one by one, so each optimistic reading copies only few values
+        long[] buffer = new long[VALUES_PER_CHUNK];
+        long hitCountSum = 0;
+        long totalCountSum = 0;
+        for (int stripe = 0; stripe < stripes.getStripeCount(); stripe++) {
+            for (int chunkOffset = 0; chunkOffset < stripes.getValuesPerStripe(); chunkOffset += VALUES_PER_CHUNK) {
+                stripes.read(stripe, chunkOffset, buffer);
+                long proposedInvalidationTimestamp = buffer[INVALIDATION_TIMESTAMP_OFFSET];
+                if (currentTimeMillis >= proposedInvalidationTimestamp) {
+                    // The chunk was unused by writers for a long time
+                    continue;
+                }
+                long hitCount = buffer[HIT_OFFSET];
+                long totalCount = buffer[TOTAL_OFFSET];
+
+                // if this is oldest chunk then we need to reduce its weight
+                long beforeInvalidateMillis = proposedInvalidationTimestamp - currentTimeMillis;
+                if (beforeInvalidateMillis < intervalBetweenResettingMillis) {
+                    double decayingCoefficient = (double) beforeInvalidateMillis / (double) intervalBetweenResettingMillis;
+                    hitCount = (long) (hitCount * decayingCoefficient);
+                    totalCount = (long) (totalCount * decayingCoefficient);
+                }
+
+                hitCountSum += hitCount;
+                totalCountSum += totalCount;
+            }
+        }
+        return (double) hitCountSum / (double) totalCountSum;
+    }
+
+    @Override
+    public String toString() {
+        return "StripedSmoothlyDecayingRollingHitRatio{" +
+                "intervalBetweenResettingMillis=" + intervalBetweenResettingMillis +
+                ", clock=" + clock +
+                ", creationTimestamp=" + creationTimestamp +
+                ", chunkCount=" + chunkCount +
+                ", stripeCount=" + stripes.getStripeCount() +
+                '}';
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.hitratio;
+
+/**
+ * The hit-ratio which never evicts collected values, this is contention-free alternative of {@link UniformHitRatio} which designed for high number of concurrent writers.
+ *
+ * <p>
+ * Instead of packing hit and total counts into single {@link java.util.concurrent.atomic.AtomicLong}, the counts are stored as separate longs in several stripes,
+ * each writer updates the stripe which is not used by another writer, so writers do not contend on the single memory cell.
+ * The stripes are protected by sequence numbers, so reader always observes consistent pair of hit and total counts.
+ * The counts are never reduced, because of long overflow is not reachable in practice.
+ *
+ * <p>
+ * Concurrency properties:
+ * <ul>
+ *     <li>Writers do not contend with each other until count of concurrent writers is less than count of stripes.</li>
+ *     <li>Readers never make writers wait while free stripe exists, the stripes are read optimistically,
+ *     and the stripe is locked by reader only after several failed attempts, so writer which meets it just switches to another one.</li>
+ * </ul>
+ *
+ * <p>
+ * Usage recommendations:
+ * <ul>
+ *     <li>When you do not need in "rolling time window" semantic. Else use {@link StripedSmoothlyDecayingRollingHitRatio}</li>
+ *     <li>When hit-ratio is updated by many threads concurrently. For low contended hit-ratio prefer {@link UniformHitRatio} which consumes less memory.</li>
+ * </ul>
+ *
+ * @see UniformHitRatio
+ */
+public class StripedUniformHitRatio implements HitRatio {
+
+    private static final int HIT_INDEX = 0;
+    private static final int TOTAL_INDEX = 1;
+
+    private final HitRatioStripes stripes;
+
+    public StripedUniformHitRatio() {
+        this(HitRatioStripes.DEFAULT_STRIPE_COUNT);
+    }
+
+    StripedUniformHitRatio(int stripeCount) {
+        this.stripes = new HitRatioStripes(stripeCount, 2);
+    }
+
+    @Override
+    public void update(int hitCount, int totalCount) {
+        update((long) hitCount, (long) totalCount);
+    }
+
+    @Override
+    public void update(long hitCount, long totalCount) {
+        HitRatioUtil.checkArguments(hitCount, totalCount);
+        int stripe = stripes.lockAnyStripe();
+        try {
+            stripes.add(stripe, HIT_INDEX, hitCount);
+            stripes.add(stripe, TOTAL_INDEX, totalCount);
+        } finally {
+            stripes.unlock(stripe);
+        }
+    }
+
+    @Override
+    public double getHitRatio() {
+        long[] buffer = new long[2];
+        long hitCount = 0;
+        long totalCount = 0;
+        for (int stripe = 0; stripe < stripes.getStripeCount(); stripe++) {
+            stripes.read(stripe, buffer);
+            hitCount += buffer[HIT_INDEX];
+            totalCount += buffer[TOTAL_INDEX];
+        }
+        return (double) hitCount / (double) totalCount;
+    }
+
+    @Override
+    public String toString() {
+        return "StripedUniformHitRatio{" +
+                "stripeCount=" + stripes.getStripeCount() +
+                '}';
+    }
+
+}
@@ -23,6 +23,8 @@ import com.github.rollingmetrics.top.impl.SnapshotCachingTop;
 import com.github.rollingmetrics.top.impl.UniformTop;
 import com.github.rollingmetrics.util.Clock;
 import com.github.rollingmetrics.util.ResilientExecutionUtil;
+import com.github.rollingmetrics.util.RotationScheduler;
+import com.github.rollingmetrics.util.RotationStaggering;
 import com.github.rollingmetrics.top.impl.ResetOnSnapshotConcurrentTop;
 import com.github.rollingmetrics.top.impl.SnapshotCachingTop;
 import com.github.rollingmetrics.top.impl.UniformTop;
@@ -66,18 +68,23 @@ public class TopBuilder {
     private int size;
     private Duration latencyThreshold;
     private Duration snapshotCachingDuration;
+    private Duration snapshotMaxStaleness;
     private int maxDescriptionLength;
     private Clock clock;
     private Executor backgroundExecutor;
+    private RotationScheduler rotationScheduler;
+    private Boolean staggeredRotation;
     private TopFactory factory;
 
-    private TopBuilder(int size, Duration latencyThreshold, Duration snapshotCachingDuration, int maxDescriptionLength, Clock clock, Executor backgroundExecutor, TopFactory factory) {
+    private TopBuilder(int size, Duration latencyThreshold, Duration snapshotCachingDuration, Duration snapshotMaxStaleness, int maxDescriptionLength, Clock clock, Executor backgroundExecutor, RotationScheduler rotationScheduler, TopFactory factory) {
         this.size = size;
         this.latencyThreshold = latencyThreshold;
         this.snapshotCachingDuration = snapshotCachingDuration;
+        this.snapshotMaxStaleness = snapshotMaxStaleness;
         this.maxDescriptionLength = maxDescriptionLength;
         this.clock = clock;
         this.backgroundExecutor = backgroundExecutor;
+        this.rotationScheduler = rotationScheduler;
         this.factory = factory;
     }
 
@@ -88,7 +95,9 @@ public class TopBuilder {
      */
     public Top build() {
         Top top = factory.create(size, latencyThreshold, maxDescriptionLength, clock);
-        if (!snapshotCachingDuration.isZero()) {
+        if (snapshotMaxStaleness != null) {
+            top = new SnapshotCachingTop(top, snapshotCachingDuration.toMillis(), snapshotMaxStaleness.toMillis(), clock, getExecutor());
+        } else if (!snapshotCachingDuration.isZero()) {
             top = new SnapshotCachingTop(top, snapshotCachingDuration.toMillis(), clock);
         }
         return top;
@@ -102,7 +111,7 @@ public class TopBuilder {
      */
     public static TopBuilder newBuilder(int size) {
         validateSize(size);
-        return new TopBuilder(size, DEFAULT_LATENCY_THRESHOLD, DEFAULT_SNAPSHOT_CACHING_DURATION, DEFAULT_MAX_LENGTH_OF_QUERY_DESCRIPTION, Clock.defaultClock(), DEFAULT_BACKGROUND_EXECUTOR, DEFAULT_TOP_FACTORY);
+        return new TopBuilder(size, DEFAULT_LATENCY_THRESHOLD, DEFAULT_SNAPSHOT_CACHING_DURATION, null, DEFAULT_MAX_LENGTH_OF_QUERY_DESCRIPTION, Clock.defaultClock(), DEFAULT_BACKGROUND_EXECUTOR, null, DEFAULT_TOP_FACTORY);
     }
 
     /**
@@ -156,6 +165,38 @@ public class TopBuilder {
             throw new IllegalArgumentException("snapshotCachingDuration can not be negative");
         }
         this.snapshotCachingDuration = snapshotCachingDuration;
+        this.snapshotMaxStaleness = null;
+        return this;
+    }
+
+    /**
+     * Configures the caching of {@link Top#getPositionsInDescendingOrder()} with stale-while-revalidate semantic.
+     * While published positions are younger than {@code maxStaleness} the readers get them via single volatile read, and never wait for each other.
+     * When published positions become older than {@code snapshotCachingDuration} they are rebuilt asynchronously on background executor,
+     * and the stale positions are returned until new positions are published.
+     * The positions which are older than {@code maxStaleness} are never returned, the reader which observes them rebuilds positions synchronously,
+     * or waits for rebuilding which is already in progress, so each reader waits for at most one rebuilding.
+     *
+     * @param snapshotCachingDuration the period for which taken positions will be treated as fresh, should be a positive duration
+     * @param maxStaleness the maximum age of returned positions, should be not less than {@code snapshotCachingDuration}
+     * @return this builder instance
+     * @see #withSnapshotCachingDuration(Duration)
+     */
+    public TopBuilder withNonBlockingSnapshotCaching(Duration snapshotCachingDuration, Duration maxStaleness) {
+        if (snapshotCachingDuration == null) {
+            throw new IllegalArgumentException("snapshotCachingDuration should not be null");
+        }
+        if (maxStaleness == null) {
+            throw new IllegalArgumentException("maxStaleness should not be null");
+        }
+        if (snapshotCachingDuration.isNegative() || snapshotCachingDuration.isZero()) {
+            throw new IllegalArgumentException("snapshotCachingDuration should be positive");
+        }
+        if (maxStaleness.compareTo(snapshotCachingDuration) < 0) {
+            throw new IllegalArgumentException("maxStaleness should not be less than snapshotCachingDuration");
+        }
+        this.snapshotCachingDuration = snapshotCachingDuration;
+        this.snapshotMaxStaleness = maxStaleness;
         return this;
     }
 
@@ -218,6 +259,57 @@ public class TopBuilder {
         return this;
     }
 
+    /**
+     * Configures the top to be rotated by shared {@link RotationScheduler#getInstance()} slightly before the boundaries of chunks,
+     * so writers never need to initiate rotation by themselves.
+     *
+     * @return this builder instance
+     * @see #withProactiveRotation(RotationScheduler)
+     */
+    public TopBuilder withProactiveRotation() {
+        return withProactiveRotation(RotationScheduler.getInstance());
+    }
+
+    /**
+     * Configures the top to be rotated by {@code rotationScheduler} slightly before the boundaries of chunks,
+     * so writers never observe the expired chunk, and never submit rotation tasks to background executor in the steady state.
+     * The values recorded during last tick of scheduler before boundary are attributed to the next chunk,
+     * so they can be kept in the top at most {@link RotationScheduler#getTickIntervalMillis()} longer.
+     *
+     * <p>
+     * This option has effect only for {@link #resetAllPositionsPeriodically(Duration)} and {@link #resetPositionsPeriodicallyByChunks(Duration, int)} strategies,
+     * the scheduler should use the same clock as configured for this builder.
+     * </p>
+     *
+     * @param rotationScheduler the scheduler which will rotate the top
+     * @return this builder instance
+     */
+    public TopBuilder withProactiveRotation(RotationScheduler rotationScheduler) {
+        if (rotationScheduler == null) {
+            throw new IllegalArgumentException("rotationScheduler should not be null");
+        }
+        this.rotationScheduler = rotationScheduler;
+        return this;
+    }
+
+    /**
+     * Configures whether boundaries of chunks should be shifted by random offset in order to spread rotations of tops which were created at the same time.
+     * The rolling window guarantee is not changed, only the first chunk after creation becomes shorter,
+     * the boundaries of chunks are shifted by less than one chunk interval in comparison with not staggered top.
+     *
+     * <p>
+     * When this method is not called then global default configured via {@link RotationStaggering#setEnabledByDefault(boolean)} is used.
+     * This option has effect only for {@link #resetAllPositionsPeriodically(Duration)} and {@link #resetPositionsPeriodicallyByChunks(Duration, int)} strategies.
+     * </p>
+     *
+     * @param staggered whether boundaries of chunks should be staggered
+     * @return this builder instance
+     */
+    public TopBuilder withStaggeredRotation(boolean staggered) {
+        this.staggeredRotation = staggered;
+        return this;
+    }
+
     /**
      * Top configured with this strategy will store all values since the top was created.
      *
@@ -361,11 +453,15 @@ public class TopBuilder {
         return new TopFactory() {
             @Override
             public Top create(int size, Duration latencyThreshold, int maxDescriptionLength, Clock clock) {
-                return new ResetByChunksTop(size, latencyThreshold.toNanos(), maxDescriptionLength, intervalBetweenResettingMillis, numberOfHistoryChunks, clock, getExecutor());
+                return new ResetByChunksTop(size, latencyThreshold.toNanos(), maxDescriptionLength, intervalBetweenResettingMillis, numberOfHistoryChunks, clock, getExecutor(), rotationScheduler, isStaggeredRotation());
             }
         };
     }
 
+    private boolean isStaggeredRotation() {
+        return staggeredRotation != null ? staggeredRotation : RotationStaggering.isEnabledByDefault();
+    }
+
     private Executor getExecutor() {
         return backgroundExecutor != null ? backgroundExecutor : ResilientExecutionUtil.getInstance().getBackgroundExecutor();
     }
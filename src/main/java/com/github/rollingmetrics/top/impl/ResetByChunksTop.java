@@ -25,7 +25,10 @@ import com.github.rollingmetrics.top.impl.collector.PositionCollector;
 import com.github.rollingmetrics.top.impl.recorder.PositionRecorder;
 import com.github.rollingmetrics.top.impl.recorder.TwoPhasePositionRecorder;
 import com.github.rollingmetrics.util.Clock;
+import com.github.rollingmetrics.util.ProactivelyRotatable;
 import com.github.rollingmetrics.util.ResilientExecutionUtil;
+import com.github.rollingmetrics.util.RotationScheduler;
+import com.github.rollingmetrics.util.RotationStaggering;
 import com.github.rollingmetrics.histogram.util.Printer;
 import com.github.rollingmetrics.top.Position;
 import com.github.rollingmetrics.top.Top;
@@ -41,7 +44,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 
 
-public class ResetByChunksTop implements Top {
+public class ResetByChunksTop implements Top, ProactivelyRotatable {
 
     private final Executor backgroundExecutor;
     private final long intervalBetweenResettingMillis;
@@ -57,9 +60,25 @@ public class ResetByChunksTop implements Top {
     private final AtomicReference<Phase> currentPhaseRef;
 
     public ResetByChunksTop(int size, long latencyThresholdNanos, int maxDescriptionLength, long intervalBetweenResettingMillis, int numberHistoryChunks, Clock clock, Executor backgroundExecutor) {
+        this(size, latencyThresholdNanos, maxDescriptionLength, intervalBetweenResettingMillis, numberHistoryChunks, clock, backgroundExecutor, null);
+    }
+
+    /**
+     * @param rotationScheduler the scheduler which rotates chunks before boundaries of intervals instead of writers, can be null
+     */
+    public ResetByChunksTop(int size, long latencyThresholdNanos, int maxDescriptionLength, long intervalBetweenResettingMillis, int numberHistoryChunks, Clock clock, Executor backgroundExecutor, RotationScheduler rotationScheduler) {
+        this(size, latencyThresholdNanos, maxDescriptionLength, intervalBetweenResettingMillis, numberHistoryChunks, clock, backgroundExecutor, rotationScheduler, false);
+    }
+
+    /**
+     * @param staggeredRotation if true then boundaries of chunks are shifted by random offset, see {@link RotationStaggering}
+     */
+    public ResetByChunksTop(int size, long latencyThresholdNanos, int maxDescriptionLength, long intervalBetweenResettingMillis, int numberHistoryChunks, Clock clock, Executor backgroundExecutor, RotationScheduler rotationScheduler, boolean staggeredRotation) {
         this.intervalBetweenResettingMillis = intervalBetweenResettingMillis;
         this.clock = clock;
-        this.creationTimestamp = clock.currentTimeMillis();
+        long currentTimeMillis = clock.currentTimeMillis();
+        // the origin of intervals, it is the creation time when rotation is not staggered
+        this.creationTimestamp = staggeredRotation ? RotationStaggering.staggerOrigin(currentTimeMillis, intervalBetweenResettingMillis) : currentTimeMillis;
         this.backgroundExecutor = backgroundExecutor;
 
         Supplier<TwoPhasePositionRecorder> recorderSupplier = () -> new TwoPhasePositionRecorder(size, latencyThresholdNanos, maxDescriptionLength);
@@ -79,6 +98,11 @@ public class ResetByChunksTop implements Top {
             archive = null;
         }
         this.temporarySnapshotCollector = collectorSupplier.get();
+
+        if (rotationScheduler != null) {
+            // all fields are initialized at this point
+            rotationScheduler.register(this, creationTimestamp, intervalBetweenResettingMillis);
+        }
     }
 
     @Override
@@ -132,6 +156,20 @@ public class ResetByChunksTop implements Top {
         return left.intervalRecorder.getSize();
     }
 
+    @Override
+    public void rotateAhead(long boundaryMillis) {
+        Phase currentPhase = currentPhaseRef.get();
+        if (currentPhase.proposedInvalidationTimestamp > boundaryMillis) {
+            // rotation of previous phase is in progress or current phase lasts after boundary
+            return;
+        }
+        Phase nextPhase = currentPhase == left ? right : left;
+        if (currentPhaseRef.compareAndSet(currentPhase, nextPhase)) {
+            // rotation is done by scheduler thread, the next phase starts exactly at boundary
+            rotate(boundaryMillis, currentPhase, nextPhase);
+        }
+    }
+
     private synchronized void rotate(long currentTimeMillis, Phase currentPhase, Phase nextPhase) {
         try {
             currentPhase.intervalRecorder = currentPhase.recorder.getIntervalRecorder(currentPhase.intervalRecorder);
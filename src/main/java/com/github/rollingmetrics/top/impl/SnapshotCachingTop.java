@@ -22,22 +22,29 @@ import com.github.rollingmetrics.top.Position;
 import com.github.rollingmetrics.top.Top;
 import com.github.rollingmetrics.util.CachingSupplier;
 import com.github.rollingmetrics.util.Clock;
+import com.github.rollingmetrics.util.NonBlockingCachingSupplier;
 import com.github.rollingmetrics.top.Top;
 
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 public class SnapshotCachingTop implements Top {
 
     private final Top target;
-    private final CachingSupplier<List<Position>> cache;
+    private final Supplier<List<Position>> cache;
 
     public SnapshotCachingTop(Top target, long cachingDurationMillis, Clock clock) {
         this.target = target;
         this.cache = new CachingSupplier<>(cachingDurationMillis, clock, target::getPositionsInDescendingOrder);
     }
 
+    public SnapshotCachingTop(Top target, long cachingDurationMillis, long maxStalenessMillis, Clock clock, Executor backgroundExecutor) {
+        this.target = target;
+        this.cache = new NonBlockingCachingSupplier<>(cachingDurationMillis, maxStalenessMillis, clock, backgroundExecutor, target::getPositionsInDescendingOrder);
+    }
+
     @Override
     public void update(long timestamp, long latencyTime, TimeUnit latencyUnit, Supplier<String> descriptionSupplier) {
         target.update(timestamp, latencyTime, latencyUnit, descriptionSupplier);
@@ -0,0 +1,67 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.util;
+
+/**
+ * The immutable description of time interval(epoch) which is currently active for chunked metric.
+ *
+ * @see ChunkEpochTracker
+ */
+public final class ChunkEpoch {
+
+    private final long number;
+    private final long startMillis;
+    private final int chunkIndex;
+
+    ChunkEpoch(long number, long startMillis, int chunkIndex) {
+        this.number = number;
+        this.startMillis = startMillis;
+        this.chunkIndex = chunkIndex;
+    }
+
+    /**
+     * @return the count of intervals elapsed since origin
+     */
+    public long getNumber() {
+        return number;
+    }
+
+    /**
+     * @return the time in milliseconds when this epoch started
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * @return the index of chunk which corresponds to this epoch, in other words {@code number % chunkCount}
+     */
+    public int getChunkIndex() {
+        return chunkIndex;
+    }
+
+    @Override
+    public String toString() {
+        return "ChunkEpoch{" +
+                "number=" + number +
+                ", startMillis=" + startMillis +
+                ", chunkIndex=" + chunkIndex +
+                '}';
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.util;
+
+/**
+ * Tracks the current epoch of chunked metric which is registered in {@link TickingClock}.
+ * The epoch is recalculated by ticker thread once per interval,
+ * so chunked metric can read precomputed number of interval and index of chunk instead of dividing on each update.
+ *
+ * @see TickingClock#registerChunkEpochTracker(long, long, int)
+ */
+public final class ChunkEpochTracker {
+
+    private final long originMillis;
+    private final long intervalMillis;
+    private final int chunkCount;
+
+    private volatile ChunkEpoch currentEpoch;
+
+    ChunkEpochTracker(long originMillis, long intervalMillis, int chunkCount, long currentTimeMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("intervalMillis should be positive");
+        }
+        if (chunkCount <= 0) {
+            throw new IllegalArgumentException("chunkCount should be positive");
+        }
+        this.originMillis = originMillis;
+        this.intervalMillis = intervalMillis;
+        this.chunkCount = chunkCount;
+        this.currentEpoch = calculateEpoch(currentTimeMillis);
+    }
+
+    /**
+     * @return the epoch which is active at moment of last clock tick
+     */
+    public ChunkEpoch getCurrentEpoch() {
+        return currentEpoch;
+    }
+
+    void tick(long currentTimeMillis) {
+        ChunkEpoch epoch = currentEpoch;
+        if (currentTimeMillis >= epoch.getStartMillis() && currentTimeMillis - epoch.getStartMillis() < intervalMillis) {
+            // this is main path, the epoch is still actual
+            return;
+        }
+        currentEpoch = calculateEpoch(currentTimeMillis);
+    }
+
+    private ChunkEpoch calculateEpoch(long currentTimeMillis) {
+        long number = (currentTimeMillis - originMillis) / intervalMillis;
+        long startMillis = originMillis + number * intervalMillis;
+        int chunkIndex = (int) (number % chunkCount);
+        return new ChunkEpoch(number, startMillis, chunkIndex);
+    }
+
+    @Override
+    public String toString() {
+        return "ChunkEpochTracker{" +
+                "originMillis=" + originMillis +
+                ", intervalMillis=" + intervalMillis +
+                ", chunkCount=" + chunkCount +
+                ", currentEpoch=" + currentEpoch +
+                '}';
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Util class for allocation and deterministic deallocation of direct buffers.
+ *
+ * This class is not the part of rolling-metrics public API and should not be used by user directly.
+ */
+public final class DirectBufferUtil {
+
+    private static final Deallocator DEALLOCATOR = createDeallocator();
+
+    private DirectBufferUtil() {
+        // util class
+    }
+
+    public static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    /**
+     * Releases memory of direct buffer immediately instead of waiting for garbage collection.
+     * The buffer must not be used after invocation of this method.
+     *
+     * @param buffer the buffer to release
+     */
+    public static void free(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            return;
+        }
+        try {
+            DEALLOCATOR.free(buffer);
+        } catch (Throwable e) {
+            // memory will be released by garbage collector
+        }
+    }
+
+    private interface Deallocator {
+        void free(ByteBuffer buffer) throws Exception;
+    }
+
+    private static Deallocator createDeallocator() {
+        // Java 9+
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            return buffer -> invokeCleaner.invoke(unsafe, buffer);
+        } catch (Throwable e) {
+            // it is Java 8
+        }
+
+        // Java 8
+        try {
+            Method cleanerMethod = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method cleanMethod = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            return buffer -> {
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleanMethod.invoke(cleaner);
+                }
+            };
+        } catch (Throwable e) {
+            // memory will be released by garbage collector
+            return buffer -> {};
+        }
+    }
+
+}
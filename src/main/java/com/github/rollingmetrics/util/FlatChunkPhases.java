@@ -0,0 +1,132 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Helper for metrics which store their chunks in the flat array of longs instead of allocating objects per chunk.
+ * Each chunk occupies {@link #SLOTS_PER_CHUNK} adjacent slots: the index of current phase,
+ * and invalidation timestamp and value for each of two phases.
+ * The writer which first observed that current phase is expired writes to another phase and flips the phases in lock-free manner.
+ *
+ * This is not part of public API.
+ */
+public final class FlatChunkPhases {
+
+    public static final int SLOTS_PER_CHUNK = 5;
+
+    private static final int CURRENT_PHASE_OFFSET = 0;
+    private static final int FIRST_PHASE_INVALIDATION_TIMESTAMP_OFFSET = 1;
+    private static final int FIRST_PHASE_VALUE_OFFSET = 2;
+    private static final int SLOTS_PER_PHASE = 2;
+
+    private FlatChunkPhases() {
+        // util class
+    }
+
+    /**
+     * Resets the chunk, so the first phase becomes current and it is expired at {@code invalidationTimestamp}.
+     */
+    public static void init(AtomicLongArray state, int chunkOffset, long invalidationTimestamp) {
+        state.set(currentPhaseIndex(chunkOffset), 0);
+        state.set(valueIndex(chunkOffset, 0), 0);
+        state.set(valueIndex(chunkOffset, 1), 0);
+        state.set(invalidationTimestampIndex(chunkOffset, 0), invalidationTimestamp);
+        state.set(invalidationTimestampIndex(chunkOffset, 1), Long.MAX_VALUE);
+    }
+
+    /**
+     * Adds {@code delta} to the value of chunk, the phases are flipped if current phase is expired.
+     *
+     * @param intervalStartMillis the beginning of interval which is written, it should be aligned to interval boundaries
+     * @param nextInvalidationTimestamp the time when the phase which is written after flip should be expired
+     *
+     * @return the index of slot to which {@code delta} was added
+     */
+    public static int add(AtomicLongArray state, int chunkOffset, long delta, long intervalStartMillis, long nextInvalidationTimestamp) {
+        int phase = getPhaseForWriting(state, chunkOffset, intervalStartMillis);
+        if (phase >= 0) {
+            int valueIndex = valueIndex(chunkOffset, phase);
+            state.addAndGet(valueIndex, delta);
+            return valueIndex;
+        }
+
+        // write to next phase because current is expired
+        int nextPhase = ~phase;
+        int valueIndex = valueIndex(chunkOffset, nextPhase);
+        state.addAndGet(valueIndex, delta);
+        flip(state, chunkOffset, nextPhase, nextInvalidationTimestamp);
+        return valueIndex;
+    }
+
+    /**
+     * Returns the phase which should be written at {@code intervalStartMillis},
+     * or the bitwise complement of next phase when current phase is expired,
+     * in the later case the caller should write to next phase and then invoke {@link #flip(AtomicLongArray, int, int, long)}.
+     */
+    public static int getPhaseForWriting(AtomicLongArray state, int chunkOffset, long intervalStartMillis) {
+        int currentPhase = (int) state.get(currentPhaseIndex(chunkOffset));
+        long currentPhaseProposedInvalidationTimestamp = state.get(invalidationTimestampIndex(chunkOffset, currentPhase));
+
+        // invalidation timestamps are always aligned to interval boundaries,
+        // so comparing them with beginning of interval is equivalent to comparing with current time
+        if (intervalStartMillis < currentPhaseProposedInvalidationTimestamp) {
+            if (currentPhaseProposedInvalidationTimestamp != Long.MAX_VALUE) {
+                // this is main path - there are no rotation in the middle and we are writing to non-expired phase
+                return currentPhase;
+            }
+            // another thread is in the middle of phase rotation.
+            // We need to re-read current phase to be sure that we are not writing to inactive phase
+            return (int) state.get(currentPhaseIndex(chunkOffset));
+        }
+
+        // it is need to flip the phases
+        return ~(1 - currentPhase);
+    }
+
+    /**
+     * Tries to make {@code nextPhase} current, the thread which succeeded prepares expired phase to next iteration.
+     *
+     * @param nextInvalidationTimestamp the time when {@code nextPhase} should be expired
+     */
+    public static void flip(AtomicLongArray state, int chunkOffset, int nextPhase, long nextInvalidationTimestamp) {
+        int expiredPhase = 1 - nextPhase;
+        if (state.compareAndSet(currentPhaseIndex(chunkOffset), expiredPhase, nextPhase)) {
+            // Prepare expired phase to next iteration
+            state.set(valueIndex(chunkOffset, expiredPhase), 0);
+            state.set(invalidationTimestampIndex(chunkOffset, expiredPhase), Long.MAX_VALUE);
+
+            // allow to next phase to be expired
+            state.set(invalidationTimestampIndex(chunkOffset, nextPhase), nextInvalidationTimestamp);
+        }
+    }
+
+    public static int currentPhaseIndex(int chunkOffset) {
+        return chunkOffset + CURRENT_PHASE_OFFSET;
+    }
+
+    public static int invalidationTimestampIndex(int chunkOffset, int phase) {
+        return chunkOffset + FIRST_PHASE_INVALIDATION_TIMESTAMP_OFFSET + phase * SLOTS_PER_PHASE;
+    }
+
+    public static int valueIndex(int chunkOffset, int phase) {
+        return chunkOffset + FIRST_PHASE_VALUE_OFFSET + phase * SLOTS_PER_PHASE;
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.util;
+
+/**
+ * Helper for (conservatively high) estimation of memory consumed by metrics.
+ * The estimations assume 64-bit JVM without compressed references.
+ *
+ * This is not part of public API.
+ */
+public final class FootprintEstimation {
+
+    public static final int OBJECT_HEADER_BYTES = 16;
+    public static final int ARRAY_HEADER_BYTES = 24;
+    public static final int REFERENCE_BYTES = 8;
+    public static final int LONG_BYTES = 8;
+
+    /**
+     * The pessimistic footprint of {@link java.util.concurrent.atomic.LongAdder} with fully inflated array of cells.
+     * Each cell is annotated by {@code @Contended}, so it is padded by 128 bytes from both sides.
+     */
+    public static final int LONG_ADDER_BYTES;
+    static {
+        int maxCells = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() - 1) << 1;
+        if (maxCells == 0) {
+            maxCells = 1;
+        }
+        int cellBytes = OBJECT_HEADER_BYTES + LONG_BYTES + 2 * 128;
+        int cellsArrayBytes = referenceArray(maxCells) + maxCells * cellBytes;
+        LONG_ADDER_BYTES = align(OBJECT_HEADER_BYTES + LONG_BYTES + REFERENCE_BYTES + 4) + cellsArrayBytes;
+    }
+
+    private FootprintEstimation() {
+        // util class
+    }
+
+    public static int longArray(int length) {
+        return align(ARRAY_HEADER_BYTES + length * LONG_BYTES);
+    }
+
+    public static int referenceArray(int length) {
+        return align(ARRAY_HEADER_BYTES + length * REFERENCE_BYTES);
+    }
+
+    public static int align(int bytes) {
+        return (bytes + 7) & ~7;
+    }
+
+}
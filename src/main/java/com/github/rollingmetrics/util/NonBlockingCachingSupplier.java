@@ -0,0 +1,126 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.util;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * The caching supplier with stale-while-revalidate semantic.
+ * In contrast to {@link CachingSupplier}, readers never wait for each other and never rebuild the value in their own thread,
+ * the last published value is returned by single volatile read,
+ * and when the value becomes older than {@code cachingDurationMillis} the refresh is triggered on background executor.
+ * <p>
+ * The value older than {@code maxStalenessMillis} is never returned, the reader which observes such value rebuilds it synchronously,
+ * or waits for the rebuilding which is already in progress in another thread and returns its result,
+ * so such reader waits for at most one rebuilding. This is the only case when reader can be blocked.
+ * It happens only when value was not requested for a long time or background executor is overloaded,
+ * so maximum staleness should be chosen greater than interval between reads, for example greater than reporting period.
+ */
+public class NonBlockingCachingSupplier<T> implements Supplier<T> {
+
+    private final Supplier<T> targetSupplier;
+    private final long cachingDurationMillis;
+    private final long maxStalenessMillis;
+    private final Clock clock;
+    private final Executor backgroundExecutor;
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+
+    private volatile CachedValue<T> cachedValue;
+
+    public NonBlockingCachingSupplier(long cachingDurationMillis, long maxStalenessMillis, Clock clock, Executor backgroundExecutor, Supplier<T> targetSupplier) {
+        if (maxStalenessMillis >= Long.MAX_VALUE / 2) {
+            throw new IllegalArgumentException("Too big maxStalenessMillis");
+        }
+        if (maxStalenessMillis < cachingDurationMillis) {
+            throw new IllegalArgumentException("maxStalenessMillis should not be less than cachingDurationMillis");
+        }
+        this.targetSupplier = Objects.requireNonNull(targetSupplier);
+        this.cachingDurationMillis = cachingDurationMillis;
+        this.maxStalenessMillis = maxStalenessMillis;
+        this.clock = Objects.requireNonNull(clock);
+        this.backgroundExecutor = Objects.requireNonNull(backgroundExecutor);
+    }
+
+    @Override
+    public T get() {
+        CachedValue<T> cached = cachedValue;
+        if (cached == null) {
+            // nothing was published yet
+            return refresh(null);
+        }
+        long ageMillis = clock.currentTimeMillis() - cached.timestampMillis;
+        if (ageMillis < cachingDurationMillis) {
+            return cached.value;
+        }
+        if (ageMillis >= maxStalenessMillis) {
+            return refresh(cached);
+        }
+        if (refreshScheduled.compareAndSet(false, true)) {
+            ResilientExecutionUtil.getInstance().execute(backgroundExecutor, () -> refreshInBackground(cached));
+        }
+        return cached.value;
+    }
+
+    private void refreshInBackground(CachedValue<T> observedValue) {
+        try {
+            // the value can be already rebuilt synchronously by reader which observed it older than maxStalenessMillis,
+            // so rebuilding is skipped in order to do not block the readers by useless work
+            refresh(observedValue);
+        } finally {
+            refreshScheduled.set(false);
+        }
+    }
+
+    private synchronized T refresh(CachedValue<T> observedValue) {
+        CachedValue<T> cached = cachedValue;
+        if (cached != observedValue) {
+            // value was refreshed by another thread while current thread waited for monitor,
+            // it is fresh enough because rebuilding was started after current thread observed the expired value
+            return cached.value;
+        }
+        // the age is counted from the moment when rebuilding started, because all data recorded after this moment can be missed by the value
+        long timestampMillis = clock.currentTimeMillis();
+        T value = targetSupplier.get();
+        cachedValue = new CachedValue<>(value, timestampMillis);
+        return value;
+    }
+
+    private static final class CachedValue<T> {
+
+        final T value;
+        final long timestampMillis;
+
+        CachedValue(T value, long timestampMillis) {
+            this.value = value;
+            this.timestampMillis = timestampMillis;
+        }
+
+    }
+
+    @Override
+    public String toString() {
+        return "NonBlockingCachingSupplier{" +
+                "cachingDurationMillis=" + cachingDurationMillis +
+                ", maxStalenessMillis=" + maxStalenessMillis +
+                '}';
+    }
+
+}
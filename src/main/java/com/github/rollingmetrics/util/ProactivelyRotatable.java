@@ -0,0 +1,37 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.util;
+
+/**
+ * The chunked metric which allows {@link RotationScheduler} to rotate its chunks slightly before the boundary of interval,
+ * so writers never observe the expired chunk and never need to initiate rotation by themselves.
+ *
+ * @see RotationScheduler#register(ProactivelyRotatable, long, long)
+ */
+public interface ProactivelyRotatable {
+
+    /**
+     * Rotates the current chunk if it expires at {@code boundaryMillis} or earlier and was not rotated yet,
+     * the next chunk should be treated as started at {@code boundaryMillis}.
+     * This method is invoked by scheduler thread, and it does nothing if chunk was already rotated by writer.
+     *
+     * @param boundaryMillis the boundary of interval which is going to be reached
+     */
+    void rotateAhead(long boundaryMillis);
+
+}
@@ -0,0 +1,279 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.util;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The central scheduler which rotates chunked metrics slightly before the boundaries of their intervals.
+ * <p>
+ * By default the chunk is rotated by the writer which first observed that chunk is expired,
+ * this writer submits rotation task to background executor, so the cost of unparking of executor thread is paid by application thread.
+ * When metric is registered in this scheduler, the chunk is rotated by the scheduler thread at most one tick before the boundary,
+ * so in the steady state writers never observe the expired chunk, and never allocate or submit the rotation tasks.
+ * If scheduler thread is delayed by some reason, then writer rotates the chunk by itself as before, so scheduler never breaks the rolling semantic.
+ *
+ * <p>
+ * The price of proactive rotation is the precision: the values recorded during last tick of interval are attributed to the next chunk,
+ * so such values can be kept in the rolling window at most {@code tickIntervalMillis} longer than configured.
+ *
+ * <p>
+ * The registered metrics are tracked by hashed timer wheel, so each tick costs only the processing of metrics which boundaries are reached.
+ * The metrics are referenced weakly, so metric which is not used anymore can be garbage collected without explicit unregistration.
+ *
+ * <p>
+ *     If You use this scheduler inside JEE environment,
+ *     then it would be better to call {@link #stop()} once in application shutdown listener,
+ *     in order to avoid leaking reference to classloader through the scheduler thread.
+ * </p>
+ */
+public final class RotationScheduler {
+
+    public static final long DEFAULT_TICK_INTERVAL_MILLIS = 10;
+
+    static final int WHEEL_SIZE = 512;
+
+    private static final ThreadFactory DEFAULT_THREAD_FACTORY = new DaemonThreadFactory("rolling-metrics-rotation-scheduler");
+
+    private static final Logger logger = Logger.getLogger(RotationScheduler.class.getName());
+
+    private static volatile RotationScheduler instance;
+
+    private final Clock clock;
+    private final long tickIntervalMillis;
+    private final ConcurrentLinkedQueue<Registration> newRegistrations = new ConcurrentLinkedQueue<>();
+    private final Thread schedulerThread;
+
+    // accessed only by scheduler thread
+    private final List<Registration>[] wheel;
+    private final List<Registration> rescheduledRegistrations = new ArrayList<>();
+    private long lastProcessedTick;
+
+    private volatile boolean stopped;
+
+    /**
+     * Returns the shared scheduler instance which ticks each {@link #DEFAULT_TICK_INTERVAL_MILLIS} milliseconds and uses {@link Clock#defaultClock()}.
+     * The scheduler thread is started at first invocation of this method.
+     *
+     * @return the shared instance of {@link RotationScheduler}
+     */
+    public static RotationScheduler getInstance() {
+        RotationScheduler scheduler = instance;
+        if (scheduler == null) {
+            synchronized (RotationScheduler.class) {
+                scheduler = instance;
+                if (scheduler == null) {
+                    scheduler = new RotationScheduler(Clock.defaultClock(), DEFAULT_TICK_INTERVAL_MILLIS, DEFAULT_THREAD_FACTORY);
+                    instance = scheduler;
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * Constructs and starts the new scheduler.
+     *
+     * <p>
+     * Normally you should not use this constructor, because instance provided by {@link #getInstance()} is quite enough for mostly use cases,
+     * and each instance of scheduler creates its own thread.
+     * The registered metrics must use the same clock as scheduler, for example when metrics are constructed with {@link TickingClock}
+     * then scheduler should be constructed with the same instance of {@link TickingClock}.
+     *
+     * @param clock the clock which is used by registered metrics
+     * @param tickIntervalMillis the interval between ticks, it is the maximum duration by which rotation can happen before the boundary
+     * @param threadFactory the factory which will be used for creation of scheduler thread
+     */
+    public RotationScheduler(Clock clock, long tickIntervalMillis, ThreadFactory threadFactory) {
+        this(clock, tickIntervalMillis, threadFactory, true);
+    }
+
+    /**
+     * The constructor without starting of thread is used only for unit testing, ticks are driven manually.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    RotationScheduler(Clock clock, long tickIntervalMillis, ThreadFactory threadFactory, boolean startThread) {
+        if (tickIntervalMillis <= 0) {
+            throw new IllegalArgumentException("tickIntervalMillis should be positive");
+        }
+        this.clock = Objects.requireNonNull(clock);
+        this.tickIntervalMillis = tickIntervalMillis;
+        this.wheel = new List[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new ArrayList<>();
+        }
+        this.lastProcessedTick = clock.currentTimeMillis() / tickIntervalMillis - 1;
+
+        if (startThread) {
+            this.schedulerThread = Objects.requireNonNull(threadFactory).newThread(this::doLifeCycle);
+            // Leaking reference to "RotationScheduler.this" from constructor though lambda does not lead to publication problem,
+            // because of "Thread#start" has HB relation with first instruction in new thread
+            schedulerThread.start();
+        } else {
+            this.schedulerThread = null;
+        }
+    }
+
+    /**
+     * Registers the chunked metric which boundaries of intervals are {@code originMillis + N * intervalMillis}.
+     *
+     * @param target the metric to rotate
+     * @param originMillis the time from which intervals are counted, typically the creation time of metric
+     * @param intervalMillis the duration of one chunk
+     */
+    public void register(ProactivelyRotatable target, long originMillis, long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("intervalMillis should be positive");
+        }
+        // the queue provides HB between registering thread and scheduler thread
+        newRegistrations.add(new Registration(target, originMillis, intervalMillis));
+    }
+
+    /**
+     * Stops the scheduler thread, the registered metrics will be rotated by writers after invocation of this method.
+     */
+    public void stop() {
+        stopped = true;
+        if (schedulerThread != null) {
+            LockSupport.unpark(schedulerThread);
+        }
+    }
+
+    /**
+     * @return the maximum duration by which rotation can happen before the boundary of interval
+     */
+    public long getTickIntervalMillis() {
+        return tickIntervalMillis;
+    }
+
+    void tick() {
+        long nowMillis = clock.currentTimeMillis();
+        long currentTick = nowMillis / tickIntervalMillis;
+
+        // when thread was delayed for a long time it is enough to visit each bucket once
+        long ticksToProcess = Math.min(currentTick - lastProcessedTick, WHEEL_SIZE);
+        for (long tick = currentTick - ticksToProcess + 1; tick <= currentTick; tick++) {
+            processBucket(wheel[bucketIndex(tick)], currentTick, nowMillis);
+        }
+        lastProcessedTick = Math.max(lastProcessedTick, currentTick);
+
+        Registration registration;
+        while ((registration = newRegistrations.poll()) != null) {
+            registration.boundaryMillis = nextBoundary(registration, nowMillis);
+            schedule(registration, currentTick);
+        }
+    }
+
+    private void processBucket(List<Registration> bucket, long currentTick, long nowMillis) {
+        int i = 0;
+        while (i < bucket.size()) {
+            Registration registration = bucket.get(i);
+            if (registration.fireTick > currentTick) {
+                // will be fired in one of next rounds of wheel
+                i++;
+                continue;
+            }
+            // fast removal, order inside bucket does not matter
+            int lastIndex = bucket.size() - 1;
+            bucket.set(i, bucket.get(lastIndex));
+            bucket.remove(lastIndex);
+
+            ProactivelyRotatable target = registration.targetRef.get();
+            if (target == null) {
+                // metric was collected by GC
+                continue;
+            }
+            rotate(target, registration.boundaryMillis);
+            registration.boundaryMillis = Math.max(registration.boundaryMillis + registration.intervalMillis, nextBoundary(registration, nowMillis));
+            rescheduledRegistrations.add(registration);
+        }
+        for (Registration registration : rescheduledRegistrations) {
+            schedule(registration, currentTick);
+        }
+        rescheduledRegistrations.clear();
+    }
+
+    private void schedule(Registration registration, long currentTick) {
+        // the tick which covers the last millisecond before boundary
+        long fireTick = Math.max((registration.boundaryMillis - 1) / tickIntervalMillis, currentTick + 1);
+        registration.fireTick = fireTick;
+        wheel[bucketIndex(fireTick)].add(registration);
+    }
+
+    private static long nextBoundary(Registration registration, long nowMillis) {
+        long millisSinceOrigin = Math.max(nowMillis - registration.originMillis, 0);
+        return registration.originMillis + (millisSinceOrigin / registration.intervalMillis + 1) * registration.intervalMillis;
+    }
+
+    private static int bucketIndex(long tick) {
+        return (int) (tick & (WHEEL_SIZE - 1));
+    }
+
+    private static void rotate(ProactivelyRotatable target, long boundaryMillis) {
+        try {
+            target.rotateAhead(boundaryMillis);
+        } catch (Throwable e) {
+            logger.log(Level.SEVERE, e, () -> "Fail to rotate " + target + " because of " + e.getMessage());
+        }
+    }
+
+    private void doLifeCycle() {
+        long tickIntervalNanos = TimeUnit.MILLISECONDS.toNanos(tickIntervalMillis);
+        while (!stopped) {
+            tick();
+            LockSupport.parkNanos(this, tickIntervalNanos);
+        }
+    }
+
+    private static final class Registration {
+
+        final WeakReference<ProactivelyRotatable> targetRef;
+        final long originMillis;
+        final long intervalMillis;
+
+        // accessed only by scheduler thread
+        long boundaryMillis;
+        long fireTick;
+
+        Registration(ProactivelyRotatable target, long originMillis, long intervalMillis) {
+            this.targetRef = new WeakReference<>(Objects.requireNonNull(target));
+            this.originMillis = originMillis;
+            this.intervalMillis = intervalMillis;
+        }
+
+    }
+
+    @Override
+    public String toString() {
+        return "RotationScheduler{" +
+                "tickIntervalMillis=" + tickIntervalMillis +
+                ", clock=" + clock +
+                ", stopped=" + stopped +
+                '}';
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Spreads the boundaries of chunks of metrics which were created at the same time.
+ * <p>
+ * The chunked metric counts its intervals from the creation time, so all metrics which were created at application startup
+ * rotate their chunks in the same millisecond, and the background thread has to merge all archives at once.
+ * When staggering is enabled, the origin of intervals is moved back by random offset in range {@code [0, intervalMillis)},
+ * so rotations of different metrics are uniformly spread across the interval.
+ * <p>
+ * The rolling window guarantee is not changed: the value is kept in the metric at least <tt>rollingTimeWindow</tt>
+ * and at most <tt>rollingTimeWindow + rollingTimeWindow/numberChunks</tt>, only the first chunk after creation becomes shorter.
+ * The error bound of staggered metric in comparison with not staggered one is the phase shift of chunk boundaries,
+ * which is always less than one chunk interval.
+ */
+public final class RotationStaggering {
+
+    private static volatile boolean enabledByDefault;
+
+    private RotationStaggering() {
+    }
+
+    /**
+     * Enables or disables staggering for all metrics which builders do not configure staggering explicitly.
+     * The default value is {@code false}. The metrics which were already built are not affected.
+     *
+     * @param enabled whether staggering should be used by default
+     */
+    public static void setEnabledByDefault(boolean enabled) {
+        enabledByDefault = enabled;
+    }
+
+    /**
+     * @return whether staggering is used by default
+     */
+    public static boolean isEnabledByDefault() {
+        return enabledByDefault;
+    }
+
+    /**
+     * Calculates the origin of intervals for metric created at {@code creationTimestamp}.
+     *
+     * @param creationTimestamp the creation time of metric
+     * @param intervalMillis the duration of one chunk
+     * @return the random time from range {@code (creationTimestamp - intervalMillis, creationTimestamp]}
+     */
+    public static long staggerOrigin(long creationTimestamp, long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("intervalMillis should be positive");
+        }
+        return creationTimestamp - ThreadLocalRandom.current().nextLong(intervalMillis);
+    }
+
+}
@@ -0,0 +1,188 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.util;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The coarse-grained clock which does not query the OS on each invocation of {@link #currentTimeMillis()},
+ * instead the time is periodically published by single background ticker thread, so reading of time costs only one volatile read.
+ *
+ * <p>
+ * Additionally to time publishing, the chunked metrics can register their intervals via {@link #registerChunkEpochTracker(long, long, int)},
+ * then ticker precomputes the number of current interval and index of chunk, so chunked metrics do not need to do the division on each update.
+ * The trackers are referenced weakly, so metric which is not used anymore can be garbage collected without explicit unregistration.
+ *
+ * <p>
+ * The precision of this clock is limited by tick interval, so use it only for metrics which rolling windows are much longer than tick interval.
+ *
+ * <p> Example of usage:
+ * <pre><code>
+ *         WindowCounter counter = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(60), 10, TickingClock.getInstance());
+ *     </code>
+ * </pre>
+ *
+ * <p>
+ *     If You use this clock inside JEE environment,
+ *     then it would be better to call {@link #stop()} once in application shutdown listener,
+ *     in order to avoid leaking reference to classloader through the ticker thread.
+ * </p>
+ */
+public final class TickingClock implements Clock {
+
+    public static final long DEFAULT_TICK_INTERVAL_MILLIS = 1;
+
+    private static final ThreadFactory DEFAULT_THREAD_FACTORY = new DaemonThreadFactory("rolling-metrics-ticking-clock");
+
+    private static volatile TickingClock instance;
+
+    private final Clock sourceClock;
+    private final long tickIntervalNanos;
+    private final ConcurrentLinkedQueue<WeakReference<ChunkEpochTracker>> trackers = new ConcurrentLinkedQueue<>();
+    private final Thread tickerThread;
+
+    private volatile long currentTimeMillis;
+    private volatile boolean stopped;
+
+    /**
+     * Returns the shared clock instance which ticks each {@link #DEFAULT_TICK_INTERVAL_MILLIS} millisecond.
+     * The ticker thread is started at first invocation of this method.
+     *
+     * @return the shared instance of {@link TickingClock}
+     */
+    public static TickingClock getInstance() {
+        TickingClock clock = instance;
+        if (clock == null) {
+            synchronized (TickingClock.class) {
+                clock = instance;
+                if (clock == null) {
+                    clock = new TickingClock(DEFAULT_TICK_INTERVAL_MILLIS, DEFAULT_THREAD_FACTORY);
+                    instance = clock;
+                }
+            }
+        }
+        return clock;
+    }
+
+    /**
+     * Constructs and starts the new clock.
+     *
+     * <p>
+     * Normally you should not use this constructor, because instance provided by {@link #getInstance()} is quite enough for mostly use cases,
+     * and each instance of clock creates its own ticker thread.
+     *
+     * @param tickIntervalMillis the interval between ticks
+     * @param threadFactory the factory which will be used for creation of ticker thread
+     */
+    public TickingClock(long tickIntervalMillis, ThreadFactory threadFactory) {
+        this(Clock.defaultClock(), tickIntervalMillis, threadFactory);
+    }
+
+    /**
+     * The constructor visibility is package-private for unit testing
+     */
+    TickingClock(Clock sourceClock, long tickIntervalMillis, ThreadFactory threadFactory) {
+        if (tickIntervalMillis <= 0) {
+            throw new IllegalArgumentException("tickIntervalMillis should be positive");
+        }
+        this.sourceClock = Objects.requireNonNull(sourceClock);
+        this.tickIntervalNanos = TimeUnit.MILLISECONDS.toNanos(tickIntervalMillis);
+        this.currentTimeMillis = sourceClock.currentTimeMillis();
+
+        if (threadFactory != null) {
+            this.tickerThread = threadFactory.newThread(this::doLifeCycle);
+            // Leaking reference to "TickingClock.this" from constructor though lambda does not lead to publication problem,
+            // because of "Thread#start" has HB relation with first instruction in new thread
+            tickerThread.start();
+        } else {
+            // ticks are driven manually, this is used only for unit testing
+            this.tickerThread = null;
+        }
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return currentTimeMillis;
+    }
+
+    /**
+     * Registers chunked metric which wants to read the precomputed epoch instead of dividing time on each update.
+     *
+     * @param originMillis the time from which intervals are counted, typically the creation time of metric
+     * @param intervalMillis the duration of one interval
+     * @param chunkCount the count of chunks used to calculate {@link ChunkEpoch#getChunkIndex()}
+     * @return the tracker which epoch is updated by this clock on each tick
+     */
+    public ChunkEpochTracker registerChunkEpochTracker(long originMillis, long intervalMillis, int chunkCount) {
+        ChunkEpochTracker tracker = new ChunkEpochTracker(originMillis, intervalMillis, chunkCount, currentTimeMillis);
+        trackers.add(new WeakReference<>(tracker));
+        return tracker;
+    }
+
+    /**
+     * Stops the ticker thread, the time will be frozen after invocation of this method.
+     */
+    public void stop() {
+        stopped = true;
+        if (tickerThread != null) {
+            LockSupport.unpark(tickerThread);
+        }
+    }
+
+    void tick() {
+        long nowMillis = sourceClock.currentTimeMillis();
+
+        // epochs are published strongly before time, so reader which sees the fresh time will see the fresh epoch too
+        Iterator<WeakReference<ChunkEpochTracker>> iterator = trackers.iterator();
+        while (iterator.hasNext()) {
+            ChunkEpochTracker tracker = iterator.next().get();
+            if (tracker == null) {
+                // metric was collected by GC
+                iterator.remove();
+            } else {
+                tracker.tick(nowMillis);
+            }
+        }
+
+        currentTimeMillis = nowMillis;
+    }
+
+    private void doLifeCycle() {
+        while (!stopped) {
+            tick();
+            LockSupport.parkNanos(this, tickIntervalNanos);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TickingClock{" +
+                "tickIntervalNanos=" + tickIntervalNanos +
+                ", currentTimeMillis=" + currentTimeMillis +
+                ", trackers=" + trackers.size() +
+                ", stopped=" + stopped +
+                '}';
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.counter;
+
+import com.github.rollingmetrics.util.Clock;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompactSmoothlyDecayingRollingCounterTest {
+
+    @Test
+    public void testAddAndCalculateSum() {
+        AtomicLong timeMillis = new AtomicLong();
+        Clock clock = Clock.mock(timeMillis);
+
+        WindowCounter counter = new CompactSmoothlyDecayingRollingCounter(Duration.ofSeconds(2), 2, clock);
+
+        counter.add(100);
+        assertEquals(100, counter.getSum());
+
+        timeMillis.set(2600);
+        assertEquals(40, counter.getSum());
+
+        timeMillis.set(2980);
+        assertEquals(2, counter.getSum());
+
+        timeMillis.set(3000);
+        assertEquals(0, counter.getSum());
+
+        counter.add(200);
+        assertEquals(200, counter.getSum());
+
+        timeMillis.set(4000);
+        counter.add(300);
+        assertEquals(500, counter.getSum());
+
+        timeMillis.set(5500);
+        assertEquals(400, counter.getSum());
+    }
+
+    @Test
+    public void shouldCalculateSameSumAsNonCompactCounter() {
+        AtomicLong timeMillis = new AtomicLong();
+        Clock clock = Clock.mock(timeMillis);
+
+        WindowCounter counter = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(10), 50, clock);
+        WindowCounter compactCounter = new CompactSmoothlyDecayingRollingCounter(Duration.ofSeconds(10), 50, clock);
+
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            int delta = random.nextInt(100);
+            counter.add(delta);
+            compactCounter.add(delta);
+            if (random.nextInt(10) == 0) {
+                assertEquals(counter.getSum(), compactCounter.getSum());
+            }
+            // sometimes jump over the whole time window
+            timeMillis.addAndGet(random.nextInt(1000) == 0 ? 15_000 : random.nextInt(100));
+        }
+        assertEquals(counter.getSum(), compactCounter.getSum());
+    }
+
+    @Test
+    public void footprintShouldBeLessThanFootprintOfNonCompactCounter() {
+        SmoothlyDecayingRollingCounter counter = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(60), 60);
+        CompactSmoothlyDecayingRollingCounter compactCounter = new CompactSmoothlyDecayingRollingCounter(Duration.ofSeconds(60), 60);
+
+        // 61 chunks * 5 slots * 8 bytes
+        assertTrue(compactCounter.getEstimatedFootprintInBytes() >= 61 * 5 * 8);
+        assertTrue(compactCounter.getEstimatedFootprintInBytes() < 61 * 5 * 8 + 200);
+        assertTrue(compactCounter.getEstimatedFootprintInBytes() < counter.getEstimatedFootprintInBytes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooManyChunksShouldBeDisallowed() {
+        new CompactSmoothlyDecayingRollingCounter(Duration.ofSeconds(1000), SmoothlyDecayingRollingCounter.MAX_CHUNKS + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooShortChunkIntervalShouldBeDisallowed() {
+        new CompactSmoothlyDecayingRollingCounter(Duration.ofMillis(SmoothlyDecayingRollingCounter.MIN_CHUNK_RESETTING_INTERVAL_MILLIS * 2 - 1), 2);
+    }
+
+    @Test
+    public void getRollingWindow() {
+        CompactSmoothlyDecayingRollingCounter counter = new CompactSmoothlyDecayingRollingCounter(Duration.ofSeconds(10), 5);
+        assertEquals(Duration.ofSeconds(10), counter.getRollingWindow());
+    }
+
+    @Test
+    public void getChunkCount() {
+        CompactSmoothlyDecayingRollingCounter counter = new CompactSmoothlyDecayingRollingCounter(Duration.ofSeconds(10), 5);
+        assertEquals(5, counter.getChunkCount());
+    }
+
+    @Test
+    public void testToString() {
+        System.out.println(new CompactSmoothlyDecayingRollingCounter(Duration.ofSeconds(10), 5).toString());
+    }
+
+    @Test(timeout = 32000)
+    public void testThatConcurrentThreadsNotHung() throws InterruptedException {
+        WindowCounter counter = new CompactSmoothlyDecayingRollingCounter(Duration.ofSeconds(1), 10);
+        CounterTestUtil.runInParallel(counter, TimeUnit.SECONDS.toMillis(30));
+    }
+
+}
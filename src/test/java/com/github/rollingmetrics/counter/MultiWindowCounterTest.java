@@ -0,0 +1,168 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.counter;
+
+import com.github.rollingmetrics.util.Clock;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MultiWindowCounterTest {
+
+    private static final List<Duration> WINDOWS = Arrays.asList(Duration.ofSeconds(1), Duration.ofSeconds(5), Duration.ofSeconds(15));
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyWindowsShouldBeDisallowed() {
+        new MultiWindowCounter(Collections.emptyList(), 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroWindowShouldBeDisallowed() {
+        new MultiWindowCounter(Arrays.asList(Duration.ofSeconds(1), Duration.ZERO), 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeWindowShouldBeDisallowed() {
+        new MultiWindowCounter(Arrays.asList(Duration.ofSeconds(1), Duration.ofSeconds(-5)), 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lessThanTwoChunksShouldBeDisallowed() {
+        new MultiWindowCounter(WINDOWS, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooShortChunkIntervalShouldBeDisallowed() {
+        new MultiWindowCounter(WINDOWS, 20);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void windowWhichIsNotMultipleOfChunkIntervalShouldBeDisallowed() {
+        new MultiWindowCounter(Arrays.asList(Duration.ofSeconds(1), Duration.ofMillis(1550)), 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooManyChunksShouldBeDisallowed() {
+        new MultiWindowCounter(Arrays.asList(Duration.ofSeconds(1), Duration.ofSeconds(101)), 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownWindowShouldBeDisallowedOnRead() {
+        new MultiWindowCounter(WINDOWS, 10).getSum(Duration.ofSeconds(2));
+    }
+
+    @Test
+    public void testChunkInterval() {
+        MultiWindowCounter counter = new MultiWindowCounter(MultiWindowCounter.ONE_FIVE_FIFTEEN_MINUTES, 10);
+        assertEquals(Duration.ofSeconds(6), counter.getChunkInterval());
+        assertEquals(MultiWindowCounter.ONE_FIVE_FIFTEEN_MINUTES, counter.getRollingWindows());
+    }
+
+    @Test
+    public void testSmoothlyDecayingOfEachWindow() {
+        AtomicLong time = new AtomicLong(0);
+        Clock clock = Clock.mock(time);
+        MultiWindowCounter counter = new MultiWindowCounter(Arrays.asList(Duration.ofSeconds(2), Duration.ofSeconds(4)), 2, clock);
+
+        counter.add(100);
+        assertArrayEquals(new long[] {100, 100}, counter.getSums());
+
+        time.set(1000);
+        counter.add(10);
+        assertArrayEquals(new long[] {110, 110}, counter.getSums());
+
+        time.set(2500);
+        assertArrayEquals(new long[] {60, 110}, counter.getSums());
+        assertEquals(60, counter.getSum(Duration.ofSeconds(2)));
+        assertEquals(110, counter.getSum(Duration.ofSeconds(4)));
+
+        time.set(3000);
+        assertArrayEquals(new long[] {10, 110}, counter.getSums());
+
+        time.set(4500);
+        assertArrayEquals(new long[] {0, 60}, counter.getSums());
+
+        time.set(5000);
+        assertArrayEquals(new long[] {0, 10}, counter.getSums());
+
+        time.set(6000);
+        assertArrayEquals(new long[] {0, 0}, counter.getSums());
+    }
+
+    @Test
+    public void shouldBeEquivalentToSeveralSmoothlyDecayingCounters() {
+        AtomicLong time = new AtomicLong(0);
+        Clock clock = Clock.mock(time);
+        MultiWindowCounter multiWindowCounter = new MultiWindowCounter(WINDOWS, 10, clock);
+        WindowCounter[] counters = new WindowCounter[WINDOWS.size()];
+        for (int i = 0; i < counters.length; i++) {
+            int numberChunks = (int) (WINDOWS.get(i).toMillis() / 100);
+            counters[i] = new SmoothlyDecayingRollingCounter(WINDOWS.get(i), numberChunks, clock);
+        }
+
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            time.addAndGet(random.nextInt(random.nextInt(100) == 0 ? 20_000 : 50));
+            long delta = random.nextInt(100);
+            multiWindowCounter.add(delta);
+            for (WindowCounter counter : counters) {
+                counter.add(delta);
+            }
+            if (i % 10 == 0) {
+                time.addAndGet(random.nextInt(50));
+            }
+
+            long[] sums = multiWindowCounter.getSums();
+            for (int j = 0; j < counters.length; j++) {
+                assertEquals(counters[j].getSum(), sums[j]);
+                assertEquals(counters[j].getSum(), multiWindowCounter.getSum(WINDOWS.get(j)));
+            }
+        }
+    }
+
+    @Test
+    public void testToString() {
+        System.out.println(new MultiWindowCounter(WINDOWS, 10).toString());
+    }
+
+    @Test(timeout = 32000)
+    public void testThatConcurrentThreadsNotHung() throws InterruptedException {
+        MultiWindowCounter multiWindowCounter = new MultiWindowCounter(Arrays.asList(Duration.ofMillis(200), Duration.ofSeconds(1)), 2);
+        WindowCounter counter = new WindowCounter() {
+            @Override
+            public void add(long delta) {
+                multiWindowCounter.add(delta);
+            }
+            @Override
+            public long getSum() {
+                return multiWindowCounter.getSums()[1];
+            }
+        };
+        CounterTestUtil.runInParallel(counter, TimeUnit.SECONDS.toMillis(30));
+    }
+
+}
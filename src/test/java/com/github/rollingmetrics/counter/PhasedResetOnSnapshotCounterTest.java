@@ -0,0 +1,78 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.counter;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class PhasedResetOnSnapshotCounterTest {
+
+    @Test
+    public void sumShouldBeClearedAtSnapshot() {
+        WindowCounter counter = new PhasedResetOnSnapshotCounter();
+        counter.add(2);
+        assertEquals(2, counter.getSum());
+        assertEquals(0, counter.getSum());
+
+        counter.add(7);
+        counter.add(3);
+        assertEquals(10, counter.getSum());
+        assertEquals(0, counter.getSum());
+
+        counter.add(-5);
+        assertEquals(-5, counter.getSum());
+    }
+
+    @Test(timeout = 32000)
+    public void noIncrementShouldBeLostOrReportedTwice() throws InterruptedException {
+        WindowCounter counter = new PhasedResetOnSnapshotCounter();
+        Thread[] writers = new Thread[4];
+        for (int i = 0; i < writers.length; i++) {
+            writers[i] = new Thread(() -> {
+                for (int j = 0; j < 1_000_000; j++) {
+                    counter.add(1);
+                }
+            });
+            writers[i].start();
+        }
+
+        long sum = 0;
+        for (Thread writer : writers) {
+            while (writer.isAlive()) {
+                sum += counter.getSum();
+            }
+            writer.join();
+        }
+        sum += counter.getSum();
+        assertEquals(4_000_000, sum);
+    }
+
+    @Test
+    public void testToString() {
+        System.out.println(new PhasedResetOnSnapshotCounter());
+    }
+
+    @Test(timeout = 32000)
+    public void testThatConcurrentThreadsNotHung() throws InterruptedException {
+        CounterTestUtil.runInParallel(new PhasedResetOnSnapshotCounter(), TimeUnit.SECONDS.toMillis(30));
+    }
+
+}
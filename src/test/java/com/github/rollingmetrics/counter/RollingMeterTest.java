@@ -0,0 +1,100 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.counter;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.rollingmetrics.util.Clock;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class RollingMeterTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooManyChunksShouldBeDisallowed() {
+        new RollingMeter(1000);
+    }
+
+    @Test
+    public void emptyMeterShouldReportZeros() {
+        RollingMeter meter = new RollingMeter();
+        assertEquals(0, meter.getCount());
+        assertEquals(0.0, meter.getOneMinuteRate(), 0.0);
+        assertEquals(0.0, meter.getFiveMinuteRate(), 0.0);
+        assertEquals(0.0, meter.getFifteenMinuteRate(), 0.0);
+        assertEquals(0.0, meter.getMeanRate(), 0.0);
+    }
+
+    @Test
+    public void testRates() {
+        AtomicLong time = new AtomicLong(0);
+        RollingMeter meter = new RollingMeter(10, Clock.mock(time));
+
+        // 10 events per second during 15 minutes
+        for (int second = 0; second < 15 * 60; second++) {
+            time.set(TimeUnit.SECONDS.toMillis(second));
+            meter.mark(10);
+        }
+        time.set(TimeUnit.MINUTES.toMillis(15));
+        assertEquals(9000, meter.getCount());
+        assertEquals(10.0, meter.getOneMinuteRate(), 0.01);
+        assertEquals(10.0, meter.getFiveMinuteRate(), 0.01);
+        assertEquals(10.0, meter.getFifteenMinuteRate(), 0.01);
+        assertEquals(10.0, meter.getMeanRate(), 0.01);
+
+        // burst should be reported without lag
+        meter.mark(6000);
+        assertEquals(110.0, meter.getOneMinuteRate(), 0.01);
+        assertEquals(30.0, meter.getFiveMinuteRate(), 0.01);
+        assertEquals(16.66, meter.getFifteenMinuteRate(), 0.01);
+
+        // the burst should be forgotten as soon as it leaves the window
+        time.addAndGet(TimeUnit.MINUTES.toMillis(1) + TimeUnit.SECONDS.toMillis(6));
+        assertEquals(0.0, meter.getOneMinuteRate(), 0.0);
+        assertEquals(15000, meter.getCount());
+    }
+
+    @Test
+    public void rateShouldBeCalculatedAgainstElapsedTimeWhenWindowIsNotFilled() {
+        AtomicLong time = new AtomicLong(0);
+        RollingMeter meter = new RollingMeter(10, Clock.mock(time));
+        meter.mark(100);
+        time.set(TimeUnit.SECONDS.toMillis(10));
+        assertEquals(10.0, meter.getOneMinuteRate(), 0.0);
+        assertEquals(10.0, meter.getFiveMinuteRate(), 0.0);
+        assertEquals(10.0, meter.getFifteenMinuteRate(), 0.0);
+        assertEquals(10.0, meter.getMeanRate(), 0.0);
+    }
+
+    @Test
+    public void shouldBeRegistrableAsMeter() {
+        MetricRegistry registry = new MetricRegistry();
+        RollingMeter meter = registry.register("requests", new RollingMeter());
+        assertSame(meter, registry.getMeters().get("requests"));
+    }
+
+    @Test
+    public void testToString() {
+        System.out.println(new RollingMeter().toString());
+    }
+
+}
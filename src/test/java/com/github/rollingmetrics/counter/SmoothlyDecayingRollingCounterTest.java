@@ -22,6 +22,7 @@ import com.github.rollingmetrics.util.Clock;
 import org.junit.Test;
 
 import java.time.Duration;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -31,10 +32,41 @@ public class SmoothlyDecayingRollingCounterTest {
 
     @Test
     public void testAddAndCalculateSum() throws Exception {
+        testAddAndCalculateSum(false);
+    }
+
+    @Test
+    public void testAddAndCalculateSumWithSealedChunksTotal() throws Exception {
+        testAddAndCalculateSum(true);
+    }
+
+    @Test
+    public void sealedChunksTotalShouldNotChangeTheSum() throws Exception {
         AtomicLong timeMillis = new AtomicLong();
         Clock clock = Clock.mock(timeMillis);
 
-        WindowCounter counter = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(2), 2, clock);
+        WindowCounter counter = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(10), 50, clock, false);
+        WindowCounter counterWithSealedTotal = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(10), 50, clock, true);
+
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            int delta = random.nextInt(100);
+            counter.add(delta);
+            counterWithSealedTotal.add(delta);
+            if (random.nextInt(10) == 0) {
+                assertEquals(counter.getSum(), counterWithSealedTotal.getSum());
+            }
+            // sometimes jump over the whole time window
+            timeMillis.addAndGet(random.nextInt(1000) == 0 ? 15_000 : random.nextInt(100));
+        }
+        assertEquals(counter.getSum(), counterWithSealedTotal.getSum());
+    }
+
+    private void testAddAndCalculateSum(boolean trackSealedChunksTotal) throws Exception {
+        AtomicLong timeMillis = new AtomicLong();
+        Clock clock = Clock.mock(timeMillis);
+
+        WindowCounter counter = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(2), 2, clock, trackSealedChunksTotal);
 
         counter.add(100);
         assertEquals(100, counter.getSum());
@@ -70,6 +102,30 @@ public class SmoothlyDecayingRollingCounterTest {
         assertEquals(0, counter.getSum());
     }
 
+    @Test
+    public void testBatchAdd() {
+        AtomicLong timeMillis = new AtomicLong();
+        Clock clock = Clock.mock(timeMillis);
+        WindowCounter counter = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(2), 2, clock);
+
+        long[] deltas = {1, 2, 3, 4, 5};
+        counter.add(deltas, 1, 4);
+        assertEquals(9, counter.getSum());
+
+        counter.add(deltas, 2, 2);
+        assertEquals(9, counter.getSum());
+
+        timeMillis.set(1000);
+        counter.add(deltas, 0, deltas.length);
+        assertEquals(24, counter.getSum());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchAddShouldDisallowIllegalRange() {
+        WindowCounter counter = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(2), 2);
+        counter.add(new long[3], 2, 4);
+    }
+
     @Test
     public void testToString() {
         WindowCounter counter = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(1), 3);
@@ -89,6 +145,12 @@ public class SmoothlyDecayingRollingCounterTest {
         CounterTestUtil.runInParallel(counter, TimeUnit.SECONDS.toMillis(30));
     }
 
+    @Test(timeout = 32000)
+    public void testThatConcurrentThreadsNotHungWithSealedChunksTotal() throws InterruptedException {
+        WindowCounter counter = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(1), 10, Clock.defaultClock(), true);
+        CounterTestUtil.runInParallel(counter, TimeUnit.SECONDS.toMillis(30));
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void shouldDisallowTooShortInvalidationPeriod() {
         new SmoothlyDecayingRollingCounter(Duration.ofMillis((SmoothlyDecayingRollingCounter.MIN_CHUNK_RESETTING_INTERVAL_MILLIS) - 1), 4);
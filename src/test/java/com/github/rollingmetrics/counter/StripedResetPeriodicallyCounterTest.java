@@ -0,0 +1,90 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.counter;
+
+import com.github.rollingmetrics.util.Clock;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+public class StripedResetPeriodicallyCounterTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeResettingDurationShouldBeDisallowed() {
+        new StripedResetPeriodicallyCounter(Duration.ofSeconds(-1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroResettingDurationShouldBeDisallowed() {
+        new StripedResetPeriodicallyCounter(Duration.ZERO);
+    }
+
+    @Test
+    public void testRotation() {
+        AtomicLong timeMillis = new AtomicLong();
+        Clock clock = Clock.mock(timeMillis);
+        WindowCounter counter = new StripedResetPeriodicallyCounter(Duration.ofMillis(1000), clock);
+
+        counter.add(100);
+        assertEquals(100, counter.getSum());
+
+        timeMillis.set(500);
+        counter.add(200);
+        assertEquals(300, counter.getSum());
+
+        timeMillis.set(999);
+        assertEquals(300, counter.getSum());
+
+        timeMillis.set(1000);
+        assertEquals(0, counter.getSum());
+
+        timeMillis.set(1500);
+        counter.add(444);
+        assertEquals(444, counter.getSum());
+
+        timeMillis.set(2100);
+        assertEquals(0, counter.getSum());
+
+        timeMillis.set(5300);
+        counter.add(1);
+        counter.add(2);
+        assertEquals(3, counter.getSum());
+
+        timeMillis.set(5999);
+        assertEquals(3, counter.getSum());
+
+        timeMillis.set(6000);
+        assertEquals(0, counter.getSum());
+    }
+
+    @Test
+    public void testToString() {
+        System.out.println(new StripedResetPeriodicallyCounter(Duration.ofMillis(1000)).toString());
+    }
+
+    @Test(timeout = 32000)
+    public void testThatConcurrentThreadsNotHung() throws InterruptedException {
+        WindowCounter counter = new StripedResetPeriodicallyCounter(Duration.ofMillis(50));
+        CounterTestUtil.runInParallel(counter, TimeUnit.SECONDS.toMillis(30));
+    }
+
+}
@@ -0,0 +1,192 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.counter;
+
+import com.github.rollingmetrics.util.Clock;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class WindowCounterFamilyTest {
+
+    private final AtomicLong timeMillis = new AtomicLong();
+    private final Clock clock = Clock.mock(timeMillis);
+
+    @Test
+    public void smoothlyDecayingFamilyShouldCalculateSameSumAsSmoothlyDecayingCounter() {
+        WindowCounterFamily<Integer> family = WindowCounterFamily.smoothlyDecaying(Duration.ofSeconds(10), 10, 100, clock);
+        WindowCounter[] counters = new WindowCounter[5];
+        for (int key = 0; key < counters.length; key++) {
+            counters[key] = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(10), 10, clock);
+        }
+
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            int key = random.nextInt(counters.length);
+            int delta = random.nextInt(100);
+            assertTrue(family.add(key, delta));
+            counters[key].add(delta);
+            if (random.nextInt(10) == 0) {
+                for (int k = 0; k < counters.length; k++) {
+                    assertEquals(counters[k].getSum(), family.getSum(k));
+                }
+            }
+            // sometimes jump over the whole time window
+            timeMillis.addAndGet(random.nextInt(1000) == 0 ? 15_000 : random.nextInt(100));
+        }
+        for (int key = 0; key < counters.length; key++) {
+            assertEquals(counters[key].getSum(), family.getSum(key));
+        }
+    }
+
+    @Test
+    public void resetPeriodicallyFamilyShouldCalculateSameSumAsStripedResetPeriodicallyCounter() {
+        WindowCounterFamily<String> family = WindowCounterFamily.resetPeriodically(Duration.ofMillis(1000), 100, clock);
+        WindowCounter counter = new StripedResetPeriodicallyCounter(Duration.ofMillis(1000), clock);
+
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            int delta = random.nextInt(100);
+            family.add("tenant", delta);
+            counter.add(delta);
+            assertEquals(counter.getSum(), family.getSum("tenant"));
+            timeMillis.addAndGet(random.nextInt(1000) == 0 ? 5_000 : random.nextInt(100));
+            assertEquals(counter.getSum(), family.getSum("tenant"));
+        }
+    }
+
+    @Test
+    public void shouldReturnZeroForUnknownKey() {
+        WindowCounterFamily<String> family = WindowCounterFamily.resetPeriodically(Duration.ofMillis(1000), 100, clock);
+        assertEquals(0, family.getSum("unknown"));
+        assertEquals(0, family.getKeyCount());
+    }
+
+    @Test
+    public void shouldRejectNewKeyWhenAllKeysAreBusy() {
+        WindowCounterFamily<String> family = WindowCounterFamily.smoothlyDecaying(Duration.ofSeconds(2), 2, 2, clock);
+        assertTrue(family.add("a", 1));
+        assertTrue(family.add("b", 2));
+        assertFalse(family.add("c", 3));
+
+        // already tracked keys should be still writable
+        assertTrue(family.add("a", 1));
+        assertEquals(2, family.getSum("a"));
+        assertEquals(0, family.getSum("c"));
+        assertEquals(2, family.getKeyCount());
+    }
+
+    @Test
+    public void shouldEvictIdleKeyWhenNeedSpaceForNewKey() {
+        WindowCounterFamily<String> family = WindowCounterFamily.smoothlyDecaying(Duration.ofSeconds(2), 2, 2, clock);
+        family.add("a", 1);
+        family.add("b", 2);
+
+        timeMillis.set(2_000);
+        family.add("b", 3);
+        // "a" is still not idle, because of its chunk is decaying
+        assertFalse(family.add("c", 4));
+
+        timeMillis.set(3_000);
+        assertTrue(family.add("c", 4));
+        assertEquals(0, family.getSum("a"));
+        assertEquals(3, family.getSum("b"));
+        assertEquals(4, family.getSum("c"));
+
+        Map<String, Long> sums = family.getSums();
+        assertEquals(2, sums.size());
+        assertEquals(3L, (long) sums.get("b"));
+        assertEquals(4L, (long) sums.get("c"));
+    }
+
+    @Test
+    public void evictedKeyShouldBeRegisteredAgainOnNextUpdate() {
+        WindowCounterFamily<String> family = WindowCounterFamily.resetPeriodically(Duration.ofMillis(1000), 10, clock);
+        family.add("a", 1);
+        family.add("b", 1);
+
+        timeMillis.set(1_500);
+        family.add("b", 1);
+        assertEquals(1, family.evictIdleKeys());
+        assertEquals(1, family.getKeyCount());
+
+        family.add("a", 42);
+        assertEquals(42, family.getSum("a"));
+        assertEquals(2, family.getKeyCount());
+    }
+
+    @Test
+    public void footprintShouldNotDependOnCountOfChunkObjects() {
+        WindowCounterFamily<Integer> family = WindowCounterFamily.smoothlyDecaying(Duration.ofSeconds(60), 60, 1000);
+        long emptyFootprint = family.getEstimatedFootprintInBytes();
+        // 1000 keys * (2 header slots + 61 chunks * 5 slots) * 8 bytes
+        assertTrue(emptyFootprint >= 1000 * 307 * 8);
+
+        for (int key = 0; key < 1000; key++) {
+            family.add(key, 1);
+        }
+        long fullFootprint = family.getEstimatedFootprintInBytes();
+        assertTrue(fullFootprint - emptyFootprint < 1000 * 128);
+        assertTrue(fullFootprint < 1000 * new SmoothlyDecayingRollingCounter(Duration.ofSeconds(60), 60).getEstimatedFootprintInBytes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroMaxKeysShouldBeDisallowed() {
+        WindowCounterFamily.resetPeriodically(Duration.ofSeconds(1), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooManyChunksShouldBeDisallowed() {
+        WindowCounterFamily.smoothlyDecaying(Duration.ofSeconds(1000), SmoothlyDecayingRollingCounter.MAX_CHUNKS + 1, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroResetIntervalShouldBeDisallowed() {
+        WindowCounterFamily.resetPeriodically(Duration.ZERO, 10);
+    }
+
+    @Test
+    public void testToString() {
+        System.out.println(WindowCounterFamily.smoothlyDecaying(Duration.ofSeconds(10), 5, 10).toString());
+    }
+
+    @Test(timeout = 32000)
+    public void testThatConcurrentThreadsNotHung() throws InterruptedException {
+        // the count of keys is greater than capacity in order to check eviction
+        WindowCounterFamily<Integer> family = WindowCounterFamily.smoothlyDecaying(Duration.ofMillis(200), 2, 8);
+        WindowCounter counter = new WindowCounter() {
+            @Override
+            public void add(long delta) {
+                family.add(ThreadLocalRandom.current().nextInt(16), delta);
+            }
+            @Override
+            public long getSum() {
+                return family.getSum(ThreadLocalRandom.current().nextInt(16));
+            }
+        };
+        CounterTestUtil.runInParallel(counter, TimeUnit.SECONDS.toMillis(30));
+    }
+
+}
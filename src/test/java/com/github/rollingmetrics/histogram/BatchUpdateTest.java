@@ -0,0 +1,180 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.github.rollingmetrics.util.Clock;
+import com.github.rollingmetrics.util.MockExecutor;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BatchUpdateTest {
+
+    private final AtomicLong time = new AtomicLong();
+    private final Clock clock = Clock.mock(time);
+
+    private final List<Supplier<HdrBuilder>> builders = Arrays.asList(
+            () -> new HdrBuilder(clock).neverResetReservoir(),
+            () -> new HdrBuilder(clock).resetReservoirOnSnapshot(),
+            () -> new HdrBuilder(clock).resetReservoirPeriodically(Duration.ofSeconds(5)),
+            () -> new HdrBuilder(clock).resetReservoirPeriodicallyByChunks(Duration.ofSeconds(6), 3),
+            () -> new HdrBuilder(clock).resetReservoirPeriodicallyByFineGrainedChunks(Duration.ofSeconds(6), 30),
+            () -> new HdrBuilder(clock).resetReservoirPeriodicallyBySmoothlyDecayingChunks(Duration.ofSeconds(6), 3),
+            () -> new HdrBuilder(clock).decayReservoirExponentially(),
+            () -> new HdrBuilder(clock).neverResetReservoir().withThreadLocalRecording(),
+            () -> new HdrBuilder(clock).resetReservoirOnSnapshot().withThreadLocalRecording(),
+            () -> new HdrBuilder(clock).neverResetReservoir().withSnapshotCachingDuration(Duration.ofSeconds(1))
+    );
+
+    @Test
+    public void allReservoirsShouldSupportBatchUpdates() {
+        for (Supplier<HdrBuilder> builder : builders) {
+            assertTrue(builder.get().buildReservoir() instanceof BatchUpdatableReservoir);
+        }
+    }
+
+    @Test
+    public void updateWithCountShouldBeEquivalentToSequenceOfUpdates() {
+        for (Supplier<HdrBuilder> builder : builders) {
+            for (long expectedInterval : new long[] {0, 100}) {
+                Reservoir single = builder.get().withBackgroundExecutor(MockExecutor.INSTANCE)
+                        .withExpectedIntervalBetweenValueSamples(expectedInterval).withoutSnapshotOptimization().buildReservoir();
+                BatchUpdatableReservoir weighted = (BatchUpdatableReservoir) builder.get().withBackgroundExecutor(MockExecutor.INSTANCE)
+                        .withExpectedIntervalBetweenValueSamples(expectedInterval).withoutSnapshotOptimization().buildReservoir();
+
+                Random random = new Random(42);
+                for (int i = 0; i < 200; i++) {
+                    time.addAndGet(random.nextInt(500));
+                    long value = 1 + random.nextInt(1000);
+                    int count = random.nextInt(5);
+                    for (int j = 0; j < count; j++) {
+                        single.update(value);
+                    }
+                    weighted.update(value, count);
+                    if (random.nextInt(10) == 0) {
+                        assertSnapshotsEqual(single.getSnapshot(), weighted.getSnapshot());
+                    }
+                }
+                assertSnapshotsEqual(single.getSnapshot(), weighted.getSnapshot());
+            }
+        }
+    }
+
+    @Test
+    public void batchUpdateShouldBeEquivalentToSequenceOfUpdates() {
+        for (Supplier<HdrBuilder> builder : builders) {
+            for (long expectedInterval : new long[] {0, 100}) {
+                Reservoir single = builder.get().withBackgroundExecutor(MockExecutor.INSTANCE)
+                        .withExpectedIntervalBetweenValueSamples(expectedInterval).withoutSnapshotOptimization().buildReservoir();
+                BatchUpdatableReservoir batched = (BatchUpdatableReservoir) builder.get().withBackgroundExecutor(MockExecutor.INSTANCE)
+                        .withExpectedIntervalBetweenValueSamples(expectedInterval).withoutSnapshotOptimization().buildReservoir();
+
+                Random random = new Random(42);
+                for (int i = 0; i < 200; i++) {
+                    time.addAndGet(random.nextInt(500));
+                    long[] values = new long[random.nextInt(10)];
+                    for (int j = 0; j < values.length; j++) {
+                        values[j] = 1 + random.nextInt(1000);
+                    }
+                    int offset = values.length == 0 ? 0 : random.nextInt(values.length);
+                    int length = values.length - offset;
+                    for (int j = offset; j < offset + length; j++) {
+                        single.update(values[j]);
+                    }
+                    batched.update(values, offset, length);
+                    if (random.nextInt(10) == 0) {
+                        assertSnapshotsEqual(single.getSnapshot(), batched.getSnapshot());
+                    }
+                }
+                assertSnapshotsEqual(single.getSnapshot(), batched.getSnapshot());
+            }
+        }
+    }
+
+    @Test
+    public void batchShouldResolveOverflowWithoutModificationOfArray() {
+        long[] values = {10, 101, 20, 1000, 30};
+
+        BatchUpdatableReservoir skipping = (BatchUpdatableReservoir) new HdrBuilder().withHighestTrackableValue(100, OverflowResolver.SKIP).withoutSnapshotOptimization().buildReservoir();
+        skipping.update(values, 0, values.length);
+        assertArrayEquals(new long[] {10, 20, 30}, skipping.getSnapshot().getValues());
+
+        BatchUpdatableReservoir reducing = (BatchUpdatableReservoir) new HdrBuilder().withHighestTrackableValue(100, OverflowResolver.REDUCE_TO_HIGHEST_TRACKABLE).withoutSnapshotOptimization().buildReservoir();
+        reducing.update(values, 1, 3);
+        Snapshot snapshot = reducing.getSnapshot();
+        assertEquals(3, snapshot.size());
+        assertEquals(20, snapshot.getMin());
+        assertEquals(100, snapshot.getMax());
+
+        assertArrayEquals(new long[] {10, 101, 20, 1000, 30}, values);
+    }
+
+    @Test
+    public void updateWithCountShouldResolveOverflow() {
+        BatchUpdatableReservoir skipping = (BatchUpdatableReservoir) new HdrBuilder().withHighestTrackableValue(100, OverflowResolver.SKIP).withoutSnapshotOptimization().buildReservoir();
+        skipping.update(101, 10);
+        assertEquals(0, skipping.getSnapshot().size());
+
+        BatchUpdatableReservoir reducing = (BatchUpdatableReservoir) new HdrBuilder().withHighestTrackableValue(100, OverflowResolver.REDUCE_TO_HIGHEST_TRACKABLE).withoutSnapshotOptimization().buildReservoir();
+        reducing.update(101, 10);
+        Snapshot snapshot = reducing.getSnapshot();
+        assertEquals(10, snapshot.size());
+        assertEquals(100, snapshot.getMax());
+    }
+
+    @Test
+    public void zeroCountShouldBeIgnored() {
+        BatchUpdatableReservoir reservoir = (BatchUpdatableReservoir) new HdrBuilder().withoutSnapshotOptimization().buildReservoir();
+        reservoir.update(42, 0);
+        reservoir.update(new long[] {42}, 1, 0);
+        assertEquals(0, reservoir.getSnapshot().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotAllowNegativeCount() {
+        ((BatchUpdatableReservoir) new HdrBuilder().buildReservoir()).update(42, -1);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void shouldCheckBoundsOfBatch() {
+        ((BatchUpdatableReservoir) new HdrBuilder().buildReservoir()).update(new long[3], 2, 2);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void shouldNotAllowNegativeOffset() {
+        ((BatchUpdatableReservoir) new HdrBuilder().buildReservoir()).update(new long[3], -1, 2);
+    }
+
+    private static void assertSnapshotsEqual(Snapshot expected, Snapshot actual) {
+        assertArrayEquals(expected.getValues(), actual.getValues());
+        assertEquals(expected.getMax(), actual.getMax());
+        assertEquals(expected.getMin(), actual.getMin());
+    }
+
+}
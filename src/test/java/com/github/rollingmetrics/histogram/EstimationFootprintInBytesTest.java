@@ -16,7 +16,10 @@
  */
 
 package com.github.rollingmetrics.histogram;
+import org.HdrHistogram.HistogramIterationValue;
+import org.HdrHistogram.IntCountsHistogram;
 import org.HdrHistogram.Recorder;
+import org.HdrHistogram.ShortCountsHistogram;
 import org.junit.Test;
 
 import java.time.Duration;
@@ -36,7 +39,47 @@ public class EstimationFootprintInBytesTest {
         assertEquals(histogramEquivalentEstimate * 3, builder.neverResetReservoir().getEstimatedFootprintInBytes());
         assertEquals(histogramEquivalentEstimate * 2, builder.resetReservoirOnSnapshot().getEstimatedFootprintInBytes());
         assertEquals(histogramEquivalentEstimate * 7, builder.resetReservoirPeriodically(Duration.ofMinutes(1)).getEstimatedFootprintInBytes());
-        assertEquals(histogramEquivalentEstimate * (10 + 6 + 1), builder.resetReservoirPeriodicallyByChunks(Duration.ofMinutes(1), 10).getEstimatedFootprintInBytes());
+        assertEquals(histogramEquivalentEstimate * (10 + 1 + 6 + 1), builder.resetReservoirPeriodicallyByChunks(Duration.ofMinutes(1), 10).getEstimatedFootprintInBytes());
+        // 10 leafs + 11 nodes of merge tree
+        assertEquals(histogramEquivalentEstimate * (21 + 6 + 1), builder.resetReservoirPeriodicallyByFineGrainedChunks(Duration.ofMinutes(1), 10).getEstimatedFootprintInBytes());
+    }
+
+    @Test
+    public void testEstimationFootprintInBytesWithNarrowCounts() {
+        int intHistogramEstimate = new IntCountsHistogram(10, 3600, 3).getEstimatedFootprintInBytes();
+        int shortHistogramEstimate = new ShortCountsHistogram(10, 3600, 3).getEstimatedFootprintInBytes();
+
+        assertEquals(histogramEquivalentEstimate * 3, builder.deepCopy().neverResetReservoir().withCountsWidth(CountsWidth.SHORT).getEstimatedFootprintInBytes());
+        assertEquals(histogramEquivalentEstimate * 5 + intHistogramEstimate * 2,
+                builder.deepCopy().resetReservoirPeriodically(Duration.ofMinutes(1)).withCountsWidth(CountsWidth.INT).getEstimatedFootprintInBytes());
+        assertEquals(histogramEquivalentEstimate * (1 + 4 + 1) + intHistogramEstimate * (10 + 2),
+                builder.deepCopy().resetReservoirPeriodicallyByChunks(Duration.ofMinutes(1), 10).withCountsWidth(CountsWidth.INT).getEstimatedFootprintInBytes());
+        assertEquals(histogramEquivalentEstimate * (1 + 4 + 1) + shortHistogramEstimate * (10 + 2),
+                builder.deepCopy().resetReservoirPeriodicallyByChunks(Duration.ofMinutes(1), 10).withCountsWidth(CountsWidth.SHORT).getEstimatedFootprintInBytes());
+        assertEquals(histogramEquivalentEstimate * (4 + 1) + shortHistogramEstimate * (21 + 2),
+                builder.deepCopy().resetReservoirPeriodicallyByFineGrainedChunks(Duration.ofMinutes(1), 10).withCountsWidth(CountsWidth.SHORT).getEstimatedFootprintInBytes());
+    }
+
+    @Test
+    public void testEstimationOffHeapFootprintInBytes() {
+        // pair of longs per each bucket
+        int bucketCount = 0;
+        for (HistogramIterationValue ignored : new Recorder(10, 3600, 3).getIntervalHistogram().allValues()) {
+            bucketCount++;
+        }
+        int encodedHistogramEstimate = bucketCount * 2 * Long.BYTES;
+
+        HdrBuilder heapBuilder = builder.deepCopy().resetReservoirPeriodicallyByChunks(Duration.ofMinutes(1), 10);
+        assertEquals(0, heapBuilder.getEstimatedOffHeapFootprintInBytes());
+        assertEquals(heapBuilder.getEstimatedFootprintInBytes(), heapBuilder.getEstimatedHeapFootprintInBytes());
+
+        HdrBuilder offHeapBuilder = builder.deepCopy().resetReservoirPeriodicallyByChunks(Duration.ofMinutes(1), 10).withOffHeapArchive();
+        assertEquals(histogramEquivalentEstimate * (1 + 6 + 1), offHeapBuilder.getEstimatedHeapFootprintInBytes());
+        assertEquals(encodedHistogramEstimate * 10, offHeapBuilder.getEstimatedOffHeapFootprintInBytes());
+        assertEquals(histogramEquivalentEstimate * (1 + 6 + 1) + encodedHistogramEstimate * 10, offHeapBuilder.getEstimatedFootprintInBytes());
+
+        // option does not affect strategies without history
+        assertEquals(0, builder.deepCopy().neverResetReservoir().withOffHeapArchive().getEstimatedOffHeapFootprintInBytes());
     }
 
 }
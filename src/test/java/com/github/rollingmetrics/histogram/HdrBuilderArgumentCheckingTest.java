@@ -79,11 +79,21 @@ public class HdrBuilderArgumentCheckingTest {
         new HdrBuilder().withLowestDiscernibleValue(10).buildReservoir();
     }
 
+    @Test(expected = IllegalStateException.class)
+    public void shouldNotAllowOffHeapArchiveForFineGrainedChunks() {
+        new HdrBuilder().resetReservoirPeriodicallyByFineGrainedChunks(Duration.ofSeconds(10), 10).withOffHeapArchive().buildReservoir();
+    }
+
     @Test(expected = NullPointerException.class)
     public void shouldNotAllowNullOverflowHandlingStrategy() {
         new HdrBuilder().withHighestTrackableValue(42, null);
     }
 
+    @Test(expected = NullPointerException.class)
+    public void shouldNotAllowNullCountsWidth() {
+        new HdrBuilder().withCountsWidth(null);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void shouldNotAllowNegativeCachingDuration() {
         new HdrBuilder().withSnapshotCachingDuration(Duration.ofMillis(-1000));
@@ -162,4 +172,28 @@ public class HdrBuilderArgumentCheckingTest {
         } catch (IllegalArgumentException e) {}
     }
 
-}
\ No newline at end of file
+    @Test
+    public void validateResetByFineGrainedChunksParametersTest() {
+        new HdrBuilder().resetReservoirPeriodicallyByFineGrainedChunks(Duration.ofMillis(HdrBuilder.MIN_FINE_GRAINED_CHUNK_RESETTING_INTERVAL_MILLIS * HdrBuilder.MAX_FINE_GRAINED_CHUNKS), HdrBuilder.MAX_FINE_GRAINED_CHUNKS);
+        try {
+            new HdrBuilder().resetReservoirPeriodicallyByFineGrainedChunks(Duration.ofMillis(-1), 2);
+            fail("should disallow negative duration");
+        } catch (IllegalArgumentException e) {}
+
+        try {
+            new HdrBuilder().resetReservoirPeriodicallyByFineGrainedChunks(Duration.ofMillis(HdrBuilder.MIN_FINE_GRAINED_CHUNK_RESETTING_INTERVAL_MILLIS * 10 - 1), 10);
+            fail("should disallow too short duration");
+        } catch (IllegalArgumentException e) {}
+
+        try {
+            new HdrBuilder().resetReservoirPeriodicallyByFineGrainedChunks(Duration.ofSeconds(3600), HdrBuilder.MAX_FINE_GRAINED_CHUNKS + 1);
+            fail("should too many chunks");
+        } catch (IllegalArgumentException e) {}
+
+        try {
+            new HdrBuilder().resetReservoirPeriodicallyByFineGrainedChunks(Duration.ofSeconds(10), 1);
+            fail("should check that chunks >= 2");
+        } catch (IllegalArgumentException e) {}
+    }
+
+}
@@ -26,6 +26,7 @@ import org.HdrHistogram.HistogramIterationValue;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.Random;
 import java.util.function.Function;
 
 import static junit.framework.Assert.assertTrue;
@@ -55,7 +56,8 @@ public class PercentileCalculationTest {
         Snapshot snapshot = snapshotTaker.apply(reservoir);
 
         Histogram hdrHistogram = createEquivalentHistogram();
-        assertEquals(hdrHistogram.getStdDeviation(), snapshot.getStdDev());
+        // deviation is calculated by single pass, so it can differ from two-pass calculation by rounding error
+        assertEquals(hdrHistogram.getStdDeviation(), snapshot.getStdDev(), hdrHistogram.getStdDeviation() * 1e-12);
         assertEquals(hdrHistogram.getMinValue(), snapshot.getMin());
         assertEquals(hdrHistogram.getMean(), snapshot.getMean());
         assertEquals(hdrHistogram.getValueAtPercentile(50.0), (long) snapshot.getValue(0.42)); // do not defined percentile should be rounded up to first defined
@@ -119,6 +121,30 @@ public class PercentileCalculationTest {
         }
     }
 
+    @Test
+    public void smartSnapshotShouldBeEquivalentToHistogramForAnyPercentiles() {
+        double[] predefinedPercentiles = new double[101];
+        for (int i = 0; i <= 100; i++) {
+            predefinedPercentiles[i] = i / 100.0;
+        }
+        Random random = new Random(42);
+        Histogram histogram = new Histogram(3);
+        for (int i = 0; i < 10_000; i++) {
+            histogram.recordValueWithCount(random.nextInt(1_000_000) + 1, random.nextInt(10) + 1);
+        }
+
+        Snapshot snapshot = HdrReservoir.takeSmartSnapshot(predefinedPercentiles, histogram);
+        assertEquals(histogram.getMinValue(), snapshot.getMin());
+        assertEquals(histogram.getMaxValue(), snapshot.getMax());
+        assertEquals(histogram.getMean(), snapshot.getMean());
+        assertEquals(histogram.getStdDeviation(), snapshot.getStdDev(), histogram.getStdDeviation() * 1e-12);
+        assertEquals(histogram.getValueAtPercentile(50.0), (long) snapshot.getMedian());
+        long[] values = snapshot.getValues();
+        for (int i = 0; i < predefinedPercentiles.length; i++) {
+            assertEquals(histogram.getValueAtPercentile(predefinedPercentiles[i] * 100.0), values[i]);
+        }
+    }
+
     @Test(expected = UnsupportedOperationException.class)
     public void sizeMethodShouldBeUnsupported() {
         new HdrBuilder().buildReservoir().size();
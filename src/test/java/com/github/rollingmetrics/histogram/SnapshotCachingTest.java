@@ -23,6 +23,8 @@ import com.github.rollingmetrics.util.Clock;
 import org.junit.Test;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static junit.framework.TestCase.assertEquals;
@@ -100,4 +102,101 @@ public class SnapshotCachingTest {
         assertEquals(100, secondNewSnapshot.getMax());
     }
 
+    @Test
+    public void nonBlockingCachingShouldReturnStaleSnapshotAndRefreshItInBackground() {
+        AtomicLong time = new AtomicLong(System.currentTimeMillis());
+        List<Runnable> backgroundTasks = new ArrayList<>();
+        Reservoir reservoir = new HdrBuilder(Clock.mock(time))
+                .resetReservoirOnSnapshot()
+                .withNonBlockingSnapshotCaching(Duration.ofMillis(1000), Duration.ofMillis(5000))
+                .withBackgroundExecutor(backgroundTasks::add)
+                .buildReservoir();
+        assertTrue(reservoir instanceof SnapshotCachingReservoir);
+
+        reservoir.update(10);
+        Snapshot firstSnapshot = reservoir.getSnapshot();
+        assertEquals(10, firstSnapshot.getMax());
+        assertTrue(backgroundTasks.isEmpty());
+
+        // snapshot is stale, but reader should not rebuild it
+        time.getAndAdd(1000);
+        reservoir.update(20);
+        assertSame(firstSnapshot, reservoir.getSnapshot());
+        assertSame(firstSnapshot, reservoir.getSnapshot());
+        // only one refresh should be scheduled
+        assertEquals(1, backgroundTasks.size());
+
+        backgroundTasks.remove(0).run();
+        Snapshot refreshedSnapshot = reservoir.getSnapshot();
+        assertNotSame(firstSnapshot, refreshedSnapshot);
+        assertEquals(20, refreshedSnapshot.getMax());
+
+        time.getAndAdd(1000);
+        reservoir.getSnapshot();
+        assertEquals(1, backgroundTasks.size());
+    }
+
+    @Test
+    public void nonBlockingCachingShouldNotReturnSnapshotOlderThanMaxStaleness() {
+        AtomicLong time = new AtomicLong(System.currentTimeMillis());
+        List<Runnable> backgroundTasks = new ArrayList<>();
+        Reservoir reservoir = new HdrBuilder(Clock.mock(time))
+                .resetReservoirOnSnapshot()
+                .withNonBlockingSnapshotCaching(Duration.ofMillis(1000), Duration.ofMillis(5000))
+                .withBackgroundExecutor(backgroundTasks::add)
+                .buildReservoir();
+
+        reservoir.update(10);
+        Snapshot firstSnapshot = reservoir.getSnapshot();
+
+        time.getAndAdd(5000);
+        reservoir.update(20);
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertNotSame(firstSnapshot, snapshot);
+        assertEquals(20, snapshot.getMax());
+        assertTrue(backgroundTasks.isEmpty());
+    }
+
+    @Test
+    public void backgroundRefreshShouldNotRebuildSnapshotWhichWasRebuiltByReader() {
+        AtomicLong time = new AtomicLong(System.currentTimeMillis());
+        List<Runnable> backgroundTasks = new ArrayList<>();
+        Reservoir reservoir = new HdrBuilder(Clock.mock(time))
+                .resetReservoirOnSnapshot()
+                .withNonBlockingSnapshotCaching(Duration.ofMillis(1000), Duration.ofMillis(5000))
+                .withBackgroundExecutor(backgroundTasks::add)
+                .buildReservoir();
+
+        reservoir.update(10);
+        reservoir.getSnapshot();
+
+        // refresh is scheduled, but background executor is overloaded
+        time.getAndAdd(1000);
+        reservoir.getSnapshot();
+        assertEquals(1, backgroundTasks.size());
+
+        time.getAndAdd(4000);
+        reservoir.update(20);
+        Snapshot rebuiltByReader = reservoir.getSnapshot();
+        assertEquals(20, rebuiltByReader.getMax());
+
+        reservoir.update(30);
+        backgroundTasks.remove(0).run();
+        assertSame(rebuiltByReader, reservoir.getSnapshot());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxStalenessShouldNotBeLessThanCachingDuration() {
+        new HdrBuilder().withNonBlockingSnapshotCaching(Duration.ofSeconds(2), Duration.ofSeconds(1));
+    }
+
+    @Test
+    public void blockingCachingShouldDiscardMaxStaleness() {
+        Reservoir reservoir = new HdrBuilder()
+                .withNonBlockingSnapshotCaching(Duration.ofSeconds(1), Duration.ofSeconds(5))
+                .withSnapshotCachingDuration(Duration.ZERO)
+                .buildReservoir();
+        assertFalse(reservoir instanceof SnapshotCachingReservoir);
+    }
+
 }
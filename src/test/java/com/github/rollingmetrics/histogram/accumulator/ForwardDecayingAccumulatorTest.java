@@ -0,0 +1,199 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram.accumulator;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.github.rollingmetrics.histogram.HdrBuilder;
+import com.github.rollingmetrics.histogram.util.EmptySnapshot;
+import com.github.rollingmetrics.util.Clock;
+import com.github.rollingmetrics.util.MockExecutor;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ForwardDecayingAccumulatorTest {
+
+    private final AtomicLong time = new AtomicLong();
+    private final Clock clock = Clock.mock(time);
+
+    @Test
+    public void recentValuesShouldDominate() {
+        Reservoir reservoir = buildReservoir(0.1);
+        for (int i = 0; i < 100; i++) {
+            reservoir.update(10);
+        }
+
+        // weight of new values is exp(0.1 * 60) ~ 403 times greater than weight of old values
+        time.set(60_000);
+        for (int i = 0; i < 10; i++) {
+            reservoir.update(1000);
+        }
+
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(10, snapshot.getMin());
+        assertEquals(1000, snapshot.getMedian(), 10.0);
+        assertEquals(1000, snapshot.get75thPercentile(), 10.0);
+    }
+
+    @Test
+    public void valuesWithSameTimestampShouldHaveEqualWeights() {
+        Reservoir reservoir = buildReservoir(0.015);
+        time.set(1000);
+        for (int i = 1; i <= 100; i++) {
+            reservoir.update(i);
+        }
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(50, snapshot.getMedian(), 1.0);
+        assertEquals(90, snapshot.getValue(0.9), 1.0);
+    }
+
+    @Test
+    public void shouldRenormalizeAndEvictNegligibleValues() {
+        double alpha = 0.1;
+        Reservoir reservoir = buildReservoir(alpha);
+        reservoir.update(10);
+
+        // renormalization interval is about 111 seconds for this alpha, value 10 has weight exp(-0.1 * 150) at moment of renormalization
+        time.set(150_000);
+        reservoir.update(20);
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(20, snapshot.getMin());
+        assertEquals(20, snapshot.getMax());
+
+        // values recorded after renormalization should be still comparable with values recorded before renormalization
+        time.set(150_000 + 5_000);
+        reservoir.update(30);
+        snapshot = reservoir.getSnapshot();
+        assertEquals(20, snapshot.getMin());
+        assertEquals(30, snapshot.getMax());
+        assertEquals(30, snapshot.getMedian(), 0.0);
+    }
+
+    @Test
+    public void shouldRenormalizeInBackgroundWhenSnapshotIsNotTaken() {
+        ForwardDecayingAccumulator accumulator = new ForwardDecayingAccumulator(() -> new ConcurrentHistogram(2), 0.1, clock, MockExecutor.INSTANCE);
+        accumulator.recordSingleValueWithExpectedInterval(10, 0);
+
+        // the writer schedules renormalization, synchronous executor renormalizes in the writer thread
+        time.set(1_000_000);
+        for (int i = 0; i < 1000; i++) {
+            accumulator.recordSingleValueWithExpectedInterval(20, 0);
+        }
+        assertTrue(accumulator.toString().contains("landmarkMillis=1000000"));
+
+        Snapshot snapshot = accumulator.getSnapshot(histogram -> new EmptySnapshot() {
+            @Override
+            public long getMin() {
+                return histogram.getMinValue();
+            }
+        });
+        assertEquals(20, snapshot.getMin());
+    }
+
+    @Test
+    public void valuesRecordedAfterLongIdlePeriodShouldNotBeLost() {
+        Reservoir reservoir = buildReservoir(0.015);
+        reservoir.update(1);
+
+        // weight of new value would be exp(0.015 * 3600) which is much greater than MAX_WEIGHT
+        time.set(3_600_000);
+        reservoir.update(1000);
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(1000, snapshot.getMin(), 10.0);
+        assertEquals(1000, snapshot.getMax(), 10.0);
+
+        // the same for batch writes
+        time.set(7_200_000);
+        ForwardDecayingAccumulator accumulator = new ForwardDecayingAccumulator(() -> new ConcurrentHistogram(2), 0.015, clock, task -> {});
+        accumulator.recordValuesWithExpectedInterval(new long[] {1, 2, 3}, 0, 3, 0);
+        time.set(10_800_000);
+        accumulator.recordValuesWithExpectedInterval(new long[] {10, 20, 30}, 0, 3, 0);
+        assertEquals(3 * ForwardDecayingAccumulator.WEIGHT_SCALE, getTotalCount(accumulator));
+    }
+
+    @Test
+    public void weightedCountShouldNotOverflow() {
+        ForwardDecayingAccumulator accumulator = new ForwardDecayingAccumulator(() -> new ConcurrentHistogram(2), 0.015, clock, task -> {});
+        time.set(1000);
+        accumulator.recordValueWithCountAndExpectedInterval(10, Long.MAX_VALUE / 2, 0);
+        assertEquals(Long.MAX_VALUE, getTotalCount(accumulator));
+    }
+
+    @Test
+    public void fullSnapshotShouldReportSumOfWeightsInsteadOfWeightedCounts() {
+        Reservoir reservoir = buildReservoir(0.015);
+        // renormalization interval is about 739 seconds for this alpha, each value has weight exp(0.015 * 700) ~ 36315,
+        // so sum of weighted counts does not fit to int
+        time.set(700_000);
+        for (int i = 0; i < 100; i++) {
+            reservoir.update(42);
+        }
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(100 * Math.exp(0.015 * 700), snapshot.size(), 100 * Math.exp(0.015 * 700) / 100);
+
+        // the snapshot renormalizes weights, so values recorded at this moment have weight one, and weight of old values is about 0.01
+        time.set(1_000_000);
+        for (int i = 0; i < 1000; i++) {
+            reservoir.update(42);
+        }
+        snapshot = reservoir.getSnapshot();
+        assertEquals(1001, snapshot.size(), 1.0);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        snapshot.dump(output);
+        assertEquals(snapshot.size(), new String(output.toByteArray()).split("\n").length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowNegativeAlpha() {
+        new HdrBuilder().decayReservoirExponentially(-0.1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowZeroAlpha() {
+        new HdrBuilder().decayReservoirExponentially(0.0);
+    }
+
+    @Test
+    public void testToString() {
+        new ForwardDecayingAccumulator(() -> new ConcurrentHistogram(2), 0.015, clock, MockExecutor.INSTANCE).toString();
+    }
+
+    private static long getTotalCount(ForwardDecayingAccumulator accumulator) {
+        AtomicLong totalCount = new AtomicLong();
+        accumulator.getSnapshot(histogram -> {
+            totalCount.set(histogram.getTotalCount());
+            return EmptySnapshot.INSTANCE;
+        });
+        return totalCount.get();
+    }
+
+    private Reservoir buildReservoir(double alpha) {
+        return new HdrBuilder(clock)
+                .decayReservoirExponentially(alpha)
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .withoutSnapshotOptimization()
+                .buildReservoir();
+    }
+
+}
@@ -0,0 +1,223 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram.accumulator;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.github.rollingmetrics.histogram.HdrBuilder;
+import com.github.rollingmetrics.histogram.util.EmptySnapshot;
+import com.github.rollingmetrics.util.Clock;
+import com.github.rollingmetrics.util.MockExecutor;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class LazyAccumulatorTest {
+
+    private final AtomicInteger createdAccumulators = new AtomicInteger();
+    private final AtomicLong snapshottedValues = new AtomicLong();
+    private final Function<Histogram, Snapshot> countingSnapshotTaker = histogram -> {
+        snapshottedValues.addAndGet(histogram.getTotalCount());
+        return new EmptySnapshot();
+    };
+
+    @Test
+    public void histogramsShouldNotBeAllocatedUntilFirstWrite() {
+        LazyAccumulator accumulator = new LazyAccumulator(this::createResetOnSnapshotAccumulator, 0);
+        assertFalse(accumulator.isInflated());
+        assertEquals(0, accumulator.getEstimatedFootprintInBytes());
+        assertSame(EmptySnapshot.INSTANCE, accumulator.getSnapshot(countingSnapshotTaker));
+        assertEquals(0, createdAccumulators.get());
+
+        accumulator.recordSingleValueWithExpectedInterval(42, 0);
+        accumulator.recordValueWithCountAndExpectedInterval(42, 2, 0);
+        accumulator.recordValuesWithExpectedInterval(new long[] {1, 2, 3}, 1, 2, 0);
+        assertTrue(accumulator.isInflated());
+        assertTrue(accumulator.getEstimatedFootprintInBytes() > 0);
+        assertEquals(1, createdAccumulators.get());
+
+        accumulator.getSnapshot(countingSnapshotTaker);
+        assertEquals(5, snapshottedValues.get());
+    }
+
+    @Test
+    public void accumulatorShouldNeverBeDeflatedWhenDeflationIsNotConfigured() {
+        LazyAccumulator accumulator = new LazyAccumulator(this::createResetOnSnapshotAccumulator, 0);
+        accumulator.recordSingleValueWithExpectedInterval(42, 0);
+        for (int i = 0; i < 10; i++) {
+            accumulator.getSnapshot(countingSnapshotTaker);
+        }
+        assertTrue(accumulator.isInflated());
+    }
+
+    @Test
+    public void accumulatorShouldBeDeflatedAfterConfiguredNumberOfEmptySnapshots() {
+        LazyAccumulator accumulator = new LazyAccumulator(this::createResetOnSnapshotAccumulator, 2);
+        accumulator.recordSingleValueWithExpectedInterval(42, 0);
+        accumulator.getSnapshot(countingSnapshotTaker);
+        assertEquals(1, snapshottedValues.get());
+
+        accumulator.getSnapshot(countingSnapshotTaker);
+        assertTrue(accumulator.isInflated());
+
+        // write between empty snapshots resets the counter
+        accumulator.recordSingleValueWithExpectedInterval(42, 0);
+        accumulator.getSnapshot(countingSnapshotTaker);
+        accumulator.getSnapshot(countingSnapshotTaker);
+        assertTrue(accumulator.isInflated());
+
+        accumulator.getSnapshot(countingSnapshotTaker);
+        assertFalse(accumulator.isInflated());
+        assertEquals(0, accumulator.getEstimatedFootprintInBytes());
+        assertSame(EmptySnapshot.INSTANCE, accumulator.getSnapshot(countingSnapshotTaker));
+
+        accumulator.recordSingleValueWithExpectedInterval(42, 0);
+        assertTrue(accumulator.isInflated());
+        assertEquals(2, createdAccumulators.get());
+        accumulator.getSnapshot(countingSnapshotTaker);
+        assertEquals(3, snapshottedValues.get());
+    }
+
+    @Test
+    public void rollingWindowShouldNotBeAffectedByDeflation() {
+        AtomicLong time = new AtomicLong();
+        Reservoir reservoir = new HdrBuilder(Clock.mock(time))
+                .resetReservoirPeriodicallyByChunks(Duration.ofSeconds(3), 3)
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .withLazyAllocation(1)
+                .withoutSnapshotOptimization()
+                .buildReservoir();
+
+        assertEquals(0, reservoir.getSnapshot().size());
+        reservoir.update(10);
+        for (int i = 0; i < 3; i++) {
+            time.addAndGet(1000);
+            assertEquals(1, reservoir.getSnapshot().size());
+        }
+        time.addAndGet(1000);
+        assertEquals(0, reservoir.getSnapshot().size());
+
+        // reservoir is deflated at this point, and should be inflated again by next write
+        reservoir.update(20);
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(1, snapshot.size());
+        assertEquals(20, snapshot.getMax());
+    }
+
+    @Test
+    public void inflatedReservoirShouldNotDependOnModificationsOfBuilderAfterBuild() {
+        AtomicLong time = new AtomicLong();
+        AtomicInteger configuredExecutorTasks = new AtomicInteger();
+        AtomicInteger replacedExecutorTasks = new AtomicInteger();
+        HdrBuilder builder = new HdrBuilder(Clock.mock(time))
+                .resetReservoirPeriodicallyByChunks(Duration.ofSeconds(3), 3)
+                .withBackgroundExecutor(task -> {
+                    configuredExecutorTasks.incrementAndGet();
+                    task.run();
+                })
+                .withLazyAllocation()
+                .withoutSnapshotOptimization();
+        Reservoir reservoir = builder.buildReservoir();
+
+        builder.withBackgroundExecutor(task -> {
+                    replacedExecutorTasks.incrementAndGet();
+                    task.run();
+                })
+                .withOffHeapArchive();
+
+        reservoir.update(10);
+        time.addAndGet(1000);
+        reservoir.update(20);
+        assertEquals(1, configuredExecutorTasks.get());
+        assertEquals(0, replacedExecutorTasks.get());
+        assertEquals(2, reservoir.getSnapshot().size());
+    }
+
+    @Test
+    public void footprintEstimationShouldNotDependOnLaziness() {
+        HdrBuilder builder = new HdrBuilder().resetReservoirPeriodicallyByChunks(Duration.ofSeconds(60), 6);
+        int eagerFootprint = builder.getEstimatedFootprintInBytes();
+        assertEquals(eagerFootprint, builder.withLazyAllocation().getEstimatedFootprintInBytes());
+    }
+
+    @Test(timeout = 32000)
+    public void valuesShouldNotBeLostWhenAccumulatorIsDeflatedConcurrently() throws InterruptedException {
+        LazyAccumulator accumulator = new LazyAccumulator(this::createResetOnSnapshotAccumulator, 1);
+        int writers = 4;
+        int valuesPerWriter = 50_000;
+        CountDownLatch finishLatch = new CountDownLatch(writers);
+        AtomicBoolean failed = new AtomicBoolean();
+        for (int i = 0; i < writers; i++) {
+            new Thread(() -> {
+                try {
+                    for (int j = 0; j < valuesPerWriter; j++) {
+                        accumulator.recordSingleValueWithExpectedInterval(j, 0);
+                        if (j % 1000 == 0) {
+                            Thread.yield();
+                        }
+                    }
+                } catch (Throwable e) {
+                    failed.set(true);
+                    e.printStackTrace();
+                } finally {
+                    finishLatch.countDown();
+                }
+            }).start();
+        }
+        while (finishLatch.getCount() > 0) {
+            accumulator.getSnapshot(countingSnapshotTaker);
+        }
+        accumulator.getSnapshot(countingSnapshotTaker);
+
+        assertFalse(failed.get());
+        assertEquals(writers * valuesPerWriter, snapshottedValues.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowNegativeNumberOfEmptySnapshots() {
+        new LazyAccumulator(this::createResetOnSnapshotAccumulator, -1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void builderShouldDisallowNonPositiveNumberOfEmptySnapshots() {
+        new HdrBuilder().withLazyAllocation(0);
+    }
+
+    @Test
+    public void testToString() {
+        LazyAccumulator accumulator = new LazyAccumulator(this::createResetOnSnapshotAccumulator, 1);
+        System.out.println(accumulator);
+        accumulator.recordSingleValueWithExpectedInterval(42, 0);
+        System.out.println(accumulator);
+    }
+
+    private Accumulator createResetOnSnapshotAccumulator() {
+        createdAccumulators.incrementAndGet();
+        return new ResetOnSnapshotAccumulator(new Recorder(2));
+    }
+
+}
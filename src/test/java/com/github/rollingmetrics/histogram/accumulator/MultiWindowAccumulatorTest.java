@@ -0,0 +1,172 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram.accumulator;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.github.rollingmetrics.histogram.HdrBuilder;
+import com.github.rollingmetrics.histogram.MultiWindowTimer;
+import com.github.rollingmetrics.util.Clock;
+import com.github.rollingmetrics.util.MockExecutor;
+import org.HdrHistogram.Recorder;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MultiWindowAccumulatorTest {
+
+    private final AtomicLong time = new AtomicLong();
+    private final Clock clock = Clock.mock(time);
+
+    @Test
+    public void test() {
+        MultiWindowTimer timer = new HdrBuilder(clock)
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .buildMultiWindowTimer(Arrays.asList(Duration.ofSeconds(3), Duration.ofSeconds(6)), 3);
+
+        timer.update(10, TimeUnit.NANOSECONDS);
+        time.addAndGet(1000); // 1000
+        timer.update(20, TimeUnit.NANOSECONDS);
+        assertEquals(10, timer.getSnapshot(Duration.ofSeconds(3)).getMin());
+        assertEquals(10, timer.getSnapshot(Duration.ofSeconds(6)).getMin());
+
+        time.addAndGet(3000); // 4000
+        timer.update(30, TimeUnit.NANOSECONDS);
+        assertEquals(20, timer.getSnapshot(Duration.ofSeconds(3)).getMin());
+        assertEquals(10, timer.getSnapshot(Duration.ofSeconds(6)).getMin());
+
+        time.addAndGet(1000); // 5000
+        assertEquals(30, timer.getSnapshot(Duration.ofSeconds(3)).getMin());
+        assertEquals(10, timer.getSnapshot(Duration.ofSeconds(6)).getMin());
+
+        time.addAndGet(2000); // 7000
+        assertEquals(30, timer.getSnapshot(Duration.ofSeconds(3)).getMin());
+        assertEquals(20, timer.getSnapshot(Duration.ofSeconds(6)).getMin());
+        assertEquals(timer.getSnapshot(Duration.ofSeconds(3)).getMin(), timer.getSnapshot().getMin());
+
+        time.addAndGet(10000); // 17000
+        assertEquals(0, timer.getSnapshot(Duration.ofSeconds(3)).getMax());
+        assertEquals(0, timer.getSnapshot(Duration.ofSeconds(6)).getMax());
+        assertEquals(3, timer.getCount());
+    }
+
+    @Test
+    public void eachWindowShouldBeEquivalentToSeparateChunkedReservoir() {
+        List<Duration> windows = Arrays.asList(Duration.ofSeconds(3), Duration.ofSeconds(12), Duration.ofSeconds(6));
+        MultiWindowTimer timer = new HdrBuilder(clock)
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .withoutSnapshotOptimization()
+                .buildMultiWindowTimer(windows, 3);
+        Reservoir[] reservoirs = new Reservoir[windows.size()];
+        for (int i = 0; i < reservoirs.length; i++) {
+            int numberChunks = (int) (windows.get(i).getSeconds());
+            reservoirs[i] = new HdrBuilder(clock)
+                    .withBackgroundExecutor(MockExecutor.INSTANCE)
+                    .withoutSnapshotOptimization()
+                    .resetReservoirPeriodicallyByChunks(windows.get(i), numberChunks)
+                    .buildReservoir();
+        }
+
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            time.addAndGet(random.nextInt(300));
+            if (random.nextInt(50) == 0) {
+                // long pause without writes
+                time.addAndGet(random.nextInt(15000));
+            }
+            long value = 1 + random.nextInt(1000);
+            timer.update(value, TimeUnit.NANOSECONDS);
+            for (Reservoir reservoir : reservoirs) {
+                reservoir.update(value);
+            }
+            if (random.nextInt(20) == 0) {
+                // single window is taken without merging of other windows
+                int j = random.nextInt(windows.size());
+                Snapshot expected = reservoirs[j].getSnapshot();
+                Snapshot actual = timer.getSnapshot(windows.get(j));
+                assertArrayEquals(expected.getValues(), actual.getValues());
+                assertEquals(expected.getMax(), actual.getMax());
+            } else if (random.nextInt(10) == 0) {
+                List<Snapshot> snapshots = timer.getSnapshots();
+                for (int j = 0; j < reservoirs.length; j++) {
+                    Snapshot expected = reservoirs[j].getSnapshot();
+                    assertArrayEquals(expected.getValues(), snapshots.get(j).getValues());
+                    assertEquals(expected.getMax(), snapshots.get(j).getMax());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void snapshotsShouldBeCachedTogether() {
+        MultiWindowTimer timer = new HdrBuilder(clock)
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .withSnapshotCachingDuration(Duration.ofSeconds(1))
+                .buildMultiWindowTimer(Arrays.asList(Duration.ofSeconds(3), Duration.ofSeconds(6)), 3);
+
+        timer.update(10, TimeUnit.NANOSECONDS);
+        assertEquals(10, timer.getSnapshot(Duration.ofSeconds(6)).getMax());
+        timer.update(20, TimeUnit.NANOSECONDS);
+        assertEquals(10, timer.getSnapshot(Duration.ofSeconds(3)).getMax());
+
+        time.addAndGet(1000);
+        assertEquals(20, timer.getSnapshot(Duration.ofSeconds(3)).getMax());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowUnknownWindow() {
+        new HdrBuilder().buildMultiWindowTimer(Collections.singletonList(Duration.ofSeconds(3)), 3)
+                .getSnapshot(Duration.ofSeconds(4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowWindowWhichIsNotMultipleOfChunk() {
+        new HdrBuilder().buildMultiWindowTimer(Arrays.asList(Duration.ofSeconds(3), Duration.ofMillis(4500)), 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowTooShortChunks() {
+        new HdrBuilder().buildMultiWindowTimer(Collections.singletonList(Duration.ofSeconds(3)), 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowEmptyWindows() {
+        new HdrBuilder().buildMultiWindowTimer(Collections.emptyList(), 3);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldDisallowThreadLocalRecording() {
+        new HdrBuilder().withThreadLocalRecording().buildMultiWindowTimer(Collections.singletonList(Duration.ofSeconds(3)), 3);
+    }
+
+    @Test
+    public void testToString() {
+        new MultiWindowAccumulator(() -> new Recorder(2), new int[] {3, 6}, 1000, clock, MockExecutor.INSTANCE, new ChunkedAccumulatorSettings()).toString();
+        new HdrBuilder().buildMultiWindowTimer(Collections.singletonList(Duration.ofSeconds(3)), 3).toString();
+    }
+
+}
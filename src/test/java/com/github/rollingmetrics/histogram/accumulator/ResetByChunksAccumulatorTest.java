@@ -19,16 +19,23 @@ package com.github.rollingmetrics.histogram.accumulator;
 
 import com.codahale.metrics.Reservoir;
 import com.codahale.metrics.Snapshot;
+import com.github.rollingmetrics.histogram.CountsWidth;
 import com.github.rollingmetrics.util.Clock;
 import com.github.rollingmetrics.histogram.HdrBuilder;
+import com.github.rollingmetrics.histogram.OverflowResolver;
 import com.github.rollingmetrics.util.MockExecutor;
 import org.junit.Test;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
 
 public class ResetByChunksAccumulatorTest {
 
@@ -120,4 +127,183 @@ public class ResetByChunksAccumulatorTest {
         HistogramUtil.runInParallel(reservoir, TimeUnit.SECONDS.toMillis(30));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void offHeapArchiveShouldProduceSameSnapshotsAsHeapArchive() {
+        AtomicLong time = new AtomicLong(0);
+        Clock wallClock = Clock.mock(time);
+        HdrBuilder builder = new HdrBuilder(wallClock)
+                .resetReservoirPeriodicallyByChunks(Duration.ofMillis(3000), 3)
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .withoutSnapshotOptimization();
+        Reservoir heapReservoir = builder.deepCopy().buildReservoir();
+        Reservoir offHeapReservoir = builder.deepCopy().withOffHeapArchive().buildReservoir();
+
+        Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            time.addAndGet(random.nextInt(300));
+            int updates = random.nextInt(20);
+            for (int j = 0; j < updates; j++) {
+                long value = 1 + random.nextInt(100_000);
+                heapReservoir.update(value);
+                offHeapReservoir.update(value);
+            }
+            if (random.nextInt(5) == 0) {
+                time.addAndGet(random.nextInt(5000));
+            }
+            Snapshot heapSnapshot = heapReservoir.getSnapshot();
+            Snapshot offHeapSnapshot = offHeapReservoir.getSnapshot();
+            assertTrue(Arrays.equals(heapSnapshot.getValues(), offHeapSnapshot.getValues()));
+            // minimum and maximum should be re-established when chunks are subtracted from off-heap buffers
+            assertEquals(heapSnapshot.getMin(), offHeapSnapshot.getMin());
+            assertEquals(heapSnapshot.getMax(), offHeapSnapshot.getMax());
+        }
+    }
+
+    @Test
+    public void closedOffHeapReservoirShouldNotArchiveChunks() throws IOException {
+        AtomicLong time = new AtomicLong(0);
+        Clock wallClock = Clock.mock(time);
+        Reservoir reservoir = new HdrBuilder(wallClock)
+                .resetReservoirPeriodicallyByChunks(Duration.ofMillis(3000), 3)
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .withOffHeapArchive()
+                .buildReservoir();
+
+        reservoir.update(10);
+        time.addAndGet(1000);
+        reservoir.update(20);
+        assertEquals(10, reservoir.getSnapshot().getMin());
+
+        ((Closeable) reservoir).close();
+        // closing twice should not fail
+        ((Closeable) reservoir).close();
+
+        // values from current chunk are still reported
+        reservoir.update(30);
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(20, snapshot.getMin());
+        assertEquals(30, snapshot.getMax());
+
+        // but chunk is not moved to archive after closing
+        time.addAndGet(1000);
+        reservoir.update(40);
+        snapshot = reservoir.getSnapshot();
+        assertEquals(40, snapshot.getMin());
+        assertEquals(40, snapshot.getMax());
+    }
+
+    @Test(timeout = 12000)
+    public void testThatConcurrentThreadsNotHungWithOffHeapArchive() throws InterruptedException {
+        Reservoir reservoir = new HdrBuilder()
+                .resetReservoirPeriodicallyByChunks(Duration.ofSeconds(3), 3)
+                .withOffHeapArchive()
+                .buildReservoir();
+
+        HistogramUtil.runInParallel(reservoir, TimeUnit.SECONDS.toMillis(10));
+    }
+
+    @Test
+    public void narrowCountsShouldProduceSameSnapshotsAsLongCounts() {
+        for (boolean offHeapArchive : new boolean[] {false, true}) {
+            AtomicLong time = new AtomicLong(0);
+            Clock wallClock = Clock.mock(time);
+            HdrBuilder builder = new HdrBuilder(wallClock)
+                    .resetReservoirPeriodicallyByChunks(Duration.ofMillis(3000), 3)
+                    .withBackgroundExecutor(MockExecutor.INSTANCE)
+                    .withoutSnapshotOptimization();
+            if (offHeapArchive) {
+                builder.withOffHeapArchive();
+            }
+            Reservoir longReservoir = builder.deepCopy().withCountsWidth(CountsWidth.LONG).buildReservoir();
+            Reservoir shortReservoir = builder.deepCopy().withCountsWidth(CountsWidth.SHORT).buildReservoir();
+
+            Random random = new Random(42);
+            for (int i = 0; i < 50; i++) {
+                time.addAndGet(random.nextInt(1000));
+                // sometimes overflow the capacity of short counter in the single chunk
+                int updates = random.nextInt(3) == 0 ? Short.MAX_VALUE + random.nextInt(1000) : random.nextInt(100);
+                for (int j = 0; j < updates; j++) {
+                    long value = 1 + random.nextInt(10);
+                    longReservoir.update(value);
+                    shortReservoir.update(value);
+                }
+                Snapshot expected = longReservoir.getSnapshot();
+                Snapshot actual = shortReservoir.getSnapshot();
+                assertTrue(Arrays.equals(expected.getValues(), actual.getValues()));
+                assertEquals(expected.getMean(), actual.getMean());
+            }
+        }
+    }
+
+    @Test
+    public void lowerPrecisionArchiveShouldReportValuesWithBoundedError() {
+        for (boolean offHeapArchive : new boolean[] {false, true}) {
+            for (boolean autoResize : new boolean[] {false, true}) {
+                AtomicLong time = new AtomicLong(0);
+                Clock wallClock = Clock.mock(time);
+                HdrBuilder builder = new HdrBuilder(wallClock)
+                        .resetReservoirPeriodicallyByChunks(Duration.ofMillis(3000), 3)
+                        .withSignificantDigits(3)
+                        .withBackgroundExecutor(MockExecutor.INSTANCE)
+                        .withoutSnapshotOptimization();
+                if (offHeapArchive) {
+                    builder.withOffHeapArchive();
+                }
+                if (!autoResize) {
+                    builder.withHighestTrackableValue(100_000, OverflowResolver.REDUCE_TO_HIGHEST_TRACKABLE);
+                }
+                Reservoir preciseReservoir = builder.deepCopy().buildReservoir();
+                Reservoir coarseReservoir = builder.deepCopy().withArchiveSignificantDigits(1).buildReservoir();
+
+                Random random = new Random(42);
+                for (int i = 0; i < 300; i++) {
+                    time.addAndGet(random.nextInt(300));
+                    int updates = random.nextInt(20);
+                    for (int j = 0; j < updates; j++) {
+                        // the highest trackable value is recorded sometimes in order to check the bounds of range
+                        long value = random.nextInt(10) == 0 ? 100_000 : 1 + random.nextInt(100_000);
+                        preciseReservoir.update(value);
+                        coarseReservoir.update(value);
+                    }
+                    if (random.nextInt(5) == 0) {
+                        time.addAndGet(random.nextInt(5000));
+                    }
+                    Snapshot expected = preciseReservoir.getSnapshot();
+                    Snapshot actual = coarseReservoir.getSnapshot();
+                    assertEquals(expected.size(), actual.size());
+                    // the resolution of histogram with one significant digit is 1/16 of value
+                    for (double quantile : new double[] {0.0, 0.5, 0.9, 0.99, 1.0}) {
+                        double expectedValue = expected.getValue(quantile);
+                        assertEquals(expectedValue, actual.getValue(quantile), expectedValue / 16 + 1);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void lowerPrecisionArchiveShouldReduceFootprint() {
+        HdrBuilder builder = new HdrBuilder()
+                .resetReservoirPeriodicallyByChunks(Duration.ofMinutes(60), 60)
+                .withSignificantDigits(3)
+                .withHighestTrackableValue(TimeUnit.MINUTES.toMillis(1), OverflowResolver.REDUCE_TO_HIGHEST_TRACKABLE);
+        int preciseFootprint = builder.deepCopy().getEstimatedFootprintInBytes();
+        int coarseFootprint = builder.deepCopy().withArchiveSignificantDigits(1).getEstimatedFootprintInBytes();
+        assertTrue(coarseFootprint * 4 < preciseFootprint);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void archivePrecisionShouldNotBeGreaterThanPrecisionOfRecorder() {
+        new HdrBuilder()
+                .resetReservoirPeriodicallyByChunks(Duration.ofSeconds(3), 3)
+                .withSignificantDigits(2)
+                .withArchiveSignificantDigits(3)
+                .buildReservoir();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowTooBigArchivePrecision() {
+        new HdrBuilder().withArchiveSignificantDigits(6);
+    }
+
+}
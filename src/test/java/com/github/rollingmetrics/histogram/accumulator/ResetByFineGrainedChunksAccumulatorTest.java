@@ -0,0 +1,198 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram.accumulator;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.github.rollingmetrics.histogram.CountsWidth;
+import com.github.rollingmetrics.histogram.HdrBuilder;
+import com.github.rollingmetrics.util.Clock;
+import com.github.rollingmetrics.util.MockExecutor;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ResetByFineGrainedChunksAccumulatorTest {
+
+    @Test
+    public void test() {
+        AtomicLong time = new AtomicLong(0);
+        Clock wallClock = Clock.mock(time);
+        Reservoir reservoir = new HdrBuilder(wallClock)
+                .resetReservoirPeriodicallyByFineGrainedChunks(Duration.ofMillis(3000), 3)
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .buildReservoir();
+
+        reservoir.update(10);
+        reservoir.update(20);
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(10, snapshot.getMin());
+        assertEquals(20, snapshot.getMax());
+
+        time.getAndAdd(999); // 999
+        reservoir.update(9);
+        reservoir.update(60);
+        snapshot = reservoir.getSnapshot();
+        assertEquals(9, snapshot.getMin());
+        assertEquals(60, snapshot.getMax());
+
+        time.getAndAdd(1); // 1000
+        reservoir.update(12);
+        reservoir.update(70);
+        snapshot = reservoir.getSnapshot();
+        assertEquals(9, snapshot.getMin());
+        assertEquals(70, snapshot.getMax());
+
+        time.getAndAdd(3000); // 4000
+        snapshot = reservoir.getSnapshot();
+        assertEquals(12, snapshot.getMin());
+        assertEquals(70, snapshot.getMax());
+
+        time.getAndAdd(1000); // 5000
+        snapshot = reservoir.getSnapshot();
+        assertEquals(0, snapshot.getMin());
+        assertEquals(0, snapshot.getMax());
+    }
+
+    @Test
+    public void shouldBeEquivalentToResetByChunksAccumulator() {
+        AtomicLong time = new AtomicLong(0);
+        Clock wallClock = Clock.mock(time);
+        Reservoir fineGrained = new HdrBuilder(wallClock)
+                .resetReservoirPeriodicallyByFineGrainedChunks(Duration.ofSeconds(7), 7)
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .withoutSnapshotOptimization()
+                .buildReservoir();
+        Reservoir chunked = new HdrBuilder(wallClock)
+                .resetReservoirPeriodicallyByChunks(Duration.ofSeconds(7), 7)
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .withoutSnapshotOptimization()
+                .buildReservoir();
+
+        Random random = new Random(42);
+        for (int i = 0; i < 5_000; i++) {
+            int advance = random.nextInt(50) == 0 ? random.nextInt(20_000) : random.nextInt(300);
+            time.addAndGet(advance);
+            long value = random.nextInt(1000) + 1;
+            fineGrained.update(value);
+            chunked.update(value);
+            if (random.nextInt(5) == 0) {
+                time.addAndGet(random.nextInt(1000));
+                assertArrayEquals(chunked.getSnapshot().getValues(), fineGrained.getSnapshot().getValues());
+            }
+        }
+    }
+
+    @Test
+    public void lowerPrecisionArchiveShouldBeEquivalentToResetByChunksAccumulator() {
+        AtomicLong time = new AtomicLong(0);
+        Clock wallClock = Clock.mock(time);
+        Reservoir fineGrained = new HdrBuilder(wallClock)
+                .resetReservoirPeriodicallyByFineGrainedChunks(Duration.ofSeconds(7), 7)
+                .withArchiveSignificantDigits(1)
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .withoutSnapshotOptimization()
+                .buildReservoir();
+        Reservoir chunked = new HdrBuilder(wallClock)
+                .resetReservoirPeriodicallyByChunks(Duration.ofSeconds(7), 7)
+                .withArchiveSignificantDigits(1)
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .withoutSnapshotOptimization()
+                .buildReservoir();
+
+        Random random = new Random(42);
+        for (int i = 0; i < 5_000; i++) {
+            time.addAndGet(random.nextInt(300));
+            long value = random.nextInt(100_000) + 1;
+            fineGrained.update(value);
+            chunked.update(value);
+            if (random.nextInt(5) == 0) {
+                assertArrayEquals(chunked.getSnapshot().getValues(), fineGrained.getSnapshot().getValues());
+            }
+        }
+    }
+
+    @Test
+    public void narrowCountsShouldProduceSameSnapshotsAsLongCounts() {
+        AtomicLong time = new AtomicLong(0);
+        Clock wallClock = Clock.mock(time);
+        HdrBuilder builder = new HdrBuilder(wallClock)
+                .resetReservoirPeriodicallyByFineGrainedChunks(Duration.ofSeconds(7), 7)
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .withoutSnapshotOptimization();
+        Reservoir longReservoir = builder.deepCopy().withCountsWidth(CountsWidth.LONG).buildReservoir();
+        Reservoir shortReservoir = builder.deepCopy().withCountsWidth(CountsWidth.SHORT).buildReservoir();
+
+        Random random = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            time.addAndGet(random.nextInt(2000));
+            // each chunk fits to short counter, but the nodes of tree which aggregate several chunks are promoted
+            int updates = random.nextInt(Short.MAX_VALUE / 2);
+            for (int j = 0; j < updates; j++) {
+                long value = 1 + random.nextInt(10);
+                longReservoir.update(value);
+                shortReservoir.update(value);
+            }
+            assertArrayEquals(longReservoir.getSnapshot().getValues(), shortReservoir.getSnapshot().getValues());
+        }
+    }
+
+    @Test
+    public void testHugeNumberOfChunks() {
+        AtomicLong time = new AtomicLong(0);
+        Clock wallClock = Clock.mock(time);
+        Reservoir reservoir = new HdrBuilder(wallClock)
+                .resetReservoirPeriodicallyByFineGrainedChunks(Duration.ofMinutes(10), 600)
+                .withSignificantDigits(3)
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .withoutSnapshotOptimization()
+                .buildReservoir();
+
+        // one value per second during 20 minutes
+        for (int second = 1; second <= 1200; second++) {
+            reservoir.update(second);
+            time.addAndGet(1000);
+        }
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(600, snapshot.size());
+        assertEquals(601, snapshot.getMin());
+        assertEquals(1200, snapshot.getMax());
+    }
+
+    @Test
+    public void testToString() {
+        new HdrBuilder().resetReservoirPeriodicallyByFineGrainedChunks(Duration.ofSeconds(60), 60)
+                .buildReservoir().toString();
+    }
+
+    @Test(timeout = 32000)
+    public void testThatConcurrentThreadsNotHung() throws InterruptedException {
+        Reservoir reservoir = new HdrBuilder()
+                .resetReservoirPeriodicallyByFineGrainedChunks(Duration.ofSeconds(3), 30)
+                .buildReservoir();
+
+        HistogramUtil.runInParallel(reservoir, TimeUnit.SECONDS.toMillis(30));
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram.accumulator;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.github.rollingmetrics.histogram.CountsWidth;
+import com.github.rollingmetrics.histogram.HdrBuilder;
+import com.github.rollingmetrics.util.Clock;
+import com.github.rollingmetrics.util.MockExecutor;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+public class SmoothlyDecayingByChunksAccumulatorTest {
+
+    private final AtomicLong time = new AtomicLong();
+    private final Clock clock = Clock.mock(time);
+
+    @Test
+    public void oldestChunkShouldDecaySmoothly() {
+        Reservoir reservoir = buildReservoir(CountsWidth.LONG);
+        for (int i = 0; i < 100; i++) {
+            reservoir.update(10);
+        }
+
+        time.set(1500);
+        reservoir.update(20);
+        assertEquals(101, reservoir.getSnapshot().size());
+
+        time.set(2999);
+        assertEquals(101, reservoir.getSnapshot().size());
+
+        // the first chunk starts to decay
+        time.set(3000);
+        assertEquals(101, reservoir.getSnapshot().size());
+        time.set(3500);
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(51, snapshot.size());
+        assertEquals(10, snapshot.getMin());
+        time.set(3750);
+        assertEquals(26, reservoir.getSnapshot().size());
+
+        // the first chunk is evicted, the second is decaying
+        time.set(4000);
+        snapshot = reservoir.getSnapshot();
+        assertEquals(1, snapshot.size());
+        assertEquals(20, snapshot.getMin());
+        time.set(4400);
+        assertEquals(1, reservoir.getSnapshot().size());
+        time.set(4600);
+        assertEquals(0, reservoir.getSnapshot().size());
+    }
+
+    @Test
+    public void notRotatedChunkShouldDecayToo() {
+        Reservoir reservoir = buildReservoir(CountsWidth.SHORT);
+        for (int i = 0; i < 100; i++) {
+            reservoir.update(10);
+        }
+
+        time.set(2500);
+        assertEquals(100, reservoir.getSnapshot().size());
+        time.set(3250);
+        assertEquals(75, reservoir.getSnapshot().size());
+        time.set(4000);
+        assertEquals(0, reservoir.getSnapshot().size());
+
+        reservoir.update(30);
+        assertEquals(30, reservoir.getSnapshot().getMax());
+    }
+
+    @Test
+    public void testToString() {
+        new SmoothlyDecayingByChunksAccumulator(() -> new org.HdrHistogram.Recorder(2), 3, 1000, clock, MockExecutor.INSTANCE, new ChunkedAccumulatorSettings()).toString();
+    }
+
+    private Reservoir buildReservoir(CountsWidth countsWidth) {
+        return new HdrBuilder(clock)
+                .resetReservoirPeriodicallyBySmoothlyDecayingChunks(Duration.ofSeconds(3), 3)
+                .withCountsWidth(countsWidth)
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .withoutSnapshotOptimization()
+                .buildReservoir();
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram.accumulator;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.github.rollingmetrics.histogram.HdrBuilder;
+import com.github.rollingmetrics.histogram.util.EmptySnapshot;
+import org.HdrHistogram.Histogram;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ThreadLocalAccumulatorTest {
+
+    @Test
+    public void testUniformRecording() {
+        Reservoir reservoir = new HdrBuilder().withThreadLocalRecording().buildReservoir();
+
+        reservoir.update(10);
+        reservoir.update(20);
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(10, snapshot.getMin());
+        assertEquals(20, snapshot.getMax());
+
+        reservoir.update(30);
+        reservoir.update(40);
+        snapshot = reservoir.getSnapshot();
+        assertEquals(10, snapshot.getMin());
+        assertEquals(40, snapshot.getMax());
+    }
+
+    @Test
+    public void testResetOnSnapshot() {
+        Reservoir reservoir = new HdrBuilder().resetReservoirOnSnapshot().withThreadLocalRecording().buildReservoir();
+
+        reservoir.update(10);
+        reservoir.update(20);
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(10, snapshot.getMin());
+        assertEquals(20, snapshot.getMax());
+
+        reservoir.update(30);
+        reservoir.update(40);
+        snapshot = reservoir.getSnapshot();
+        assertEquals(30, snapshot.getMin());
+        assertEquals(40, snapshot.getMax());
+
+        snapshot = reservoir.getSnapshot();
+        assertEquals(0, snapshot.getMax());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldDisallowCombinationWithChunks() {
+        new HdrBuilder().resetReservoirPeriodicallyByChunks(Duration.ofSeconds(60), 6).withThreadLocalRecording().buildReservoir();
+    }
+
+    @Test
+    public void histogramsOfDeadThreadsShouldBeMergedAndReleased() throws InterruptedException {
+        ThreadLocalAccumulator accumulator = new ThreadLocalAccumulator(() -> new Histogram(2), false);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 1; j <= 1000; j++) {
+                    accumulator.recordSingleValueWithExpectedInterval(j, 0);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        accumulator.recordSingleValueWithExpectedInterval(1, 0);
+        assertEquals(5, accumulator.getWriterCount());
+
+        accumulator.getSnapshot(histogram -> {
+            assertEquals(4001, histogram.getTotalCount());
+            return EmptySnapshot.INSTANCE;
+        });
+        assertEquals(1, accumulator.getWriterCount());
+    }
+
+    @Test(timeout = 32000)
+    public void valuesShouldNotBeLostWhenSnapshotIsTakenConcurrently() throws InterruptedException {
+        ThreadLocalAccumulator accumulator = new ThreadLocalAccumulator(() -> new Histogram(2), false);
+        int valuesPerThread = 1_000_000;
+        Thread[] threads = new Thread[4];
+        CountDownLatch latch = new CountDownLatch(threads.length);
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 1; j <= valuesPerThread; j++) {
+                    accumulator.recordSingleValueWithExpectedInterval(j % 1000, 0);
+                }
+                latch.countDown();
+            });
+            threads[i].start();
+        }
+
+        AtomicBoolean totalCountDecreased = new AtomicBoolean();
+        long[] previousTotalCount = new long[1];
+        while (latch.getCount() > 0) {
+            accumulator.getSnapshot(histogram -> {
+                if (histogram.getTotalCount() < previousTotalCount[0]) {
+                    totalCountDecreased.set(true);
+                }
+                previousTotalCount[0] = histogram.getTotalCount();
+                return null;
+            });
+        }
+        accumulator.getSnapshot(histogram -> {
+            assertEquals((long) valuesPerThread * threads.length, histogram.getTotalCount());
+            return null;
+        });
+        assertTrue(!totalCountDecreased.get());
+    }
+
+    @Test
+    public void testToString() {
+        Reservoir reservoir = new HdrBuilder().withThreadLocalRecording().buildReservoir();
+        reservoir.update(42);
+        System.out.println(reservoir.toString());
+    }
+
+    @Test(timeout = 32000)
+    public void testThatConcurrentThreadsNotHung() throws InterruptedException {
+        Reservoir reservoir = new HdrBuilder()
+                .withThreadLocalRecording()
+                .buildReservoir();
+
+        HistogramUtil.runInParallel(reservoir, TimeUnit.SECONDS.toMillis(30));
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram.util;
+
+import com.github.rollingmetrics.histogram.CountsWidth;
+import org.HdrHistogram.AbstractHistogram;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.IntCountsHistogram;
+import org.HdrHistogram.ShortCountsHistogram;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramUtilTest {
+
+    @Test
+    public void shouldCreateCopyWithRequiredWidth() {
+        for (CountsWidth width : CountsWidth.values()) {
+            AbstractHistogram copy = HistogramUtil.createNonConcurrentCopy(new ConcurrentHistogram(2), width);
+            assertEquals(width, HistogramUtil.getCountsWidth(copy));
+            assertTrue(copy.isAutoResize());
+            assertEquals(2, copy.getNumberOfSignificantValueDigits());
+        }
+    }
+
+    @Test
+    public void lowerPrecisionHistogramShouldBeAddedWithinRangeOfFirst() {
+        Histogram coarse = new Histogram(100_000, 1);
+        coarse.recordValueWithCount(1234, 3);
+        coarse.recordValue(100_000);
+        Histogram precise = new Histogram(100_000, 3);
+
+        HistogramUtil.addLowerPrecisionSecondToFirst(precise, coarse);
+        assertEquals(4, precise.getTotalCount());
+        assertEquals(3, precise.getCountAtValue(coarse.lowestEquivalentValue(1234)));
+        assertTrue(precise.getMaxValue() <= 100_000);
+    }
+
+    @Test
+    public void shouldNotPromoteWhenCountsFit() {
+        ShortCountsHistogram first = new ShortCountsHistogram(1000, 2);
+        first.recordValueWithCount(10, 10_000);
+        Histogram second = new Histogram(1000, 2);
+        second.recordValueWithCount(10, 20_000);
+
+        AbstractHistogram sum = HistogramUtil.addSecondToFirstWithPromotion(first, second);
+        assertSame(first, sum);
+        assertEquals(30_000, sum.getCountAtValue(10));
+    }
+
+    @Test
+    public void shouldPromoteShortToInt() {
+        ShortCountsHistogram first = new ShortCountsHistogram(1000, 2);
+        first.recordValueWithCount(10, 30_000);
+        first.recordValue(500);
+        Histogram second = new Histogram(1000, 2);
+        second.recordValueWithCount(10, 30_000);
+
+        AbstractHistogram sum = HistogramUtil.addSecondToFirstWithPromotion(first, second);
+        assertTrue(sum instanceof IntCountsHistogram);
+        assertEquals(60_000, sum.getCountAtValue(10));
+        assertEquals(1, sum.getCountAtValue(500));
+        assertEquals(60_001, sum.getTotalCount());
+    }
+
+    @Test
+    public void shouldPromoteIntToLong() {
+        IntCountsHistogram first = new IntCountsHistogram(1000, 2);
+        first.recordValueWithCount(10, Integer.MAX_VALUE - 1);
+        Histogram second = new Histogram(1000, 2);
+        second.recordValueWithCount(10, 2);
+
+        AbstractHistogram sum = HistogramUtil.addSecondToFirstWithPromotion(first, second);
+        assertEquals(CountsWidth.LONG, HistogramUtil.getCountsWidth(sum));
+        assertEquals(Integer.MAX_VALUE + 1L, sum.getCountAtValue(10));
+    }
+
+    @Test
+    public void shouldPromoteShortDirectlyToLongWhenIntIsNotEnough() {
+        ShortCountsHistogram first = new ShortCountsHistogram(1000, 2);
+        first.recordValue(10);
+        Histogram second = new Histogram(1000, 2);
+        second.recordValueWithCount(10, Integer.MAX_VALUE);
+
+        AbstractHistogram sum = HistogramUtil.addSecondToFirstWithPromotion(first, second);
+        assertEquals(CountsWidth.LONG, HistogramUtil.getCountsWidth(sum));
+        assertEquals(Integer.MAX_VALUE + 1L, sum.getCountAtValue(10));
+    }
+
+    @Test
+    public void resetShouldReturnToRequiredWidth() {
+        ShortCountsHistogram narrow = new ShortCountsHistogram(1000, 2);
+        narrow.recordValue(10);
+        assertSame(narrow, HistogramUtil.reset(narrow, CountsWidth.SHORT));
+        assertEquals(0, narrow.getTotalCount());
+
+        Histogram promoted = new Histogram(1000, 2);
+        promoted.recordValue(10);
+        AbstractHistogram demoted = HistogramUtil.reset(promoted, CountsWidth.SHORT);
+        assertTrue(demoted instanceof ShortCountsHistogram);
+        assertEquals(0, demoted.getTotalCount());
+        assertEquals(1000, demoted.getHighestTrackableValue());
+    }
+
+    @Test
+    public void shouldAddWithWeightAndCarryFractionalParts() {
+        ShortCountsHistogram second = new ShortCountsHistogram(1000, 2);
+        second.recordValueWithCount(10, 3);
+        second.recordValueWithCount(20, 3);
+        second.recordValueWithCount(30, 3);
+        second.recordValueWithCount(40, 1);
+        Histogram first = new Histogram(1000, 2);
+        first.recordValue(10);
+
+        HistogramUtil.addSecondToFirstWithWeight(first, second, 0.5);
+        assertEquals(6, first.getTotalCount());
+        assertEquals(3, first.getCountAtValue(10));
+        assertEquals(1, first.getCountAtValue(20));
+        assertEquals(2, first.getCountAtValue(30));
+        assertEquals(0, first.getCountAtValue(40));
+    }
+
+}
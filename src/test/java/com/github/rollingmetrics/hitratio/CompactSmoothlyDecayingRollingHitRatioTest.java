@@ -0,0 +1,133 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.hitratio;
+
+import com.github.rollingmetrics.util.Clock;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class CompactSmoothlyDecayingRollingHitRatioTest {
+
+    private static int ROLLING_TIME_WINDOW_MILLIS = 5_000;
+    private static int CHUNK_COUNT = 5;
+
+    AtomicLong currentTimeMillis = new AtomicLong(0);
+    Clock clock = Clock.mock(currentTimeMillis);
+    HitRatio hitRatio = new CompactSmoothlyDecayingRollingHitRatio(Duration.ofMillis(ROLLING_TIME_WINDOW_MILLIS), CHUNK_COUNT, clock);
+
+    @Test
+    public void testSmoothlyEvictionFromOldestChunk() {
+        hitRatio.update(50, 100);
+        assertEquals(0.5, hitRatio.getHitRatio(), 0.001);
+
+        currentTimeMillis.set(1_000);
+        hitRatio.update(100, 100);
+        assertEquals(0.75, hitRatio.getHitRatio(), 0.001);
+
+        currentTimeMillis.set(5_500);
+        // oldest chunk should lost 50% of its weight
+        assertEquals(0.833, hitRatio.getHitRatio(), 0.001);
+
+        currentTimeMillis.set(6_000);
+        // oldest chunk should be fully invalidated
+        assertEquals(1.0, hitRatio.getHitRatio(), 0.001);
+
+        currentTimeMillis.set(10_000);
+        assertEquals(Double.NaN, hitRatio.getHitRatio(), 0.001);
+    }
+
+    @Test
+    public void shouldCalculateSameRatioAsNonCompactHitRatio() {
+        HitRatio nonCompactHitRatio = new SmoothlyDecayingRollingHitRatio(Duration.ofMillis(ROLLING_TIME_WINDOW_MILLIS), CHUNK_COUNT, clock);
+
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            int total = 1 + random.nextInt(100);
+            int hit = random.nextInt(total + 1);
+            hitRatio.update(hit, total);
+            nonCompactHitRatio.update(hit, total);
+            if (random.nextInt(10) == 0) {
+                assertEquals(nonCompactHitRatio.getHitRatio(), hitRatio.getHitRatio(), 0.0);
+            }
+            // sometimes jump over the whole time window
+            currentTimeMillis.addAndGet(random.nextInt(1000) == 0 ? 7_000 : random.nextInt(100));
+        }
+        assertEquals(nonCompactHitRatio.getHitRatio(), hitRatio.getHitRatio(), 0.0);
+    }
+
+    @Test
+    public void testHandlingArithmeticOverflow() {
+        hitRatio.update(Integer.MAX_VALUE / 2, Integer.MAX_VALUE);
+        assertEquals(0.5, hitRatio.getHitRatio(), 0.0001);
+
+        hitRatio.update(0, Integer.MAX_VALUE);
+        assertEquals(0.25, hitRatio.getHitRatio(), 0.0001);
+    }
+
+    @Test
+    public void tesIllegalApiUsageDetection() {
+        HitRationTestUtil.checkIllegalApiUsageDetection(hitRatio);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooShortTimeWindowShouldBeDisallowed() {
+        new CompactSmoothlyDecayingRollingHitRatio(Duration.ofMillis(SmoothlyDecayingRollingHitRatio.MIN_ROLLING_WINDOW_MILLIS - 1), 5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooManyChunksShouldBeDisallowed() {
+        new CompactSmoothlyDecayingRollingHitRatio(Duration.ofMinutes(1), SmoothlyDecayingRollingHitRatio.MAX_CHUNKS + 1);
+    }
+
+    @Test
+    public void getRollingWindowAndChunkCount() {
+        CompactSmoothlyDecayingRollingHitRatio hitRatio = new CompactSmoothlyDecayingRollingHitRatio(Duration.ofMinutes(1), 6);
+        assertEquals(Duration.ofMinutes(1), hitRatio.getRollingWindow());
+        assertEquals(6, hitRatio.getChunkCount());
+    }
+
+    @Test
+    public void testToString() {
+        CompactSmoothlyDecayingRollingHitRatio hitRatio = new CompactSmoothlyDecayingRollingHitRatio(Duration.ofMinutes(1), 6);
+        System.out.println(hitRatio.toString());
+    }
+
+    @Test
+    public void footprintShouldBeProportionalToNumberOfChunks() {
+        CompactSmoothlyDecayingRollingHitRatio hitRatio = new CompactSmoothlyDecayingRollingHitRatio(Duration.ofMinutes(1), 60);
+
+        // 61 chunks * 5 slots * 8 bytes
+        assertTrue(hitRatio.getEstimatedFootprintInBytes() >= 61 * 5 * 8);
+        assertTrue(hitRatio.getEstimatedFootprintInBytes() < 61 * 5 * 8 + 200);
+    }
+
+    @Test(timeout = 32000)
+    public void testThatConcurrentThreadsNotHung() throws InterruptedException {
+        CompactSmoothlyDecayingRollingHitRatio hitRatio = new CompactSmoothlyDecayingRollingHitRatio(Duration.ofSeconds(1), 100);
+        HitRationTestUtil.runInParallel(hitRatio, TimeUnit.SECONDS.toMillis(30));
+    }
+
+}
@@ -57,6 +57,27 @@ public class HitRationTestUtil {
         } catch (IllegalArgumentException e){
             // ok
         }
+
+        try {
+            hitRatio.update(-1L, 2L);
+            fail("negative hit count should be forbidden");
+        } catch (IllegalArgumentException e){
+            // ok
+        }
+
+        try {
+            hitRatio.update(0L, 0L);
+            fail("non-positive totalCount should be forbidden");
+        } catch (IllegalArgumentException e){
+            // ok
+        }
+
+        try {
+            hitRatio.update(10L, 5L);
+            fail("should checkIllegalApiUsageDetection that hitCount <= totalCount");
+        } catch (IllegalArgumentException e){
+            // ok
+        }
     }
 
     public static void runInParallel(HitRatio hitRatio, long durationMillis) throws InterruptedException {
@@ -96,4 +117,43 @@ public class HitRationTestUtil {
         }
     }
 
+    /**
+     * Writers register only hits, so any reader which observes inconsistent pair of hit and total counts will see the ratio other than 1.0
+     */
+    public static void checkReadConsistency(HitRatio hitRatio, long durationMillis) throws InterruptedException {
+        AtomicReference<Throwable> errorRef = new AtomicReference<>();
+        Thread[] threads = new Thread[Runtime.getRuntime().availableProcessors() * 2];
+        final CountDownLatch latch = new CountDownLatch(threads.length);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < threads.length; i++) {
+            boolean reader = i % 4 == 0;
+            threads[i] = new Thread(() -> {
+                try {
+                    while (errorRef.get() == null && System.currentTimeMillis() - start < durationMillis) {
+                        if (reader) {
+                            double ratio = hitRatio.getHitRatio();
+                            if (!Double.isNaN(ratio) && ratio != 1.0) {
+                                throw new IllegalStateException("Inconsistent ratio " + ratio);
+                            }
+                        } else {
+                            int count = ThreadLocalRandom.current().nextInt(1, 100);
+                            hitRatio.update(count, count);
+                        }
+                    }
+                } catch (Exception e){
+                    e.printStackTrace();
+                    errorRef.set(e);
+                } finally {
+                    latch.countDown();
+                }
+            });
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        latch.await();
+        if (errorRef.get() != null) {
+            throw new RuntimeException(errorRef.get());
+        }
+    }
+
 }
@@ -127,6 +127,16 @@ public class SmoothlyDecayingRollingHitRatioTest {
         assertEquals(0.25, hitRatio.getHitRatio(), 0.0001);
     }
 
+    @Test
+    public void testUpdateByLongCounts() {
+        hitRatio.update(30L, 100L);
+        assertEquals(0.3, hitRatio.getHitRatio(), 0.001);
+
+        // the counts which do not fit into int should be reduced proportionally
+        hitRatio.update(Integer.MAX_VALUE * 3L, Integer.MAX_VALUE * 4L);
+        assertEquals(0.75, hitRatio.getHitRatio(), 0.001);
+    }
+
     @Test
     public void tesIllegalApiUsageDetection() {
         HitRationTestUtil.checkIllegalApiUsageDetection(hitRatio);
@@ -23,6 +23,8 @@ import com.github.rollingmetrics.util.Clock;
 import org.junit.Test;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static com.github.rollingmetrics.top.TestData.first;
@@ -165,6 +167,35 @@ public class TopBuilderTest {
         TopTestUtil.checkOrder(top, TestData.second);
     }
 
+    @Test
+    public void nonBlockingCachingShouldRefreshPositionsInBackground() {
+        AtomicLong currentTimeMillis = new AtomicLong();
+        Clock clock = Clock.mock(currentTimeMillis);
+        List<Runnable> backgroundTasks = new ArrayList<>();
+        Top top = Top.builder(1)
+                .neverResetPositions()
+                .withClock(clock)
+                .withBackgroundExecutor(backgroundTasks::add)
+                .withNonBlockingSnapshotCaching(Duration.ofSeconds(10), Duration.ofSeconds(60))
+                .build();
+
+        TopTestUtil.update(top, TestData.first);
+        TopTestUtil.checkOrder(top, TestData.first);
+
+        TopTestUtil.update(top, TestData.second);
+        currentTimeMillis.addAndGet(10_000);
+        TopTestUtil.checkOrder(top, TestData.first);
+        assertEquals(1, backgroundTasks.size());
+
+        backgroundTasks.remove(0).run();
+        TopTestUtil.checkOrder(top, TestData.second);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxStalenessShouldNotBeLessThanCachingDuration() {
+        Top.builder(1).withNonBlockingSnapshotCaching(Duration.ofSeconds(10), Duration.ofSeconds(1));
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void negativeCachingDurationShouldBeDisallowed() {
         Top.builder(1).withSnapshotCachingDuration(Duration.ofMillis(-2000));
@@ -0,0 +1,45 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.util;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DirectBufferUtilTest {
+
+    @Test
+    public void shouldAllocateDirectBuffer() {
+        ByteBuffer buffer = DirectBufferUtil.allocate(128);
+        assertTrue(buffer.isDirect());
+        assertEquals(128, buffer.capacity());
+        DirectBufferUtil.free(buffer);
+    }
+
+    @Test
+    public void shouldIgnoreNullAndHeapBuffers() {
+        DirectBufferUtil.free(null);
+        ByteBuffer heapBuffer = ByteBuffer.allocate(16);
+        DirectBufferUtil.free(heapBuffer);
+        heapBuffer.putLong(42);
+    }
+
+}
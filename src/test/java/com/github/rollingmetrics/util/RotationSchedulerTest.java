@@ -0,0 +1,235 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.util;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.github.rollingmetrics.histogram.HdrBuilder;
+import com.github.rollingmetrics.histogram.MultiWindowTimer;
+import com.github.rollingmetrics.top.Top;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class RotationSchedulerTest {
+
+    private final AtomicLong time = new AtomicLong();
+    private final Clock clock = Clock.mock(time);
+    private final RotationScheduler scheduler = new RotationScheduler(clock, 10, null, false);
+    private final AtomicInteger submittedTasks = new AtomicInteger();
+    private final Executor countingExecutor = task -> {
+        submittedTasks.incrementAndGet();
+        task.run();
+    };
+
+    @Test
+    public void targetShouldBeRotatedAtMostOneTickBeforeBoundary() {
+        List<Long> rotations = new ArrayList<>();
+        ProactivelyRotatable target = rotations::add;
+        scheduler.register(target, 0, 1000);
+        scheduler.tick();
+
+        time.set(989);
+        scheduler.tick();
+        assertTrue(rotations.isEmpty());
+
+        time.set(990);
+        scheduler.tick();
+        assertEquals(1, rotations.size());
+        assertEquals(1000L, (long) rotations.get(0));
+
+        time.set(1500);
+        scheduler.tick();
+        assertEquals(1, rotations.size());
+
+        // scheduler thread was delayed for a long time, the rotation happens once for the nearest boundary
+        time.set(10_995);
+        scheduler.tick();
+        assertEquals(2, rotations.size());
+        assertEquals(2000L, (long) rotations.get(1));
+
+        // the next boundary is too close, so rotation happens at next tick
+        time.set(10_999);
+        scheduler.tick();
+        assertEquals(2, rotations.size());
+        time.set(11_000);
+        scheduler.tick();
+        assertEquals(3, rotations.size());
+        assertEquals(11_000L, (long) rotations.get(2));
+    }
+
+    @Test
+    public void writersShouldNotRotateReservoirWhichIsRotatedByScheduler() {
+        Reservoir reservoir = new HdrBuilder(clock)
+                .resetReservoirPeriodicallyByChunks(Duration.ofSeconds(3), 3)
+                .withBackgroundExecutor(countingExecutor)
+                .withProactiveRotation(scheduler)
+                .withoutSnapshotOptimization()
+                .buildReservoir();
+        scheduler.tick();
+
+        for (int i = 0; i < 10; i++) {
+            time.set(i * 500 + 100);
+            reservoir.update(i);
+            time.addAndGet(395);
+            scheduler.tick();
+        }
+        assertEquals(0, submittedTasks.get());
+        // the chunk [4000, 5000) was rotated 5 millis ahead of boundary and replaced the chunk [1000, 2000) in the archive
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(4, snapshot.getMin());
+        assertEquals(9, snapshot.getMax());
+    }
+
+    @Test
+    public void writersShouldNotRotateSmoothlyDecayingReservoirAndMultiWindowTimerWhichAreRotatedByScheduler() {
+        Reservoir reservoir = new HdrBuilder(clock)
+                .resetReservoirPeriodicallyBySmoothlyDecayingChunks(Duration.ofSeconds(3), 3)
+                .withBackgroundExecutor(countingExecutor)
+                .withProactiveRotation(scheduler)
+                .withoutSnapshotOptimization()
+                .buildReservoir();
+        MultiWindowTimer timer = new HdrBuilder(clock)
+                .withBackgroundExecutor(countingExecutor)
+                .withProactiveRotation(scheduler)
+                .withoutSnapshotOptimization()
+                .buildMultiWindowTimer(Arrays.asList(Duration.ofSeconds(3), Duration.ofSeconds(6)), 3);
+        scheduler.tick();
+
+        for (int i = 0; i < 10; i++) {
+            time.set(i * 500 + 100);
+            reservoir.update(i);
+            timer.update(i, TimeUnit.NANOSECONDS);
+            time.addAndGet(395);
+            scheduler.tick();
+        }
+        assertEquals(0, submittedTasks.get());
+        assertEquals(9, reservoir.getSnapshot().getMax());
+        assertEquals(10, timer.getSnapshot(Duration.ofSeconds(6)).size());
+    }
+
+    @Test
+    public void valueRecordedDuringLastTickShouldBeAttributedToNextChunk() {
+        Reservoir reservoir = new HdrBuilder(clock)
+                .resetReservoirPeriodically(Duration.ofSeconds(1))
+                .withBackgroundExecutor(countingExecutor)
+                .withProactiveRotation(scheduler)
+                .withoutSnapshotOptimization()
+                .buildReservoir();
+        scheduler.tick();
+
+        time.set(500);
+        reservoir.update(1);
+        time.set(995);
+        scheduler.tick();
+        reservoir.update(2);
+
+        time.set(1000);
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(1, snapshot.size());
+        assertEquals(2, snapshot.getMin());
+        assertEquals(0, submittedTasks.get());
+    }
+
+    @Test
+    public void writerShouldRotateByItselfWhenSchedulerIsDelayed() {
+        Reservoir reservoir = new HdrBuilder(clock)
+                .resetReservoirPeriodicallyByChunks(Duration.ofSeconds(3), 3)
+                .withBackgroundExecutor(countingExecutor)
+                .withProactiveRotation(scheduler)
+                .withoutSnapshotOptimization()
+                .buildReservoir();
+        scheduler.tick();
+
+        reservoir.update(1);
+        time.set(1500);
+        reservoir.update(2);
+        assertEquals(1, submittedTasks.get());
+
+        // scheduler must not rotate chunk which was already rotated by writer
+        scheduler.tick();
+        time.set(1600);
+        reservoir.update(3);
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(3, snapshot.size());
+
+        time.set(1995);
+        scheduler.tick();
+        time.set(2000);
+        reservoir.update(4);
+        assertEquals(1, submittedTasks.get());
+        assertEquals(4, reservoir.getSnapshot().size());
+    }
+
+    @Test
+    public void writersShouldNotRotateTopWhichIsRotatedByScheduler() {
+        Top top = Top.builder(1)
+                .resetPositionsPeriodicallyByChunks(Duration.ofSeconds(2), 2)
+                .withSnapshotCachingDuration(Duration.ZERO)
+                .withClock(clock)
+                .withBackgroundExecutor(countingExecutor)
+                .withProactiveRotation(scheduler)
+                .build();
+        scheduler.tick();
+
+        top.update(0, 10, TimeUnit.MILLISECONDS, () -> "first");
+        time.set(995);
+        scheduler.tick();
+        time.set(1000);
+        top.update(1000, 5, TimeUnit.MILLISECONDS, () -> "second");
+        assertEquals("first", top.getPositionsInDescendingOrder().get(0).getQueryDescription());
+
+        time.set(2995);
+        scheduler.tick();
+        time.set(3000);
+        assertEquals("second", top.getPositionsInDescendingOrder().get(0).getQueryDescription());
+        assertEquals(0, submittedTasks.get());
+    }
+
+    @Test
+    public void failedRotationShouldNotBreakScheduler() {
+        List<Long> rotations = new ArrayList<>();
+        scheduler.register(boundary -> { throw new IllegalStateException(); }, 0, 1000);
+        scheduler.register(rotations::add, 0, 1000);
+        scheduler.tick();
+
+        time.set(995);
+        scheduler.tick();
+        assertEquals(1, rotations.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowNonPositiveTickInterval() {
+        new RotationScheduler(clock, 0, null, false);
+    }
+
+    @Test
+    public void testToString() {
+        System.out.println(scheduler.toString());
+    }
+
+}
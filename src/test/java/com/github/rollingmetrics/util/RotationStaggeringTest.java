@@ -0,0 +1,127 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.util;
+
+import com.codahale.metrics.Reservoir;
+import com.github.rollingmetrics.histogram.HdrBuilder;
+import com.github.rollingmetrics.top.Top;
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class RotationStaggeringTest {
+
+    private final AtomicLong time = new AtomicLong(10_000);
+    private final Clock clock = Clock.mock(time);
+
+    @After
+    public void restoreDefault() {
+        RotationStaggering.setEnabledByDefault(false);
+    }
+
+    @Test
+    public void originShouldBeSpreadAcrossInterval() {
+        Set<Long> origins = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            long origin = RotationStaggering.staggerOrigin(10_000, 1000);
+            assertTrue(origin <= 10_000);
+            assertTrue(origin > 9_000);
+            origins.add(origin);
+        }
+        assertTrue(origins.size() > 100);
+    }
+
+    @Test
+    public void staggeredReservoirShouldKeepValueDuringRollingWindow() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            time.set(10_000);
+            Reservoir reservoir = buildReservoir(new HdrBuilder(clock).withStaggeredRotation(true));
+
+            long recordTime = 10_000 + random.nextInt(5000);
+            time.set(recordTime);
+            reservoir.update(42);
+
+            // value is kept at least rollingTimeWindow and at most rollingTimeWindow + rollingTimeWindow/numberChunks
+            time.set(recordTime + 2999);
+            assertEquals(1, reservoir.getSnapshot().size());
+            time.set(recordTime + 4000);
+            assertEquals(0, reservoir.getSnapshot().size());
+        }
+    }
+
+    @Test
+    public void globalDefaultShouldBeUsedWhenBuilderDoesNotConfigureStaggering() {
+        assertFalse(hasStaggeredBoundaries(() -> new HdrBuilder(clock)));
+
+        RotationStaggering.setEnabledByDefault(true);
+        assertTrue(hasStaggeredBoundaries(() -> new HdrBuilder(clock)));
+        assertFalse(hasStaggeredBoundaries(() -> new HdrBuilder(clock).withStaggeredRotation(false)));
+    }
+
+    @Test
+    public void topShouldSupportStaggering() {
+        boolean staggered = false;
+        for (int i = 0; i < 20 && !staggered; i++) {
+            time.set(10_000);
+            Top top = Top.builder(1)
+                    .resetAllPositionsPeriodically(Duration.ofSeconds(1))
+                    .withSnapshotCachingDuration(Duration.ZERO)
+                    .withClock(clock)
+                    .withBackgroundExecutor(MockExecutor.INSTANCE)
+                    .withStaggeredRotation(true)
+                    .build();
+            top.update(10_000, 10, TimeUnit.MILLISECONDS, () -> "SELECT 1");
+            time.set(10_999);
+            staggered = top.getPositionsInDescendingOrder().isEmpty();
+        }
+        assertTrue(staggered);
+    }
+
+    private boolean hasStaggeredBoundaries(Supplier<HdrBuilder> builderSupplier) {
+        // the value recorded at creation time is evicted before the end of first full chunk only if boundaries are staggered
+        for (int i = 0; i < 20; i++) {
+            time.set(10_000);
+            Reservoir reservoir = buildReservoir(builderSupplier.get());
+            reservoir.update(42);
+            time.set(10_000 + 3999);
+            if (reservoir.getSnapshot().size() == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Reservoir buildReservoir(HdrBuilder builder) {
+        return builder
+                .resetReservoirPeriodicallyByChunks(Duration.ofSeconds(3), 3)
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .withoutSnapshotOptimization()
+                .buildReservoir();
+    }
+
+}
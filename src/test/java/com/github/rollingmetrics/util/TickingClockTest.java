@@ -0,0 +1,150 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.util;
+
+import com.github.rollingmetrics.counter.SmoothlyDecayingRollingCounter;
+import com.github.rollingmetrics.counter.WindowCounter;
+import com.github.rollingmetrics.hitratio.HitRatio;
+import com.github.rollingmetrics.hitratio.SmoothlyDecayingRollingHitRatio;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class TickingClockTest {
+
+    private final AtomicLong sourceTime = new AtomicLong(1000);
+    private final TickingClock clock = new TickingClock(Clock.mock(sourceTime), 1, null);
+
+    @Test
+    public void timeShouldBeChangedOnlyOnTick() {
+        assertEquals(1000, clock.currentTimeMillis());
+
+        sourceTime.set(1005);
+        assertEquals(1000, clock.currentTimeMillis());
+
+        clock.tick();
+        assertEquals(1005, clock.currentTimeMillis());
+    }
+
+    @Test
+    public void epochShouldBeRecalculatedOnTick() {
+        ChunkEpochTracker tracker = clock.registerChunkEpochTracker(1000, 100, 3);
+        assertEpoch(tracker.getCurrentEpoch(), 0, 1000, 0);
+
+        sourceTime.set(1099);
+        clock.tick();
+        assertEpoch(tracker.getCurrentEpoch(), 0, 1000, 0);
+
+        sourceTime.set(1100);
+        clock.tick();
+        assertEpoch(tracker.getCurrentEpoch(), 1, 1100, 1);
+
+        sourceTime.set(1350);
+        clock.tick();
+        assertEpoch(tracker.getCurrentEpoch(), 3, 1300, 0);
+    }
+
+    @Test
+    public void epochShouldNotBeReallocatedWhenIntervalIsNotChanged() {
+        ChunkEpochTracker tracker = clock.registerChunkEpochTracker(1000, 100, 3);
+        ChunkEpoch epoch = tracker.getCurrentEpoch();
+
+        sourceTime.set(1050);
+        clock.tick();
+        assertSame(epoch, tracker.getCurrentEpoch());
+    }
+
+    @Test
+    public void counterShouldCalculateTheSameSumAsWithRegularClock() {
+        AtomicLong mockTime = new AtomicLong(sourceTime.get());
+        WindowCounter counter = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(1), 10, Clock.mock(mockTime));
+        WindowCounter tickingCounter = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(1), 10, clock);
+
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            long time = sourceTime.addAndGet(random.nextInt(30));
+            mockTime.set(time);
+            clock.tick();
+
+            counter.add(i);
+            tickingCounter.add(i);
+            assertEquals(counter.getSum(), tickingCounter.getSum());
+        }
+    }
+
+    @Test
+    public void hitRatioShouldCalculateTheSameRatioAsWithRegularClock() {
+        AtomicLong mockTime = new AtomicLong(sourceTime.get());
+        HitRatio hitRatio = new SmoothlyDecayingRollingHitRatio(Duration.ofSeconds(1), 10, Clock.mock(mockTime));
+        HitRatio tickingHitRatio = new SmoothlyDecayingRollingHitRatio(Duration.ofSeconds(1), 10, clock);
+
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            long time = sourceTime.addAndGet(random.nextInt(30));
+            mockTime.set(time);
+            clock.tick();
+
+            int hits = random.nextInt(10);
+            hitRatio.update(hits, 10);
+            tickingHitRatio.update(hits, 10);
+            assertEquals(hitRatio.getHitRatio(), tickingHitRatio.getHitRatio(), 0.0);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void tickerThreadShouldPublishTime() throws InterruptedException {
+        DaemonThreadFactory threadFactory = new DaemonThreadFactory("test-ticking-clock");
+        TickingClock realClock = new TickingClock(1, threadFactory);
+        try {
+            assertEquals(1, threadFactory.getCreatedThreads());
+            long initialTime = realClock.currentTimeMillis();
+            while (realClock.currentTimeMillis() == initialTime) {
+                Thread.sleep(1);
+            }
+        } finally {
+            realClock.stop();
+        }
+    }
+
+    @Test
+    public void sharedInstanceShouldBeSingleton() {
+        assertSame(TickingClock.getInstance(), TickingClock.getInstance());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowNonPositiveTickInterval() {
+        new TickingClock(0, new DaemonThreadFactory("test-ticking-clock"));
+    }
+
+    @Test
+    public void testToString() {
+        clock.registerChunkEpochTracker(1000, 100, 3);
+        System.out.println(clock);
+    }
+
+    private static void assertEpoch(ChunkEpoch epoch, long number, long startMillis, int chunkIndex) {
+        assertEquals(number, epoch.getNumber());
+        assertEquals(startMillis, epoch.getStartMillis());
+        assertEquals(chunkIndex, epoch.getChunkIndex());
+    }
+
+}